@@ -105,6 +105,27 @@ public interface IFeatureCollection<Feat extends IFeature> extends
    */
   public abstract void addCollection(Collection<Feat> value);
 
+  /**
+   * Commence un chargement en masse dans le thread courant. Jusqu'à l'appel
+   * correspondant à {@link #endBulk()}, les ajouts faits par ce thread ne
+   * mettent à jour ni l'index spatial ni l'emprise et ne déclenchent aucun
+   * évènement. Les appels peuvent être imbriqués.
+   */
+  public abstract void beginBulk();
+
+  /**
+   * Termine un chargement en masse : les objets ajoutés sont insérés dans
+   * l'index spatial, l'emprise est mise à jour et un évènement
+   * {@link FeatureCollectionEvent.Type#ADDED} est déclenché pour chaque objet
+   * ajouté, dans l'ordre d'ajout.
+   */
+  public abstract void endBulk();
+
+  /**
+   * @return vrai si un chargement en masse est en cours dans le thread courant
+   */
+  public abstract boolean isBulk();
+
   /**
    * Efface de la liste l'element passe en parametre. Attention, si l'élément
    * est persistant, celui-ci n'est pas détruit, le faire après au besoin.
@@ -277,6 +298,20 @@ public interface IFeatureCollection<Feat extends IFeature> extends
    */
   public abstract Collection<Feat> select(IGeometry geometry, double distance);
 
+  /**
+   * Selection des k objets les plus proches d'un objet geometrique quelconque,
+   * à l'aide de l'index spatial s'il existe.
+   * 
+   * @param geometry geometrie quelconque.
+   * @param k nombre maximal d'objets renvoyés
+   * @param maxDistance distance maximum (
+   *          {@link Double#POSITIVE_INFINITY} pour ne pas limiter la
+   *          recherche)
+   * @return au plus k objets, par distance croissante à la géométrie
+   */
+  public abstract List<Feat> nearest(IGeometry geometry, int k,
+      double maxDistance);
+
   // ---------------------------------------
   // --- Méthodes nécessaire pour implémenter l'interface Collection
   // ---------------------------------------
@@ -82,5 +82,20 @@ public interface SpatialIndex<Feat extends IFeature> {
    */
   public abstract Collection<Feat> select(IGeometry geometry, double distance);
 
+  /**
+   * Selection des k objets les plus proches d'un objet geometrique quelconque,
+   * par distance croissante. La distance utilisée est la distance exacte entre
+   * géométries.
+   * 
+   * @param geometry objet geometrique dont on cherche les voisins
+   * @param k nombre maximal d'objets renvoyés
+   * @param maxDistance distance maximale des objets renvoyés (
+   *          {@link Double#POSITIVE_INFINITY} pour ne pas limiter la
+   *          recherche)
+   * @return au plus k objets, du plus proche au plus lointain
+   */
+  public abstract List<Feat> nearest(IGeometry geometry, int k,
+      double maxDistance);
+
     public abstract void clear();
 }
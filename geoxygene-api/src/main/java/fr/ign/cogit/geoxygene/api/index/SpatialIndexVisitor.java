@@ -0,0 +1,20 @@
+package fr.ign.cogit.geoxygene.api.index;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+
+/**
+ * Visiteur appelé pour chaque objet trouvé lors d'une requête sur un index
+ * spatial. Contrairement aux méthodes <code>select</code> de
+ * {@link SpatialIndex}, les requêtes par visiteur ne construisent aucune
+ * collection de résultats.
+ *
+ * @param <Feat> type des objets indexés
+ */
+public interface SpatialIndexVisitor<Feat extends IFeature> {
+  /**
+   * Traite un objet trouvé par la requête.
+   * @param feature objet dont l'enveloppe intersecte la zone recherchée
+   * @return vrai pour continuer la requête, faux pour l'interrompre
+   */
+  public abstract boolean visit(Feat feature);
+}
@@ -22,7 +22,7 @@ import fr.ign.cogit.geoxygene.feature.Population;
 import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
 import fr.ign.cogit.geoxygene.style.Layer;
 import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * Reperer les quasi-cercles dans une couche de lineaires
@@ -85,7 +85,7 @@ public class FindingTrafficCircle extends AbstractGeOxygeneApplicationPlugin {
     carte.creeTopologieFaces();
     LOGGER.info(carte.getListeFaces().size() + " faces trouvées");
     LOGGER.debug("Création de l'Index spatial");
-    carte.getPopFaces().initSpatialIndex(Tiling.class, false);
+    carte.getPopFaces().initSpatialIndex(PackedRTree.class, false);
     LOGGER.info("Index spatial initialisé");
 
     // On construit une population de DefaultFeature
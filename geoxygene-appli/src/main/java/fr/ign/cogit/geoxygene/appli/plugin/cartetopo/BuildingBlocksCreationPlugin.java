@@ -41,7 +41,7 @@ import fr.ign.cogit.geoxygene.appli.api.ProjectFrame;
 import fr.ign.cogit.geoxygene.appli.plugin.GeOxygeneApplicationPlugin;
 import fr.ign.cogit.geoxygene.contrib.cartetopo.CarteTopo;
 import fr.ign.cogit.geoxygene.style.Layer;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * Building Blocks Creation plugin.
@@ -152,7 +152,7 @@ public class BuildingBlocksCreationPlugin implements
 
     if (logger.isDebugEnabled())
       logger.debug("Création de l'Index spatial");
-    carte.getPopFaces().initSpatialIndex(Tiling.class, false);
+    carte.getPopFaces().initSpatialIndex(PackedRTree.class, false);
 
     logger.info("Index spatial initialisé");
 
@@ -13,12 +13,12 @@
 package fr.ign.cogit.geoxygene.contrib.algorithms;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Vector;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
-import fr.ign.cogit.geoxygene.util.algo.geometricAlgorithms.measure.proximity.GeometryProximity;
 
 /**
  * Spatial queries that a more complex than the standard select methods.
@@ -37,25 +37,14 @@ public class SpatialQuery {
    */
   public static Vector<Object> selectNearestWithDistance(IGeometry geom,
       IFeatureCollection<IFeature> features, double distanceMax) {
-    Collection<IFeature> closeObjs = features.select(geom, distanceMax);
-    if (closeObjs.size() == 0) {
-      Vector<Object> vect = new Vector<Object>(2);
+    List<IFeature> nearest = features.nearest(geom, 1, distanceMax);
+    Vector<Object> vect = new Vector<Object>(2);
+    if (nearest.isEmpty()) {
       vect.add(null);
       return vect;
     }
-    IFeature nearest = null;
-    double minDist = distanceMax;
-    for (IFeature obj : closeObjs) {
-      GeometryProximity proxi = new GeometryProximity(geom, obj.getGeom());
-      if (proxi.getDistance() <= minDist) {
-        nearest = obj;
-        minDist = proxi.getDistance();
-      }
-    }
-
-    Vector<Object> vect = new Vector<Object>(2);
-    vect.add(nearest);
-    vect.add(minDist);
+    vect.add(nearest.get(0));
+    vect.add(geom.distance(nearest.get(0).getGeom()));
     return vect;
   }
 
@@ -90,21 +79,11 @@ public class SpatialQuery {
    */
   public static IFeature selectNearestFeature(IGeometry geom,
       IFeatureCollection<IFeature> features, double distanceMax) {
-    Collection<IFeature> closeObjs = features.select(geom, distanceMax);
-    if (closeObjs.size() == 0) {
+    List<IFeature> nearest = features.nearest(geom, 1, distanceMax);
+    if (nearest.isEmpty()) {
       return null;
     }
-    IFeature nearest = null;
-    double minDist = distanceMax;
-    for (IFeature obj : closeObjs) {
-      GeometryProximity proxi = new GeometryProximity(geom, obj.getGeom());
-      if (proxi.getDistance() <= minDist) {
-        nearest = obj;
-        minDist = proxi.getDistance();
-      }
-    }
-
-    return nearest;
+    return nearest.get(0);
   }
 
 }
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -50,6 +51,7 @@ import fr.ign.cogit.geoxygene.contrib.geometrie.Operateurs;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.spatial.util.Resampler;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 import fr.ign.cogit.geoxygene.util.index.Tiling;
 
 /**
@@ -453,12 +455,16 @@ public abstract class Appariement {
     List<Double> distances = new ArrayList<Double>();
     EnsembleDeLiens liens = new EnsembleDeLiens(LienReseaux.class);
     liens.setNom(I18N.getString("Appariement.EdgePrematching")); //$NON-NLS-1$
+    // On recherche les arcs dans l'entourage proche, grosso modo, par une
+    // jointure spatiale entre les deux réseaux
+    SpatialJoin<Arc, Arc> jointure = new SpatialJoin<Arc, Arc>(reseau2.getPopArcs(),
+        reseau1.getPopArcs(), SpatialJoin.Predicate.WITHIN_DISTANCE);
+    jointure.setDistance(param.distanceArcsMax);
+    Map<Arc, List<Arc>> arcsProchesParArc = jointure.join();
     for (Arc edge : reseau2.getListeArcs()) {
       ArcApp arcComp = (ArcApp) edge;
-      // On recherche les arcs dans l'entourage proche, grosso modo
-      Collection<Arc> arcsProches = reseau1.getPopArcs().select(arcComp.getGeometrie(),
-          param.distanceArcsMax);
-      if (arcsProches.isEmpty()) {
+      List<Arc> arcsProches = arcsProchesParArc.get(edge);
+      if (arcsProches == null) {
         continue;
       }
       // On calcule leur distance à arccomp et
@@ -35,7 +35,7 @@ import fr.ign.cogit.geoxygene.contrib.cartetopo.CarteTopo;
 import fr.ign.cogit.geoxygene.contrib.geometrie.Operateurs;
 import fr.ign.cogit.geoxygene.contrib.geometrie.Vecteur;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * Classe supportant les méthodes de comparaison globale de réseaux.
@@ -217,7 +217,7 @@ public class Comparaison {
     // /////////////// EVALUATION SUR LES ARCS ////////////////////
     // indexation des arcs du réseau 2
     if (!reseau2.getPopArcs().hasSpatialIndex()) {
-      reseau2.getPopArcs().initSpatialIndex(Tiling.class, false, 20);
+      reseau2.getPopArcs().initSpatialIndex(PackedRTree.class, false);
     }
     // parcours du réseau 2 juste pour calculer sa longueur
     itArcs2 = arcs2.getElements().iterator();
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -66,6 +67,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
 import fr.ign.cogit.geoxygene.util.algo.JtsAlgorithms;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 import fr.ign.cogit.geoxygene.util.index.Tiling;
 
 /**
@@ -182,7 +184,8 @@ public abstract class AppariementSurfaces {
    * référence et vers UN SEUL objet de la population de comparaison.
    * <li>NB 2 : Aucune géométrie n'est instanciée pour les liens créés.
    * <li>NB 3 : l'appariement est symétrique.
-   * <li>NB 4 : la population de comparaison est indexée si elle ne l'était pas avant
+   * <li>NB 4 : les candidats sont trouvés par une jointure spatiale (
+   * {@link SpatialJoin}), aucun index n'est nécessaire
    * </ul>
    * @param popRef
    *        : population des objets de référence.
@@ -195,13 +198,13 @@ public abstract class AppariementSurfaces {
   public static EnsembleDeLiens preAppariementSurfaces(IFeatureCollection<?> popRef,
       IFeatureCollection<?> popComp, ParametresAppSurfaces param) {
     EnsembleDeLiens preAppLiens = new EnsembleDeLiens();
-    if (!popComp.hasSpatialIndex()) {
-      if (AppariementSurfaces.LOGGER.isDebugEnabled()) {
-        AppariementSurfaces.LOGGER.debug(I18N.getString("AppariementSurfaces." + //$NON-NLS-1$
-            "SpatialIndexComparisonSurfacesPopulation")); //$NON-NLS-1$
-      }
-      popComp.initSpatialIndex(Tiling.class, true);
+    // objets comp intersectant chaque objet ref, par jointure spatiale
+    if (AppariementSurfaces.LOGGER.isDebugEnabled()) {
+      AppariementSurfaces.LOGGER.debug(I18N.getString("AppariementSurfaces." + //$NON-NLS-1$
+          "SpatialIndexComparisonSurfacesPopulation")); //$NON-NLS-1$
     }
+    Map<IFeature, List<IFeature>> candidats = new SpatialJoin<IFeature, IFeature>(
+        popRef, popComp, SpatialJoin.Predicate.INTERSECTS).join();
     for (IFeature featureRef : popRef) {
       IGeometry geomRef = featureRef.getGeom();
       if (!(geomRef instanceof ISurface)) {
@@ -213,7 +216,10 @@ public abstract class AppariementSurfaces {
         continue;
       }
       // Test d'association sur tous les objets comp intersectant l'objet ref
-      Collection<? extends IFeature> candidatComp = popComp.select(geomRef);
+      List<IFeature> candidatComp = candidats.get(featureRef);
+      if (candidatComp == null) {
+        continue;
+      }
       for (IFeature featureComp : candidatComp) {
         IGeometry geomComp = featureComp.getGeom();
         if (!(geomComp instanceof ISurface)) {
@@ -62,6 +62,7 @@ import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.util.algo.JtsAlgorithms;
 import fr.ign.cogit.geoxygene.util.conversion.AdapterFactory;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 import fr.ign.cogit.geoxygene.util.index.Tiling;
 
 /**
@@ -1938,7 +1939,7 @@ public class CarteTopo extends DataSet {
      * afin que, lorsque l'on ajoute la face infinie, elle n'apparaisse pas dans
      * chaque requête select.
      */
-    this.getPopFaces().initSpatialIndex(Tiling.class, false);
+    this.getPopFaces().initSpatialIndex(PackedRTree.class, false);
     Face faceInfinie = null;
     if (this.buildInfiniteFace) {
       IEnvelope envelope = this.getPopArcs().envelope();
@@ -27,8 +27,8 @@
 
 package fr.ign.cogit.geoxygene.contrib.graphe;
 
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -45,7 +45,7 @@ import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
 import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 
 
 
@@ -107,10 +107,12 @@ public class PPV {
     pointsProjetes.setFeatureType(ftPoints);
     pointsProjetes.setClasse(DefaultFeature.class);
 
-    // Creation de l'index spatial sur la bd topo...
-    if (!bdT.hasSpatialIndex()) {
-      bdT.initSpatialIndex(Tiling.class, true, 20);
-    }
+    // Recherche du troncon de route le plus proche de chaque point gravi, par
+    // jointure spatiale
+    SpatialJoin<IFeature, IFeature> jointure = new SpatialJoin<IFeature, IFeature>(
+        gravi, bdT, SpatialJoin.Predicate.NEAREST);
+    jointure.setDistance(distappa);
+    Map<IFeature, List<IFeature>> plusProches = jointure.join();
     
     // Parcours des points gravi
     int cpt = 1;
@@ -120,18 +122,13 @@ public class PPV {
       // Ajout d'un Z bidon au point gravi
       ptGravi.getGeom().coord().get(0).setZ(0);
 
-      // Filtrage des troncons de route à moins de 100 000 m du point gravi
-      Collection<?> selection = bdT.select(ptGravi.getGeom()
-          .coord().get(0), 100000);
-
       double distmin = distappa;
       IDirectPosition ptPlusProche = null;
       
-      // Parcours des troncons de route pour détermination PPV et distance
-      for (Object ligneCourante : selection) {
-        
-        // Projection du point sur la ligne
-        IDirectPositionList listePoints = ((IFeature) ligneCourante).getGeom().coord();
+      // Projection du point sur le troncon le plus proche
+      List<IFeature> selection = plusProches.get(ptGravi);
+      if (selection != null) {
+        IDirectPositionList listePoints = selection.get(0).getGeom().coord();
         GM_LineString gmL = new GM_LineString(listePoints);
         IDirectPosition ptProjete = Operateurs.projection(ptGravi
             .getGeom().coord().get(0), gmL);
@@ -140,7 +137,6 @@ public class PPV {
         // et vérification distance minimale ou pas...
         double dist = ptProjete.distance(ptGravi.getGeom().coord()
             .get(0));
-        // System.out.println("dist = " + dist);
         if (dist < distmin) {
           distmin = dist;
           ptPlusProche = ptProjete;
@@ -9,27 +9,308 @@
  ******************************************************************************/
 package fr.ign.cogit.geoxygene.datatools;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
 import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
 
 import com.vividsolutions.jts.geom.Geometry;
 
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.geomengine.GeometryEngine;
 import fr.ign.cogit.geoxygene.util.conversion.JtsGeOxygene;
 
 /**
  * This class contains static tools to change the CRS of points and geometries.
+ * The coordinate reference systems and the transforms between them are built
+ * once per EPSG code and cached, so the conversions may be called for each
+ * geometry, from several threads.
  * @author GTouya
  * 
  */
 public class CRSConversion {
 
+  /** Decoded coordinate reference systems, by EPSG code and axis order. */
+  private static final ConcurrentMap<String, CoordinateReferenceSystem> CRS_CACHE = new ConcurrentHashMap<String, CoordinateReferenceSystem>();
+
+  /** Transforms between two coordinate reference systems. */
+  private static final ConcurrentMap<String, MathTransform> TRANSFORM_CACHE = new ConcurrentHashMap<String, MathTransform>();
+
+  /**
+   * Decodes an EPSG coordinate reference system, or returns the one already
+   * decoded.
+   * @param epsg the EPSG code, like "2154"
+   * @param longitudeFirst true to force the (longitude, latitude) axis order
+   * @return
+   * @throws FactoryException
+   */
+  public static CoordinateReferenceSystem getCRS(String epsg,
+      boolean longitudeFirst) throws FactoryException {
+    String key = epsg + (longitudeFirst ? "/xy" : "/yx"); //$NON-NLS-1$ //$NON-NLS-2$
+    CoordinateReferenceSystem crs = CRSConversion.CRS_CACHE.get(key);
+    if (crs == null) {
+      crs = CRS.decode("EPSG:" + epsg, longitudeFirst); //$NON-NLS-1$
+      CoordinateReferenceSystem previous = CRSConversion.CRS_CACHE
+          .putIfAbsent(key, crs);
+      if (previous != null)
+        crs = previous;
+    }
+    return crs;
+  }
+
+  /**
+   * Returns the transform between two EPSG coordinate reference systems, with
+   * the same axis order conventions as
+   * {@link #changeCRS(IGeometry, String, String, boolean, boolean)}. The
+   * transform is built once and cached. GeoTools transforms are immutable,
+   * so they can be used by several threads.
+   * @param epsg1
+   * @param epsg2
+   * @param projected1
+   * @param projected2
+   * @return
+   * @throws FactoryException
+   */
+  public static MathTransform getTransform(String epsg1, String epsg2,
+      boolean projected1, boolean projected2) throws FactoryException {
+    String key = epsg1 + "/" + projected2 + ">" + epsg2 + "/" + projected1; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    MathTransform transform = CRSConversion.TRANSFORM_CACHE.get(key);
+    if (transform == null) {
+      transform = CRS.findMathTransform(
+          CRSConversion.getCRS(epsg1, projected2),
+          CRSConversion.getCRS(epsg2, projected1));
+      MathTransform previous = CRSConversion.TRANSFORM_CACHE.putIfAbsent(key,
+          transform);
+      if (previous != null)
+        transform = previous;
+    }
+    return transform;
+  }
+
+  /**
+   * Changes the CRS of packed 2D coordinates (x0, y0, x1, y1, ...) in place,
+   * with a single call to the cached transform.
+   * @param coords the packed coordinates
+   * @param numPoints the number of points to transform
+   * @param epsg1
+   * @param epsg2
+   * @param projected1
+   * @param projected2
+   * @throws FactoryException
+   * @throws TransformException
+   */
+  public static void transform(double[] coords, int numPoints, String epsg1,
+      String epsg2, boolean projected1, boolean projected2)
+      throws FactoryException, TransformException {
+    CRSConversion.getTransform2D(epsg1, epsg2, projected1, projected2)
+        .transform(coords, 0, coords, 0, numPoints);
+  }
+
+  /**
+   * Returns the cached transform between two EPSG coordinate reference
+   * systems, checking that it is a 2D transform.
+   */
+  private static MathTransform getTransform2D(String epsg1, String epsg2,
+      boolean projected1, boolean projected2) throws FactoryException {
+    MathTransform transform = CRSConversion.getTransform(epsg1, epsg2,
+        projected1, projected2);
+    if (transform.getSourceDimensions() != 2
+        || transform.getTargetDimensions() != 2)
+      throw new IllegalArgumentException("Not a 2D transform: EPSG:" + epsg1 //$NON-NLS-1$
+          + " to EPSG:" + epsg2); //$NON-NLS-1$
+    return transform;
+  }
+
+  /**
+   * Changes the CRS of a list of positions in place, with a single call to the
+   * cached transform. The Z coordinates are kept. The coordinates of a
+   * {@link PackedDirectPositionList} are transformed directly in its storage
+   * array; the positions of other lists are replaced by new positions, so that
+   * a position shared by several lists is not transformed twice.
+   * @param positions
+   * @param epsg1
+   * @param epsg2
+   * @param projected1
+   * @param projected2
+   * @return the given list
+   * @throws FactoryException
+   * @throws TransformException
+   */
+  public static IDirectPositionList transform(IDirectPositionList positions,
+      String epsg1, String epsg2, boolean projected1, boolean projected2)
+      throws FactoryException, TransformException {
+    CRSConversion.transform(positions,
+        CRSConversion.getTransform2D(epsg1, epsg2, projected1, projected2));
+    return positions;
+  }
+
+  private static void transform(IDirectPositionList positions,
+      MathTransform transform) throws TransformException {
+    int n = positions.size();
+    if (n == 0)
+      return;
+    if (positions instanceof PackedDirectPositionList) {
+      PackedDirectPositionList packed = (PackedDirectPositionList) positions;
+      double[] coords = packed.getCoordinates();
+      if (packed.getDimension() == 2) {
+        transform.transform(coords, 0, coords, 0, n);
+        return;
+      }
+      double[] xy = new double[2 * n];
+      for (int i = 0; i < n; i++) {
+        xy[2 * i] = coords[3 * i];
+        xy[2 * i + 1] = coords[3 * i + 1];
+      }
+      transform.transform(xy, 0, xy, 0, n);
+      for (int i = 0; i < n; i++) {
+        coords[3 * i] = xy[2 * i];
+        coords[3 * i + 1] = xy[2 * i + 1];
+      }
+      return;
+    }
+    double[] xy = new double[2 * n];
+    for (int i = 0; i < n; i++) {
+      IDirectPosition position = positions.get(i);
+      xy[2 * i] = position.getX();
+      xy[2 * i + 1] = position.getY();
+    }
+    transform.transform(xy, 0, xy, 0, n);
+    for (int i = 0; i < n; i++) {
+      double z = positions.get(i).getZ();
+      positions.set(i, Double.isNaN(z) ? new DirectPosition(xy[2 * i],
+          xy[2 * i + 1]) : new DirectPosition(xy[2 * i], xy[2 * i + 1], z));
+    }
+  }
+
+  /**
+   * Changes the CRS of the geometries of all the features of a collection. The
+   * points, lines, polygons and their aggregates are transformed in place,
+   * list by list, and keep their Z coordinates. Other geometries are converted
+   * to JTS and back.
+   * @param features
+   * @param epsg1
+   * @param epsg2
+   * @param projected1
+   * @param projected2
+   * @throws Exception
+   */
+  public static void changeCRS(IFeatureCollection<? extends IFeature> features,
+      String epsg1, String epsg2, boolean projected1, boolean projected2)
+      throws Exception {
+    MathTransform transform = CRSConversion.getTransform(epsg1, epsg2,
+        projected1, projected2);
+    boolean inPlace = transform.getSourceDimensions() == 2
+        && transform.getTargetDimensions() == 2;
+    GeometryCoordinateSequenceTransformer transformer = null;
+    for (IFeature feature : features) {
+      IGeometry geom = feature.getGeom();
+      if (geom == null)
+        continue;
+      Set<IDirectPositionList> lists = Collections
+          .newSetFromMap(new IdentityHashMap<IDirectPositionList, Boolean>());
+      Set<IPoint> points = Collections
+          .newSetFromMap(new IdentityHashMap<IPoint, Boolean>());
+      if (inPlace && CRSConversion.collect(geom, lists, points)) {
+        for (IDirectPositionList list : lists)
+          CRSConversion.transform(list, transform);
+        for (IPoint point : points) {
+          IDirectPositionList position = new DirectPositionList();
+          position.add(point.getPosition());
+          CRSConversion.transform(position, transform);
+          point.setPosition(position.get(0));
+        }
+        // same geometry, but the spatial indexes must be updated
+        feature.setGeom(geom);
+        continue;
+      }
+      if (transformer == null)
+        transformer = CRSConversion.transformer(epsg1, epsg2, projected1,
+            projected2);
+      feature.setGeom(JtsGeOxygene.makeGeOxygeneGeom(transformer
+          .transform(JtsGeOxygene.makeJtsGeom(geom))));
+    }
+  }
+
+  /**
+   * Collects the position lists and the points that hold the coordinates of a
+   * geometry.
+   * @return false if the geometry holds coordinates elsewhere
+   */
+  @SuppressWarnings("unchecked")
+  private static boolean collect(IGeometry geom,
+      Set<IDirectPositionList> lists, Set<IPoint> points) {
+    if (geom instanceof IPoint) {
+      if (((IPoint) geom).getPosition() != null)
+        points.add((IPoint) geom);
+      return true;
+    }
+    if (geom instanceof ILineString) {
+      lists.add(((ILineString) geom).getControlPoint());
+      return true;
+    }
+    if (geom instanceof IPolygon) {
+      IPolygon polygon = (IPolygon) geom;
+      if (polygon.getExterior() != null
+          && !CRSConversion.collect(polygon.getExterior(), lists, points))
+        return false;
+      for (int i = 0; i < polygon.sizeInterior(); i++) {
+        if (!CRSConversion.collect(polygon.getInterior(i), lists, points))
+          return false;
+      }
+      return true;
+    }
+    if (geom instanceof IRing) {
+      for (IOrientableCurve generator : ((IRing) geom).getGenerator()) {
+        ICurve curve = generator.getPrimitive();
+        if (!(curve instanceof ILineString))
+          return false;
+        lists.add(((ILineString) curve).getControlPoint());
+      }
+      return true;
+    }
+    if (geom instanceof IAggregate) {
+      for (IGeometry element : (IAggregate<IGeometry>) geom) {
+        if (!CRSConversion.collect(element, lists, points))
+          return false;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static GeometryCoordinateSequenceTransformer transformer(
+      String epsg1, String epsg2, boolean projected1, boolean projected2)
+      throws FactoryException {
+    GeometryCoordinateSequenceTransformer transformer = new GeometryCoordinateSequenceTransformer();
+    transformer.setCoordinateReferenceSystem(CRSConversion.getCRS(epsg2,
+        projected1));
+    transformer.setMathTransform(CRSConversion.getTransform(epsg1, epsg2,
+        projected1, projected2));
+    return transformer;
+  }
+
   public static IGeometry changeCRS(IGeometry geom,
       CoordinateReferenceSystem crs1, CoordinateReferenceSystem crs2)
       throws Exception {
@@ -56,9 +337,7 @@ public class CRSConversion {
   public static IGeometry changeCRS(IGeometry geom, String epsg1, String epsg2,
       boolean projected1, boolean projected2, boolean reverse)
       throws Exception {
-    CoordinateReferenceSystem crs1 = CRS.decode("EPSG:" + epsg1, projected2);
-    CoordinateReferenceSystem crs2 = CRS.decode("EPSG:" + epsg2, projected1);
-    IGeometry newGeom = changeCRS(geom, crs1, crs2);
+    IGeometry newGeom = changeCRS(geom, epsg1, epsg2, projected1, projected2);
     if (reverse) {
       // change x to y and conversely
       IDirectPositionList coords = new DirectPositionList();
@@ -82,16 +361,14 @@ public class CRSConversion {
 
   public static IGeometry changeCRS(IGeometry geom, String epsg1, String epsg2,
       boolean projected1, boolean projected2) throws Exception {
-    CoordinateReferenceSystem crs1 = CRS.decode("EPSG:" + epsg1, projected2);
-    CoordinateReferenceSystem crs2 = CRS.decode("EPSG:" + epsg2, projected1);
-    return changeCRS(geom, crs1, crs2);
+    return changeCRS(JtsGeOxygene.makeJtsGeom(geom), epsg1, epsg2, projected1,
+        projected2);
   }
 
   public static IGeometry changeCRS(Geometry geom, String epsg1, String epsg2,
       boolean projected1, boolean projected2) throws Exception {
-    CoordinateReferenceSystem crs1 = CRS.decode("EPSG:" + epsg1, projected2);
-    CoordinateReferenceSystem crs2 = CRS.decode("EPSG:" + epsg2, projected1);
-    return changeCRS(geom, crs1, crs2);
+    return JtsGeOxygene.makeGeOxygeneGeom(CRSConversion.transformer(epsg1,
+        epsg2, projected1, projected2).transform(geom));
   }
 
   public static IGeometry changeCRSToUTM31N(Geometry geom) throws Exception {
@@ -120,6 +397,52 @@ public class CRSConversion {
     return epsg.toString();
   }
 
+  /**
+   * The constants of the Lambert 93 projection, computed once.
+   */
+  private static final class Lambert93 {
+    // systme WGS84
+    static final double A = 6378137; // demi grand axe de l'ellipsoide (m)
+    static final double E = 0.08181919106; // premire excentricit de l'ellipsoide
+
+    // paramtres de projections
+    static final double LC = deg2rad(3); // longitude de rfrence
+    static final double PHI0 = deg2rad(46.5); // latitude d'origine en radian
+    static final double PHI1 = deg2rad(44); // 1er parallele automcoque
+    static final double PHI2 = deg2rad(49); // 2eme parallele automcoque
+
+    static final double X0 = 700000; // coordonnes l'origine
+    static final double Y0 = 6600000; // coordonnes l'origine
+
+    static final double N, C, YS;
+
+    static {
+      // calcul des grandes normales
+      double gN1 = A / Math.sqrt(1 - E * E * Math.sin(PHI1) * Math.sin(PHI1));
+      double gN2 = A / Math.sqrt(1 - E * E * Math.sin(PHI2) * Math.sin(PHI2));
+
+      // calculs de slatitudes isomtriques
+      double gl1 = Math.log(Math.tan(Math.PI / 4 + PHI1 / 2)
+          * Math.pow((1 - E * Math.sin(PHI1)) / (1 + E * Math.sin(PHI1)), E / 2));
+
+      double gl2 = Math.log(Math.tan(Math.PI / 4 + PHI2 / 2)
+          * Math.pow((1 - E * Math.sin(PHI2)) / (1 + E * Math.sin(PHI2)), E / 2));
+
+      double gl0 = Math.log(Math.tan(Math.PI / 4 + PHI0 / 2)
+          * Math.pow((1 - E * Math.sin(PHI0)) / (1 + E * Math.sin(PHI0)), E / 2));
+
+      // calcul de l'exposant de la projection
+      N = (Math.log((gN2 * Math.cos(PHI2)) / (gN1 * Math.cos(PHI1))))
+          / (gl1 - gl2);
+
+      // calcul de la constante de projection
+      C = ((gN1 * Math.cos(PHI1)) / N) * Math.exp(N * gl1);
+
+      // calcul des coordonnes
+      YS = Y0 + C * Math.exp(-1 * N * gl0);
+    }
+  }
+
   /**
    * Converts a position in WGS84 geographic coordinates into a Lambert 93
    * position.
@@ -129,55 +452,22 @@ public class CRSConversion {
    */
   public static IDirectPosition wgs84ToLambert93(double latitude,
       double longitude) {
-    // variables:
-
-    // systme WGS84
-    double a = 6378137; // demi grand axe de l'ellipsoide (m)
-    double e = 0.08181919106; // premire excentricit de l'ellipsoide
-
-    // paramtres de projections
-    double lc = deg2rad(3); // longitude de rfrence
-    double phi0 = deg2rad(46.5); // latitude d'origine en radian
-    double phi1 = deg2rad(44); // 1er parallele automcoque
-    double phi2 = deg2rad(49); // 2eme parallele automcoque
-
-    double x0 = 700000; // coordonnes l'origine
-    double y0 = 6600000; // coordonnes l'origine
+    double e = Lambert93.E;
 
     // coordonnes du point traduire
     double phi = deg2rad(latitude);
     double l = deg2rad(longitude);
 
-    // calcul des grandes normales
-    double gN1 = a / Math.sqrt(1 - e * e * Math.sin(phi1) * Math.sin(phi1));
-    double gN2 = a / Math.sqrt(1 - e * e * Math.sin(phi2) * Math.sin(phi2));
-
-    // calculs de slatitudes isomtriques
-    double gl1 = Math.log(Math.tan(Math.PI / 4 + phi1 / 2)
-        * Math.pow((1 - e * Math.sin(phi1)) / (1 + e * Math.sin(phi1)), e / 2));
-
-    double gl2 = Math.log(Math.tan(Math.PI / 4 + phi2 / 2)
-        * Math.pow((1 - e * Math.sin(phi2)) / (1 + e * Math.sin(phi2)), e / 2));
-
-    double gl0 = Math.log(Math.tan(Math.PI / 4 + phi0 / 2)
-        * Math.pow((1 - e * Math.sin(phi0)) / (1 + e * Math.sin(phi0)), e / 2));
-
     double gl = Math.log(Math.tan(Math.PI / 4 + phi / 2)
         * Math.pow((1 - e * Math.sin(phi)) / (1 + e * Math.sin(phi)), e / 2));
 
-    // calcul de l'exposant de la projection
-    double n = (Math.log((gN2 * Math.cos(phi2)) / (gN1 * Math.cos(phi1))))
-        / (gl1 - gl2);// ok
-
-    // calcul de la constante de projection
-    double c = ((gN1 * Math.cos(phi1)) / n) * Math.exp(n * gl1);// ok
-
-    // calcul des coordonnes
-    double ys = y0 + c * Math.exp(-1 * n * gl0);
-
     // calcul des coordonnes lambert
-    double x93 = x0 + c * Math.exp(-1 * n * gl) * Math.sin(n * (l - lc));
-    double y93 = ys - c * Math.exp(-1 * n * gl) * Math.cos(n * (l - lc));
+    double n = Lambert93.N;
+    double c = Lambert93.C;
+    double x93 = Lambert93.X0 + c * Math.exp(-1 * n * gl)
+        * Math.sin(n * (l - Lambert93.LC));
+    double y93 = Lambert93.YS - c * Math.exp(-1 * n * gl)
+        * Math.cos(n * (l - Lambert93.LC));
 
     return new DirectPosition(x93, y93);
   } // wgs84_to_lambert93
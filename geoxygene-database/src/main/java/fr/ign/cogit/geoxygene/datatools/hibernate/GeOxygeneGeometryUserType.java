@@ -23,6 +23,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableSurface;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.util.conversion.AdapterFactory;
 import fr.ign.cogit.geoxygene.util.conversion.ParseException;
+import fr.ign.cogit.geoxygene.util.conversion.WkbGeOxygene;
 import fr.ign.cogit.geoxygene.util.conversion.WktGeOxygene;
 
 /**
@@ -57,6 +58,21 @@ public class GeOxygeneGeometryUserType implements UserType {
 			return null;
 		}
 
+		// PostGIS renvoie les géométries en EWKB hexadécimal : on les décode
+		// directement, sans passer par PGgeometry et le WKT
+		if (object instanceof org.postgresql.util.PGobject && !(object instanceof PGgeometry)) {
+			String value = ((org.postgresql.util.PGobject) object).getValue();
+			if (value != null && GeOxygeneGeometryUserType.isHexWkb(value)) {
+				try {
+					return WkbGeOxygene.makeGeOxygeneFromHex(value);
+				} catch (ParseException e) {
+					GeOxygeneGeometryUserType.logger.warn("## WARNING ## Postgis to GeOxygene returns NULL ");
+					e.printStackTrace();
+					return null;
+				}
+			}
+		}
+
 		if (object instanceof org.postgresql.util.PGobject) {
 			try {
 				object = new PGgeometry(object.toString());
@@ -141,6 +157,16 @@ public class GeOxygeneGeometryUserType implements UserType {
 		return null;
 	}
 
+	/**
+	 * @param value
+	 *            valeur textuelle d'une géométrie PostGIS
+	 * @return vrai si la valeur est de l'EWKB en hexadécimal (et non du WKT)
+	 */
+	private static boolean isHexWkb(String value) {
+		return value.length() >= 10 && value.length() % 2 == 0
+				&& (value.startsWith("00") || value.startsWith("01")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Converts a GeOxygene <code>GM_Object</code> to a native geometry object.
 	 * 
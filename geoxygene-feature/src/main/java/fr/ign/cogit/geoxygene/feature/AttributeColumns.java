@@ -0,0 +1,453 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stockage des attributs d'un ensemble de {@link DefaultFeature} par colonnes.
+ * <p>
+ * Chaque attribut est rangé dans un tableau de types primitifs (
+ * <code>double[]</code>, <code>int[]</code>, <code>long[]</code>), les chaînes
+ * de caractères sont codées par dictionnaire et les valeurs nulles sont
+ * marquées dans un masque de bits. Les objets deviennent de simples vues sur
+ * une ligne de la table (voir {@link DefaultFeature#setRow(AttributeColumns, int)}
+ * ), et les traitements qui parcourent un attribut (analyse thématique,
+ * filtres, exports) peuvent lire directement les colonnes, sans créer d'objets.
+ * <p>
+ * Une valeur dont le type ne correspond pas à celui de sa colonne transforme
+ * la colonne en colonne d'objets, ce qui conserve la souplesse du tableau
+ * <code>Object[]</code> des {@link DefaultFeature}.
+ * <p>
+ * Cette classe n'est pas synchronisée.
+ */
+public class AttributeColumns {
+
+  /** Types de colonnes. */
+  public enum Type {
+    DOUBLE, INTEGER, LONG, STRING, OBJECT;
+
+    /**
+     * @param valueClass classe des valeurs d'un attribut
+     * @return le type de colonne qui restitue exactement les valeurs de cette
+     *         classe
+     */
+    public static Type of(Class<?> valueClass) {
+      if (valueClass == Double.class) {
+        return DOUBLE;
+      }
+      if (valueClass == Integer.class) {
+        return INTEGER;
+      }
+      if (valueClass == Long.class) {
+        return LONG;
+      }
+      if (valueClass == String.class) {
+        return STRING;
+      }
+      return OBJECT;
+    }
+  }
+
+  private final Type[] types;
+  /**
+   * Données des colonnes : <code>double[]</code>, <code>int[]</code>,
+   * <code>long[]</code>, <code>int[]</code> (codes des chaînes) ou
+   * <code>Object[]</code> selon le type.
+   */
+  private final Object[] data;
+  /** Masques des valeurs nulles, un bit par ligne. */
+  private final long[][] nulls;
+  /** Dictionnaires des colonnes de chaînes. */
+  private final List<List<String>> dictionaries;
+  private final List<Map<String, Integer>> codes;
+  private int size = 0;
+  private int capacity;
+
+  /**
+   * Constructeur.
+   * @param valueClasses classes des valeurs de chaque attribut
+   */
+  public AttributeColumns(Class<?>... valueClasses) {
+    this(16, valueClasses);
+  }
+
+  /**
+   * Constructeur.
+   * @param capacity nombre de lignes à réserver
+   * @param valueClasses classes des valeurs de chaque attribut
+   */
+  public AttributeColumns(int capacity, Class<?>... valueClasses) {
+    int nb = valueClasses.length;
+    this.capacity = Math.max(capacity, 1);
+    this.types = new Type[nb];
+    this.data = new Object[nb];
+    this.nulls = new long[nb][];
+    this.dictionaries = new ArrayList<List<String>>(nb);
+    this.codes = new ArrayList<Map<String, Integer>>(nb);
+    for (int col = 0; col < nb; col++) {
+      this.types[col] = Type.of(valueClasses[col]);
+      this.data[col] = AttributeColumns.newArray(this.types[col], this.capacity);
+      this.nulls[col] = new long[(this.capacity + 63) >> 6];
+      boolean string = (this.types[col] == Type.STRING);
+      this.dictionaries.add(string ? new ArrayList<String>() : null);
+      this.codes.add(string ? new HashMap<String, Integer>() : null);
+    }
+  }
+
+  private static Object newArray(Type type, int length) {
+    switch (type) {
+      case DOUBLE:
+        return new double[length];
+      case INTEGER:
+      case STRING:
+        return new int[length];
+      case LONG:
+        return new long[length];
+      default:
+        return new Object[length];
+    }
+  }
+
+  /** @return le nombre de colonnes */
+  public int getNbColumns() {
+    return this.types.length;
+  }
+
+  /** @return le nombre de lignes */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @param col numéro de colonne
+   * @return le type de la colonne
+   */
+  public Type getType(int col) {
+    return this.types[col];
+  }
+
+  /**
+   * Ajoute une ligne.
+   * @param values valeurs des attributs, dans l'ordre des colonnes (null pour
+   *          une ligne vide)
+   * @return le numéro de la ligne ajoutée
+   */
+  public int addRow(Object[] values) {
+    if (this.size == this.capacity) {
+      this.grow();
+    }
+    int row = this.size++;
+    for (int col = 0; col < this.types.length; col++) {
+      this.set(row, col, (values == null || col >= values.length) ? null
+          : values[col]);
+    }
+    return row;
+  }
+
+  private void grow() {
+    int newCapacity = this.capacity + (this.capacity >> 1) + 1;
+    for (int col = 0; col < this.types.length; col++) {
+      Object array = AttributeColumns.newArray(this.types[col], newCapacity);
+      System.arraycopy(this.data[col], 0, array, 0, this.size);
+      this.data[col] = array;
+      this.nulls[col] = Arrays.copyOf(this.nulls[col], (newCapacity + 63) >> 6);
+    }
+    this.capacity = newCapacity;
+  }
+
+  /**
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @return vrai si la valeur est nulle
+   */
+  public boolean isNull(int row, int col) {
+    return (this.nulls[col][row >> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * Renvoie une valeur sous forme d'objet. Les méthodes typées (
+   * {@link #getDouble(int, int)}...) évitent la création d'un objet.
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @return la valeur, éventuellement null
+   */
+  public Object get(int row, int col) {
+    this.checkRow(row);
+    if (this.isNull(row, col)) {
+      return null;
+    }
+    switch (this.types[col]) {
+      case DOUBLE:
+        return Double.valueOf(((double[]) this.data[col])[row]);
+      case INTEGER:
+        return Integer.valueOf(((int[]) this.data[col])[row]);
+      case LONG:
+        return Long.valueOf(((long[]) this.data[col])[row]);
+      case STRING:
+        return this.dictionaries.get(col).get(((int[]) this.data[col])[row]);
+      default:
+        return ((Object[]) this.data[col])[row];
+    }
+  }
+
+  /**
+   * Affecte une valeur.
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @param value valeur, éventuellement null
+   */
+  public void set(int row, int col, Object value) {
+    this.checkRow(row);
+    long bit = 1L << row;
+    if (value == null) {
+      this.nulls[col][row >> 6] |= bit;
+      if (this.types[col] == Type.OBJECT) {
+        ((Object[]) this.data[col])[row] = null;
+      }
+      return;
+    }
+    if (this.types[col] != Type.OBJECT
+        && this.types[col] != Type.of(value.getClass())) {
+      this.toObjectColumn(col);
+    }
+    this.nulls[col][row >> 6] &= ~bit;
+    switch (this.types[col]) {
+      case DOUBLE:
+        ((double[]) this.data[col])[row] = ((Number) value).doubleValue();
+        break;
+      case INTEGER:
+        ((int[]) this.data[col])[row] = ((Number) value).intValue();
+        break;
+      case LONG:
+        ((long[]) this.data[col])[row] = ((Number) value).longValue();
+        break;
+      case STRING:
+        ((int[]) this.data[col])[row] = this.code(col, (String) value);
+        break;
+      default:
+        ((Object[]) this.data[col])[row] = value;
+    }
+  }
+
+  private int code(int col, String value) {
+    Map<String, Integer> map = this.codes.get(col);
+    Integer code = map.get(value);
+    if (code == null) {
+      List<String> dictionary = this.dictionaries.get(col);
+      code = Integer.valueOf(dictionary.size());
+      dictionary.add(value);
+      map.put(value, code);
+    }
+    return code.intValue();
+  }
+
+  /** Transforme une colonne typée en colonne d'objets. */
+  private void toObjectColumn(int col) {
+    Object[] objects = new Object[this.capacity];
+    for (int row = 0; row < this.size; row++) {
+      objects[row] = this.get(row, col);
+    }
+    this.types[col] = Type.OBJECT;
+    this.data[col] = objects;
+    this.dictionaries.set(col, null);
+    this.codes.set(col, null);
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= this.size) {
+      throw new IndexOutOfBoundsException("row " + row + ", size " + this.size); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  /**
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @return la valeur numérique, {@link Double#NaN} si elle est nulle ou n'est
+   *         pas un nombre
+   */
+  public double getDouble(int row, int col) {
+    this.checkRow(row);
+    if (this.isNull(row, col)) {
+      return Double.NaN;
+    }
+    switch (this.types[col]) {
+      case DOUBLE:
+        return ((double[]) this.data[col])[row];
+      case INTEGER:
+        return ((int[]) this.data[col])[row];
+      case LONG:
+        return ((long[]) this.data[col])[row];
+      case OBJECT:
+        Object value = ((Object[]) this.data[col])[row];
+        return (value instanceof Number) ? ((Number) value).doubleValue()
+            : Double.NaN;
+      default:
+        return Double.NaN;
+    }
+  }
+
+  /**
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @return la valeur entière, 0 si elle est nulle ou n'est pas un nombre
+   */
+  public int getInt(int row, int col) {
+    return (int) this.getLong(row, col);
+  }
+
+  /**
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @return la valeur entière, 0 si elle est nulle ou n'est pas un nombre
+   */
+  public long getLong(int row, int col) {
+    this.checkRow(row);
+    if (this.isNull(row, col)) {
+      return 0;
+    }
+    switch (this.types[col]) {
+      case DOUBLE:
+        return (long) ((double[]) this.data[col])[row];
+      case INTEGER:
+        return ((int[]) this.data[col])[row];
+      case LONG:
+        return ((long[]) this.data[col])[row];
+      case OBJECT:
+        Object value = ((Object[]) this.data[col])[row];
+        return (value instanceof Number) ? ((Number) value).longValue() : 0;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @param row numéro de ligne
+   * @param col numéro de colonne
+   * @return la valeur sous forme de chaîne, null si elle est nulle
+   */
+  public String getString(int row, int col) {
+    if (this.types[col] == Type.STRING) {
+      this.checkRow(row);
+      return this.isNull(row, col) ? null : this.dictionaries.get(col).get(
+          ((int[]) this.data[col])[row]);
+    }
+    Object value = this.get(row, col);
+    return (value == null) ? null : value.toString();
+  }
+
+  /**
+   * Tableau des valeurs d'une colonne de type {@link Type#DOUBLE}. Il s'agit
+   * du tableau de stockage : seules les {@link #size()} premières valeurs sont
+   * significatives, les valeurs nulles sont indiquées par
+   * {@link #isNull(int, int)}, et le tableau ne doit pas être modifié.
+   * @param col numéro de colonne
+   * @return les valeurs de la colonne
+   */
+  public double[] getDoubleColumn(int col) {
+    return (double[]) this.data[col];
+  }
+
+  /**
+   * Tableau des valeurs d'une colonne de type {@link Type#INTEGER}, ou des
+   * codes d'une colonne de type {@link Type#STRING}.
+   * @see #getDoubleColumn(int)
+   * @param col numéro de colonne
+   * @return les valeurs de la colonne
+   */
+  public int[] getIntColumn(int col) {
+    return (int[]) this.data[col];
+  }
+
+  /**
+   * Tableau des valeurs d'une colonne de type {@link Type#LONG}.
+   * @see #getDoubleColumn(int)
+   * @param col numéro de colonne
+   * @return les valeurs de la colonne
+   */
+  public long[] getLongColumn(int col) {
+    return (long[]) this.data[col];
+  }
+
+  /**
+   * Dictionnaire d'une colonne de type {@link Type#STRING} : le code d'une
+   * valeur est sa position dans la liste.
+   * @param col numéro de colonne
+   * @return les valeurs distinctes de la colonne
+   */
+  public List<String> getDictionary(int col) {
+    return this.dictionaries.get(col);
+  }
+
+  /**
+   * Range les attributs d'objets dans une table par colonnes et transforme ces
+   * objets en vues sur ses lignes. Le type de chaque colonne est déterminé par
+   * la première valeur non nulle rencontrée.
+   * @param features objets à transformer, qui doivent avoir le même nombre
+   *          d'attributs
+   * @return la table des attributs, null si aucun objet n'a d'attributs
+   */
+  public static AttributeColumns columnize(
+      Collection<? extends DefaultFeature> features) {
+    int nbColumns = -1;
+    for (DefaultFeature feature : features) {
+      Object[] attributes = feature.getAttributes();
+      if (attributes != null) {
+        nbColumns = Math.max(nbColumns, attributes.length);
+      }
+    }
+    if (nbColumns < 0) {
+      return null;
+    }
+    Class<?>[] classes = new Class<?>[nbColumns];
+    int found = 0;
+    for (DefaultFeature feature : features) {
+      Object[] attributes = feature.getAttributes();
+      for (int col = 0; attributes != null && col < attributes.length; col++) {
+        if (classes[col] == null && attributes[col] != null) {
+          classes[col] = attributes[col].getClass();
+          found++;
+        }
+      }
+      if (found == nbColumns) {
+        break;
+      }
+    }
+    AttributeColumns columns = new AttributeColumns(features.size(), classes);
+    for (DefaultFeature feature : features) {
+      int row = columns.addRow(feature.getAttributes());
+      feature.setRow(columns, row);
+    }
+    return columns;
+  }
+}
@@ -123,12 +123,28 @@ public class DefaultFeature extends AbstractFeature {
    */
   private SchemaDefaultFeature schema;
   private Object[] attributes;
+  /**
+   * Table des attributs quand l'objet est une vue sur une ligne d'une table
+   * par colonnes, null sinon.
+   */
+  private AttributeColumns columns = null;
+  /** Ligne de l'objet dans {@link #columns}. */
+  private int row = -1;
 
   /**
-   * Renvoie un tableau contenant les valeurs des attributs de l'objet
+   * Renvoie un tableau contenant les valeurs des attributs de l'objet. Si les
+   * attributs sont rangés dans une table par colonnes, le tableau est une
+   * copie : le modifier ne modifie pas l'objet.
    * @return un tableau contenant les valeurs des attributs de l'objet
    */
   public Object[] getAttributes() {
+    if (this.columns != null) {
+      Object[] values = new Object[this.columns.getNbColumns()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = this.columns.get(this.row, i);
+      }
+      return values;
+    }
     return this.attributes;
   }
 
@@ -138,9 +154,92 @@ public class DefaultFeature extends AbstractFeature {
    * @return l'attribut de position <code>n</code> dans le tableau d'attributs
    */
   public Object getAttribute(int rang) {
+    if (this.columns != null) {
+      return this.columns.get(this.row, rang);
+    }
     return this.attributes[rang];
   }
 
+  /**
+   * Fait de l'objet une vue sur une ligne d'une table d'attributs par colonnes.
+   * @param table table des attributs
+   * @param rowIndex ligne de l'objet dans la table
+   * @see AttributeColumns#columnize(java.util.Collection)
+   */
+  public void setRow(AttributeColumns table, int rowIndex) {
+    this.columns = table;
+    this.row = rowIndex;
+    this.attributes = null;
+  }
+
+  /**
+   * @return la table des attributs si l'objet est une vue sur une de ses
+   *         lignes, null sinon
+   */
+  public AttributeColumns getColumns() {
+    return this.columns;
+  }
+
+  /**
+   * @return la ligne de l'objet dans sa table d'attributs, -1 s'il n'en a pas
+   */
+  public int getRow() {
+    return this.row;
+  }
+
+  /**
+   * Renvoie la valeur numérique d'un attribut sans créer d'objet quand les
+   * attributs sont rangés par colonnes.
+   * @param rang le rang de l'attribut
+   * @return la valeur de l'attribut, {@link Double#NaN} s'il est nul ou n'est
+   *         pas un nombre
+   */
+  public double getDouble(int rang) {
+    if (this.columns != null) {
+      return this.columns.getDouble(this.row, rang);
+    }
+    Object value = this.attributes[rang];
+    return (value instanceof Number) ? ((Number) value).doubleValue()
+        : Double.NaN;
+  }
+
+  /**
+   * Renvoie la valeur entière d'un attribut.
+   * @param rang le rang de l'attribut
+   * @return la valeur de l'attribut, 0 s'il est nul ou n'est pas un nombre
+   * @see #getDouble(int)
+   */
+  public int getInt(int rang) {
+    return (int) this.getLong(rang);
+  }
+
+  /**
+   * Renvoie la valeur entière d'un attribut.
+   * @param rang le rang de l'attribut
+   * @return la valeur de l'attribut, 0 s'il est nul ou n'est pas un nombre
+   * @see #getDouble(int)
+   */
+  public long getLong(int rang) {
+    if (this.columns != null) {
+      return this.columns.getLong(this.row, rang);
+    }
+    Object value = this.attributes[rang];
+    return (value instanceof Number) ? ((Number) value).longValue() : 0;
+  }
+
+  /**
+   * Renvoie la valeur d'un attribut sous forme de chaîne.
+   * @param rang le rang de l'attribut
+   * @return la valeur de l'attribut, null s'il est nul
+   */
+  public String getString(int rang) {
+    if (this.columns != null) {
+      return this.columns.getString(this.row, rang);
+    }
+    Object value = this.attributes[rang];
+    return (value == null) ? null : value.toString();
+  }
+
   @Override
   public Object getAttribute(String nom) {
     if (nom.equals("geom")) { //$NON-NLS-1$
@@ -153,29 +252,10 @@ public class DefaultFeature extends AbstractFeature {
       return this.getId();
     }
 
-    /**
-     * on regarde en priorité si le nom correspond à un nom d'attributeType
-     * (métadonnées de niveau conceptuel)
-     */
-    String[] tabNoms;
     if (this.getSchema() != null) {
-      for (Integer key : this.getSchema().getAttLookup().keySet()) {
-        tabNoms = this.getSchema().getAttLookup().get(key);
-        if ((tabNoms != null) && (tabNoms[1] != null)
-            && (tabNoms[1].equals(nom))) {
-          return this.getAttribute(key.intValue());
-        }
-      }
-      /**
-       * si on n'a pas trouvé au niveau conceptuel, on regarde s'il correspond à
-       * un nom de colonne (métadonnées de niveau logique)
-       */
-      for (Integer key : this.getSchema().getAttLookup().keySet()) {
-        tabNoms = this.getSchema().getAttLookup().get(key);
-        if ((tabNoms != null) && (tabNoms[0] != null)
-            && (tabNoms[0].equals(nom))) {
-          return this.getAttribute(key.intValue());
-        }
+      int rang = this.getSchema().getRang(nom);
+      if (rang >= 0) {
+        return this.getAttribute(rang);
       }
     }
     if (LOGGER.isDebugEnabled()) {
@@ -194,6 +274,18 @@ public class DefaultFeature extends AbstractFeature {
    * @param attributes the attributes to set
    */
   public void setAttributes(Object[] attributes) {
+    if (this.columns != null) {
+      if (attributes != null
+          && attributes.length == this.columns.getNbColumns()) {
+        for (int i = 0; i < attributes.length; i++) {
+          this.columns.set(this.row, i, attributes[i]);
+        }
+        return;
+      }
+      // le nombre d'attributs change : l'objet quitte la table
+      this.columns = null;
+      this.row = -1;
+    }
     this.attributes = attributes;
   }
 
@@ -205,6 +297,10 @@ public class DefaultFeature extends AbstractFeature {
    * @param value
    */
   public void setAttribute(int rang, Object value) {
+    if (this.columns != null) {
+      this.columns.set(this.row, rang, value);
+      return;
+    }
     this.attributes[rang] = value;
   }
 
@@ -215,39 +311,15 @@ public class DefaultFeature extends AbstractFeature {
    * @param value valeur à affecter à l'attribut
    */
   public void setAttribute(String nom, Object value) {
-    /*
-     * on regarde en priorité si le nom correspond à un nom d'attributeType
-     * (métadonnées de niveau conceptuel)
-     */
-    String[] tabNoms;
-    for (Integer key : this.getSchema().getAttLookup().keySet()) {
-      tabNoms = this.getSchema().getAttLookup().get(key);
-      if ((tabNoms != null) && (tabNoms[1] != null)) {
-        if (tabNoms[1].equals(nom)) {
-          this.setAttribute(key.intValue(), value);
-          return;
-        }
-      }
-    }
-    /*
-     * si on n'a pas trouvé au niveau conceptuel, on regarde s'il correspond à
-     * un nom de colonne (métadonnées de niveau logique)
-     */
-    for (Integer key : this.getSchema().getAttLookup().keySet()) {
-      tabNoms = this.getSchema().getAttLookup().get(key);
-      if ((tabNoms != null) && (tabNoms[0] != null)) {
-        if (tabNoms[0].equals(nom)) {
-          if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("setAttribute " + nom + " =?= " + tabNoms[0]); //$NON-NLS-1$//$NON-NLS-2$
-          }
-          this.setAttribute(key.intValue(), value);
-          return;
-        }
-      }
+    int rang = this.getSchema().getRang(nom);
+    if (rang >= 0) {
+      this.setAttribute(rang, value);
+      return;
     }
     if (LOGGER.isDebugEnabled()) {
       LOGGER.warn("!!! le nom '" + nom //$NON-NLS-1$
           + "' ne correspond pas à un attribut de ce feature !!!"); //$NON-NLS-1$
+      String[] tabNoms;
       for (Integer key : this.getSchema().getAttLookup().keySet()) {
         tabNoms = this.getSchema().getAttLookup().get(key);
         if (tabNoms == null) {
@@ -315,7 +387,11 @@ public class DefaultFeature extends AbstractFeature {
     DefaultFeature clone = new DefaultFeature(
         (IGeometry) this.getGeom().clone());
     clone.setSchema(this.getSchema());
-    clone.setAttributes(this.getAttributes());
+    if (this.columns != null) {
+      clone.setRow(this.columns, this.row);
+    } else {
+      clone.setAttributes(this.getAttributes());
+    }
     clone.setFeatureType(this.getFeatureType());
 
     return clone;
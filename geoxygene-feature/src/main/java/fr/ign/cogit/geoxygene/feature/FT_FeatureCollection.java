@@ -21,9 +21,12 @@ package fr.ign.cogit.geoxygene.feature;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.ManyToOne;
 import javax.persistence.Transient;
@@ -43,12 +46,16 @@ import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.index.ConcurrentTiling;
+import fr.ign.cogit.geoxygene.util.index.NearestNeighbourSearch;
+import fr.ign.cogit.geoxygene.util.index.Tiling;
 
 /**
  * Collection (liste) de IFeature. Peut porter un index spatial.
@@ -171,6 +178,10 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
   public void setElements(Collection<? extends Feat> liste) {
     synchronized (this.elements) {
       List<Feat> old = new ArrayList<Feat>(this.elements);
+      Bulk<Feat> b = this.ownBulk();
+      if (b != null) {
+        b.reset();
+      }
       for (Feat O : old) {
         this.elements.remove(O);
         O.getFeatureCollections().remove(this);
@@ -201,6 +212,10 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
     if (value == null) {
       return false;
     }
+    Bulk<Feat> b = this.ownBulk();
+    if (b != null) {
+      return this.bulkAdd(b, value);
+    }
     boolean result = false;
     synchronized (this.elements) {
       result = this.elements.add(value);
@@ -225,13 +240,200 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
     if (value == null) {
       return;
     }
-    synchronized (value) {
-      for (Feat element : value) {
-        this.add(element);
+    this.beginBulk();
+    try {
+      synchronized (value) {
+        for (Feat element : value) {
+          this.add(element);
+        }
+      }
+    } finally {
+      this.endBulk();
+    }
+  }
+
+  // ---------------------------------------
+  // --- Chargement en masse ---------------
+  // ---------------------------------------
+  /**
+   * État d'un chargement en masse. Il appartient au thread qui a appelé
+   * {@link FT_FeatureCollection#beginBulk()} : les autres threads continuent
+   * d'ajouter leurs objets par le chemin normal.
+   */
+  private static final class Bulk<F> {
+    /** Thread propriétaire du chargement. */
+    final Thread owner = Thread.currentThread();
+    /** Profondeur d'imbrication des appels à {@link #beginBulk()}. */
+    int depth = 1;
+    /**
+     * Objets ajoutés, dans l'ordre d'ajout. Un objet retiré puis rajouté
+     * pendant le chargement peut y figurer deux fois.
+     */
+    final List<F> order = new ArrayList<F>();
+    /**
+     * Objets ajoutés et pas encore retirés, comparés par identité : pas encore
+     * insérés dans l'index spatial.
+     */
+    final Set<F> pending = Collections
+        .newSetFromMap(new IdentityHashMap<F, Boolean>());
+    /** Emprise des objets ajoutés. */
+    double minX, minY, maxX, maxY;
+
+    Bulk() {
+      this.reset();
+    }
+
+    void reset() {
+      this.order.clear();
+      this.pending.clear();
+      this.minX = Double.POSITIVE_INFINITY;
+      this.minY = Double.POSITIVE_INFINITY;
+      this.maxX = Double.NEGATIVE_INFINITY;
+      this.maxY = Double.NEGATIVE_INFINITY;
+    }
+  }
+
+  /** Chargement en masse en cours, ou <code>null</code>. */
+  private volatile Bulk<Feat> bulk = null;
+
+  /**
+   * @return le chargement en masse en cours s'il appartient au thread courant,
+   *         <code>null</code> sinon
+   */
+  private Bulk<Feat> ownBulk() {
+    Bulk<Feat> b = this.bulk;
+    return (b != null && b.owner == Thread.currentThread()) ? b : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Le chargement appartient au thread qui l'a commencé. Si un autre thread a
+   * déjà commencé un chargement, cet appel et le {@link #endBulk()}
+   * correspondant sont sans effet et les ajouts de ce thread restent
+   * immédiatement indexés. Les ajouts prennent toujours le verrou de
+   * {@link #getElements()}. L'index spatial et l'emprise ne reflètent les
+   * objets ajoutés qu'après l'appel à {@link #endBulk()}.
+   */
+  @Override
+  public void beginBulk() {
+    synchronized (this.elements) {
+      Bulk<Feat> b = this.bulk;
+      if (b == null) {
+        this.bulk = new Bulk<Feat>();
+      } else if (b.owner == Thread.currentThread()) {
+        b.depth++;
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Si les objets ajoutés représentent au moins la moitié de la collection et
+   * que l'index a été créé par {@link #initSpatialIndex(Class, boolean)},
+   * l'index est reconstruit en une seule passe ; sinon les objets y sont
+   * insérés un par un.
+   */
+  @Override
+  public void endBulk() {
+    Bulk<Feat> b;
+    synchronized (this.elements) {
+      b = this.bulk;
+      if (b == null || b.owner != Thread.currentThread() || --b.depth > 0) {
+        return;
+      }
+      this.bulk = null;
+    }
+    List<Feat> added = new ArrayList<Feat>(b.pending.size());
+    for (Feat feature : b.order) {
+      if (b.pending.remove(feature)) {
+        added.add(feature);
+      }
+    }
+    if (added.isEmpty()) {
+      return;
+    }
+    if (this.isIndexed && this.spatialindex.hasAutomaticUpdate()) {
+      if (2 * added.size() < this.size() || !this.rebuildSpatialIndex()) {
+        for (Feat feature : added) {
+          this.spatialindex.update(feature, +1);
+        }
+      }
+    }
+    if (b.minX <= b.maxX) {
+      IEnvelope addedEnvelope = new GM_Envelope(b.minX, b.maxX, b.minY,
+          b.maxY);
+      if (this.envelope != null) {
+        IEnvelope env = new GM_Envelope(this.envelope.minX(),
+            this.envelope.maxX(), this.envelope.minY(), this.envelope.maxY());
+        env.expand(addedEnvelope);
+        this.envelope = env;
+      } else if (this.elements.size() == added.size()) {
+        this.envelope = addedEnvelope;
+      }
+    }
+    if (!this.listenerList.isEmpty()) {
+      for (Feat feature : added) {
+        this.fireActionPerformed(new FeatureCollectionEvent(this, feature,
+            FeatureCollectionEvent.Type.ADDED, feature.getGeom()));
       }
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Renvoie vrai seulement si le chargement a été commencé par le thread
+   * courant.
+   */
+  @Override
+  public boolean isBulk() {
+    return this.ownBulk() != null;
+  }
+
+  /**
+   * Ajout d'un objet pendant le chargement en masse : seuls la liste des
+   * éléments et le lien inverse sont mis à jour.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean bulkAdd(Bulk<Feat> b, Feat value) {
+    boolean result = false;
+    synchronized (this.elements) {
+      result = this.elements.add(value);
+    }
+    if (value.getFeatureCollections() != null) {
+      result = value.getFeatureCollections().add(
+          (IFeatureCollection<IFeature>) this)
+          && result;
+    }
+    if (b.pending.add(value)) {
+      b.order.add(value);
+    }
+    IGeometry geom = value.getGeom();
+    if (geom != null) {
+      IEnvelope env = geom.getEnvelope();
+      if (env != null && !env.isEmpty()) {
+        b.minX = Math.min(b.minX, env.minX());
+        b.minY = Math.min(b.minY, env.minY());
+        b.maxX = Math.max(b.maxX, env.maxX());
+        b.maxY = Math.max(b.maxY, env.maxY());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Oublie un objet retiré pendant le chargement en masse du thread courant.
+   * 
+   * @return vrai si l'objet avait été ajouté pendant ce chargement : il n'est
+   *         alors ni dans l'index ni dans l'emprise
+   */
+  private boolean forgetBulk(Feat value) {
+    Bulk<Feat> b = this.ownBulk();
+    return b != null && b.pending.remove(value);
+  }
+
   @Override
   public boolean remove(Feat value) {
     if (value == null) {
@@ -243,6 +445,10 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
       result = this.elements.remove(value);
     }
     value.getFeatureCollections().remove(this);
+    if (this.forgetBulk(value)) {
+      // pas encore dans l'index ni dans l'emprise : rien d'autre a defaire
+      return result;
+    }
     if (this.isIndexed && this.spatialindex.hasAutomaticUpdate()) {
       this.spatialindex.update(value, -1);
     }
@@ -290,6 +496,10 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
         feature.getFeatureCollections().remove(this);
       }
       this.elements.clear();
+      Bulk<Feat> b = this.ownBulk();
+      if (b != null) {
+        b.reset();
+      }
     }
     this.center = null;
     this.classe = null;
@@ -408,6 +618,31 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
   private SpatialIndex<Feat> spatialindex;
   /** La collection possede-t-elle un index spatial ? */
   private boolean isIndexed = false;
+  /**
+   * L'index a-t-il été créé par {@link #initSpatialIndex(Class, boolean)} ? Il
+   * peut alors être reconstruit à la fin d'un chargement en masse.
+   */
+  private boolean isRebuildable = false;
+  /**
+   * Si vrai, les index {@link Tiling} mis à jour automatiquement sont créés
+   * comme des {@link ConcurrentTiling}, dont les sélections ne sont pas
+   * bloquées par les mises à jour : à activer pour les populations éditées
+   * pendant qu'elles sont affichées. Faux par défaut.
+   */
+  public static boolean CONCURRENT_TILING = false;
+
+  /**
+   * La classe d'index à instancier pour la classe demandée, selon
+   * {@link #CONCURRENT_TILING}.
+   */
+  private static Class<?> indexClass(Class<?> spatialIndexClass,
+      boolean automaticUpdate) {
+    if (FT_FeatureCollection.CONCURRENT_TILING && automaticUpdate
+        && spatialIndexClass == Tiling.class) {
+      return ConcurrentTiling.class;
+    }
+    return spatialIndexClass;
+  }
 
   @Override
   public SpatialIndex<Feat> getSpatialIndex() {
@@ -429,11 +664,12 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
       return;
     }
     try {
-      this.spatialindex = (SpatialIndex<Feat>) spatialIndexClass
-          .getConstructor(
+      this.spatialindex = (SpatialIndex<Feat>) FT_FeatureCollection
+          .indexClass(spatialIndexClass, automaticUpdate).getConstructor(
               new Class[] { IFeatureCollection.class, Boolean.class })
           .newInstance(new Object[] { this, automaticUpdate});
       this.isIndexed = true;
+      this.isRebuildable = true;
     } catch (Exception e) {
       FT_FeatureCollection.logger
           .error("Probleme a l'initialisation de l'index spatial !"); //$NON-NLS-1$
@@ -451,13 +687,14 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
       return;
     }
     try {
-      this.spatialindex = (SpatialIndex<Feat>) spatialIndexClass
-          .getConstructor(
+      this.spatialindex = (SpatialIndex<Feat>) FT_FeatureCollection
+          .indexClass(spatialIndexClass, automaticUpdate).getConstructor(
               new Class[] { IFeatureCollection.class, Boolean.class,
                   Integer.class })
           .newInstance(
               new Object[] { this, automaticUpdate, i });
       this.isIndexed = true;
+      this.isRebuildable = false;
     } catch (Exception e) {
       FT_FeatureCollection.logger
           .error("Probleme a l'initialisation de l'index spatial !"); //$NON-NLS-1$
@@ -475,12 +712,13 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
       return;
     }
     try {
-      this.spatialindex = (SpatialIndex<Feat>) spatialIndexClass
-          .getConstructor(
+      this.spatialindex = (SpatialIndex<Feat>) FT_FeatureCollection
+          .indexClass(spatialIndexClass, automaticUpdate).getConstructor(
               new Class[] { IFeatureCollection.class, Boolean.class,
                   IEnvelope.class, Integer.class }).newInstance(
               new Object[] { this, automaticUpdate, enveloppe, i });
       this.isIndexed = true;
+      this.isRebuildable = false;
     } catch (Exception e) {
       FT_FeatureCollection.logger
           .error("Probleme a l'initialisation de l'index spatial !"); //$NON-NLS-1$
@@ -504,6 +742,7 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
               new Class[] { IFeatureCollection.class, spIdx.getClass() })
           .newInstance(new Object[] { this, spIdx });
       this.isIndexed = true;
+      this.isRebuildable = false;
     } catch (Exception e) {
       FT_FeatureCollection.logger
           .error("Probleme a l'initialisation de l'index spatial !"); //$NON-NLS-1$
@@ -514,6 +753,34 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
   public void setSpatialIndexToExisting(SpatialIndex<Feat> spIdx) {
     this.spatialindex = spIdx;
     this.isIndexed = true;
+    this.isRebuildable = false;
+  }
+
+  /**
+   * Reconstruit l'index spatial en une seule passe sur les éléments, avec la
+   * même classe d'index. L'ancien index n'est pas vidé, pour ne pas gêner une
+   * sélection en cours dans un autre thread.
+   * 
+   * @return faux si l'index n'a pas pu être reconstruit
+   */
+  @SuppressWarnings("unchecked")
+  private boolean rebuildSpatialIndex() {
+    if (!this.isRebuildable) {
+      return false;
+    }
+    try {
+      synchronized (this.elements) {
+        this.spatialindex = (SpatialIndex<Feat>) this.spatialindex.getClass()
+            .getConstructor(
+                new Class[] { IFeatureCollection.class, Boolean.class })
+            .newInstance(new Object[] { this, Boolean.TRUE });
+      }
+      return true;
+    } catch (Exception e) {
+      FT_FeatureCollection.logger
+          .warn("Reconstruction de l'index spatial impossible : " + e); //$NON-NLS-1$
+      return false;
+    }
   }
 
   @Override
@@ -623,6 +890,27 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
     return this.spatialindex.select(geometry, distance);
   }
 
+  @Override
+  public List<Feat> nearest(IGeometry geometry, int k, double maxDistance) {
+    if (k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    if (!this.isIndexed) {
+      NearestNeighbourSearch<Feat> search = new NearestNeighbourSearch<Feat>(
+          geometry, k, maxDistance, false);
+      synchronized (this.elements) {
+        for (Feat feature : this) {
+          if (feature.getGeom() != null) {
+            search.offerFeature(feature,
+                search.lowerBound(feature.getGeom().envelope()));
+          }
+        }
+      }
+      return search.run(null);
+    }
+    return this.spatialindex.nearest(geometry, k, maxDistance);
+  }
+
   // ---------------------------------------
   // --- méthodes nécessaire pour implémenter l'interface Collection
   // ---------------------------------------
@@ -673,6 +961,9 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
       this.elements.remove(value);
     }
     value.getFeatureCollections().remove(this);
+    if (this.forgetBulk(value)) {
+      return;
+    }
     if (this.isIndexed) {
       if (this.spatialindex.hasAutomaticUpdate()) {
         this.spatialindex.update(value, -1);
@@ -771,9 +1062,14 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
     }
     Iterator<? extends Feat> iter = c.iterator();
     boolean result = true;
-    while (iter.hasNext()) {
-      Feat elem = iter.next();
-      result = this.add(elem) && result;
+    this.beginBulk();
+    try {
+      while (iter.hasNext()) {
+        Feat elem = iter.next();
+        result = this.add(elem) && result;
+      }
+    } finally {
+      this.endBulk();
     }
     return result;
   }
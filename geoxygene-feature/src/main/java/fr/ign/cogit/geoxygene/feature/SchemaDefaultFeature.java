@@ -24,6 +24,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -179,6 +180,107 @@ public class SchemaDefaultFeature extends SchemaConceptuelJeu {
    */
   public void setAttLookup(Map<Integer, String[]> lookup) {
     this.attLookup = lookup;
+    this.indexRangs = null;
+  }
+
+  /**
+   * Index inverses d'une lookup table : position d'un attribut en fonction de
+   * son nom d'attributeType ou de son nom de colonne. Un index n'est jamais
+   * modifié : il est remplacé par un nouvel index quand la lookup table a
+   * changé.
+   */
+  private static final class IndexRangs {
+    /** Lookup table indexée. */
+    final Map<Integer, String[]> lookup;
+    /** Empreinte de son contenu lors de la construction de l'index. */
+    final int empreinte;
+    final Map<String, Integer> parNomAttribut = new HashMap<String, Integer>();
+    final Map<String, Integer> parNomColonne = new HashMap<String, Integer>();
+
+    IndexRangs(Map<Integer, String[]> lookup, int empreinte) {
+      this.lookup = lookup;
+      this.empreinte = empreinte;
+      for (Map.Entry<Integer, String[]> entry : lookup.entrySet()) {
+        String[] tabNoms = entry.getValue();
+        if (tabNoms == null) {
+          continue;
+        }
+        if (tabNoms[0] != null && !this.parNomColonne.containsKey(tabNoms[0])) {
+          this.parNomColonne.put(tabNoms[0], entry.getKey());
+        }
+        if (tabNoms.length > 1 && tabNoms[1] != null
+            && !this.parNomAttribut.containsKey(tabNoms[1])) {
+          this.parNomAttribut.put(tabNoms[1], entry.getKey());
+        }
+      }
+    }
+
+    /** @return la position de l'attribut, -1 s'il n'est pas indexé */
+    int cherche(String nomAttribut) {
+      Integer key = this.parNomAttribut.get(nomAttribut);
+      int indice = 1;
+      if (key == null) {
+        key = this.parNomColonne.get(nomAttribut);
+        indice = 0;
+      }
+      if (key == null) {
+        return -1;
+      }
+      // la lookup table a pu être modifiée depuis la construction de l'index
+      String[] tabNoms = this.lookup.get(key);
+      if (tabNoms == null || tabNoms.length <= indice
+          || !nomAttribut.equals(tabNoms[indice])) {
+        return -1;
+      }
+      return key.intValue();
+    }
+  }
+
+  /**
+   * Index inverses de la lookup table, construits à la première recherche.
+   */
+  private volatile IndexRangs indexRangs = null;
+
+  /**
+   * Renvoie la position d'un attribut dans la table attributes[] du
+   * defaultFeature. Le nom est cherché en priorité parmi les noms
+   * d'attributeType (métadonnées de niveau conceptuel), puis parmi les noms de
+   * colonnes (métadonnées de niveau logique).
+   * <p>
+   * La lookup table pouvant être modifiée directement (cf.
+   * {@link #getAttLookup()}), un nom absent de l'index n'entraîne sa
+   * reconstruction que si l'empreinte de la lookup table a changé.
+   * 
+   * @param nomAttribut nom de l'attribut
+   * @return la position de l'attribut, -1 s'il n'existe pas
+   */
+  public int getRang(String nomAttribut) {
+    IndexRangs index = this.indexRangs;
+    int rang = (index == null) ? -1 : index.cherche(nomAttribut);
+    if (rang < 0) {
+      Map<Integer, String[]> lookup = this.attLookup;
+      int empreinte = SchemaDefaultFeature.empreinte(lookup);
+      if (index == null || index.lookup != lookup
+          || index.empreinte != empreinte) {
+        index = new IndexRangs(lookup, empreinte);
+        this.indexRangs = index;
+        rang = index.cherche(nomAttribut);
+      }
+    }
+    return rang;
+  }
+
+  /**
+   * Empreinte du contenu d'une lookup table, sans dépendre de l'identité des
+   * tableaux de noms (contrairement à {@link Map#hashCode()}).
+   */
+  private static int empreinte(Map<Integer, String[]> lookup) {
+    int empreinte = lookup.size();
+    for (Map.Entry<Integer, String[]> entry : lookup.entrySet()) {
+      empreinte += entry.getKey().hashCode()
+          ^ Arrays.hashCode(entry.getValue());
+    }
+    return empreinte;
   }
 
   /**
@@ -0,0 +1,680 @@
+/**
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ *
+ */
+
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.index.SpatialIndex;
+import fr.ign.cogit.geoxygene.api.index.SpatialIndexVisitor;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+/**
+ * Index spatial par dallage, modifiable en parallèle des requêtes.
+ * <p>
+ * Chaque dalle est un tableau jamais modifié : un ajout ou une suppression
+ * remplace le tableau de la dalle par une copie modifiée (copie à l'écriture,
+ * par compare-and-set). Les requêtes ne prennent donc aucun verrou et voient
+ * toujours un état cohérent de chaque dalle ; deux mises à jour ne se gênent
+ * que si elles touchent la même dalle.
+ * <p>
+ * Contrairement au {@link Tiling}, le dallage n'est pas limité à l'enveloppe
+ * initiale : quand un objet ajouté en sort, l'emprise est agrandie et les
+ * dalles sont recalculées. Elles le sont aussi quand elles contiennent en
+ * moyenne plus de {@link #MAX_FILL} fois {@link #TILE_CAPACITY} objets. Le
+ * nombre de dalles est alors recalculé à partir du nombre d'objets indexés,
+ * comme dans le constructeur, dans la limite de {@link #MAX_SIZE} dalles par
+ * côté. Seul ce recalcul bloque les mises à jour, les requêtes continuant sur
+ * l'ancien dallage.
+ * <p>
+ * Comme pour le dallage, les enveloppes sont celles des objets au moment de
+ * leur ajout : un objet dont la géométrie est modifiée doit être signalé par
+ * <code>update(feature, 0)</code>.
+ *
+ * @param <Feat> type des objets indexés
+ */
+public class ConcurrentTiling<Feat extends IFeature> implements
+    SpatialIndex<Feat> {
+  static Logger logger = Logger.getLogger(ConcurrentTiling.class.getName());
+
+  /** Nombre maximal de dalles par côté après agrandissement. */
+  public static final int MAX_SIZE = 512;
+  /** Nombre moyen d'objets par dalle visé lors d'un recalcul du dallage. */
+  public static final int TILE_CAPACITY = 50;
+  /**
+   * Remplissage moyen des dalles, en multiple de {@link #TILE_CAPACITY},
+   * au-delà duquel le dallage est recalculé.
+   */
+  public static final int MAX_FILL = 4;
+  /** Marge ajoutée du côté où l'emprise est agrandie (fraction de l'emprise). */
+  private static final double GROWTH = 0.25;
+
+  /** Dalle vide. */
+  private static final Entry[] EMPTY = new Entry[0];
+
+  /**
+   * Objet indexé, avec son enveloppe et les indices des dalles qu'il couvre.
+   * Un même élément est partagé par toutes ses dalles.
+   */
+  private static final class Entry {
+    final IFeature feature;
+    final double minX, minY, maxX, maxY;
+    final int imin, imax, jmin, jmax;
+
+    Entry(IFeature feature, double minX, double minY, double maxX,
+        double maxY, int imin, int imax, int jmin, int jmax) {
+      this.feature = feature;
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      this.imin = imin;
+      this.imax = imax;
+      this.jmin = jmin;
+      this.jmax = jmax;
+    }
+  }
+
+  /** Dallage : emprise, taille et contenu des dalles. */
+  private static final class Grid {
+    final double xmin, xmax, ymin, ymax;
+    final double dX, dY;
+    final int size;
+    /** Dalle i,j à l'indice i * size + j. */
+    final AtomicReferenceArray<Entry[]> tiles;
+
+    Grid(double xmin, double xmax, double ymin, double ymax, int size) {
+      this.xmin = xmin;
+      this.xmax = xmax;
+      this.ymin = ymin;
+      this.ymax = ymax;
+      this.size = size;
+      this.dX = (xmax - xmin) / size;
+      this.dY = (ymax - ymin) / size;
+      this.tiles = new AtomicReferenceArray<Entry[]>(size * size);
+      for (int t = 0; t < size * size; t++) {
+        this.tiles.set(t, ConcurrentTiling.EMPTY);
+      }
+    }
+
+    int column(double x) {
+      if (!(this.dX > 0)) {
+        return 0;
+      }
+      int i = (int) Math.floor((x - this.xmin) / this.dX);
+      return Math.max(0, Math.min(this.size - 1, i));
+    }
+
+    int row(double y) {
+      if (!(this.dY > 0)) {
+        return 0;
+      }
+      int j = (int) Math.floor((y - this.ymin) / this.dY);
+      return Math.max(0, Math.min(this.size - 1, j));
+    }
+
+    boolean covers(double minX, double minY, double maxX, double maxY) {
+      return minX >= this.xmin && maxX <= this.xmax && minY >= this.ymin
+          && maxY <= this.ymax;
+    }
+
+    /** Ajoute un objet dans toutes les dalles couvertes par son enveloppe. */
+    Entry insert(IFeature feature, double minX, double minY, double maxX,
+        double maxY) {
+      Entry e = new Entry(feature, minX, minY, maxX, maxY, this.column(minX),
+          this.column(maxX), this.row(minY), this.row(maxY));
+      for (int i = e.imin; i <= e.imax; i++) {
+        for (int j = e.jmin; j <= e.jmax; j++) {
+          int t = i * this.size + j;
+          while (true) {
+            Entry[] old = this.tiles.get(t);
+            Entry[] tile = Arrays.copyOf(old, old.length + 1);
+            tile[old.length] = e;
+            if (this.tiles.compareAndSet(t, old, tile)) {
+              break;
+            }
+          }
+        }
+      }
+      return e;
+    }
+
+    /** Retire un objet de toutes ses dalles. */
+    void delete(Entry e) {
+      for (int i = e.imin; i <= e.imax; i++) {
+        for (int j = e.jmin; j <= e.jmax; j++) {
+          int t = i * this.size + j;
+          while (true) {
+            Entry[] old = this.tiles.get(t);
+            int pos = 0;
+            while (pos < old.length && old[pos] != e) {
+              pos++;
+            }
+            if (pos == old.length) {
+              break;
+            }
+            Entry[] tile = ConcurrentTiling.EMPTY;
+            if (old.length > 1) {
+              tile = new Entry[old.length - 1];
+              System.arraycopy(old, 0, tile, 0, pos);
+              System.arraycopy(old, pos + 1, tile, pos, old.length - pos - 1);
+            }
+            if (this.tiles.compareAndSet(t, old, tile)) {
+              break;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Dallage courant, remplacé lors d'un agrandissement. */
+  private volatile Grid grid;
+  /** Elément de chaque objet indexé dans le dallage courant. */
+  private final Map<Feat, Entry> entries = new ConcurrentHashMap<Feat, Entry>();
+  /**
+   * Verrou du dallage : partagé par les mises à jour, exclusif pour
+   * l'agrandissement. Les requêtes ne le prennent pas.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  /** Indique si l'on a demande une mise a jour automatique. */
+  private volatile boolean automaticUpdate;
+
+  // ===============================================
+  // CONSTRUCTEURS
+  // ===============================================
+
+  /**
+   * Crée et instancie un dallage d'une collection de FT_Feature.
+   *
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   * @param envelope Emprise initiale du dallage. Elle est agrandie pour
+   *          contenir tous les objets de fc, puis à chaque ajout d'un objet
+   *          qui en sort. Si null, l'emprise de fc est utilisée.
+   * @param n Nombre de dalles en X et en Y, du dallage.
+   */
+  public ConcurrentTiling(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+      IEnvelope envelope, Integer n) {
+    if (n.intValue() < 1) {
+      throw new IllegalArgumentException("n must be at least 1"); //$NON-NLS-1$
+    }
+    this.automaticUpdate = automaticUpd.booleanValue();
+    GM_Envelope extent = null;
+    if (envelope != null && !envelope.isEmpty()) {
+      extent = new GM_Envelope(envelope.minX(), envelope.maxX(),
+          envelope.minY(), envelope.maxY());
+    }
+    List<Feat> features = new ArrayList<Feat>(fc.size());
+    List<IEnvelope> envelopes = new ArrayList<IEnvelope>(fc.size());
+    for (Feat feature : fc) {
+      IEnvelope env = ConcurrentTiling.envelope(feature);
+      if (env == null) {
+        continue;
+      }
+      features.add(feature);
+      envelopes.add(env);
+      if (extent == null) {
+        extent = new GM_Envelope(env.minX(), env.maxX(), env.minY(),
+            env.maxY());
+      } else {
+        extent.expand(env);
+      }
+    }
+    if (extent == null) {
+      extent = new GM_Envelope(0, 0, 0, 0);
+    }
+    Grid g = new Grid(extent.minX(), extent.maxX(), extent.minY(),
+        extent.maxY(), n.intValue());
+    for (int k = 0; k < features.size(); k++) {
+      IEnvelope env = envelopes.get(k);
+      this.entries.put(features.get(k), g.insert(features.get(k), env.minX(),
+          env.minY(), env.maxX(), env.maxY()));
+    }
+    this.grid = g;
+  }
+
+  /**
+   * Crée et instancie un dallage d'une collection de FT_Feature, sur
+   * l'emprise de la collection.
+   *
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   * @param n Nombre de dalles en X et en Y, du dallage.
+   */
+  public ConcurrentTiling(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+      Integer n) {
+    this(fc, automaticUpd, null, n);
+  }
+
+  /**
+   * Crée et instancie un dallage d'une collection de FT_Feature, avec de
+   * l'ordre de 50 objets par dalle (cf. {@link Tiling}).
+   *
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   */
+  public ConcurrentTiling(IFeatureCollection<Feat> fc, Boolean automaticUpd) {
+    this(fc, automaticUpd, Integer.valueOf(Math.max(
+        (int) Math.sqrt(fc.size() / 50), 1)));
+  }
+
+  /**
+   * Crée et instancie un dallage en reprenant les paramètres d'un autre
+   * dallage.
+   */
+  public ConcurrentTiling(IFeatureCollection<Feat> fc,
+      ConcurrentTiling<Feat> spIdx) {
+    this(fc, Boolean.valueOf(spIdx.hasAutomaticUpdate()), spIdx
+        .getEnvelope(), Integer.valueOf(spIdx.getSize()));
+  }
+
+  private static IEnvelope envelope(IFeature feature) {
+    if (feature == null || feature.getGeom() == null) {
+      return null;
+    }
+    return feature.getGeom().envelope();
+  }
+
+  // ===============================================
+  // PARAMETRES
+  // ===============================================
+
+  /**
+   * Renvoie une liste de 4 éléments : ConcurrentTiling.class, la mise à jour
+   * automatique (Boolean), l'emprise du dallage (GM_Envelope) et le nombre de
+   * dalles par côté (Integer).
+   */
+  @Override
+  public List<Object> getParametres() {
+    Grid g = this.grid;
+    List<Object> param = new ArrayList<Object>(4);
+    param.add(ConcurrentTiling.class);
+    param.add(Boolean.valueOf(this.automaticUpdate));
+    param.add(new GM_Envelope(g.xmin, g.xmax, g.ymin, g.ymax));
+    param.add(Integer.valueOf(g.size));
+    return param;
+  }
+
+  /** Taille du dallage (nombre de rectangles par cote). */
+  public int getSize() {
+    return this.grid.size;
+  }
+
+  /** @return l'emprise courante du dallage */
+  public IEnvelope getEnvelope() {
+    Grid g = this.grid;
+    return new GM_Envelope(g.xmin, g.xmax, g.ymin, g.ymax);
+  }
+
+  /** @return le nombre d'objets indexés */
+  public int size() {
+    return this.entries.size();
+  }
+
+  @Override
+  public boolean hasAutomaticUpdate() {
+    return this.automaticUpdate;
+  }
+
+  @Override
+  public void setAutomaticUpdate(boolean auto) {
+    this.automaticUpdate = auto;
+  }
+
+  // ===============================================
+  // MISE A JOUR
+  // ===============================================
+
+  @Override
+  public void update(Feat value, int cas) {
+    if (value == null) {
+      return;
+    }
+    if (cas == 1) {// ajout
+      this.add(value);
+    } else if (cas == -1) {// suppression
+      this.remove(value);
+    } else if (cas == 0) {// modification : ajout, qui remplace l'ancien
+      this.add(value);
+    }
+  }
+
+  private void add(Feat value) {
+    IEnvelope env = ConcurrentTiling.envelope(value);
+    if (env == null) {
+      this.remove(value);
+      return;
+    }
+    double minX = env.minX(), minY = env.minY();
+    double maxX = env.maxX(), maxY = env.maxY();
+    while (true) {
+      boolean crowded = false;
+      this.lock.readLock().lock();
+      try {
+        Grid g = this.grid;
+        if (g.covers(minX, minY, maxX, maxY)) {
+          Entry old = this.entries.put(value, g.insert(value, minX, minY,
+              maxX, maxY));
+          if (old != null) {
+            g.delete(old);
+          }
+          crowded = this.crowded(g);
+          if (!crowded) {
+            return;
+          }
+        }
+      } finally {
+        this.lock.readLock().unlock();
+      }
+      this.grow(minX, minY, maxX, maxY);
+      if (crowded) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return vrai si les dalles du dallage contiennent en moyenne trop
+   *         d'objets et peuvent encore être redécoupées
+   */
+  private boolean crowded(Grid g) {
+    return g.size < ConcurrentTiling.MAX_SIZE
+        && this.entries.size() > (long) ConcurrentTiling.MAX_FILL
+            * ConcurrentTiling.TILE_CAPACITY * g.size * g.size;
+  }
+
+  /**
+   * Nombre de dalles par côté pour un nombre d'objets donné, comme dans le
+   * constructeur : de l'ordre de {@link #TILE_CAPACITY} objets par dalle.
+   */
+  private static int size(int count) {
+    return Math.max(1, Math.min((int) Math.sqrt(count
+        / ConcurrentTiling.TILE_CAPACITY), ConcurrentTiling.MAX_SIZE));
+  }
+
+  private void remove(Feat value) {
+    this.lock.readLock().lock();
+    try {
+      Entry old = this.entries.remove(value);
+      if (old != null) {
+        this.grid.delete(old);
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Agrandit le dallage pour qu'il contienne le rectangle donné, ou le
+   * redécoupe si ses dalles sont trop remplies, puis y replace tous les
+   * objets. Le nombre de dalles dépend du nombre d'objets indexés et ne
+   * diminue jamais.
+   */
+  private void grow(double minX, double minY, double maxX, double maxY) {
+    this.lock.writeLock().lock();
+    try {
+      Grid g = this.grid;
+      if (g.covers(minX, minY, maxX, maxY) && !this.crowded(g)) {
+        return;
+      }
+      // un dallage vide est remplacé par l'emprise du premier objet
+      boolean empty = this.entries.isEmpty();
+      double xmin = empty ? minX : Math.min(g.xmin, minX);
+      double xmax = empty ? maxX : Math.max(g.xmax, maxX);
+      double ymin = empty ? minY : Math.min(g.ymin, minY);
+      double ymax = empty ? maxY : Math.max(g.ymax, maxY);
+      double width = xmax - xmin, height = ymax - ymin;
+      if (minX < g.xmin) {
+        xmin -= ConcurrentTiling.GROWTH * width;
+      }
+      if (maxX > g.xmax) {
+        xmax += ConcurrentTiling.GROWTH * width;
+      }
+      if (minY < g.ymin) {
+        ymin -= ConcurrentTiling.GROWTH * height;
+      }
+      if (maxY > g.ymax) {
+        ymax += ConcurrentTiling.GROWTH * height;
+      }
+      // l'objet en cours d'ajout n'est pas toujours déjà compté
+      int n = Math.max(g.size, ConcurrentTiling.size(this.entries.size() + 1));
+      Grid newGrid = new Grid(xmin, xmax, ymin, ymax, n);
+      for (Map.Entry<Feat, Entry> entry : this.entries.entrySet()) {
+        Entry e = entry.getValue();
+        entry.setValue(newGrid.insert(e.feature, e.minX, e.minY, e.maxX,
+            e.maxY));
+      }
+      this.grid = newGrid;
+      if (ConcurrentTiling.logger.isDebugEnabled()) {
+        ConcurrentTiling.logger.debug("grid resized to " + n + "x" + n //$NON-NLS-1$ //$NON-NLS-2$
+            + " tiles, extent " + xmin + "," + xmax + "," + ymin + "," + ymax); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    this.lock.writeLock().lock();
+    try {
+      Grid g = this.grid;
+      this.entries.clear();
+      this.grid = new Grid(g.xmin, g.xmax, g.ymin, g.ymax, g.size);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  // ===============================================
+  // REQUETES
+  // ===============================================
+
+  /**
+   * Appelle le visiteur une fois pour chaque objet dont l'enveloppe intersecte
+   * le rectangle donné. Aucun verrou n'est pris et aucune allocation n'est
+   * faite.
+   *
+   * @param minX abscisse minimale du rectangle
+   * @param minY ordonnée minimale du rectangle
+   * @param maxX abscisse maximale du rectangle
+   * @param maxY ordonnée maximale du rectangle
+   * @param visitor visiteur appelé pour chaque objet trouvé
+   */
+  @SuppressWarnings("unchecked")
+  public void visit(double minX, double minY, double maxX, double maxY,
+      SpatialIndexVisitor<Feat> visitor) {
+    Grid g = this.grid;
+    int imin = g.column(minX), imax = g.column(maxX);
+    int jmin = g.row(minY), jmax = g.row(maxY);
+    for (int i = imin; i <= imax; i++) {
+      for (int j = jmin; j <= jmax; j++) {
+        for (Entry e : g.tiles.get(i * g.size + j)) {
+          if (e.minX > maxX || e.maxX < minX || e.minY > maxY
+              || e.maxY < minY) {
+            continue;
+          }
+          // un objet sur plusieurs dalles n'est traité que dans la première
+          if (i != Math.max(imin, e.imin) || j != Math.max(jmin, e.jmin)) {
+            continue;
+          }
+          if (!visitor.visit((Feat) e.feature)) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Appelle le visiteur une fois pour chaque objet dont l'enveloppe intersecte
+   * l'enveloppe donnée.
+   *
+   * @param env enveloppe recherchée
+   * @param visitor visiteur appelé pour chaque objet trouvé
+   */
+  public void visit(IEnvelope env, SpatialIndexVisitor<Feat> visitor) {
+    this.visit(env.minX(), env.minY(), env.maxX(), env.maxY(), visitor);
+  }
+
+  @Override
+  public Collection<Feat> select(IDirectPosition P, double D) {
+    return this.select(new GM_Envelope(P, D));
+  }
+
+  @Override
+  public Collection<Feat> select(IEnvelope env) {
+    final List<Feat> result = new ArrayList<Feat>();
+    if (env == null) {
+      return result;
+    }
+    final IGeometry geometry = (env.maxX() == env.minX() && env.maxY() == env
+        .minY()) ? new GM_Point(env.getUpperCorner()) : new GM_Polygon(env);
+    this.visit(env, new SpatialIndexVisitor<Feat>() {
+      @Override
+      public boolean visit(Feat feature) {
+        if (geometry.intersects(feature.getGeom())) {
+          result.add(feature);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  @Override
+  public Collection<Feat> select(IGeometry geometry) {
+    return this.select(geometry, false);
+  }
+
+  @Override
+  public Collection<Feat> select(final IGeometry geometry,
+      final boolean strictlyCrosses) {
+    final List<Feat> result = new ArrayList<Feat>();
+    IEnvelope env = geometry.envelope();
+    if (env == null) {
+      return result;
+    }
+    this.visit(env, new SpatialIndexVisitor<Feat>() {
+      @Override
+      public boolean visit(Feat feature) {
+        IGeometry geom = feature.getGeom();
+        if (strictlyCrosses ? geometry.crosses(geom) : geometry
+            .intersects(geom)) {
+          result.add(feature);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Selection des objets à moins d'une distance donnée d'un objet géométrique,
+   * sans calcul de buffer (cf. {@link PackedRTree#select(IGeometry, double)}).
+   */
+  @Override
+  public Collection<Feat> select(final IGeometry geometry,
+      final double distance) {
+    if (distance == 0) {
+      return this.select(geometry);
+    }
+    final List<Feat> result = new ArrayList<Feat>();
+    IEnvelope env = geometry.envelope();
+    if (env == null) {
+      return result;
+    }
+    this.visit(env.minX() - distance, env.minY() - distance, env.maxX()
+        + distance, env.maxY() + distance, new SpatialIndexVisitor<Feat>() {
+      @Override
+      public boolean visit(Feat feature) {
+        if (feature.getGeom().distance(geometry) <= distance) {
+          result.add(feature);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Recherche des plus proches voisins au meilleur d'abord : les dalles sont
+   * parcourues par distance croissante (cf. {@link NearestNeighbourSearch}).
+   */
+  @Override
+  public List<Feat> nearest(IGeometry geometry, int k, double maxDistance) {
+    final Grid g = this.grid;
+    NearestNeighbourSearch<Feat> search = new NearestNeighbourSearch<Feat>(
+        geometry, k, maxDistance, true);
+    if (k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    for (int i = 0; i < g.size; i++) {
+      for (int j = 0; j < g.size; j++) {
+        double minX = (i == 0) ? Double.NEGATIVE_INFINITY : g.xmin + i * g.dX;
+        double maxX = (i == g.size - 1) ? Double.POSITIVE_INFINITY : g.xmin
+            + (i + 1) * g.dX;
+        double minY = (j == 0) ? Double.NEGATIVE_INFINITY : g.ymin + j * g.dY;
+        double maxY = (j == g.size - 1) ? Double.POSITIVE_INFINITY : g.ymin
+            + (j + 1) * g.dY;
+        search.offerNode(Integer.valueOf(i * g.size + j), search.lowerBound(
+            minX, minY, maxX, maxY));
+      }
+    }
+    return search.run(new NearestNeighbourSearch.NodeExpander<Feat>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public void expand(Object node, NearestNeighbourSearch<Feat> s) {
+        for (Entry e : g.tiles.get(((Integer) node).intValue())) {
+          s.offerFeature((Feat) e.feature, s.lowerBound(e.minX, e.minY,
+              e.maxX, e.maxY));
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ *
+ */
+
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+
+/**
+ * Recherche des k plus proches voisins d'une géométrie par parcours « au
+ * meilleur d'abord ».
+ * <p>
+ * Les noeuds d'index et les objets candidats sont rangés dans une file de
+ * priorité selon un minorant de leur distance à la géométrie recherchée (la
+ * distance entre enveloppes). Quand un objet sort de la file, sa distance
+ * exacte est calculée et il y est remis avec cette distance ; quand il en
+ * ressort, aucun autre candidat ne peut être plus proche et il est ajouté au
+ * résultat. La recherche s'arrête dès que k objets ont été trouvés ou que le
+ * minorant le plus petit dépasse la distance maximale.
+ * <p>
+ * Chaque index fournit le développement de ses noeuds (
+ * {@link NodeExpander}), en appelant {@link #offerNode(Object, double)} et
+ * {@link #offerFeature(IFeature, double)}.
+ *
+ * @param <Feat> type des objets recherchés
+ */
+public class NearestNeighbourSearch<Feat extends IFeature> {
+
+  /** Développement d'un noeud d'index. */
+  public interface NodeExpander<Feat extends IFeature> {
+    /**
+     * Propose à la recherche les fils d'un noeud (noeuds ou objets).
+     * @param node noeud à développer
+     * @param search recherche en cours
+     */
+    public void expand(Object node, NearestNeighbourSearch<Feat> search);
+  }
+
+  /** Elément de la file de priorité. */
+  private static final class Entry implements Comparable<Entry> {
+    final double distance;
+    final Object item;
+    /** 0 : noeud, 1 : objet (minorant), 2 : objet (distance exacte). */
+    final int kind;
+
+    Entry(double distance, Object item, int kind) {
+      this.distance = distance;
+      this.item = item;
+      this.kind = kind;
+    }
+
+    @Override
+    public int compareTo(Entry e) {
+      int c = Double.compare(this.distance, e.distance);
+      // a distance egale, les distances exactes d'abord
+      return (c != 0) ? c : e.kind - this.kind;
+    }
+  }
+
+  private final IGeometry geometry;
+  private final double minX, minY, maxX, maxY;
+  private final int k;
+  private final double maxDistance;
+  private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+  /** Objets déjà proposés, pour les index où un objet peut être répété. */
+  private final Set<Feat> offered;
+
+  /**
+   * @param geometry géométrie dont on cherche les plus proches voisins
+   * @param k nombre de voisins recherchés (aucun si k <= 0)
+   * @param maxDistance distance maximale des voisins (
+   *          {@link Double#POSITIVE_INFINITY} pour ne pas la limiter)
+   * @param unique vrai si un même objet peut être proposé plusieurs fois (il
+   *          n'est alors retenu qu'une fois)
+   */
+  public NearestNeighbourSearch(IGeometry geometry, int k, double maxDistance,
+      boolean unique) {
+    this.geometry = geometry;
+    IEnvelope env = geometry.envelope();
+    this.minX = env.minX();
+    this.minY = env.minY();
+    this.maxX = env.maxX();
+    this.maxY = env.maxY();
+    this.k = k;
+    this.maxDistance = maxDistance;
+    this.offered = unique ? new HashSet<Feat>() : null;
+  }
+
+  /** @return la géométrie dont on cherche les plus proches voisins */
+  public IGeometry getGeometry() {
+    return this.geometry;
+  }
+
+  /**
+   * Distance entre l'enveloppe de la géométrie recherchée et un rectangle :
+   * minorant de la distance à tout objet contenu dans ce rectangle.
+   */
+  public double lowerBound(double boxMinX, double boxMinY, double boxMaxX,
+      double boxMaxY) {
+    double dx = Math.max(0, Math.max(boxMinX - this.maxX, this.minX - boxMaxX));
+    double dy = Math.max(0, Math.max(boxMinY - this.maxY, this.minY - boxMaxY));
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Distance entre l'enveloppe de la géométrie recherchée et une enveloppe.
+   * @see #lowerBound(double, double, double, double)
+   */
+  public double lowerBound(IEnvelope env) {
+    return this.lowerBound(env.minX(), env.minY(), env.maxX(), env.maxY());
+  }
+
+  /**
+   * Propose un noeud d'index.
+   * @param node noeud, qui sera développé par le {@link NodeExpander}
+   * @param lowerBound minorant de la distance aux objets du noeud
+   */
+  public void offerNode(Object node, double lowerBound) {
+    if (lowerBound <= this.maxDistance) {
+      this.queue.add(new Entry(lowerBound, node, 0));
+    }
+  }
+
+  /**
+   * Propose un objet candidat.
+   * @param feature objet candidat
+   * @param lowerBound minorant de la distance à l'objet (par exemple la
+   *          distance à son enveloppe)
+   */
+  public void offerFeature(Feat feature, double lowerBound) {
+    if (lowerBound > this.maxDistance || feature == null
+        || feature.getGeom() == null) {
+      return;
+    }
+    if (this.offered != null && !this.offered.add(feature)) {
+      return;
+    }
+    this.queue.add(new Entry(lowerBound, feature, 1));
+  }
+
+  /**
+   * Effectue la recherche.
+   * @param expander développement des noeuds proposés, null si seuls des
+   *          objets ont été proposés
+   * @return au plus k objets à moins de la distance maximale, par distance
+   *         croissante
+   */
+  @SuppressWarnings("unchecked")
+  public List<Feat> run(NodeExpander<Feat> expander) {
+    if (this.k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    List<Feat> result = new ArrayList<Feat>(Math.min(this.k, 16));
+    while (result.size() < this.k && !this.queue.isEmpty()) {
+      Entry entry = this.queue.poll();
+      if (entry.distance > this.maxDistance) {
+        break;
+      }
+      switch (entry.kind) {
+        case 0:
+          expander.expand(entry.item, this);
+          break;
+        case 1:
+          double distance = this.geometry.distance(((Feat) entry.item)
+              .getGeom());
+          if (distance <= this.maxDistance) {
+            this.queue.add(new Entry(distance, entry.item, 2));
+          }
+          break;
+        default:
+          result.add((Feat) entry.item);
+      }
+    }
+    return result;
+  }
+}
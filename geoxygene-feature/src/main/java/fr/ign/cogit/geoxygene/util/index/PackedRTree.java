@@ -0,0 +1,614 @@
+/**
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ *
+ */
+
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.index.SpatialIndex;
+import fr.ign.cogit.geoxygene.api.index.SpatialIndexVisitor;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+/**
+ * Index spatial statique : R-tree compact chargé en une seule fois.
+ * <p>
+ * Les objets sont triés selon la courbe de Hilbert du centre de leur
+ * enveloppe, puis regroupés par paquets de {@link #getNodeCapacity()} pour
+ * former les noeuds de chaque niveau. Toutes les enveloppes (objets et noeuds)
+ * sont rangées dans un unique tableau de doubles et l'arbre n'est jamais
+ * modifié une fois construit : les requêtes ne prennent aucun verrou et les
+ * requêtes par visiteur ({@link #visit(IEnvelope, SpatialIndexVisitor)}) ne
+ * font aucune allocation.
+ * <p>
+ * Cet index est destiné aux populations peu modifiées. Une mise à jour (
+ * {@link #update(IFeature, int)}) ne modifie pas l'arbre mais demande sa
+ * reconstruction complète à partir de la collection, faite lors de la requête
+ * suivante. Comme pour le dallage, les enveloppes sont celles des objets au
+ * moment de la construction : un objet dont la géométrie est modifiée doit
+ * être signalé par <code>update(feature, 0)</code>.
+ *
+ * @param <Feat> type des objets indexés
+ */
+public class PackedRTree<Feat extends IFeature> implements SpatialIndex<Feat> {
+  static Logger logger = Logger.getLogger(PackedRTree.class.getName());
+
+  /** Nombre de fils par noeud par défaut. */
+  public static final int DEFAULT_NODE_CAPACITY = 16;
+  /** Résolution de la grille utilisée pour le calcul des indices de Hilbert. */
+  private static final int HILBERT_SIZE = 1 << 15;
+
+  /** Collection indexée. */
+  private IFeatureCollection<Feat> collection;
+  /** Nombre de fils par noeud. */
+  private final int nodeCapacity;
+  /** Indique si l'on a demande une mise a jour automatique. */
+  private boolean automaticUpdate;
+  /** Arbre courant, jamais modifié une fois construit. */
+  private volatile Tree tree;
+  /** Vrai si l'arbre doit être reconstruit avant la prochaine requête. */
+  private volatile boolean dirty = false;
+
+  /**
+   * Arbre compact. Les noeuds sont rangés par niveau, les feuilles (les objets)
+   * d'abord. Les fils du noeud d'indice p du niveau l sont les noeuds
+   * consécutifs du niveau l-1 à partir de
+   * <code>levelStart(l-1) + (p - levelStart(l)) * nodeCapacity</code>.
+   */
+  private static final class Tree {
+    /** Objets indexés, dans l'ordre des feuilles. */
+    final IFeature[] features;
+    /** Enveloppes des noeuds : xmin, ymin, xmax, ymax pour chaque noeud. */
+    final double[] boxes;
+    /** Indice (exclu) du dernier noeud de chaque niveau. */
+    final int[] levelEnds;
+    final int nodeCapacity;
+
+    Tree(IFeature[] features, double[] boxes, int[] levelEnds, int nodeCapacity) {
+      this.features = features;
+      this.boxes = boxes;
+      this.levelEnds = levelEnds;
+      this.nodeCapacity = nodeCapacity;
+    }
+
+    int levelStart(int level) {
+      return (level == 0) ? 0 : this.levelEnds[level - 1];
+    }
+
+    int root() {
+      return this.levelEnds[this.levelEnds.length - 1] - 1;
+    }
+  }
+
+  // ===============================================
+  // CONSTRUCTEURS
+  // ===============================================
+
+  /**
+   * Crée et charge un R-tree compact sur une collection de FT_Feature.
+   *
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   * @param nodeCapacity nombre de fils par noeud
+   */
+  public PackedRTree(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+      Integer nodeCapacity) {
+    if (nodeCapacity.intValue() < 2) {
+      throw new IllegalArgumentException("nodeCapacity must be at least 2"); //$NON-NLS-1$
+    }
+    this.collection = fc;
+    this.automaticUpdate = automaticUpd.booleanValue();
+    this.nodeCapacity = nodeCapacity.intValue();
+    this.tree = PackedRTree.build(fc, this.nodeCapacity);
+  }
+
+  /**
+   * Crée et charge un R-tree compact sur une collection de FT_Feature, avec
+   * {@link #DEFAULT_NODE_CAPACITY} fils par noeud.
+   *
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   */
+  public PackedRTree(IFeatureCollection<Feat> fc, Boolean automaticUpd) {
+    this(fc, automaticUpd, Integer.valueOf(PackedRTree.DEFAULT_NODE_CAPACITY));
+  }
+
+  /**
+   * Constructeur compatible avec celui du dallage. L'enveloppe est ignorée :
+   * l'arbre couvre toujours l'ensemble des objets de la collection.
+   *
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   * @param envelope ignorée
+   * @param nodeCapacity nombre de fils par noeud
+   */
+  public PackedRTree(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+      IEnvelope envelope, Integer nodeCapacity) {
+    this(fc, automaticUpd, nodeCapacity);
+  }
+
+  /**
+   * Crée et charge un R-tree compact en reprenant les paramètres d'un autre.
+   */
+  public PackedRTree(IFeatureCollection<Feat> fc, PackedRTree<Feat> spIdx) {
+    this(fc, Boolean.valueOf(spIdx.hasAutomaticUpdate()), Integer
+        .valueOf(spIdx.getNodeCapacity()));
+  }
+
+  /**
+   * Construction de l'arbre : tri des objets selon la courbe de Hilbert puis
+   * calcul des enveloppes des noeuds, niveau par niveau.
+   */
+  private static Tree build(Collection<? extends IFeature> fc,
+      int nodeCapacity) {
+    List<IFeature> features = new ArrayList<IFeature>(fc.size());
+    double[] envelopes = new double[4 * fc.size()];
+    for (IFeature feature : fc) {
+      IGeometry geom = feature.getGeom();
+      if (geom == null) {
+        continue;
+      }
+      IEnvelope env = geom.envelope();
+      if (env == null || env.isEmpty()) {
+        continue;
+      }
+      int k = 4 * features.size();
+      envelopes[k] = env.minX();
+      envelopes[k + 1] = env.minY();
+      envelopes[k + 2] = env.maxX();
+      envelopes[k + 3] = env.maxY();
+      features.add(feature);
+    }
+    int n = features.size();
+    int[] levelEnds = PackedRTree.levelEnds(n, nodeCapacity);
+    double[] boxes = new double[4 * levelEnds[levelEnds.length - 1]];
+    int[] order = PackedRTree.pack(envelopes, n, nodeCapacity, levelEnds,
+        boxes);
+    IFeature[] sorted = new IFeature[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = features.get(order[i]);
+    }
+    return new Tree(sorted, boxes, levelEnds, nodeCapacity);
+  }
+
+  /**
+   * Calcule le nombre de noeuds de chaque niveau d'un R-tree compact.
+   *
+   * @param n nombre d'éléments indexés (les feuilles)
+   * @param nodeCapacity nombre de fils par noeud
+   * @return l'indice (exclu) du dernier noeud de chaque niveau, les feuilles
+   *         d'abord ; le dernier élément est le nombre total de noeuds
+   */
+  public static int[] levelEnds(int n, int nodeCapacity) {
+    List<Integer> ends = new ArrayList<Integer>();
+    int count = n;
+    int total = n;
+    ends.add(Integer.valueOf(total));
+    while (count > 1) {
+      count = (count + nodeCapacity - 1) / nodeCapacity;
+      total += count;
+      ends.add(Integer.valueOf(total));
+    }
+    int[] levelEnds = new int[ends.size()];
+    for (int i = 0; i < levelEnds.length; i++) {
+      levelEnds[i] = ends.get(i).intValue();
+    }
+    return levelEnds;
+  }
+
+  /**
+   * Construit un R-tree compact sur des enveloppes : les éléments sont triés
+   * selon la courbe de Hilbert du centre de leur enveloppe, puis les
+   * enveloppes des noeuds sont calculées niveau par niveau. Permet de ranger
+   * l'arbre ailleurs qu'en mémoire, par exemple dans un fichier.
+   *
+   * @param envelopes xmin, ymin, xmax, ymax de chaque élément
+   * @param n nombre d'éléments
+   * @param nodeCapacity nombre de fils par noeud
+   * @param levelEnds découpage en niveaux, donné par
+   *          {@link #levelEnds(int, int)}
+   * @param boxes tableau de <code>4 * levelEnds[levelEnds.length - 1]</code>
+   *          doubles rempli avec les enveloppes de tous les noeuds, les
+   *          feuilles d'abord
+   * @return le rang, dans <code>envelopes</code>, de l'élément de chaque
+   *         feuille
+   */
+  public static int[] pack(double[] envelopes, int n, int nodeCapacity,
+      int[] levelEnds, double[] boxes) {
+    double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      minX = Math.min(minX, envelopes[4 * i]);
+      minY = Math.min(minY, envelopes[4 * i + 1]);
+      maxX = Math.max(maxX, envelopes[4 * i + 2]);
+      maxY = Math.max(maxY, envelopes[4 * i + 3]);
+    }
+    // tri des objets selon l'indice de Hilbert du centre de leur enveloppe
+    // (indice dans les bits de poids fort, rang de l'objet dans ceux de poids
+    // faible)
+    long[] keys = new long[n];
+    double width = (maxX > minX) ? maxX - minX : 1;
+    double height = (maxY > minY) ? maxY - minY : 1;
+    for (int i = 0; i < n; i++) {
+      double cx = (envelopes[4 * i] + envelopes[4 * i + 2]) / 2;
+      double cy = (envelopes[4 * i + 1] + envelopes[4 * i + 3]) / 2;
+      int x = (int) ((PackedRTree.HILBERT_SIZE - 1) * (cx - minX) / width);
+      int y = (int) ((PackedRTree.HILBERT_SIZE - 1) * (cy - minY) / height);
+      keys[i] = (PackedRTree.hilbert(x, y) << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = (int) keys[i];
+      System.arraycopy(envelopes, 4 * order[i], boxes, 4 * i, 4);
+    }
+    // enveloppes des noeuds
+    for (int level = 1; level < levelEnds.length; level++) {
+      int start = levelEnds[level - 1];
+      int childLevelStart = (level == 1) ? 0 : levelEnds[level - 2];
+      int childLevelEnd = levelEnds[level - 1];
+      for (int pos = start; pos < levelEnds[level]; pos++) {
+        int first = childLevelStart + (pos - start) * nodeCapacity;
+        int last = Math.min(first + nodeCapacity, childLevelEnd);
+        double nodeMinX = Double.POSITIVE_INFINITY;
+        double nodeMinY = Double.POSITIVE_INFINITY;
+        double nodeMaxX = Double.NEGATIVE_INFINITY;
+        double nodeMaxY = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < last; child++) {
+          nodeMinX = Math.min(nodeMinX, boxes[4 * child]);
+          nodeMinY = Math.min(nodeMinY, boxes[4 * child + 1]);
+          nodeMaxX = Math.max(nodeMaxX, boxes[4 * child + 2]);
+          nodeMaxY = Math.max(nodeMaxY, boxes[4 * child + 3]);
+        }
+        boxes[4 * pos] = nodeMinX;
+        boxes[4 * pos + 1] = nodeMinY;
+        boxes[4 * pos + 2] = nodeMaxX;
+        boxes[4 * pos + 3] = nodeMaxY;
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Indice de la position (x, y) le long de la courbe de Hilbert couvrant une
+   * grille de {@link #HILBERT_SIZE} cases de côté.
+   */
+  private static long hilbert(int x, int y) {
+    int n = PackedRTree.HILBERT_SIZE;
+    long d = 0;
+    for (int s = n / 2; s > 0; s /= 2) {
+      int rx = ((x & s) > 0) ? 1 : 0;
+      int ry = ((y & s) > 0) ? 1 : 0;
+      d += (long) s * s * ((3 * rx) ^ ry);
+      if (ry == 0) {
+        if (rx == 1) {
+          x = n - 1 - x;
+          y = n - 1 - y;
+        }
+        int t = x;
+        x = y;
+        y = t;
+      }
+    }
+    return d;
+  }
+
+  /** Renvoie l'arbre courant, reconstruit si une mise à jour l'a invalidé. */
+  private Tree getTree() {
+    if (this.dirty) {
+      synchronized (this) {
+        if (this.dirty) {
+          if (this.collection != null) {
+            this.tree = PackedRTree.build(this.collection, this.nodeCapacity);
+          }
+          this.dirty = false;
+        }
+      }
+    }
+    return this.tree;
+  }
+
+  // ===============================================
+  // PARAMETRES
+  // ===============================================
+
+  /**
+   * Renvoie une liste de 4 éléments : PackedRTree.class, la mise à jour
+   * automatique (Boolean), l'enveloppe des objets indexés (GM_Envelope) et le
+   * nombre de fils par noeud (Integer).
+   */
+  @Override
+  public List<Object> getParametres() {
+    List<Object> param = new ArrayList<Object>(4);
+    param.add(PackedRTree.class);
+    param.add(Boolean.valueOf(this.automaticUpdate));
+    param.add(this.getEnvelope());
+    param.add(Integer.valueOf(this.nodeCapacity));
+    return param;
+  }
+
+  /** @return le nombre de fils par noeud */
+  public int getNodeCapacity() {
+    return this.nodeCapacity;
+  }
+
+  /** @return le nombre d'objets indexés */
+  public int size() {
+    Tree t = this.getTree();
+    return (t == null) ? 0 : t.features.length;
+  }
+
+  /** @return l'enveloppe des objets indexés, null si l'index est vide */
+  public IEnvelope getEnvelope() {
+    Tree t = this.getTree();
+    if (t == null || t.features.length == 0) {
+      return null;
+    }
+    int b = 4 * t.root();
+    return new GM_Envelope(t.boxes[b], t.boxes[b + 2], t.boxes[b + 1],
+        t.boxes[b + 3]);
+  }
+
+  @Override
+  public boolean hasAutomaticUpdate() {
+    return this.automaticUpdate;
+  }
+
+  @Override
+  public void setAutomaticUpdate(boolean auto) {
+    this.automaticUpdate = auto;
+  }
+
+  /**
+   * Signale une modification de la collection. L'arbre n'est pas modifié : il
+   * sera reconstruit à partir de la collection lors de la prochaine requête.
+   */
+  @Override
+  public void update(Feat value, int cas) {
+    this.dirty = true;
+  }
+
+  // ===============================================
+  // REQUETES
+  // ===============================================
+
+  /**
+   * Appelle le visiteur pour chaque objet dont l'enveloppe intersecte le
+   * rectangle donné. Aucune allocation n'est faite.
+   *
+   * @param minX abscisse minimale du rectangle
+   * @param minY ordonnée minimale du rectangle
+   * @param maxX abscisse maximale du rectangle
+   * @param maxY ordonnée maximale du rectangle
+   * @param visitor visiteur appelé pour chaque objet trouvé
+   */
+  public void visit(double minX, double minY, double maxX, double maxY,
+      SpatialIndexVisitor<Feat> visitor) {
+    Tree t = this.getTree();
+    if (t == null || t.features.length == 0) {
+      return;
+    }
+    PackedRTree.visit(t, t.levelEnds.length - 1, t.root(), minX, minY, maxX,
+        maxY, visitor);
+  }
+
+  /**
+   * Appelle le visiteur pour chaque objet dont l'enveloppe intersecte
+   * l'enveloppe donnée. Aucune allocation n'est faite.
+   *
+   * @param env enveloppe recherchée
+   * @param visitor visiteur appelé pour chaque objet trouvé
+   */
+  public void visit(IEnvelope env, SpatialIndexVisitor<Feat> visitor) {
+    this.visit(env.minX(), env.minY(), env.maxX(), env.maxY(), visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <Feat extends IFeature> boolean visit(Tree t, int level,
+      int pos, double minX, double minY, double maxX, double maxY,
+      SpatialIndexVisitor<Feat> visitor) {
+    int b = 4 * pos;
+    if (t.boxes[b] > maxX || t.boxes[b + 1] > maxY || t.boxes[b + 2] < minX
+        || t.boxes[b + 3] < minY) {
+      return true;
+    }
+    if (level == 0) {
+      return visitor.visit((Feat) t.features[pos]);
+    }
+    int first = t.levelStart(level - 1) + (pos - t.levelStart(level))
+        * t.nodeCapacity;
+    int last = Math.min(first + t.nodeCapacity, t.levelEnds[level - 1]);
+    for (int child = first; child < last; child++) {
+      if (!PackedRTree.visit(t, level - 1, child, minX, minY, maxX, maxY,
+          visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Collection<Feat> select(IDirectPosition P, double D) {
+    return this.select(new GM_Envelope(P, D));
+  }
+
+  @Override
+  public Collection<Feat> select(IEnvelope env) {
+    final List<Feat> result = new ArrayList<Feat>();
+    if (env == null) {
+      return result;
+    }
+    final IGeometry geometry = (env.maxX() == env.minX() && env.maxY() == env
+        .minY()) ? new GM_Point(env.getUpperCorner()) : new GM_Polygon(env);
+    this.visit(env, new SpatialIndexVisitor<Feat>() {
+      @Override
+      public boolean visit(Feat feature) {
+        if (geometry.intersects(feature.getGeom())) {
+          result.add(feature);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  @Override
+  public Collection<Feat> select(final IGeometry geometry) {
+    return this.select(geometry, false);
+  }
+
+  @Override
+  public Collection<Feat> select(final IGeometry geometry,
+      final boolean strictlyCrosses) {
+    final List<Feat> result = new ArrayList<Feat>();
+    IEnvelope env = geometry.envelope();
+    if (env == null) {
+      return result;
+    }
+    this.visit(env, new SpatialIndexVisitor<Feat>() {
+      @Override
+      public boolean visit(Feat feature) {
+        IGeometry geom = feature.getGeom();
+        if (strictlyCrosses ? geometry.crosses(geom) : geometry
+            .intersects(geom)) {
+          result.add(feature);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Selection des objets à moins d'une distance donnée d'un objet géométrique.
+   * Contrairement au dallage, aucun buffer n'est calculé : les candidats sont
+   * trouvés par l'enveloppe de la géométrie élargie de la distance puis filtrés
+   * par la distance exacte.
+   */
+  @Override
+  public Collection<Feat> select(final IGeometry geometry,
+      final double distance) {
+    if (distance == 0) {
+      return this.select(geometry);
+    }
+    final List<Feat> result = new ArrayList<Feat>();
+    IEnvelope env = geometry.envelope();
+    if (env == null) {
+      return result;
+    }
+    this.visit(env.minX() - distance, env.minY() - distance, env.maxX()
+        + distance, env.maxY() + distance, new SpatialIndexVisitor<Feat>() {
+      @Override
+      public boolean visit(Feat feature) {
+        if (feature.getGeom().distance(geometry) <= distance) {
+          result.add(feature);
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Recherche des plus proches voisins au meilleur d'abord : les noeuds sont
+   * parcourus par distance croissante de leur enveloppe (cf.
+   * {@link NearestNeighbourSearch}).
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<Feat> nearest(IGeometry geometry, int k, double maxDistance) {
+    final Tree t = this.getTree();
+    NearestNeighbourSearch<Feat> search = new NearestNeighbourSearch<Feat>(
+        geometry, k, maxDistance, false);
+    if (t == null || t.features.length == 0 || k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    int root = t.root();
+    if (t.levelEnds.length == 1) {
+      // un seul objet : la racine est une feuille
+      search.offerFeature((Feat) t.features[root],
+          PackedRTree.lowerBound(search, t, root));
+    } else {
+      search.offerNode(PackedRTree.node(t.levelEnds.length - 1, root),
+          PackedRTree.lowerBound(search, t, root));
+    }
+    return search.run(new NearestNeighbourSearch.NodeExpander<Feat>() {
+      @Override
+      public void expand(Object node, NearestNeighbourSearch<Feat> s) {
+        long n = ((Long) node).longValue();
+        int level = (int) (n >>> 32);
+        int pos = (int) n;
+        int first = t.levelStart(level - 1) + (pos - t.levelStart(level))
+            * t.nodeCapacity;
+        int last = Math.min(first + t.nodeCapacity, t.levelEnds[level - 1]);
+        for (int child = first; child < last; child++) {
+          double bound = PackedRTree.lowerBound(s, t, child);
+          if (level == 1) {
+            s.offerFeature((Feat) t.features[child], bound);
+          } else {
+            s.offerNode(PackedRTree.node(level - 1, child), bound);
+          }
+        }
+      }
+    });
+  }
+
+  /** Identifiant d'un noeud pour la recherche des plus proches voisins. */
+  private static Long node(int level, int pos) {
+    return Long.valueOf(((long) level << 32) | pos);
+  }
+
+  private static double lowerBound(NearestNeighbourSearch<?> search, Tree t,
+      int pos) {
+    int b = 4 * pos;
+    return search.lowerBound(t.boxes[b], t.boxes[b + 1], t.boxes[b + 2],
+        t.boxes[b + 3]);
+  }
+
+  @Override
+  public void clear() {
+    this.collection = null;
+    this.tree = new Tree(new IFeature[0], new double[0], new int[] { 0 },
+        this.nodeCapacity);
+    this.dirty = false;
+  }
+}
@@ -9,6 +9,7 @@
  ******************************************************************************/
 package fr.ign.cogit.geoxygene.util.index;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -33,18 +34,29 @@ public class QuadTreeJts<Feat extends IFeature> extends IndexTree<Feat> {
 
   static Logger logger = Logger.getLogger(QuadTreeJts.class.getName());
   private Quadtree quad;
+  /** Emprise des objets indexés. */
+  private Envelope extent = new Envelope();
 
   public QuadTreeJts(IFeatureCollection<Feat> collection) {
     this.collection = collection;
     quad = new Quadtree();
     for (int i = 0; i < collection.size(); ++i) {
       IEnvelope egeox = collection.get(i).getGeom().getEnvelope();
-      Envelope envelopeJts = new Envelope(egeox.maxX(), egeox.minX(),
-          egeox.maxY(), egeox.minY());
-      quad.insert(envelopeJts, i);
+      this.insert(new Envelope(egeox.maxX(), egeox.minX(), egeox.maxY(),
+          egeox.minY()), i);
     }
   }
 
+  /**
+   * Insère l'indice d'un objet dans le quadtree. Toute insertion doit passer
+   * par cette méthode, qui tient à jour l'emprise utilisée par
+   * {@link #nearest(IGeometry, int, double)}.
+   */
+  private void insert(Envelope envelopeJts, int i) {
+    this.quad.insert(envelopeJts, i);
+    this.extent.expandToInclude(envelopeJts);
+  }
+
   /**
    * Not currently implemented
    */
@@ -144,6 +156,43 @@ public class QuadTreeJts<Feat extends IFeature> extends IndexTree<Feat> {
     return null;
   }
 
+  /**
+   * Recherche des plus proches voisins. Le Quadtree de JTS ne donnant pas
+   * accès à ses noeuds, la recherche se fait par fenêtres croissantes : les
+   * objets dont l'enveloppe intersecte l'enveloppe de la géométrie agrandie
+   * de r sont classés par distance (cf. {@link NearestNeighbourSearch}), et r
+   * est doublé tant que moins de k objets sont à moins de r.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<Feat> nearest(IGeometry geometry, int k, double maxDistance) {
+    if (this.quad.isEmpty() || k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    IEnvelope egeox = geometry.getEnvelope();
+    double width = Math.max(this.extent.getWidth(), this.extent.getHeight());
+    // taille moyenne d'une case contenant k objets
+    double r = Math.max(width * Math.sqrt((double) k / this.quad.size()),
+        Double.MIN_NORMAL);
+    while (true) {
+      double radius = Math.min(r, maxDistance);
+      Envelope window = new Envelope(egeox.minX() - radius, egeox.maxX()
+          + radius, egeox.minY() - radius, egeox.maxY() + radius);
+      NearestNeighbourSearch<Feat> search = new NearestNeighbourSearch<Feat>(
+          geometry, k, radius, false);
+      for (int ind : (List<Integer>) this.quad.query(window)) {
+        Feat f = this.collection.get(ind);
+        search.offerFeature(f, search.lowerBound(f.getGeom().getEnvelope()));
+      }
+      List<Feat> result = search.run(null);
+      if (result.size() == k || radius >= maxDistance
+          || window.contains(this.extent)) {
+        return result;
+      }
+      r *= 2;
+    }
+  }
+
   @Override
   public void clear() {
     super.clear();
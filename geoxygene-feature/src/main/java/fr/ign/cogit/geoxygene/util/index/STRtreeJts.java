@@ -9,6 +9,7 @@
  ******************************************************************************/
 package fr.ign.cogit.geoxygene.util.index;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -16,6 +17,9 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.AbstractNode;
+import com.vividsolutions.jts.index.strtree.Boundable;
+import com.vividsolutions.jts.index.strtree.ItemBoundable;
 import com.vividsolutions.jts.index.strtree.STRtree;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
@@ -143,6 +147,44 @@ public class STRtreeJts<Feat extends IFeature> extends IndexTree<Feat> {
     return null;
   }
 
+  /**
+   * Recherche des plus proches voisins au meilleur d'abord dans les noeuds du
+   * STRtree (cf. {@link NearestNeighbourSearch}).
+   */
+  @Override
+  public List<Feat> nearest(IGeometry geometry, int k, double maxDistance) {
+    NearestNeighbourSearch<Feat> search = new NearestNeighbourSearch<Feat>(
+        geometry, k, maxDistance, false);
+    if (this.stree.isEmpty() || k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    AbstractNode root = this.stree.getRoot();
+    search.offerNode(root, STRtreeJts.lowerBound(search, root));
+    return search.run(new NearestNeighbourSearch.NodeExpander<Feat>() {
+      @Override
+      public void expand(Object node, NearestNeighbourSearch<Feat> s) {
+        for (Object child : ((AbstractNode) node).getChildBoundables()) {
+          Boundable boundable = (Boundable) child;
+          double bound = STRtreeJts.lowerBound(s, boundable);
+          if (boundable instanceof ItemBoundable) {
+            int ind = ((Integer) ((ItemBoundable) boundable).getItem())
+                .intValue();
+            s.offerFeature(STRtreeJts.this.collection.get(ind), bound);
+          } else {
+            s.offerNode(boundable, bound);
+          }
+        }
+      }
+    });
+  }
+
+  private static double lowerBound(NearestNeighbourSearch<?> search,
+      Boundable boundable) {
+    Envelope env = (Envelope) boundable.getBounds();
+    return search.lowerBound(env.getMinX(), env.getMinY(), env.getMaxX(),
+        env.getMaxY());
+  }
+
   @Override
   public void clear() {
     super.clear();
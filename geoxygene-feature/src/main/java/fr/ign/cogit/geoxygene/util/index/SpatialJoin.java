@@ -0,0 +1,444 @@
+/**
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ *
+ */
+
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+
+/**
+ * Jointure spatiale entre deux collections : recherche de tous les couples
+ * (objet de gauche, objet de droite) vérifiant un prédicat spatial, sans
+ * boucle "pour chaque objet, select sur l'autre population".
+ * <p>
+ * Pour les prédicats {@link Predicate#INTERSECTS},
+ * {@link Predicate#WITHIN_DISTANCE} et {@link Predicate#CONTAINS}, les couples
+ * candidats sont trouvés par balayage des enveloppes triées selon x (plane
+ * sweep), sans index sur les collections, puis filtrés par le prédicat exact.
+ * Une même géométrie étant testée contre tous ses candidats, elle est
+ * préparée par JTS dès qu'elle est assez réutilisée (cf.
+ * <code>JtsPeer</code>). Avec plusieurs fils d'exécution, le plan est découpé
+ * en bandes verticales balayées en parallèle ; un couple présent dans
+ * plusieurs bandes n'est traité que dans l'une d'elles.
+ * <p>
+ * Pour {@link Predicate#NEAREST}, les k plus proches objets de droite de
+ * chaque objet de gauche sont cherchés dans un {@link PackedRTree}.
+ * <p>
+ * Les couples sont transmis au fil de l'eau à un {@link PairVisitor} (
+ * {@link #run(PairVisitor)}) ou regroupés par objet de gauche (
+ * {@link #join()}).
+ *
+ * @param <A> type des objets de gauche
+ * @param <B> type des objets de droite
+ */
+public class SpatialJoin<A extends IFeature, B extends IFeature> {
+  static Logger logger = Logger.getLogger(SpatialJoin.class.getName());
+
+  /** Prédicats de jointure. */
+  public enum Predicate {
+    /** la géométrie de gauche intersecte celle de droite */
+    INTERSECTS,
+    /** les géométries sont à moins de la distance de jointure */
+    WITHIN_DISTANCE,
+    /** la géométrie de gauche contient celle de droite */
+    CONTAINS,
+    /**
+     * l'objet de droite est l'un des k plus proches de l'objet de gauche, à
+     * moins de la distance de jointure
+     */
+    NEAREST
+  }
+
+  /** Traitement des couples trouvés par la jointure. */
+  public interface PairVisitor<A extends IFeature, B extends IFeature> {
+    /**
+     * Traite un couple. Avec plusieurs fils d'exécution, cette méthode est
+     * appelée en parallèle et doit donc être thread-safe.
+     * @param left objet de gauche
+     * @param right objet de droite
+     */
+    public void visit(A left, B right);
+  }
+
+  /** Objet d'une des deux collections avec son enveloppe. */
+  private static final class Item {
+    final IFeature feature;
+    final double minX, minY, maxX, maxY;
+
+    Item(IFeature feature, IEnvelope env, double margin) {
+      this.feature = feature;
+      this.minX = env.minX() - margin;
+      this.minY = env.minY() - margin;
+      this.maxX = env.maxX() + margin;
+      this.maxY = env.maxY() + margin;
+    }
+  }
+
+  private static final Comparator<Item> MIN_X = new Comparator<Item>() {
+    @Override
+    public int compare(Item i1, Item i2) {
+      return Double.compare(i1.minX, i2.minX);
+    }
+  };
+
+  private final IFeatureCollection<? extends A> left;
+  private final IFeatureCollection<? extends B> right;
+  private final Predicate predicate;
+  private double distance;
+  private int k = 1;
+  private int threads = 1;
+
+  /**
+   * @param left collection de gauche
+   * @param right collection de droite
+   * @param predicate prédicat de jointure
+   */
+  public SpatialJoin(IFeatureCollection<? extends A> left,
+      IFeatureCollection<? extends B> right, Predicate predicate) {
+    this.left = left;
+    this.right = right;
+    this.predicate = predicate;
+    this.distance = (predicate == Predicate.NEAREST) ? Double.POSITIVE_INFINITY
+        : 0;
+  }
+
+  /** @return la distance de jointure */
+  public double getDistance() {
+    return this.distance;
+  }
+
+  /**
+   * Distance de jointure : distance maximale pour
+   * {@link Predicate#WITHIN_DISTANCE}, distance maximale des voisins pour
+   * {@link Predicate#NEAREST} ({@link Double#POSITIVE_INFINITY} pour ne pas la
+   * limiter, valeur par défaut).
+   */
+  public void setDistance(double distance) {
+    this.distance = distance;
+  }
+
+  /** @return le nombre de voisins recherchés pour {@link Predicate#NEAREST} */
+  public int getK() {
+    return this.k;
+  }
+
+  /** Nombre de voisins recherchés pour {@link Predicate#NEAREST}. */
+  public void setK(int k) {
+    this.k = k;
+  }
+
+  /** @return le nombre de fils d'exécution */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Nombre de fils d'exécution utilisés par la jointure (1 par défaut : tout
+   * est fait dans le fil appelant). Au-delà de 1, le travail est découpé en
+   * tâches exécutées sur le {@link ForkJoinPool#commonPool()}, dont la taille
+   * borne le nombre de fils effectivement utilisés.
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  // ===============================================
+  // JOINTURE
+  // ===============================================
+
+  /**
+   * Effectue la jointure et regroupe les objets de droite par objet de gauche.
+   * Les objets de gauche sont dans l'ordre de leur collection, et pour chacun
+   * les objets de droite dans l'ordre de la leur (par distance croissante pour
+   * {@link Predicate#NEAREST}). Les objets de gauche sans correspondant
+   * n'apparaissent pas.
+   * @return les objets de droite joints à chaque objet de gauche
+   */
+  public Map<A, List<B>> join() {
+    final Map<IFeature, Integer> leftRanks = new HashMap<IFeature, Integer>();
+    int rank = 0;
+    for (A feature : this.left) {
+      leftRanks.put(feature, Integer.valueOf(rank++));
+    }
+    final List<List<B>> matches = new ArrayList<List<B>>(
+        Collections.<List<B>> nCopies(rank, null));
+    this.run(new PairVisitor<A, B>() {
+      @Override
+      public void visit(A a, B b) {
+        int r = leftRanks.get(a).intValue();
+        synchronized (matches) {
+          List<B> list = matches.get(r);
+          if (list == null) {
+            list = new ArrayList<B>(2);
+            matches.set(r, list);
+          }
+          list.add(b);
+        }
+      }
+    });
+    final Map<IFeature, Integer> rightRanks = new HashMap<IFeature, Integer>();
+    if (this.predicate != Predicate.NEAREST) {
+      rank = 0;
+      for (B feature : this.right) {
+        rightRanks.put(feature, Integer.valueOf(rank++));
+      }
+    }
+    Map<A, List<B>> result = new LinkedHashMap<A, List<B>>();
+    rank = 0;
+    for (A feature : this.left) {
+      List<B> list = matches.get(rank++);
+      if (list == null) {
+        continue;
+      }
+      if (this.predicate != Predicate.NEAREST) {
+        // l'ordre d'arrivée dépend du balayage : on rétablit celui de la
+        // collection de droite
+        Collections.sort(list, new Comparator<B>() {
+          @Override
+          public int compare(B b1, B b2) {
+            return rightRanks.get(b1).intValue()
+                - rightRanks.get(b2).intValue();
+          }
+        });
+      }
+      result.put(feature, list);
+    }
+    return result;
+  }
+
+  /**
+   * Effectue la jointure en transmettant chaque couple trouvé au visiteur.
+   * @param visitor traitement des couples
+   */
+  public void run(PairVisitor<A, B> visitor) {
+    if (this.predicate == Predicate.NEAREST) {
+      this.runNearest(visitor);
+      return;
+    }
+    double margin = (this.predicate == Predicate.WITHIN_DISTANCE) ? this.distance
+        : 0;
+    Item[] leftItems = SpatialJoin.items(this.left, margin);
+    Item[] rightItems = SpatialJoin.items(this.right, 0);
+    if (leftItems.length == 0 || rightItems.length == 0) {
+      return;
+    }
+    Arrays.sort(leftItems, SpatialJoin.MIN_X);
+    Arrays.sort(rightItems, SpatialJoin.MIN_X);
+    if (this.threads == 1) {
+      this.sweep(leftItems, rightItems, Double.NEGATIVE_INFINITY,
+          Double.POSITIVE_INFINITY, visitor);
+      return;
+    }
+    // bandes contenant à peu près le même nombre d'objets de gauche
+    int strips = Math.min(4 * this.threads, leftItems.length);
+    final double[] bounds = new double[strips + 1];
+    bounds[0] = Double.NEGATIVE_INFINITY;
+    bounds[strips] = Double.POSITIVE_INFINITY;
+    for (int s = 1; s < strips; s++) {
+      bounds[s] = leftItems[s * leftItems.length / strips].minX;
+    }
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(strips);
+    for (int s = 0; s < strips; s++) {
+      final double from = bounds[s];
+      final double to = bounds[s + 1];
+      if (!(from < to)) {
+        continue;
+      }
+      final Item[] l = SpatialJoin.clip(leftItems, from, to);
+      final Item[] r = SpatialJoin.clip(rightItems, from, to);
+      final PairVisitor<A, B> v = visitor;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          SpatialJoin.this.sweep(l, r, from, to, v);
+          return null;
+        }
+      });
+    }
+    this.execute(tasks);
+  }
+
+  /** Objets d'une collection ayant une géométrie, avec leur enveloppe. */
+  private static Item[] items(IFeatureCollection<? extends IFeature> fc,
+      double margin) {
+    List<Item> items = new ArrayList<Item>(fc.size());
+    for (IFeature feature : fc) {
+      IGeometry geom = feature.getGeom();
+      IEnvelope env = (geom == null) ? null : geom.envelope();
+      if (env != null && !env.isEmpty()) {
+        items.add(new Item(feature, env, margin));
+      }
+    }
+    return items.toArray(new Item[items.size()]);
+  }
+
+  /** Objets (triés) dont l'enveloppe intersecte la bande [from, to[. */
+  private static Item[] clip(Item[] items, double from, double to) {
+    List<Item> clipped = new ArrayList<Item>();
+    for (Item item : items) {
+      if (item.minX >= to) {
+        break;
+      }
+      if (item.maxX >= from) {
+        clipped.add(item);
+      }
+    }
+    return clipped.toArray(new Item[clipped.size()]);
+  }
+
+  /**
+   * Balayage des deux listes triées selon xmin : chaque couple d'enveloppes
+   * qui se recouvrent est rencontré exactement une fois. Dans une bande
+   * [from, to[, seuls les couples dont le recouvrement commence dans la bande
+   * sont traités.
+   */
+  private void sweep(Item[] l, Item[] r, double from, double to,
+      PairVisitor<A, B> visitor) {
+    int i = 0, j = 0;
+    while (i < l.length && j < r.length) {
+      if (l[i].minX <= r[j].minX) {
+        Item a = l[i++];
+        for (int n = j; n < r.length && r[n].minX <= a.maxX; n++) {
+          this.test(a, r[n], from, to, visitor);
+        }
+      } else {
+        Item b = r[j++];
+        for (int n = i; n < l.length && l[n].minX <= b.maxX; n++) {
+          this.test(l[n], b, from, to, visitor);
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void test(Item a, Item b, double from, double to,
+      PairVisitor<A, B> visitor) {
+    if (a.minY > b.maxY || b.minY > a.maxY) {
+      return;
+    }
+    double start = Math.max(a.minX, b.minX);
+    if (start < from || start >= to) {
+      return;
+    }
+    IGeometry ga = a.feature.getGeom();
+    IGeometry gb = b.feature.getGeom();
+    boolean match;
+    switch (this.predicate) {
+      case INTERSECTS:
+        match = ga.intersects(gb);
+        break;
+      case WITHIN_DISTANCE:
+        match = ga.distance(gb) <= this.distance;
+        break;
+      default:
+        // l'enveloppe de droite doit être dans celle de gauche
+        match = b.minX >= a.minX && b.maxX <= a.maxX && b.minY >= a.minY
+            && b.maxY <= a.maxY && ga.contains(gb);
+    }
+    if (match) {
+      visitor.visit((A) a.feature, (B) b.feature);
+    }
+  }
+
+  /** Jointure par plus proches voisins, dans un R-tree compact. */
+  @SuppressWarnings("unchecked")
+  private void runNearest(final PairVisitor<A, B> visitor) {
+    final PackedRTree<B> index = new PackedRTree<B>(
+        (IFeatureCollection<B>) this.right, Boolean.FALSE);
+    final List<A> features = new ArrayList<A>(this.left.size());
+    for (A feature : this.left) {
+      if (feature.getGeom() != null) {
+        features.add(feature);
+      }
+    }
+    int chunks = (this.threads == 1) ? 1 : Math.min(4 * this.threads,
+        features.size());
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+    for (int c = 0; c < chunks; c++) {
+      final int from = c * features.size() / chunks;
+      final int to = (c + 1) * features.size() / chunks;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          for (A feature : features.subList(from, to)) {
+            for (B neighbour : index.nearest(feature.getGeom(),
+                SpatialJoin.this.k, SpatialJoin.this.distance)) {
+              visitor.visit(feature, neighbour);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    this.execute(tasks);
+  }
+
+  /**
+   * Exécute les tâches, dans le fil appelant s'il n'y a qu'un fil, sur le
+   * {@link ForkJoinPool#commonPool()} sinon.
+   */
+  private void execute(List<Callable<Object>> tasks) {
+    if (this.threads == 1 || tasks.size() <= 1) {
+      for (Callable<Object> task : tasks) {
+        try {
+          task.call();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return;
+    }
+    try {
+      for (Future<Object> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      SpatialJoin.logger.error("Spatial join interrupted"); //$NON-NLS-1$
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+}
@@ -29,6 +29,7 @@
 package fr.ign.cogit.geoxygene.util.index;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -50,6 +51,10 @@ import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 
 /**
  * Index spatial par simple dallage.
+ * <p>
+ * Les requêtes et mises à jour sont synchronisées sur l'ensemble du dallage :
+ * pour une population modifiée pendant qu'elle est lue (édition et affichage
+ * simultanés), voir {@link ConcurrentTiling}.
  * 
  * @author Thierry Badard
  * @author Arnaud Braun
@@ -82,6 +87,16 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
    */
   private List<Feat>[][] index;
 
+  /**
+   * Enveloppes des objets de chaque dalle, rangées dans le même ordre que
+   * {@link #index} sous forme compacte : xmin, ymin, xmax, ymax pour chaque
+   * objet. Elles sont calculées à l'insertion, ce qui évite de recalculer
+   * l'enveloppe de chaque candidat à chaque requête. Comme l'appartenance aux
+   * dalles, elles ne suivent les modifications de géométrie que si l'index est
+   * mis à jour ({@link #update(IFeature, int)} avec <code>cas = 0</code>).
+   */
+  private double[][][] boites;
+
   // ===============================================
   /** Taille du dallage (nombre de rectangles par cote). */
   private int size;
@@ -267,19 +282,23 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
         && env.getUpperCorner().getY() == env.getLowerCorner().getY()) {
       geometry = new GM_Point(env.getUpperCorner());
     }
+    double minX = env.minX(), minY = env.minY();
+    double maxX = env.maxX(), maxY = env.maxY();
     int tab[] = this.dallesIntersectees(env);
     for (int i = tab[0]; i <= tab[1]; i++) {
       for (int j = tab[2]; j <= tab[3]; j++) {
         synchronized (this.index) {
-          int tileSize = this.index[i][j].size();
-          for (int ind = 0; ind < tileSize; ind++) {
-            Feat feature = this.index[i][j].get(ind);
-            IGeometry geom = feature.getGeom();
-            if (geom == null) {
+          List<Feat> tile = this.index[i][j];
+          double[] b = this.boites[i][j];
+          int tileSize = tile.size();
+          for (int ind = 0, k = 0; ind < tileSize; ind++, k += 4) {
+            if (b[k] > maxX || b[k + 2] < minX || b[k + 1] > maxY
+                || b[k + 3] < minY) {
               continue;
             }
-            IEnvelope envCourante = geom.envelope();
-            if (env.overlaps(envCourante) && geometry.intersects(geom)) {
+            Feat feature = tile.get(ind);
+            IGeometry geom = feature.getGeom();
+            if (geom != null && geometry.intersects(geom)) {
               result.add(feature);
             }
           }
@@ -304,11 +323,14 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
       for (int j = tab[2]; j <= tab[3]; j++) {
         if (geometry.intersects(this.dallesPolygones[i][j])) {
           synchronized (this.index) {
-            for (Feat feature : this.index[i][j]) {
+            List<Feat> tile = this.index[i][j];
+            for (int ind = 0; ind < tile.size(); ind++) {
+              if (!this.chevauche(i, j, ind, envGeometry)) {
+                continue;
+              }
+              Feat feature = tile.get(ind);
               IGeometry geom = feature.getGeom();
-              IEnvelope envCourante = geom.envelope();
-              if (envCourante != null && envGeometry.overlaps(envCourante)
-                  && geometry.intersects(geom)) {
+              if (geom != null && geometry.intersects(geom)) {
                 result.add(feature);
               }
             }
@@ -329,10 +351,14 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
       for (int j = tab[2]; j <= tab[3]; j++) {
         if (geometry.intersects(this.dallesPolygones[i][j])) {
           synchronized (this.index) {
-            for (Feat feature : this.index[i][j]) {
+            List<Feat> tile = this.index[i][j];
+            for (int ind = 0; ind < tile.size(); ind++) {
+              if (!this.chevauche(i, j, ind, envGeometry)) {
+                continue;
+              }
+              Feat feature = tile.get(ind);
               IGeometry geom = feature.getGeom();
-              IEnvelope envCourante = geom.envelope();
-              if (envGeometry.overlaps(envCourante)
+              if (geom != null
                   && (strictlyCrosses ? (geometry.crosses(geom)) : (geometry
                       .intersects(geom)))) {
                 result.add(feature);
@@ -360,6 +386,93 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
     }
   }
 
+  /**
+   * Recherche des plus proches voisins au meilleur d'abord : les dalles sont
+   * parcourues par distance croissante (cf. {@link NearestNeighbourSearch}).
+   * Les dalles du bord sont prolongées à l'infini vers l'extérieur pour tenir
+   * compte des objets qui dépassent du dallage.
+   */
+  @Override
+  public List<Feat> nearest(IGeometry geometry, int k, double maxDistance) {
+    NearestNeighbourSearch<Feat> search = new NearestNeighbourSearch<Feat>(
+        geometry, k, maxDistance, true);
+    if (k <= 0) {
+      return new ArrayList<Feat>(0);
+    }
+    for (int i = 0; i < this.size; i++) {
+      for (int j = 0; j < this.size; j++) {
+        search.offerNode(Integer.valueOf(i * this.size + j),
+            this.lowerBound(search, i, j));
+      }
+    }
+    return search.run(new NearestNeighbourSearch.NodeExpander<Feat>() {
+      @Override
+      public void expand(Object node, NearestNeighbourSearch<Feat> s) {
+        int tile = ((Integer) node).intValue();
+        int i = tile / Tiling.this.size;
+        int j = tile % Tiling.this.size;
+        synchronized (Tiling.this.index) {
+          List<Feat> features = Tiling.this.index[i][j];
+          double[] b = Tiling.this.boites[i][j];
+          for (int ind = 0, k = 0; ind < features.size(); ind++, k += 4) {
+            s.offerFeature(features.get(ind),
+                s.lowerBound(b[k], b[k + 1], b[k + 2], b[k + 3]));
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Vrai si l'enveloppe du ind-ième objet de la dalle i,j intersecte
+   * l'enveloppe donnée.
+   */
+  private boolean chevauche(int i, int j, int ind, IEnvelope env) {
+    double[] b = this.boites[i][j];
+    int k = 4 * ind;
+    return !(b[k] > env.maxX() || b[k + 2] < env.minX()
+        || b[k + 1] > env.maxY() || b[k + 3] < env.minY());
+  }
+
+  /** Ajoute un objet et son enveloppe à la dalle i,j. */
+  private void ajoute(int i, int j, Feat feature, IEnvelope env) {
+    List<Feat> tile = this.index[i][j];
+    double[] b = this.boites[i][j];
+    int k = 4 * tile.size();
+    if (k + 4 > b.length) {
+      b = Arrays.copyOf(b, Math.max(8, 2 * b.length));
+      this.boites[i][j] = b;
+    }
+    b[k] = env.minX();
+    b[k + 1] = env.minY();
+    b[k + 2] = env.maxX();
+    b[k + 3] = env.maxY();
+    tile.add(feature);
+  }
+
+  /** Retire un objet et son enveloppe de la dalle i,j. */
+  private void retire(int i, int j, Feat feature) {
+    List<Feat> tile = this.index[i][j];
+    double[] b = this.boites[i][j];
+    int ind = tile.indexOf(feature);
+    while (ind >= 0) {
+      System.arraycopy(b, 4 * (ind + 1), b, 4 * ind,
+          4 * (tile.size() - ind - 1));
+      tile.remove(ind);
+      ind = tile.indexOf(feature);
+    }
+  }
+
+  /** Distance de la géométrie recherchée à la dalle i,j. */
+  private double lowerBound(NearestNeighbourSearch<Feat> search, int i, int j) {
+    IEnvelope env = this.dallage[i][j];
+    double minX = (i == 0) ? Double.NEGATIVE_INFINITY : env.minX();
+    double maxX = (i == this.size - 1) ? Double.POSITIVE_INFINITY : env.maxX();
+    double minY = (j == 0) ? Double.NEGATIVE_INFINITY : env.minY();
+    double maxY = (j == this.size - 1) ? Double.POSITIVE_INFINITY : env.maxY();
+    return search.lowerBound(minX, minY, maxX, maxY);
+  }
+
   // ===============================================
   // CONSTRUCTEURS
   // ===============================================
@@ -388,9 +501,11 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
     this.dallage = new GM_Envelope[this.size][this.size];
     this.automaticUpdate = automaticUpd.booleanValue();
     this.index = new List[this.size][this.size];
+    this.boites = new double[this.size][this.size][];
     for (int i = 0; i < this.size; i++) {
       for (int j = 0; j < this.size; j++) {
         this.index[i][j] = new ArrayList<Feat>(0);
+        this.boites[i][j] = new double[0];
       }
     }
     if (envelope != null) {
@@ -442,7 +557,7 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
       for (int i = tab[0]; i <= tab[1]; i++) {
         for (int j = tab[2]; j <= tab[3]; j++) {
           if (geom.intersects(this.dallesPolygones[i][j])) {
-            this.index[i][j].add(feature);
+            this.ajoute(i, j, feature, envObjet);
           }
         }
       }
@@ -527,22 +642,16 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
         for (int j = tab[2]; j <= tab[3]; j++) {
           if (geom.intersects(this.dallesPolygones[i][j])) {
             synchronized (this.index) {
-              this.index[i][j].add(value);
+              this.ajoute(i, j, value, envObjet);
             }
           }
         }
       }
     } else if (cas == -1) {// suppression
-      IEnvelope[] envs = this.getDallage(value);
-      for (@SuppressWarnings("unused")
-      IEnvelope env : envs) {
-        Iterator<List<Integer>> itDallesConcernees = this.getNumDallage(value)
-            .iterator();
-        while (itDallesConcernees.hasNext()) {
-          List<Integer> num = itDallesConcernees.next();
-          synchronized (this.index) {
-            this.index[(num.get(0)).intValue()][(num.get(1)).intValue()]
-                .remove(value);
+      synchronized (this.index) {
+        for (int i = 0; i < this.size; i++) {
+          for (int j = 0; j < this.size; j++) {
+            this.retire(i, j, value);
           }
         }
       }
@@ -561,6 +670,7 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
       this.index[i] = null;
     }
     this.index = null;
+    this.boites = null;
     this.dallage = null;
     this.dallesPolygones = null;
   }
@@ -0,0 +1,157 @@
+package fr.ign.cogit.geoxygene.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AttributeColumnsTest {
+
+  @Test
+  public void testTypedColumns() {
+    AttributeColumns columns = new AttributeColumns(2, Double.class,
+        Integer.class, Long.class, String.class);
+    for (int i = 0; i < 10; i++) {
+      columns.addRow(new Object[] { Double.valueOf(i / 2.0),
+          Integer.valueOf(i), Long.valueOf(1L << (30 + i)),
+          (i % 2 == 0) ? "pair" : "impair" }); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    Assert.assertEquals(10, columns.size());
+    Assert.assertEquals(AttributeColumns.Type.DOUBLE, columns.getType(0));
+    Assert.assertEquals(AttributeColumns.Type.INTEGER, columns.getType(1));
+    Assert.assertEquals(AttributeColumns.Type.LONG, columns.getType(2));
+    Assert.assertEquals(AttributeColumns.Type.STRING, columns.getType(3));
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(i / 2.0, columns.getDouble(i, 0), 0);
+      Assert.assertEquals(Double.valueOf(i / 2.0), columns.get(i, 0));
+      Assert.assertEquals(i, columns.getInt(i, 1));
+      Assert.assertEquals(Integer.valueOf(i), columns.get(i, 1));
+      Assert.assertEquals(1L << (30 + i), columns.getLong(i, 2));
+      Assert.assertEquals(Long.valueOf(1L << (30 + i)), columns.get(i, 2));
+      Assert.assertEquals((i % 2 == 0) ? "pair" : "impair", //$NON-NLS-1$ //$NON-NLS-2$
+          columns.getString(i, 3));
+    }
+    // chaînes codées par dictionnaire
+    Assert.assertEquals(Arrays.asList("pair", "impair"), //$NON-NLS-1$ //$NON-NLS-2$
+        columns.getDictionary(3));
+    Assert.assertEquals(1, columns.getIntColumn(3)[5]);
+  }
+
+  @Test
+  public void testNullBitmap() {
+    AttributeColumns columns = new AttributeColumns(1, Double.class,
+        String.class, Date.class);
+    // plusieurs mots du masque, et plusieurs agrandissements
+    int n = 300;
+    for (int i = 0; i < n; i++) {
+      boolean isNull = (i % 7 == 0) || i == 63 || i == 64;
+      columns.addRow(isNull ? null : new Object[] { Double.valueOf(i),
+          "v" + i, new Date(i) }); //$NON-NLS-1$
+    }
+    for (int i = 0; i < n; i++) {
+      boolean isNull = (i % 7 == 0) || i == 63 || i == 64;
+      for (int col = 0; col < 3; col++) {
+        Assert.assertEquals(isNull, columns.isNull(i, col));
+        Assert.assertEquals(isNull, columns.get(i, col) == null);
+      }
+      if (isNull) {
+        Assert.assertTrue(Double.isNaN(columns.getDouble(i, 0)));
+        Assert.assertEquals(0, columns.getLong(i, 0));
+        Assert.assertNull(columns.getString(i, 1));
+      } else {
+        Assert.assertEquals(i, columns.getDouble(i, 0), 0);
+        Assert.assertEquals("v" + i, columns.getString(i, 1)); //$NON-NLS-1$
+        Assert.assertEquals(new Date(i), columns.get(i, 2));
+      }
+    }
+    // affecter une valeur efface le bit, une valeur nulle le remet
+    columns.set(63, 0, Double.valueOf(-1));
+    Assert.assertFalse(columns.isNull(63, 0));
+    Assert.assertTrue(columns.isNull(64, 0));
+    Assert.assertTrue(columns.isNull(63, 1));
+    Assert.assertEquals(-1, columns.getDouble(63, 0), 0);
+    columns.set(65, 0, null);
+    Assert.assertTrue(columns.isNull(65, 0));
+    Assert.assertFalse(columns.isNull(66, 0));
+    Assert.assertFalse(columns.isNull(1, 0));
+  }
+
+  @Test
+  public void testPromotionToObjectColumn() {
+    AttributeColumns columns = new AttributeColumns(Integer.class,
+        String.class);
+    columns.addRow(new Object[] { Integer.valueOf(1), "a" }); //$NON-NLS-1$
+    columns.addRow(new Object[] { null, null });
+    columns.addRow(new Object[] { Integer.valueOf(3), "c" }); //$NON-NLS-1$
+    // une valeur d'un autre type transforme la colonne en colonne d'objets
+    columns.addRow(new Object[] { Double.valueOf(4.5), Integer.valueOf(4) });
+    Assert.assertEquals(AttributeColumns.Type.OBJECT, columns.getType(0));
+    Assert.assertEquals(AttributeColumns.Type.OBJECT, columns.getType(1));
+    Assert.assertNull(columns.getDictionary(1));
+    Assert.assertEquals(Integer.valueOf(1), columns.get(0, 0));
+    Assert.assertEquals(Integer.valueOf(3), columns.get(2, 0));
+    Assert.assertEquals(Double.valueOf(4.5), columns.get(3, 0));
+    Assert.assertEquals("a", columns.get(0, 1)); //$NON-NLS-1$
+    Assert.assertEquals("c", columns.get(2, 1)); //$NON-NLS-1$
+    Assert.assertEquals(Integer.valueOf(4), columns.get(3, 1));
+    // les valeurs nulles sont conservées
+    Assert.assertTrue(columns.isNull(1, 0));
+    Assert.assertNull(columns.get(1, 0));
+    Assert.assertNull(columns.get(1, 1));
+    // accès typés sur une colonne d'objets
+    Assert.assertEquals(4.5, columns.getDouble(3, 0), 0);
+    Assert.assertEquals(3, columns.getInt(2, 0));
+    Assert.assertTrue(Double.isNaN(columns.getDouble(0, 1)));
+    Assert.assertEquals("4", columns.getString(3, 1)); //$NON-NLS-1$
+    // la colonne reste une colonne d'objets
+    columns.set(0, 0, Integer.valueOf(10));
+    Assert.assertEquals(AttributeColumns.Type.OBJECT, columns.getType(0));
+    Assert.assertEquals(Integer.valueOf(10), columns.get(0, 0));
+    columns.set(3, 0, null);
+    Assert.assertTrue(columns.isNull(3, 0));
+    Assert.assertNull(columns.get(3, 0));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testRowOutOfBounds() {
+    AttributeColumns columns = new AttributeColumns(Double.class);
+    columns.addRow(new Object[] { Double.valueOf(1) });
+    columns.get(1, 0);
+  }
+
+  @Test
+  public void testColumnize() {
+    List<DefaultFeature> features = new ArrayList<DefaultFeature>();
+    for (int i = 0; i < 100; i++) {
+      DefaultFeature feature = new DefaultFeature();
+      feature.setAttributes(new Object[] {
+          (i < 10) ? null : Double.valueOf(i), Integer.valueOf(i),
+          (i % 3 == 0) ? null : "n" + (i % 4) }); //$NON-NLS-1$
+      features.add(feature);
+    }
+    AttributeColumns columns = AttributeColumns.columnize(features);
+    Assert.assertEquals(100, columns.size());
+    // type donné par la première valeur non nulle
+    Assert.assertEquals(AttributeColumns.Type.DOUBLE, columns.getType(0));
+    Assert.assertEquals(AttributeColumns.Type.INTEGER, columns.getType(1));
+    Assert.assertEquals(AttributeColumns.Type.STRING, columns.getType(2));
+    for (int i = 0; i < 100; i++) {
+      DefaultFeature feature = features.get(i);
+      Assert.assertSame(columns, feature.getColumns());
+      Assert.assertEquals(i, feature.getRow());
+      Assert.assertEquals((i < 10) ? null : Double.valueOf(i), feature
+          .getAttribute(0));
+      Assert.assertEquals(i, feature.getInt(1));
+      Assert.assertEquals((i % 3 == 0) ? null : "n" + (i % 4), //$NON-NLS-1$
+          feature.getString(2));
+    }
+    // une valeur d'un autre type passe par la table
+    features.get(50).setAttribute(1, "cinquante"); //$NON-NLS-1$
+    Assert.assertEquals(AttributeColumns.Type.OBJECT, columns.getType(1));
+    Assert.assertEquals("cinquante", features.get(50).getAttribute(1)); //$NON-NLS-1$
+    Assert.assertEquals(Integer.valueOf(49), features.get(49).getAttribute(1));
+  }
+}
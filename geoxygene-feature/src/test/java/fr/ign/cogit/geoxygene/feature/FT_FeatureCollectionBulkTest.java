@@ -0,0 +1,201 @@
+package fr.ign.cogit.geoxygene.feature;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.event.FeatureCollectionEvent;
+import fr.ign.cogit.geoxygene.api.feature.event.FeatureCollectionListener;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.index.ConcurrentTiling;
+import fr.ign.cogit.geoxygene.util.index.Tiling;
+
+public class FT_FeatureCollectionBulkTest {
+
+  private static List<DefaultFeature> features(int n, long seed, double offset) {
+    Random random = new Random(seed);
+    List<DefaultFeature> features = new ArrayList<DefaultFeature>(n);
+    for (int i = 0; i < n; i++) {
+      double x = offset + random.nextDouble() * 1000;
+      double y = offset + random.nextDouble() * 1000;
+      features.add((i % 2 == 0) ? new DefaultFeature(new GM_Point(
+          new DirectPosition(x, y))) : new DefaultFeature(new GM_Polygon(
+          new GM_Envelope(x, x + 8, y, y + 8))));
+    }
+    return features;
+  }
+
+  /** Deux populations indexées contenant les mêmes objets initiaux. */
+  private static List<Population<DefaultFeature>> populations(
+      List<DefaultFeature> initial, Class<?> index) {
+    List<Population<DefaultFeature>> populations = new ArrayList<Population<DefaultFeature>>();
+    for (int p = 0; p < 2; p++) {
+      Population<DefaultFeature> population = new Population<DefaultFeature>();
+      for (DefaultFeature feature : initial) {
+        population.add(feature);
+      }
+      population.initSpatialIndex(index, true);
+      // emprise calculée avant les ajouts
+      population.getEnvelope();
+      populations.add(population);
+    }
+    return populations;
+  }
+
+  private static void assertSameEnvelope(IEnvelope expected, IEnvelope actual) {
+    Assert.assertEquals(expected.minX(), actual.minX(), 0);
+    Assert.assertEquals(expected.maxX(), actual.maxX(), 0);
+    Assert.assertEquals(expected.minY(), actual.minY(), 0);
+    Assert.assertEquals(expected.maxY(), actual.maxY(), 0);
+  }
+
+  private static void checkBulkSameAsAdd(Class<?> index) {
+    List<DefaultFeature> initial = FT_FeatureCollectionBulkTest.features(500,
+        1, 0);
+    // la moitié des objets ajoutés sort de l'emprise initiale
+    List<DefaultFeature> added = FT_FeatureCollectionBulkTest.features(2000,
+        2, 500);
+    List<Population<DefaultFeature>> populations = FT_FeatureCollectionBulkTest
+        .populations(initial, index);
+    Population<DefaultFeature> single = populations.get(0);
+    Population<DefaultFeature> bulk = populations.get(1);
+    for (DefaultFeature feature : added) {
+      single.add(feature);
+    }
+    bulk.beginBulk();
+    try {
+      for (DefaultFeature feature : added) {
+        bulk.add(feature);
+      }
+      Assert.assertTrue(bulk.isBulk());
+    } finally {
+      bulk.endBulk();
+    }
+    Assert.assertFalse(bulk.isBulk());
+    Assert.assertEquals(single.getElements(), bulk.getElements());
+    for (DefaultFeature feature : added) {
+      Assert.assertTrue(feature.getFeatureCollections().contains(bulk));
+    }
+    FT_FeatureCollectionBulkTest.assertSameEnvelope(single.getEnvelope(),
+        bulk.getEnvelope());
+    FT_FeatureCollectionBulkTest.assertSameEnvelope(single.envelope(), bulk
+        .getEnvelope());
+    // référence : index construit après coup sur tous les objets
+    Population<DefaultFeature> reference = new Population<DefaultFeature>();
+    reference.addAll(bulk.getElements());
+    reference.initSpatialIndex(index, true);
+    Random random = new Random(3);
+    for (int q = 0; q < 30; q++) {
+      double x = random.nextDouble() * 1600 - 50;
+      double y = random.nextDouble() * 1600 - 50;
+      IEnvelope env = new GM_Envelope(x, x + 70, y, y + 50);
+      Assert.assertEquals(new HashSet<DefaultFeature>(reference.select(env)),
+          new HashSet<DefaultFeature>(bulk.select(env)));
+    }
+    Assert.assertEquals(single.size(), bulk.select(bulk.getEnvelope()).size());
+  }
+
+  @Test
+  public void testBulkSameAsAddWithTiling() {
+    FT_FeatureCollectionBulkTest.checkBulkSameAsAdd(Tiling.class);
+  }
+
+  @Test
+  public void testBulkSameAsAddWithConcurrentTiling() {
+    FT_FeatureCollectionBulkTest.checkBulkSameAsAdd(ConcurrentTiling.class);
+  }
+
+  @Test
+  public void testEnvelopeNotComputedBefore() {
+    Population<DefaultFeature> population = new Population<DefaultFeature>();
+    List<DefaultFeature> features = FT_FeatureCollectionBulkTest.features(300,
+        4, 0);
+    population.addAll(features);
+    FT_FeatureCollectionBulkTest.assertSameEnvelope(population.envelope(),
+        population.getEnvelope());
+    population.addAll(FT_FeatureCollectionBulkTest.features(300, 5, 2000));
+    FT_FeatureCollectionBulkTest.assertSameEnvelope(population.envelope(),
+        population.getEnvelope());
+  }
+
+  @Test
+  public void testNestedBulkAndEvents() {
+    Population<DefaultFeature> population = new Population<DefaultFeature>();
+    population.addAll(FT_FeatureCollectionBulkTest.features(100, 6, 0));
+    population.initSpatialIndex(Tiling.class, true);
+    final List<FeatureCollectionEvent> events = new ArrayList<FeatureCollectionEvent>();
+    population.addFeatureCollectionListener(new FeatureCollectionListener() {
+      @Override
+      public void changed(FeatureCollectionEvent event) {
+        events.add(event);
+      }
+    });
+    List<DefaultFeature> added = FT_FeatureCollectionBulkTest.features(50, 7,
+        100);
+    population.beginBulk();
+    population.beginBulk();
+    population.addAll(added);
+    population.endBulk();
+    // toujours en chargement : ni événement ni index
+    Assert.assertTrue(population.isBulk());
+    Assert.assertTrue(events.isEmpty());
+    DefaultFeature removed = added.get(0);
+    population.remove(removed);
+    population.endBulk();
+    // un évènement par objet ajouté et toujours présent, dans l'ordre
+    Assert.assertEquals(49, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      Assert.assertEquals(FeatureCollectionEvent.Type.ADDED, events.get(i)
+          .getType());
+      Assert.assertSame(added.get(i + 1), events.get(i).getFeature());
+    }
+    Assert.assertEquals(149, population.size());
+    Assert.assertFalse(population.getElements().contains(removed));
+    Assert.assertFalse(population.select(removed.getGeom()).contains(removed));
+    Assert.assertTrue(population.select(added.get(1).getGeom()).contains(
+        added.get(1)));
+  }
+
+  @Test
+  public void testBulkOwnedByCallingThread() throws InterruptedException {
+    final Population<DefaultFeature> population = new Population<DefaultFeature>();
+    population.addAll(FT_FeatureCollectionBulkTest.features(100, 8, 0));
+    population.initSpatialIndex(Tiling.class, true);
+    final DefaultFeature other = new DefaultFeature(new GM_Point(
+        new DirectPosition(500, 500)));
+    final boolean[] otherBulk = new boolean[1];
+    population.beginBulk();
+    try {
+      population.add(new DefaultFeature(new GM_Point(new DirectPosition(20,
+          20))));
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          // le chargement appartient à l'autre thread : ajout normal
+          population.beginBulk();
+          otherBulk[0] = population.isBulk();
+          population.add(other);
+          population.endBulk();
+        }
+      };
+      thread.start();
+      thread.join();
+      Assert.assertTrue(population.isBulk());
+      Assert.assertTrue(population.select(new DirectPosition(500, 500), 1)
+          .contains(other));
+    } finally {
+      population.endBulk();
+    }
+    Assert.assertFalse(otherBulk[0]);
+    Assert.assertFalse(population.isBulk());
+    Assert.assertEquals(102, population.size());
+  }
+}
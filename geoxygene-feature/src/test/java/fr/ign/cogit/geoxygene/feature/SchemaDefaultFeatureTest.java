@@ -0,0 +1,107 @@
+package fr.ign.cogit.geoxygene.feature;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SchemaDefaultFeatureTest {
+
+  private static SchemaDefaultFeature schema() {
+    SchemaDefaultFeature schema = new SchemaDefaultFeature();
+    schema.getAttLookup().put(Integer.valueOf(0),
+        new String[] { "NOM", "nom" }); //$NON-NLS-1$ //$NON-NLS-2$
+    schema.getAttLookup().put(Integer.valueOf(1),
+        new String[] { "HAUTEUR", "hauteur" }); //$NON-NLS-1$ //$NON-NLS-2$
+    // nom d'attributeType identique au nom de colonne d'un autre attribut
+    schema.getAttLookup().put(Integer.valueOf(2),
+        new String[] { "nom", null }); //$NON-NLS-1$
+    return schema;
+  }
+
+  private static Object index(SchemaDefaultFeature schema) throws Exception {
+    Field field = SchemaDefaultFeature.class.getDeclaredField("indexRangs"); //$NON-NLS-1$
+    field.setAccessible(true);
+    return field.get(schema);
+  }
+
+  @Test
+  public void testGetRang() {
+    SchemaDefaultFeature schema = SchemaDefaultFeatureTest.schema();
+    // les noms d'attributeType d'abord, puis les noms de colonnes
+    Assert.assertEquals(0, schema.getRang("nom")); //$NON-NLS-1$
+    Assert.assertEquals(0, schema.getRang("NOM")); //$NON-NLS-1$
+    Assert.assertEquals(1, schema.getRang("hauteur")); //$NON-NLS-1$
+    Assert.assertEquals(1, schema.getRang("HAUTEUR")); //$NON-NLS-1$
+    Assert.assertEquals(-1, schema.getRang("largeur")); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testUnknownNameDoesNotRebuild() throws Exception {
+    SchemaDefaultFeature schema = SchemaDefaultFeatureTest.schema();
+    Assert.assertEquals(-1, schema.getRang("largeur")); //$NON-NLS-1$
+    Object index = SchemaDefaultFeatureTest.index(schema);
+    Assert.assertNotNull(index);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(-1, schema.getRang("largeur")); //$NON-NLS-1$
+      Assert.assertEquals(0, schema.getRang("nom")); //$NON-NLS-1$
+    }
+    Assert.assertSame(index, SchemaDefaultFeatureTest.index(schema));
+  }
+
+  @Test
+  public void testLookupModifiedInPlace() throws Exception {
+    SchemaDefaultFeature schema = SchemaDefaultFeatureTest.schema();
+    Assert.assertEquals(-1, schema.getRang("largeur")); //$NON-NLS-1$
+    // ajout direct dans la lookup table
+    schema.getAttLookup().put(Integer.valueOf(3),
+        new String[] { "LARGEUR", "largeur" }); //$NON-NLS-1$ //$NON-NLS-2$
+    Assert.assertEquals(3, schema.getRang("largeur")); //$NON-NLS-1$
+    Assert.assertEquals(3, schema.getRang("LARGEUR")); //$NON-NLS-1$
+    // renommage dans le tableau de noms
+    schema.getAttLookup().get(Integer.valueOf(1))[1] = "altitude"; //$NON-NLS-1$
+    Assert.assertEquals(-1, schema.getRang("hauteur")); //$NON-NLS-1$
+    Assert.assertEquals(1, schema.getRang("altitude")); //$NON-NLS-1$
+    // suppression
+    schema.getAttLookup().remove(Integer.valueOf(3));
+    Assert.assertEquals(-1, schema.getRang("largeur")); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testSetAttLookup() {
+    SchemaDefaultFeature schema = SchemaDefaultFeatureTest.schema();
+    Assert.assertEquals(1, schema.getRang("hauteur")); //$NON-NLS-1$
+    Map<Integer, String[]> lookup = new HashMap<Integer, String[]>();
+    lookup.put(Integer.valueOf(5), new String[] { "H", "hauteur" }); //$NON-NLS-1$ //$NON-NLS-2$
+    schema.setAttLookup(lookup);
+    Assert.assertEquals(5, schema.getRang("hauteur")); //$NON-NLS-1$
+    Assert.assertEquals(-1, schema.getRang("nom")); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testConcurrentLookups() throws Exception {
+    final SchemaDefaultFeature schema = SchemaDefaultFeatureTest.schema();
+    final boolean[] failed = new boolean[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            if (schema.getRang("hauteur") != 1 //$NON-NLS-1$
+                || schema.getRang("inconnu") != -1) { //$NON-NLS-1$
+              failed[0] = true;
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertFalse(failed[0]);
+  }
+}
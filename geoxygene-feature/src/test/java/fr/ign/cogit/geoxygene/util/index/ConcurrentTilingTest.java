@@ -0,0 +1,167 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+
+public class ConcurrentTilingTest {
+
+  /** Les objets de la liste dont l'enveloppe intersecte le rectangle. */
+  private static Set<DefaultFeature> bruteForce(List<DefaultFeature> features,
+      IEnvelope env) {
+    Set<DefaultFeature> result = new HashSet<DefaultFeature>();
+    GM_Polygon window = new GM_Polygon(env);
+    for (DefaultFeature feature : features) {
+      if (window.intersects(feature.getGeom())) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  private static IEnvelope window(Random random) {
+    double x = random.nextDouble() * 1100 - 50;
+    double y = random.nextDouble() * 1100 - 50;
+    return new GM_Envelope(x, x + 60, y, y + 40);
+  }
+
+  @Test
+  public void testGrowthFromEmpty() {
+    ConcurrentTiling<DefaultFeature> tiling = new ConcurrentTiling<DefaultFeature>(
+        new Population<DefaultFeature>(), Boolean.FALSE);
+    Assert.assertEquals(1, tiling.getSize());
+    List<DefaultFeature> features = new ArrayList<DefaultFeature>(
+        PackedRTreeTest.population(5000, 1));
+    for (DefaultFeature feature : features) {
+      tiling.update(feature, 1);
+    }
+    Assert.assertEquals(features.size(), tiling.size());
+    // en moyenne au plus MAX_FILL * TILE_CAPACITY objets par dalle
+    int size = tiling.getSize();
+    Assert.assertTrue("grid of " + size, features.size() <= //$NON-NLS-1$
+        ConcurrentTiling.MAX_FILL * ConcurrentTiling.TILE_CAPACITY * size
+            * size);
+    Assert.assertTrue("grid of " + size, size <= 2 * Math.sqrt( //$NON-NLS-1$
+        features.size() / ConcurrentTiling.TILE_CAPACITY));
+    Random random = new Random(2);
+    for (int q = 0; q < 20; q++) {
+      IEnvelope env = window(random);
+      Assert.assertEquals(bruteForce(features, env), new HashSet<DefaultFeature>(
+          tiling.select(env)));
+    }
+    Assert.assertEquals(features.size(), tiling.select(
+        new GM_Envelope(-10, 1010, -10, 1010)).size());
+  }
+
+  @Test
+  public void testConcurrentAddAndSelect() throws Exception {
+    final List<DefaultFeature> features = new ArrayList<DefaultFeature>(
+        PackedRTreeTest.population(5000, 3));
+    final ConcurrentTiling<DefaultFeature> tiling = new ConcurrentTiling<DefaultFeature>(
+        new Population<DefaultFeature>(), Boolean.FALSE);
+    final int writers = 4, readers = 4;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch written = new CountDownLatch(writers);
+    ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    try {
+      for (int w = 0; w < writers; w++) {
+        final int first = w;
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            start.await();
+            try {
+              for (int i = first; i < features.size(); i += writers) {
+                tiling.update(features.get(i), 1);
+              }
+            } finally {
+              written.countDown();
+            }
+            return Integer.valueOf(0);
+          }
+        }));
+      }
+      for (int r = 0; r < readers; r++) {
+        final long seed = r;
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            Random random = new Random(seed);
+            start.await();
+            int queries = 0;
+            do {
+              IEnvelope env = window(random);
+              List<DefaultFeature> selected = new ArrayList<DefaultFeature>(
+                  tiling.select(env));
+              // pas de doublon, et seulement des objets du rectangle
+              Assert.assertEquals(selected.size(), new HashSet<DefaultFeature>(
+                  selected).size());
+              GM_Polygon polygon = new GM_Polygon(env);
+              for (DefaultFeature feature : selected) {
+                Assert.assertTrue(polygon.intersects(feature.getGeom()));
+              }
+              queries++;
+            } while (written.getCount() > 0);
+            return Integer.valueOf(queries);
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Integer> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertEquals(features.size(), tiling.size());
+    Assert.assertTrue(tiling.getSize() > 1);
+    Random random = new Random(4);
+    for (int q = 0; q < 20; q++) {
+      IEnvelope env = window(random);
+      Assert.assertEquals(bruteForce(features, env), new HashSet<DefaultFeature>(
+          tiling.select(env)));
+    }
+  }
+
+  @Test
+  public void testSelectedByFeatureCollection() {
+    Population<DefaultFeature> population = PackedRTreeTest.population(500, 3);
+    population.initSpatialIndex(Tiling.class, true);
+    Assert.assertEquals(Tiling.class, population.getSpatialIndex().getClass());
+    FT_FeatureCollection.CONCURRENT_TILING = true;
+    try {
+      population.initSpatialIndex(Tiling.class, true);
+      Assert.assertEquals(ConcurrentTiling.class, population.getSpatialIndex()
+          .getClass());
+      population.initSpatialIndex(Tiling.class, true, 4);
+      Assert.assertEquals(ConcurrentTiling.class, population.getSpatialIndex()
+          .getClass());
+      Assert.assertEquals(population.size(), population.select(
+          population.envelope()).size());
+      // sans mise à jour automatique, le dallage simple suffit
+      population.initSpatialIndex(Tiling.class, false);
+      Assert.assertEquals(Tiling.class, population.getSpatialIndex()
+          .getClass());
+    } finally {
+      FT_FeatureCollection.CONCURRENT_TILING = false;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.index.SpatialIndex;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+public class NearestNeighbourSearchTest {
+
+  private static IGeometry query(Random random, int q) {
+    double x = random.nextDouble() * 1200 - 100;
+    double y = random.nextDouble() * 1200 - 100;
+    return (q % 2 == 0) ? new GM_Point(new DirectPosition(x, y))
+        : new GM_Polygon(new GM_Envelope(x, x + 30, y, y + 10));
+  }
+
+  @Test
+  public void testWithoutIndex() {
+    // recherche sur les seuls objets, sans noeud ni index
+    Population<DefaultFeature> population = PackedRTreeTest.population(500, 1);
+    Random random = new Random(2);
+    for (int q = 0; q < 20; q++) {
+      IGeometry query = NearestNeighbourSearchTest.query(random, q);
+      double maxDistance = (q % 3 == 0) ? 30 : Double.POSITIVE_INFINITY;
+      PackedRTreeTest.assertSameNeighbours(PackedRTreeTest.bruteForce(
+          population, query, 7, maxDistance), population.nearest(query, 7,
+          maxDistance), query);
+    }
+  }
+
+  @Test
+  public void testUniqueOffers() {
+    Population<DefaultFeature> population = PackedRTreeTest.population(50, 3);
+    IGeometry query = new GM_Point(new DirectPosition(500, 500));
+    NearestNeighbourSearch<DefaultFeature> search = new NearestNeighbourSearch<DefaultFeature>(
+        query, 10, Double.POSITIVE_INFINITY, true);
+    // chaque objet proposé plusieurs fois, comme par un dallage
+    for (int i = 0; i < 3; i++) {
+      for (DefaultFeature feature : population) {
+        search.offerFeature(feature, search.lowerBound(feature.getGeom()
+            .envelope()));
+      }
+    }
+    List<DefaultFeature> nearest = search.run(null);
+    Assert.assertEquals(10, new HashSet<DefaultFeature>(nearest).size());
+    PackedRTreeTest.assertSameNeighbours(PackedRTreeTest.bruteForce(
+        population, query, 10, Double.POSITIVE_INFINITY), nearest, query);
+  }
+
+  @Test
+  public void testLimits() {
+    Population<DefaultFeature> population = PackedRTreeTest.population(200, 4);
+    IGeometry query = new GM_Point(new DirectPosition(-500, -500));
+    Assert.assertTrue(population.nearest(query, 0, Double.POSITIVE_INFINITY)
+        .isEmpty());
+    // tous les objets sont à plus de 500 de la requête
+    Assert.assertTrue(population.nearest(query, 5, 500).isEmpty());
+    Assert.assertEquals(200, population.nearest(query, 1000,
+        Double.POSITIVE_INFINITY).size());
+  }
+
+  @Test
+  public void testNegativeK() {
+    Population<DefaultFeature> population = PackedRTreeTest.population(100, 7);
+    IGeometry query = new GM_Point(new DirectPosition(500, 500));
+    Assert.assertTrue(new NearestNeighbourSearch<DefaultFeature>(query, -3,
+        Double.POSITIVE_INFINITY, false).run(null).isEmpty());
+    Assert.assertTrue(population.nearest(query, -1, Double.POSITIVE_INFINITY)
+        .isEmpty());
+    List<SpatialIndex<DefaultFeature>> indexes = new ArrayList<SpatialIndex<DefaultFeature>>();
+    indexes.add(new Tiling<DefaultFeature>(population, Boolean.FALSE));
+    indexes.add(new ConcurrentTiling<DefaultFeature>(population, Boolean.FALSE));
+    indexes.add(new PackedRTree<DefaultFeature>(population, Boolean.FALSE));
+    indexes.add(new STRtreeJts<DefaultFeature>(population));
+    indexes.add(new QuadTreeJts<DefaultFeature>(population));
+    for (SpatialIndex<DefaultFeature> index : indexes) {
+      Assert.assertTrue(index.nearest(query, -1, Double.POSITIVE_INFINITY)
+          .isEmpty());
+    }
+    population.initSpatialIndex(PackedRTree.class, true);
+    Assert.assertTrue(population.nearest(query, -1, Double.POSITIVE_INFINITY)
+        .isEmpty());
+  }
+
+  @Test
+  public void testIndexesAgainstBruteForce() {
+    Population<DefaultFeature> population = PackedRTreeTest.population(3000, 5);
+    List<SpatialIndex<DefaultFeature>> indexes = new ArrayList<SpatialIndex<DefaultFeature>>();
+    indexes.add(new Tiling<DefaultFeature>(population, Boolean.FALSE));
+    indexes.add(new ConcurrentTiling<DefaultFeature>(population, Boolean.FALSE));
+    indexes.add(new PackedRTree<DefaultFeature>(population, Boolean.FALSE));
+    indexes.add(new STRtreeJts<DefaultFeature>(population));
+    indexes.add(new QuadTreeJts<DefaultFeature>(population));
+    Random random = new Random(6);
+    for (int q = 0; q < 20; q++) {
+      IGeometry query = NearestNeighbourSearchTest.query(random, q);
+      double maxDistance = (q % 4 == 0) ? 25 : Double.POSITIVE_INFINITY;
+      List<DefaultFeature> expected = PackedRTreeTest.bruteForce(population,
+          query, 8, maxDistance);
+      for (SpatialIndex<DefaultFeature> index : indexes) {
+        List<DefaultFeature> nearest = index.nearest(query, 8, maxDistance);
+        Assert.assertEquals(nearest.size(), new HashSet<DefaultFeature>(
+            nearest).size());
+        PackedRTreeTest.assertSameNeighbours(expected, nearest, query);
+      }
+    }
+  }
+}
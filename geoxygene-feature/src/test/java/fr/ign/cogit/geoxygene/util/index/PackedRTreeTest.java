@@ -0,0 +1,210 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.index.SpatialIndexVisitor;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+public class PackedRTreeTest {
+
+  private static final int CAPACITY = 4;
+
+  static Population<DefaultFeature> population(int n, long seed) {
+    Random random = new Random(seed);
+    Population<DefaultFeature> population = new Population<DefaultFeature>();
+    for (int i = 0; i < n; i++) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      DefaultFeature feature = (i % 3 == 0) ? new DefaultFeature(new GM_Point(
+          new DirectPosition(x, y))) : new DefaultFeature(new GM_Polygon(
+          new GM_Envelope(x, x + 5, y, y + 5)));
+      feature.setId(i);
+      population.add(feature);
+    }
+    return population;
+  }
+
+  /** Les k plus proches voisins par parcours de toute la population. */
+  static List<DefaultFeature> bruteForce(Collection<DefaultFeature> features,
+      IGeometry geometry, int k, double maxDistance) {
+    final Map<DefaultFeature, Double> distances = new HashMap<DefaultFeature, Double>();
+    for (DefaultFeature feature : features) {
+      double distance = feature.getGeom().distance(geometry);
+      if (distance <= maxDistance) {
+        distances.put(feature, Double.valueOf(distance));
+      }
+    }
+    List<DefaultFeature> sorted = new ArrayList<DefaultFeature>(
+        distances.keySet());
+    Collections.sort(sorted, new Comparator<DefaultFeature>() {
+      @Override
+      public int compare(DefaultFeature f1, DefaultFeature f2) {
+        return distances.get(f1).compareTo(distances.get(f2));
+      }
+    });
+    return sorted.subList(0, Math.min(k, sorted.size()));
+  }
+
+  static void assertSameNeighbours(List<DefaultFeature> expected,
+      List<DefaultFeature> actual, IGeometry geometry) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      // à distance égale, l'ordre des objets n'est pas imposé
+      Assert.assertEquals(expected.get(i).getGeom().distance(geometry), actual
+          .get(i).getGeom().distance(geometry), 0);
+    }
+  }
+
+  @Test
+  public void testNearestSmallTrees() {
+    // arbre vide, racine feuille, une seule page, deux niveaux
+    for (int n : new int[] { 0, 1, CAPACITY, CAPACITY + 1 }) {
+      Population<DefaultFeature> population = population(n, n);
+      PackedRTree<DefaultFeature> tree = new PackedRTree<DefaultFeature>(
+          population, Boolean.FALSE, Integer.valueOf(CAPACITY));
+      IGeometry query = new GM_Point(new DirectPosition(500, 500));
+      List<DefaultFeature> nearest = tree.nearest(query, 2,
+          Double.POSITIVE_INFINITY);
+      assertSameNeighbours(bruteForce(population, query, 2,
+          Double.POSITIVE_INFINITY), nearest, query);
+      Assert.assertEquals(n, tree.size());
+      Assert.assertEquals(n, tree.select(new GM_Envelope(-10, 1010, -10, 1010))
+          .size());
+    }
+  }
+
+  @Test
+  public void testNearestAgainstBruteForce() {
+    Population<DefaultFeature> population = population(2000, 1);
+    PackedRTree<DefaultFeature> tree = new PackedRTree<DefaultFeature>(
+        population, Boolean.FALSE, Integer.valueOf(CAPACITY));
+    Random random = new Random(2);
+    for (int q = 0; q < 50; q++) {
+      double x = random.nextDouble() * 1200 - 100;
+      double y = random.nextDouble() * 1200 - 100;
+      IGeometry query = (q % 2 == 0) ? new GM_Point(new DirectPosition(x, y))
+          : new GM_Polygon(new GM_Envelope(x, x + 30, y, y + 10));
+      double maxDistance = (q % 5 == 0) ? 40 : Double.POSITIVE_INFINITY;
+      assertSameNeighbours(bruteForce(population, query, 10, maxDistance),
+          tree.nearest(query, 10, maxDistance), query);
+    }
+  }
+
+  /** Les objets dont l'enveloppe intersecte le rectangle. */
+  static Set<DefaultFeature> envelopeBruteForce(
+      Collection<DefaultFeature> features, IEnvelope env) {
+    Set<DefaultFeature> result = new HashSet<DefaultFeature>();
+    for (DefaultFeature feature : features) {
+      IEnvelope e = feature.getGeom().envelope();
+      if (e.minX() <= env.maxX() && e.maxX() >= env.minX()
+          && e.minY() <= env.maxY() && e.maxY() >= env.minY()) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testVisitAgainstBruteForce() {
+    Population<DefaultFeature> population = population(2000, 3);
+    PackedRTree<DefaultFeature> tree = new PackedRTree<DefaultFeature>(
+        population, Boolean.FALSE, Integer.valueOf(CAPACITY));
+    Random random = new Random(4);
+    for (int q = 0; q < 50; q++) {
+      double x = random.nextDouble() * 1100 - 50;
+      double y = random.nextDouble() * 1100 - 50;
+      IEnvelope env = new GM_Envelope(x, x + 80, y, y + 30);
+      final List<DefaultFeature> visited = new ArrayList<DefaultFeature>();
+      tree.visit(env, new SpatialIndexVisitor<DefaultFeature>() {
+        @Override
+        public boolean visit(DefaultFeature feature) {
+          visited.add(feature);
+          return true;
+        }
+      });
+      // chaque objet une seule fois
+      Set<DefaultFeature> unique = new HashSet<DefaultFeature>(visited);
+      Assert.assertEquals(visited.size(), unique.size());
+      Assert.assertEquals(envelopeBruteForce(population, env), unique);
+    }
+  }
+
+  @Test
+  public void testVisitStops() {
+    PackedRTree<DefaultFeature> tree = new PackedRTree<DefaultFeature>(
+        population(500, 5), Boolean.FALSE, Integer.valueOf(CAPACITY));
+    final int[] count = new int[1];
+    tree.visit(new GM_Envelope(-10, 1010, -10, 1010),
+        new SpatialIndexVisitor<DefaultFeature>() {
+          @Override
+          public boolean visit(DefaultFeature feature) {
+            count[0]++;
+            return count[0] < 3;
+          }
+        });
+    Assert.assertEquals(3, count[0]);
+  }
+
+  @Test
+  public void testSelectAgainstBruteForce() {
+    Population<DefaultFeature> population = population(2000, 6);
+    PackedRTree<DefaultFeature> tree = new PackedRTree<DefaultFeature>(
+        population, Boolean.FALSE, Integer.valueOf(CAPACITY));
+    Random random = new Random(7);
+    for (int q = 0; q < 20; q++) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      IGeometry query = new GM_Polygon(new GM_Envelope(x, x + 40, y, y + 20));
+      Set<DefaultFeature> intersecting = new HashSet<DefaultFeature>();
+      Set<DefaultFeature> close = new HashSet<DefaultFeature>();
+      for (DefaultFeature feature : population) {
+        if (query.intersects(feature.getGeom())) {
+          intersecting.add(feature);
+        }
+        if (query.distance(feature.getGeom()) <= 15) {
+          close.add(feature);
+        }
+      }
+      Assert.assertEquals(intersecting, new HashSet<DefaultFeature>(tree
+          .select(query)));
+      Assert.assertEquals(intersecting, new HashSet<DefaultFeature>(tree
+          .select(query.envelope())));
+      Assert.assertEquals(close, new HashSet<DefaultFeature>(tree.select(
+          query, 15)));
+    }
+  }
+
+  @Test
+  public void testUpdateRebuildsTree() {
+    Population<DefaultFeature> population = population(100, 8);
+    PackedRTree<DefaultFeature> tree = new PackedRTree<DefaultFeature>(
+        population, Boolean.FALSE, Integer.valueOf(CAPACITY));
+    DefaultFeature feature = new DefaultFeature(new GM_Point(
+        new DirectPosition(2000, 2000)));
+    population.add(feature);
+    tree.update(feature, 1);
+    Assert.assertEquals(101, tree.size());
+    Assert.assertEquals(1, tree.select(
+        new GM_Envelope(1990, 2010, 1990, 2010)).size());
+    Assert.assertEquals(2000, tree.getEnvelope().maxX(), 0);
+  }
+}
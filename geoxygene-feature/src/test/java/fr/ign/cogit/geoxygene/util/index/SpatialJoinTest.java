@@ -0,0 +1,157 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+
+public class SpatialJoinTest {
+
+  /** Grands carrés, dont beaucoup sont à cheval sur plusieurs bandes. */
+  private static Population<DefaultFeature> squares(int n, long seed) {
+    Random random = new Random(seed);
+    Population<DefaultFeature> population = new Population<DefaultFeature>();
+    for (int i = 0; i < n; i++) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      double size = 10 + random.nextDouble() * 50;
+      DefaultFeature feature = new DefaultFeature(new GM_Polygon(
+          new GM_Envelope(x, x + size, y, y + size)));
+      feature.setId(i);
+      population.add(feature);
+    }
+    return population;
+  }
+
+  private static String pair(DefaultFeature a, DefaultFeature b) {
+    return a.getId() + ":" + b.getId(); //$NON-NLS-1$
+  }
+
+  /** Les couples vérifiant le prédicat, par test de tous les couples. */
+  private static Set<String> bruteForce(Collection<DefaultFeature> left,
+      Collection<DefaultFeature> right, SpatialJoin.Predicate predicate,
+      double distance) {
+    Set<String> pairs = new HashSet<String>();
+    for (DefaultFeature a : left) {
+      IGeometry ga = a.getGeom();
+      IEnvelope ea = ga.envelope();
+      for (DefaultFeature b : right) {
+        IGeometry gb = b.getGeom();
+        IEnvelope eb = gb.envelope();
+        if (ea.minX() - distance > eb.maxX() || eb.minX() > ea.maxX() + distance
+            || ea.minY() - distance > eb.maxY()
+            || eb.minY() > ea.maxY() + distance) {
+          continue;
+        }
+        boolean match;
+        switch (predicate) {
+          case INTERSECTS:
+            match = ga.intersects(gb);
+            break;
+          case WITHIN_DISTANCE:
+            match = ga.distance(gb) <= distance;
+            break;
+          default:
+            match = ga.contains(gb);
+        }
+        if (match) {
+          pairs.add(SpatialJoinTest.pair(a, b));
+        }
+      }
+    }
+    return pairs;
+  }
+
+  /** Les couples transmis au visiteur, dans une liste pour voir les doublons. */
+  private static List<String> pairs(SpatialJoin<DefaultFeature, DefaultFeature> join) {
+    final List<String> pairs = Collections.synchronizedList(new ArrayList<String>());
+    join.run(new SpatialJoin.PairVisitor<DefaultFeature, DefaultFeature>() {
+      @Override
+      public void visit(DefaultFeature left, DefaultFeature right) {
+        pairs.add(SpatialJoinTest.pair(left, right));
+      }
+    });
+    return pairs;
+  }
+
+  private static void check(SpatialJoin.Predicate predicate, double distance) {
+    Population<DefaultFeature> left = SpatialJoinTest.squares(200, 1);
+    Population<DefaultFeature> right = PackedRTreeTest.population(800, 2);
+    SpatialJoin<DefaultFeature, DefaultFeature> sequential = new SpatialJoin<DefaultFeature, DefaultFeature>(
+        left, right, predicate);
+    sequential.setDistance(distance);
+    Map<DefaultFeature, List<DefaultFeature>> expected = sequential.join();
+    List<String> expectedPairs = SpatialJoinTest.pairs(sequential);
+    Assert.assertEquals(expectedPairs.size(), new HashSet<String>(
+        expectedPairs).size());
+    Assert.assertEquals(SpatialJoinTest.bruteForce(left, right, predicate,
+        distance), new HashSet<String>(expectedPairs));
+    for (int threads : new int[] { 2, 3, 8 }) {
+      SpatialJoin<DefaultFeature, DefaultFeature> parallel = new SpatialJoin<DefaultFeature, DefaultFeature>(
+          left, right, predicate);
+      parallel.setDistance(distance);
+      parallel.setThreads(threads);
+      // pas de couple traité dans deux bandes
+      List<String> pairs = SpatialJoinTest.pairs(parallel);
+      Assert.assertEquals(expectedPairs.size(), pairs.size());
+      Assert.assertEquals(new HashSet<String>(expectedPairs),
+          new HashSet<String>(pairs));
+      // mêmes listes, dans le même ordre
+      Map<DefaultFeature, List<DefaultFeature>> joined = parallel.join();
+      Assert.assertEquals(new ArrayList<DefaultFeature>(expected.keySet()),
+          new ArrayList<DefaultFeature>(joined.keySet()));
+      Assert.assertEquals(expected, joined);
+    }
+  }
+
+  @Test
+  public void testIntersects() {
+    SpatialJoinTest.check(SpatialJoin.Predicate.INTERSECTS, 0);
+  }
+
+  @Test
+  public void testWithinDistance() {
+    SpatialJoinTest.check(SpatialJoin.Predicate.WITHIN_DISTANCE, 12);
+  }
+
+  @Test
+  public void testContains() {
+    SpatialJoinTest.check(SpatialJoin.Predicate.CONTAINS, 0);
+  }
+
+  @Test
+  public void testNearest() {
+    Population<DefaultFeature> left = SpatialJoinTest.squares(200, 3);
+    Population<DefaultFeature> right = PackedRTreeTest.population(800, 4);
+    SpatialJoin<DefaultFeature, DefaultFeature> sequential = new SpatialJoin<DefaultFeature, DefaultFeature>(
+        left, right, SpatialJoin.Predicate.NEAREST);
+    sequential.setK(3);
+    Map<DefaultFeature, List<DefaultFeature>> expected = sequential.join();
+    Assert.assertEquals(left.size(), expected.size());
+    for (Map.Entry<DefaultFeature, List<DefaultFeature>> entry : expected
+        .entrySet()) {
+      IGeometry geometry = entry.getKey().getGeom();
+      PackedRTreeTest.assertSameNeighbours(PackedRTreeTest.bruteForce(right,
+          geometry, 3, Double.POSITIVE_INFINITY), entry.getValue(), geometry);
+    }
+    SpatialJoin<DefaultFeature, DefaultFeature> parallel = new SpatialJoin<DefaultFeature, DefaultFeature>(
+        left, right, SpatialJoin.Predicate.NEAREST);
+    parallel.setK(3);
+    parallel.setThreads(4);
+    Assert.assertEquals(expected, parallel.join());
+  }
+}
@@ -0,0 +1,80 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+
+/**
+ * {@link Tiling#select(IEnvelope)}, qui utilise les enveloppes compactes de
+ * l'index, donne le même résultat que le parcours des mêmes dalles en
+ * recalculant l'enveloppe de chaque candidat (comportement avant le stockage
+ * compact des enveloppes).
+ */
+public class TilingSelectTest {
+
+  private static final double EXTENT = 10000;
+
+  /** Parcours des dalles avec recalcul des enveloppes. */
+  private static Set<DefaultFeature> recompute(Tiling<DefaultFeature> tiling,
+      IEnvelope env) {
+    IGeometry window = new GM_Polygon(env);
+    Set<DefaultFeature> found = new HashSet<DefaultFeature>();
+    for (int i = 0; i < tiling.getSize(); i++) {
+      for (int j = 0; j < tiling.getSize(); j++) {
+        if (!tiling.getDallage(i, j).intersects(env)) {
+          continue;
+        }
+        for (DefaultFeature feature : tiling.select(i, j)) {
+          IGeometry geom = feature.getGeom();
+          if (env.overlaps(geom.envelope()) && window.intersects(geom)) {
+            found.add(feature);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  @Test
+  public void testSelectSameAsRecompute() {
+    Random random = new Random(42);
+    Population<DefaultFeature> population = new Population<DefaultFeature>();
+    population.beginBulk();
+    for (int i = 0; i < 20000; i++) {
+      double x = random.nextDouble() * TilingSelectTest.EXTENT;
+      double y = random.nextDouble() * TilingSelectTest.EXTENT;
+      population.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(x,
+          x + 10, y, y + 10))));
+    }
+    population.endBulk();
+    Tiling<DefaultFeature> tiling = new Tiling<DefaultFeature>(population,
+        Boolean.FALSE);
+    Assert.assertTrue(tiling.getSize() > 1);
+    int total = 0;
+    for (int q = 0; q < 200; q++) {
+      double x = random.nextDouble() * TilingSelectTest.EXTENT;
+      double y = random.nextDouble() * TilingSelectTest.EXTENT;
+      IEnvelope env = new GM_Envelope(x, x + 500, y, y + 500);
+      List<DefaultFeature> selected = new ArrayList<DefaultFeature>(
+          tiling.select(env));
+      Set<DefaultFeature> expected = TilingSelectTest.recompute(tiling, env);
+      Assert.assertEquals(expected, new HashSet<DefaultFeature>(selected));
+      // un objet à cheval sur plusieurs dalles n'est renvoyé qu'une fois
+      Assert.assertEquals(expected.size(), selected.size());
+      total += selected.size();
+    }
+    Assert.assertTrue(total > 0);
+  }
+}
@@ -30,6 +30,8 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.DataSourceException;
 import org.opengis.geometry.Envelope;
 
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+
 /**
  * Arc/Info ASCII Grid file reader.
  * @author Julien Perret
@@ -171,6 +173,68 @@ public class ArcGridReader {
     return altitude;
   }
 
+  /**
+   * Ouvre une grille Arc/Info ASCII pour la lire par tuiles, cf.
+   * {@link #openAsc(String, boolean)}, sans fichier annexe.
+   * @param fileName nom du fichier
+   * @return la grille, à fermer après usage
+   * @throws IOException si le fichier ne peut être lu
+   */
+  public static TiledRaster openAsc(String fileName) throws IOException {
+    return ArcGridReader.openAsc(fileName, false);
+  }
+
+  /**
+   * Ouvre une grille Arc/Info ASCII pour la lire par tuiles. Le texte est
+   * décodé sans passer par GeoTools, bien plus rapidement que par
+   * {@link #loadAsc(String, double[][])}.
+   * @param fileName nom du fichier
+   * @param sidecar si vrai, les valeurs sont recopiées en float32 dans un
+   *          fichier annexe à la première ouverture et relues directement
+   *          dans ce fichier aux suivantes, cf. {@link AsciiGrid}
+   * @return la grille, à fermer après usage
+   * @throws IOException si le fichier ne peut être lu
+   */
+  public static AsciiGrid openAsc(String fileName, boolean sidecar)
+      throws IOException {
+    return AsciiGrid.open(fileName, sidecar);
+  }
+
+  /**
+   * Altitude en un point d'une grille lue par tuiles, interpolée comme dans
+   * {@link #altitude(BufferedImage, double[][], double, double)} entre les
+   * quatre cellules voisines. Seules les tuiles contenant ces cellules sont
+   * lues. Les lignes de la grille sont comptées depuis le nord.
+   * @param raster grille
+   * @param x abscisse du point
+   * @param y ordonnée du point
+   * @return l'altitude, -999 si le point est hors de la grille
+   * @throws IOException en cas d'erreur de lecture de la grille
+   */
+  public static double altitude(TiledRaster raster, double x, double y)
+      throws IOException {
+    IEnvelope envelope = raster.getEnvelope();
+    if (x < envelope.minX() || x > envelope.maxX() || y < envelope.minY()
+        || y > envelope.maxY()) {
+      return -999.0;
+    }
+    double dw = (x - envelope.minX()) / raster.getCellSizeX();
+    double dh = (envelope.maxY() - y) / raster.getCellSizeY();
+    int i = Math.min((int) dw, raster.getWidth() - 1);
+    int j = Math.min((int) dh, raster.getHeight() - 1);
+    if (i == raster.getWidth() - 1 || j == raster.getHeight() - 1
+        || (dw == i && dh == j)) {
+      return raster.getValue(i, j);
+    }
+    float[] z = raster.read(i, j, 2, 2);
+    double wA = 1 / ArcGridReader.distance(dw, dh, i, j);
+    double wB = 1 / ArcGridReader.distance(dw, dh, i + 1, j);
+    double wC = 1 / ArcGridReader.distance(dw, dh, i, j + 1);
+    double wD = 1 / ArcGridReader.distance(dw, dh, i + 1, j + 1);
+    return (wA * z[0] + wB * z[1] + wC * z[2] + wD * z[3])
+        / (wA + wB + wC + wD);
+  }
+
   private static double distance(double x1, double y1, double x2, double y2) {
     return Math.sqrt((x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2));
   }
@@ -0,0 +1,547 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+
+/**
+ * Grille Arc/Info ASCII (ESRI ASCII Grid) lue sans passer par des chaînes de
+ * caractères : le fichier est parcouru octet par octet et les nombres sont
+ * décodés directement dans un tableau de <code>float</code>.
+ * <p>
+ * Lue depuis un fichier, la grille peut être recopiée à la première lecture
+ * dans un fichier annexe de même nom suffixé par {@link #SIDECAR_EXTENSION},
+ * qui contient les valeurs en float32 et est ensuite projeté en mémoire : les
+ * ouvertures suivantes ne relisent plus le texte tant que la grille n'a pas
+ * été modifiée. Sans fichier annexe, les valeurs sont gardées en mémoire.
+ * <p>
+ * Les lignes de la grille sont rendues par tuiles de lignes entières, dans
+ * l'ordre du fichier, cf. {@link TiledRaster}.
+ * @see ArcGridReader#openAsc(String, boolean)
+ */
+public class AsciiGrid extends TiledRaster {
+
+  private final static Logger LOGGER = Logger.getLogger(AsciiGrid.class
+      .getName());
+
+  /** Extension du fichier annexe contenant les valeurs en float32. */
+  public static final String SIDECAR_EXTENSION = ".f32"; //$NON-NLS-1$
+
+  /** "GF32", en tête du fichier annexe. */
+  private static final int MAGIC = 0x47463332;
+  private static final int VERSION = 1;
+  /** Taille de l'en-tête du fichier annexe, qui aligne les valeurs. */
+  private static final int HEADER_SIZE = 128;
+  /** Nombre de cellules visé par tuile. */
+  private static final int TILE_CELLS = 1 << 16;
+  private static final int BUFFER_SIZE = 1 << 20;
+  /** Longueur maximale d'un mot de la grille. */
+  private static final int MAX_TOKEN = 64;
+
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    AsciiGrid.POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < AsciiGrid.POWERS_OF_TEN.length; i++) {
+      AsciiGrid.POWERS_OF_TEN[i] = 10 * AsciiGrid.POWERS_OF_TEN[i - 1];
+    }
+  }
+
+  /** Valeurs de la grille, par bandes de lignes consécutives. */
+  private final FloatBuffer[] bands;
+  private final int bandHeight;
+  private final FileChannel channel;
+  private final boolean sidecar;
+
+  private AsciiGrid(Header header, FloatBuffer[] bands, int bandHeight,
+      FileChannel channel) {
+    super(header.ncols, header.nrows, header.ncols, Math.max(1,
+        AsciiGrid.TILE_CELLS / header.ncols), header.envelope(),
+        header.noDataValue, TiledRaster.DEFAULT_CACHE_SIZE);
+    this.bands = bands;
+    this.bandHeight = bandHeight;
+    this.channel = channel;
+    this.sidecar = channel != null;
+  }
+
+  /**
+   * Lit une grille depuis un flux, en gardant ses valeurs en mémoire.
+   * @param is flux, fermé après lecture
+   * @return la grille
+   * @throws IOException si le flux ne peut être lu ou n'est pas une grille
+   */
+  public static AsciiGrid read(InputStream is) throws IOException {
+    ReadableByteChannel input = Channels.newChannel(is);
+    try {
+      return AsciiGrid.readInMemory(new Scanner(input));
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Ouvre une grille.
+   * @param fileName nom du fichier .asc
+   * @param sidecar si vrai, les valeurs sont lues dans le fichier annexe s'il
+   *          est à jour, sinon écrites dans ce fichier à la lecture de la
+   *          grille ; si le fichier annexe ne peut être écrit, les valeurs
+   *          sont gardées en mémoire
+   * @return la grille, à fermer après usage
+   * @throws IOException si le fichier ne peut être lu ou n'est pas une grille
+   */
+  public static AsciiGrid open(String fileName, boolean sidecar)
+      throws IOException {
+    File file = new File(fileName);
+    if (sidecar) {
+      File sidecarFile = new File(fileName + AsciiGrid.SIDECAR_EXTENSION);
+      AsciiGrid grid = AsciiGrid.openSidecar(file, sidecarFile);
+      if (grid != null) {
+        return grid;
+      }
+      try {
+        AsciiGrid.writeSidecar(file, sidecarFile);
+        grid = AsciiGrid.openSidecar(file, sidecarFile);
+        if (grid != null) {
+          return grid;
+        }
+      } catch (IOException e) {
+        AsciiGrid.LOGGER.warn("Cannot write " + sidecarFile + ": " //$NON-NLS-1$ //$NON-NLS-2$
+            + e.getMessage());
+      }
+    }
+    FileChannel input = new RandomAccessFile(file, "r").getChannel(); //$NON-NLS-1$
+    try {
+      return AsciiGrid.readInMemory(new Scanner(input));
+    } finally {
+      input.close();
+    }
+  }
+
+  /** @return vrai si les valeurs sont lues dans le fichier annexe */
+  public boolean isSidecar() {
+    return this.sidecar;
+  }
+
+  private static AsciiGrid readInMemory(Scanner scanner) throws IOException {
+    Header header = Header.read(scanner);
+    long size = (long) header.ncols * header.nrows;
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IOException("grid of " + header.ncols + "x" + header.nrows //$NON-NLS-1$ //$NON-NLS-2$
+          + " cells is too large to be held in memory"); //$NON-NLS-1$
+    }
+    float[] values = new float[(int) size];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = scanner.nextFloat();
+    }
+    return new AsciiGrid(header, new FloatBuffer[] { FloatBuffer
+        .wrap(values) }, header.nrows, null);
+  }
+
+  /**
+   * Projette le fichier annexe en mémoire s'il correspond à la grille.
+   * @return la grille, null si le fichier annexe est absent ou périmé
+   */
+  private static AsciiGrid openSidecar(File file, File sidecarFile)
+      throws IOException {
+    if (!sidecarFile.isFile()) {
+      return null;
+    }
+    FileChannel channel = new RandomAccessFile(sidecarFile, "r").getChannel(); //$NON-NLS-1$
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(AsciiGrid.HEADER_SIZE).order(
+          ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // lecture de l'en-tête
+      }
+      buffer.flip();
+      if (buffer.remaining() < AsciiGrid.HEADER_SIZE
+          || buffer.getInt() != AsciiGrid.MAGIC
+          || buffer.getInt() != AsciiGrid.VERSION) {
+        channel.close();
+        return null;
+      }
+      Header header = new Header();
+      header.ncols = buffer.getInt();
+      header.nrows = buffer.getInt();
+      header.xll = buffer.getDouble();
+      header.yll = buffer.getDouble();
+      header.cellSizeX = buffer.getDouble();
+      header.cellSizeY = buffer.getDouble();
+      header.noDataValue = buffer.getDouble();
+      long sourceLength = buffer.getLong();
+      long sourceModified = buffer.getLong();
+      if (sourceLength != file.length()
+          || sourceModified != file.lastModified()
+          || header.ncols <= 0
+          || header.nrows <= 0
+          || channel.size() != AsciiGrid.HEADER_SIZE + 4L * header.ncols
+              * header.nrows) {
+        channel.close();
+        return null;
+      }
+      // une projection est limitée à 2 Go
+      int bandHeight = (int) Math.max(1, Math.min(header.nrows,
+          Integer.MAX_VALUE / (4L * header.ncols)));
+      FloatBuffer[] bands = new FloatBuffer[(header.nrows + bandHeight - 1)
+          / bandHeight];
+      for (int i = 0; i < bands.length; i++) {
+        int rows = Math.min(bandHeight, header.nrows - i * bandHeight);
+        bands[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+            AsciiGrid.HEADER_SIZE + 4L * header.ncols * i * bandHeight,
+            4L * header.ncols * rows).order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer();
+      }
+      return new AsciiGrid(header, bands, bandHeight, channel);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Lit la grille et écrit ses valeurs dans le fichier annexe, via un fichier
+   * temporaire pour ne jamais laisser de fichier annexe incomplet.
+   */
+  private static void writeSidecar(File file, File sidecarFile)
+      throws IOException {
+    long sourceLength = file.length();
+    long sourceModified = file.lastModified();
+    File temp = File.createTempFile(sidecarFile.getName(), ".tmp", //$NON-NLS-1$
+        sidecarFile.getAbsoluteFile().getParentFile());
+    try {
+      FileChannel input = new RandomAccessFile(file, "r").getChannel(); //$NON-NLS-1$
+      FileChannel output = new RandomAccessFile(temp, "rw").getChannel(); //$NON-NLS-1$
+      try {
+        Scanner scanner = new Scanner(input);
+        Header header = Header.read(scanner);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(AsciiGrid.BUFFER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(AsciiGrid.MAGIC);
+        buffer.putInt(AsciiGrid.VERSION);
+        buffer.putInt(header.ncols);
+        buffer.putInt(header.nrows);
+        buffer.putDouble(header.xll);
+        buffer.putDouble(header.yll);
+        buffer.putDouble(header.cellSizeX);
+        buffer.putDouble(header.cellSizeY);
+        buffer.putDouble(header.noDataValue);
+        buffer.putLong(sourceLength);
+        buffer.putLong(sourceModified);
+        buffer.position(AsciiGrid.HEADER_SIZE);
+        long size = (long) header.ncols * header.nrows;
+        for (long i = 0; i < size; i++) {
+          if (buffer.remaining() < 4) {
+            AsciiGrid.write(buffer, output);
+          }
+          buffer.putFloat(scanner.nextFloat());
+        }
+        AsciiGrid.write(buffer, output);
+      } finally {
+        input.close();
+        output.close();
+      }
+      try {
+        Files.move(temp.toPath(), sidecarFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), sidecarFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp.toPath());
+    }
+  }
+
+  private static void write(ByteBuffer buffer, FileChannel output)
+      throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  @Override
+  protected void readTile(int column, int row, int w, int h, float[] tile) {
+    // les tuiles sont faites de lignes entières
+    int read = 0;
+    while (read < h) {
+      int r = row + read;
+      int band = r / this.bandHeight;
+      int rows = Math.min(h - read, (band + 1) * this.bandHeight - r);
+      // copie de la position pour partager les bandes entre threads
+      FloatBuffer values = this.bands[band].duplicate();
+      values.position((r - band * this.bandHeight) * this.getWidth());
+      values.get(tile, read * w, rows * w);
+      read += rows;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (this.channel != null) {
+      this.channel.close();
+    }
+  }
+
+  /** En-tête d'une grille. */
+  private static class Header {
+    int ncols = -1;
+    int nrows = -1;
+    double xll = Double.NaN;
+    double yll = Double.NaN;
+    double cellSizeX = Double.NaN;
+    double cellSizeY = Double.NaN;
+    double noDataValue = Double.NaN;
+
+    GM_Envelope envelope() {
+      return new GM_Envelope(this.xll, this.xll + this.ncols * this.cellSizeX,
+          this.yll, this.yll + this.nrows * this.cellSizeY);
+    }
+
+    /**
+     * Lit les lignes "clé valeur" de l'en-tête, dans un ordre quelconque,
+     * jusqu'à la première valeur de la grille. Les coordonnées données au
+     * centre de la cellule sud-ouest (xllcenter, yllcenter) sont ramenées à
+     * son coin.
+     */
+    static Header read(Scanner scanner) throws IOException {
+      Header header = new Header();
+      boolean xCenter = false;
+      boolean yCenter = false;
+      while (scanner.startsWithLetter()) {
+        String key = scanner.nextWord().toLowerCase();
+        double value = scanner.nextFloatingPoint();
+        if (key.equals("ncols")) { //$NON-NLS-1$
+          header.ncols = (int) value;
+        } else if (key.equals("nrows")) { //$NON-NLS-1$
+          header.nrows = (int) value;
+        } else if (key.equals("xllcorner") || key.equals("xllcenter")) { //$NON-NLS-1$ //$NON-NLS-2$
+          header.xll = value;
+          xCenter = key.equals("xllcenter"); //$NON-NLS-1$
+        } else if (key.equals("yllcorner") || key.equals("yllcenter")) { //$NON-NLS-1$ //$NON-NLS-2$
+          header.yll = value;
+          yCenter = key.equals("yllcenter"); //$NON-NLS-1$
+        } else if (key.equals("cellsize")) { //$NON-NLS-1$
+          header.cellSizeX = value;
+          header.cellSizeY = value;
+        } else if (key.equals("dx") || key.equals("cellsizex")) { //$NON-NLS-1$ //$NON-NLS-2$
+          header.cellSizeX = value;
+        } else if (key.equals("dy") || key.equals("cellsizey")) { //$NON-NLS-1$ //$NON-NLS-2$
+          header.cellSizeY = value;
+        } else if (key.equals("nodata_value")) { //$NON-NLS-1$
+          header.noDataValue = value;
+        } else {
+          AsciiGrid.LOGGER.warn("Ignoring header " + key); //$NON-NLS-1$
+        }
+      }
+      if (header.ncols <= 0 || header.nrows <= 0 || Double.isNaN(header.xll)
+          || Double.isNaN(header.yll) || !(header.cellSizeX > 0)
+          || !(header.cellSizeY > 0)) {
+        throw new IOException("invalid ASCII grid header"); //$NON-NLS-1$
+      }
+      if (xCenter) {
+        header.xll -= header.cellSizeX / 2;
+      }
+      if (yCenter) {
+        header.yll -= header.cellSizeY / 2;
+      }
+      return header;
+    }
+  }
+
+  /** Lecture des mots d'une grille dans un tampon d'octets. */
+  private static class Scanner {
+    private final ReadableByteChannel input;
+    private final ByteBuffer buffer = ByteBuffer
+        .allocate(AsciiGrid.BUFFER_SIZE);
+    private final byte[] bytes = this.buffer.array();
+    private int pos = 0;
+    private int limit = 0;
+    private boolean end = false;
+
+    Scanner(ReadableByteChannel input) {
+      this.input = input;
+    }
+
+    /**
+     * Saute les séparateurs et s'assure qu'un mot entier est dans le tampon.
+     * @return faux à la fin du fichier
+     */
+    private boolean skipSpaces() throws IOException {
+      while (true) {
+        while (this.pos < this.limit && this.bytes[this.pos] <= ' ') {
+          this.pos++;
+        }
+        if (this.limit - this.pos >= AsciiGrid.MAX_TOKEN || this.end) {
+          return this.pos < this.limit;
+        }
+        this.fill();
+      }
+    }
+
+    /** Complète le tampon après les octets non lus. */
+    private void fill() throws IOException {
+      System.arraycopy(this.bytes, this.pos, this.bytes, 0, this.limit
+          - this.pos);
+      this.limit -= this.pos;
+      this.pos = 0;
+      this.buffer.clear().position(this.limit);
+      while (this.buffer.hasRemaining()) {
+        if (this.input.read(this.buffer) < 0) {
+          this.end = true;
+          break;
+        }
+      }
+      this.limit = this.buffer.position();
+    }
+
+    boolean startsWithLetter() throws IOException {
+      if (!this.skipSpaces()) {
+        return false;
+      }
+      byte b = this.bytes[this.pos];
+      return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    /** Mot de l'en-tête, en ASCII. */
+    String nextWord() throws IOException {
+      this.skipSpaces();
+      int start = this.pos;
+      while (this.pos < this.limit && this.bytes[this.pos] > ' ') {
+        this.pos++;
+      }
+      return new String(this.bytes, start, this.pos - start, "US-ASCII"); //$NON-NLS-1$
+    }
+
+    float nextFloat() throws IOException {
+      return (float) this.nextFloatingPoint();
+    }
+
+    /**
+     * Décode un nombre sans créer de chaîne, sauf pour les écritures rares
+     * (plus de 15 chiffres significatifs, grands exposants, nan, inf...).
+     */
+    double nextFloatingPoint() throws IOException {
+      if (!this.skipSpaces()) {
+        throw new IOException("unexpected end of ASCII grid"); //$NON-NLS-1$
+      }
+      byte[] b = this.bytes;
+      int start = this.pos;
+      int p = start;
+      int end = Math.min(this.limit, start + AsciiGrid.MAX_TOKEN);
+      boolean negative = false;
+      if (b[p] == '-' || b[p] == '+') {
+        negative = b[p] == '-';
+        p++;
+      }
+      long mantissa = 0;
+      int digits = 0;
+      int decimals = 0;
+      boolean dot = false;
+      boolean any = false;
+      for (; p < end; p++) {
+        int c = b[p];
+        if (c >= '0' && c <= '9') {
+          any = true;
+          if (digits < 18) {
+            if (mantissa != 0 || c != '0') {
+              digits++;
+            }
+            mantissa = 10 * mantissa + (c - '0');
+            if (dot) {
+              decimals++;
+            }
+          } else {
+            digits++;
+            if (!dot) {
+              decimals--;
+            }
+          }
+        } else if (c == '.' && !dot) {
+          dot = true;
+        } else {
+          break;
+        }
+      }
+      int exponent = 0;
+      boolean simple = any && digits <= 15;
+      if (p < end && (b[p] == 'e' || b[p] == 'E')) {
+        p++;
+        boolean negativeExponent = false;
+        if (p < end && (b[p] == '-' || b[p] == '+')) {
+          negativeExponent = b[p] == '-';
+          p++;
+        }
+        int exponentStart = p;
+        for (; p < end && b[p] >= '0' && b[p] <= '9'; p++) {
+          exponent = Math.min(10 * exponent + (b[p] - '0'), 1000);
+        }
+        simple &= p > exponentStart;
+        if (negativeExponent) {
+          exponent = -exponent;
+        }
+      }
+      if (p < end && b[p] > ' ') {
+        // nan, inf...
+        simple = false;
+        while (p < end && b[p] > ' ') {
+          p++;
+        }
+      }
+      if (p == end && end < this.limit) {
+        throw new IOException("invalid value in ASCII grid: " //$NON-NLS-1$
+            + new String(b, start, p - start, "US-ASCII")); //$NON-NLS-1$
+      }
+      this.pos = p;
+      int scale = exponent - decimals;
+      if (simple && scale > -AsciiGrid.POWERS_OF_TEN.length
+          && scale < AsciiGrid.POWERS_OF_TEN.length) {
+        double value = (scale < 0) ? mantissa
+            / AsciiGrid.POWERS_OF_TEN[-scale] : mantissa
+            * AsciiGrid.POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+      }
+      String text = new String(b, start, p - start, "US-ASCII"); //$NON-NLS-1$
+      try {
+        return Double.parseDouble(text);
+      } catch (NumberFormatException e) {
+        throw new IOException("invalid value in ASCII grid: " + text); //$NON-NLS-1$
+      }
+    }
+  }
+}
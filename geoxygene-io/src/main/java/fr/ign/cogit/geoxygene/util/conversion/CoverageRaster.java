@@ -0,0 +1,93 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.opengis.geometry.Envelope;
+
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+
+/**
+ * Grille lue par tuiles dans la première bande d'une couverture GeoTools. Les
+ * lecteurs GeoTools chargent l'image de façon différée : seules les tuiles de
+ * l'image couvrant les cellules demandées sont décodées.
+ */
+class CoverageRaster extends TiledRaster {
+
+  /** Taille des tuiles utilisée si l'image n'est pas découpée en tuiles. */
+  static final int DEFAULT_TILE_SIZE = 256;
+
+  private final AbstractGridCoverage2DReader reader;
+  private final GridCoverage2D coverage;
+  private final RenderedImage image;
+
+  CoverageRaster(AbstractGridCoverage2DReader reader, GridCoverage2D coverage,
+      long cacheSize) {
+    super(coverage.getRenderedImage().getWidth(), coverage.getRenderedImage()
+        .getHeight(), CoverageRaster.tileSize(coverage.getRenderedImage()
+        .getTileWidth(), coverage.getRenderedImage().getWidth()),
+        CoverageRaster.tileSize(coverage.getRenderedImage().getTileHeight(),
+            coverage.getRenderedImage().getHeight()), CoverageRaster
+            .envelope(coverage.getEnvelope()), CoverageRaster
+            .noDataValue(coverage), cacheSize);
+    this.reader = reader;
+    this.coverage = coverage;
+    this.image = coverage.getRenderedImage();
+  }
+
+  /** Une image d'un seul bloc est relue par tuiles de taille par défaut. */
+  private static int tileSize(int imageTileSize, int imageSize) {
+    return (imageTileSize >= imageSize) ? CoverageRaster.DEFAULT_TILE_SIZE
+        : imageTileSize;
+  }
+
+  private static GM_Envelope envelope(Envelope env) {
+    return new GM_Envelope(env.getMinimum(0), env.getMaximum(0), env
+        .getMinimum(1), env.getMaximum(1));
+  }
+
+  private static double noDataValue(GridCoverage2D coverage) {
+    GridSampleDimension dimension = coverage.getSampleDimension(0);
+    double[] noData = (dimension == null) ? null : dimension.getNoDataValues();
+    return (noData == null || noData.length == 0) ? Double.NaN : noData[0];
+  }
+
+  @Override
+  protected void readTile(int column, int row, int w, int h, float[] tile)
+      throws IOException {
+    Raster data = this.image.getData(new Rectangle(this.image.getMinX()
+        + column, this.image.getMinY() + row, w, h));
+    data.getSamples(data.getMinX(), data.getMinY(), w, h, 0, tile);
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    this.coverage.dispose(true);
+    this.reader.dispose();
+  }
+}
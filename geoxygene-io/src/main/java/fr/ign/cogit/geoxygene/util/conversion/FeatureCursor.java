@@ -0,0 +1,61 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+
+/**
+ * Lecture d'objets un par un depuis une source de données (fichier, base...),
+ * sans les charger tous en mémoire. Un curseur doit être fermé après usage.
+ * <p>
+ * Exemple :
+ * 
+ * <pre>
+ * FeatureCursor&lt;DefaultFeature&gt; cursor = new ShapefileCursor(&quot;roads.shp&quot;);
+ * try {
+ *   while (cursor.hasNext()) {
+ *     DefaultFeature feature = cursor.next();
+ *     ...
+ *   }
+ * } finally {
+ *   cursor.close();
+ * }
+ * </pre>
+ * 
+ * @param <Feat> type des objets lus
+ */
+public interface FeatureCursor<Feat extends IFeature> extends Closeable {
+  /**
+   * @return vrai s'il reste des objets à lire
+   * @throws IOException en cas d'erreur de lecture
+   */
+  public boolean hasNext() throws IOException;
+
+  /**
+   * Lit l'objet suivant.
+   * @return l'objet suivant
+   * @throws IOException en cas d'erreur de lecture
+   * @throws java.util.NoSuchElementException s'il n'y a plus d'objet
+   */
+  public Feat next() throws IOException;
+}
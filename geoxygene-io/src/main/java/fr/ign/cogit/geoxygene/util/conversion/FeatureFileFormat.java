@@ -0,0 +1,533 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableCurve;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+/**
+ * Constantes et codage des géométries du format binaire de populations écrit
+ * par {@link FeatureFileWriter} et lu par {@link MappedFeatureFile}.
+ * <p>
+ * Un fichier (extension .gxf) est formé, en petit-boutiste :
+ * <ul>
+ * <li>d'un en-tête de {@link #HEADER_SIZE} octets : nombre magique, version,
+ * nombre d'objets et de champs, facteur d'échelle des coordonnées, positions
+ * des sections finales et enveloppe des objets ;
+ * <li>de blocs d'objets stockés par colonnes : identifiants, géométries puis
+ * une colonne typée par attribut, avec un masque des valeurs nulles ;
+ * <li>du schéma (noms de l'attribut et du champ, type de valeur de chaque
+ * attribut, type de géométrie) ;
+ * <li>de la table des blocs ;
+ * <li>d'un R-tree compact sur les enveloppes des objets (voir
+ * {@link fr.ign.cogit.geoxygene.util.index.PackedRTree#pack(double[], int, int, int[], double[])}
+ * ).
+ * </ul>
+ * Les coordonnées sont arrondies comme celles des {@link DirectPosition}
+ * (facteur <code>10^PRECISION</code>), puis chaque coordonnée est codée par sa
+ * différence avec la précédente sur un nombre variable d'octets.
+ * <p>
+ * Une géométrie est codée en 3D si sa première position a un Z. Il n'y a pas
+ * de marque de Z inconnu : les Z égaux à NaN des autres positions d'une
+ * géométrie 3D sont écrits, et relus, comme des 0.
+ */
+final class FeatureFileFormat {
+
+  /** "GXF1" en petit-boutiste. */
+  static final int MAGIC = 0x31465847;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 96;
+
+  /** Types de colonnes. */
+  static final byte STRING = 0;
+  static final byte INTEGER = 1;
+  static final byte LONG = 2;
+  static final byte DOUBLE = 3;
+  static final byte FLOAT = 4;
+  static final byte BOOLEAN = 5;
+  static final byte DATE = 6;
+
+  /** Types de géométries. */
+  private static final int POINT = 1;
+  private static final int LINESTRING = 2;
+  private static final int POLYGON = 3;
+  private static final int MULTIPOINT = 4;
+  private static final int MULTICURVE = 5;
+  private static final int MULTISURFACE = 6;
+  private static final int AGGREGATE = 7;
+  private static final int Z = 0x08;
+  private static final int EMPTY = 0x10;
+
+  /** Valeur absolue maximale d'une coordonnée multipliée par l'échelle. */
+  private static final double MAX_QUANTIZED = 1L << 62;
+
+  private FeatureFileFormat() {
+  }
+
+  /**
+   * @param valueType type de valeur d'un attribut (voir
+   *          {@link fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType#getValueType()}
+   *          )
+   * @return le type de la colonne ; les types inconnus sont stockés comme
+   *         chaînes de caractères
+   */
+  static byte columnType(String valueType) {
+    if (valueType == null) {
+      return FeatureFileFormat.STRING;
+    }
+    if (valueType.equalsIgnoreCase("int") //$NON-NLS-1$
+        || valueType.equalsIgnoreCase("integer")) { //$NON-NLS-1$
+      return FeatureFileFormat.INTEGER;
+    }
+    if (valueType.equalsIgnoreCase("long")) { //$NON-NLS-1$
+      return FeatureFileFormat.LONG;
+    }
+    if (valueType.equalsIgnoreCase("double")) { //$NON-NLS-1$
+      return FeatureFileFormat.DOUBLE;
+    }
+    if (valueType.equalsIgnoreCase("float")) { //$NON-NLS-1$
+      return FeatureFileFormat.FLOAT;
+    }
+    if (valueType.equalsIgnoreCase("boolean")) { //$NON-NLS-1$
+      return FeatureFileFormat.BOOLEAN;
+    }
+    if (valueType.equalsIgnoreCase("date")) { //$NON-NLS-1$
+      return FeatureFileFormat.DATE;
+    }
+    return FeatureFileFormat.STRING;
+  }
+
+  /** @return la taille d'une valeur de la colonne, 0 pour les chaînes */
+  static int width(byte columnType) {
+    switch (columnType) {
+      case INTEGER:
+      case FLOAT:
+        return 4;
+      case LONG:
+      case DOUBLE:
+      case DATE:
+        return 8;
+      case BOOLEAN:
+        return 1;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Tableau d'octets extensible, écrit en petit-boutiste.
+   */
+  static final class Bytes {
+    private byte[] data;
+    private int size = 0;
+
+    Bytes(int capacity) {
+      this.data = new byte[Math.max(16, capacity)];
+    }
+
+    int size() {
+      return this.size;
+    }
+
+    byte[] array() {
+      return this.data;
+    }
+
+    void clear() {
+      this.size = 0;
+    }
+
+    /** Oublie les octets écrits après la taille donnée. */
+    void truncate(int size) {
+      this.size = Math.min(this.size, size);
+    }
+
+    private void ensure(int n) {
+      if (this.size + n > this.data.length) {
+        this.data = Arrays.copyOf(this.data,
+            Math.max(this.size + n, 2 * this.data.length));
+      }
+    }
+
+    void put(byte b) {
+      this.ensure(1);
+      this.data[this.size++] = b;
+    }
+
+    void put(byte[] bytes) {
+      this.ensure(bytes.length);
+      System.arraycopy(bytes, 0, this.data, this.size, bytes.length);
+      this.size += bytes.length;
+    }
+
+    void putInt(int v) {
+      this.ensure(4);
+      for (int i = 0; i < 4; i++) {
+        this.data[this.size++] = (byte) (v >>> (8 * i));
+      }
+    }
+
+    void putLong(long v) {
+      this.ensure(8);
+      for (int i = 0; i < 8; i++) {
+        this.data[this.size++] = (byte) (v >>> (8 * i));
+      }
+    }
+
+    void putDouble(double v) {
+      this.putLong(Double.doubleToRawLongBits(v));
+    }
+
+    /** Entier positif sur un nombre variable d'octets (7 bits par octet). */
+    void putVarInt(int v) {
+      this.ensure(5);
+      while ((v & ~0x7F) != 0) {
+        this.data[this.size++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      this.data[this.size++] = (byte) v;
+    }
+
+    /** Entier signé, codé en zigzag sur un nombre variable d'octets. */
+    void putVarLong(long v) {
+      this.ensure(10);
+      long zigzag = (v << 1) ^ (v >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        this.data[this.size++] = (byte) ((zigzag & 0x7F) | 0x80);
+        zigzag >>>= 7;
+      }
+      this.data[this.size++] = (byte) zigzag;
+    }
+  }
+
+  static int getVarInt(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  static long getVarLong(ByteBuffer buffer) {
+    long zigzag = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = buffer.get();
+      zigzag |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+    }
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Écriture des géométries ---------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Code une géométrie.
+   * @param geom géométrie non nulle
+   * @param scale facteur d'échelle des coordonnées
+   * @param out destination
+   * @throws IllegalArgumentException si la géométrie est d'un type non géré ou
+   *           si une coordonnée est trop grande pour l'échelle
+   */
+  static void encode(IGeometry geom, double scale, Bytes out) {
+    FeatureFileFormat.encode(geom, FeatureFileFormat.hasZ(geom), scale,
+        new long[3], out);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void encode(IGeometry geom, boolean z, double scale,
+      long[] previous, Bytes out) {
+    int flags = z ? FeatureFileFormat.Z : 0;
+    if (geom instanceof IPoint) {
+      IDirectPosition position = ((IPoint) geom).getPosition();
+      if (position == null || Double.isNaN(position.getX())) {
+        out.put((byte) (FeatureFileFormat.POINT | FeatureFileFormat.EMPTY));
+        return;
+      }
+      out.put((byte) (FeatureFileFormat.POINT | flags));
+      FeatureFileFormat.encode(position.getX(), position.getY(),
+          position.getZ(), z, scale, previous, out);
+    } else if (geom instanceof IPolygon) {
+      IPolygon polygon = (IPolygon) geom;
+      if (polygon.getExterior() == null) {
+        out.put((byte) (FeatureFileFormat.POLYGON | FeatureFileFormat.EMPTY));
+        return;
+      }
+      out.put((byte) (FeatureFileFormat.POLYGON | flags));
+      out.putVarInt(1 + polygon.sizeInterior());
+      FeatureFileFormat.encode(polygon.getExterior().coord(), z, scale,
+          previous, out);
+      for (int i = 0; i < polygon.sizeInterior(); i++) {
+        FeatureFileFormat.encode(polygon.getInterior(i).coord(), z, scale,
+            previous, out);
+      }
+    } else if (geom instanceof IAggregate) {
+      IAggregate<IGeometry> aggregate = (IAggregate<IGeometry>) geom;
+      int type = FeatureFileFormat.AGGREGATE;
+      if (geom instanceof IMultiPoint) {
+        type = FeatureFileFormat.MULTIPOINT;
+      } else if (geom instanceof IMultiCurve) {
+        type = FeatureFileFormat.MULTICURVE;
+      } else if (geom instanceof IMultiSurface) {
+        type = FeatureFileFormat.MULTISURFACE;
+      }
+      out.put((byte) (type | flags));
+      out.putVarInt(aggregate.size());
+      for (IGeometry element : aggregate) {
+        FeatureFileFormat.encode(element, z, scale, previous, out);
+      }
+    } else {
+      out.put((byte) (FeatureFileFormat.LINESTRING | flags));
+      FeatureFileFormat.encode(FeatureFileFormat.positions(geom), z, scale,
+          previous, out);
+    }
+  }
+
+  private static void encode(IDirectPositionList positions, boolean z,
+      double scale, long[] previous, Bytes out) {
+    int n = positions.size();
+    out.putVarInt(n);
+    if (positions instanceof PackedDirectPositionList) {
+      PackedDirectPositionList packed = (PackedDirectPositionList) positions;
+      for (int i = 0; i < n; i++) {
+        FeatureFileFormat.encode(packed.getX(i), packed.getY(i),
+            packed.getZ(i), z, scale, previous, out);
+      }
+      return;
+    }
+    for (int i = 0; i < n; i++) {
+      IDirectPosition position = positions.get(i);
+      FeatureFileFormat.encode(position.getX(), position.getY(),
+          position.getZ(), z, scale, previous, out);
+    }
+  }
+
+  private static void encode(double x, double y, double zValue, boolean z,
+      double scale, long[] previous, Bytes out) {
+    long qx = FeatureFileFormat.quantize(x, scale);
+    long qy = FeatureFileFormat.quantize(y, scale);
+    out.putVarLong(qx - previous[0]);
+    out.putVarLong(qy - previous[1]);
+    previous[0] = qx;
+    previous[1] = qy;
+    if (z) {
+      // pas de marque de Z inconnu dans le format (voir la classe)
+      long qz = Double.isNaN(zValue) ? 0 : FeatureFileFormat.quantize(zValue,
+          scale);
+      out.putVarLong(qz - previous[2]);
+      previous[2] = qz;
+    }
+  }
+
+  private static long quantize(double value, double scale) {
+    double scaled = value * scale;
+    if (!(Math.abs(scaled) < FeatureFileFormat.MAX_QUANTIZED)) {
+      throw new IllegalArgumentException("coordinate " + value //$NON-NLS-1$
+          + " cannot be stored"); //$NON-NLS-1$
+    }
+    return Math.round(scaled);
+  }
+
+  /** Positions d'une courbe. */
+  private static IDirectPositionList positions(IGeometry geom) {
+    if (geom instanceof ILineString) {
+      return ((ILineString) geom).getControlPoint();
+    }
+    if (geom instanceof ICurve || geom instanceof IRing) {
+      return geom.coord();
+    }
+    throw new IllegalArgumentException("geometry type " //$NON-NLS-1$
+        + geom.getClass().getSimpleName() + " cannot be stored"); //$NON-NLS-1$
+  }
+
+  /** Vrai si la première position de la géométrie a un Z. */
+  @SuppressWarnings("unchecked")
+  private static boolean hasZ(IGeometry geom) {
+    if (geom instanceof IPoint) {
+      IDirectPosition position = ((IPoint) geom).getPosition();
+      return position != null && !Double.isNaN(position.getZ());
+    }
+    if (geom instanceof IPolygon) {
+      IRing exterior = ((IPolygon) geom).getExterior();
+      return exterior != null && FeatureFileFormat.hasZ(exterior);
+    }
+    if (geom instanceof IAggregate) {
+      IAggregate<IGeometry> aggregate = (IAggregate<IGeometry>) geom;
+      return !aggregate.isEmpty() && FeatureFileFormat.hasZ(aggregate.get(0));
+    }
+    IDirectPositionList positions = FeatureFileFormat.positions(geom);
+    return !positions.isEmpty() && !Double.isNaN(positions.get(0).getZ());
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Lecture des géométries ----------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Décode une géométrie à partir de la position courante d'un tampon.
+   * @param buffer tampon, positionné sur la géométrie
+   * @param scale facteur d'échelle des coordonnées
+   * @return la géométrie GeOxygene
+   */
+  static IGeometry decode(ByteBuffer buffer, double scale) {
+    return FeatureFileFormat.decode(buffer, scale, new long[3]);
+  }
+
+  private static IGeometry decode(ByteBuffer buffer, double scale,
+      long[] previous) {
+    int header = buffer.get();
+    boolean z = (header & FeatureFileFormat.Z) != 0;
+    boolean empty = (header & FeatureFileFormat.EMPTY) != 0;
+    switch (header & 0x07) {
+      case POINT: {
+        if (empty) {
+          return new GM_Point();
+        }
+        IDirectPositionList position = FeatureFileFormat.decode(buffer, 1, z,
+            scale, previous);
+        return new GM_Point(position.get(0));
+      }
+      case LINESTRING:
+        return new GM_LineString(FeatureFileFormat.decode(buffer,
+            FeatureFileFormat.getVarInt(buffer), z, scale, previous));
+      case POLYGON: {
+        if (empty) {
+          return new GM_Polygon();
+        }
+        int nbRings = FeatureFileFormat.getVarInt(buffer);
+        GM_Polygon polygon = new GM_Polygon(new GM_Ring(new GM_LineString(
+            FeatureFileFormat.decode(buffer, FeatureFileFormat.getVarInt(buffer),
+                z, scale, previous))));
+        for (int i = 1; i < nbRings; i++) {
+          polygon.addInterior(new GM_Ring(new GM_LineString(FeatureFileFormat
+              .decode(buffer, FeatureFileFormat.getVarInt(buffer), z, scale,
+                  previous))));
+        }
+        return polygon;
+      }
+      case MULTIPOINT: {
+        int n = FeatureFileFormat.getVarInt(buffer);
+        GM_MultiPoint multiPoint = new GM_MultiPoint();
+        for (int i = 0; i < n; i++) {
+          multiPoint.add((GM_Point) FeatureFileFormat.decode(buffer, scale,
+              previous));
+        }
+        return multiPoint;
+      }
+      case MULTICURVE: {
+        int n = FeatureFileFormat.getVarInt(buffer);
+        GM_MultiCurve<GM_OrientableCurve> multiCurve = new GM_MultiCurve<GM_OrientableCurve>();
+        for (int i = 0; i < n; i++) {
+          multiCurve.add((GM_OrientableCurve) FeatureFileFormat.decode(buffer,
+              scale, previous));
+        }
+        return multiCurve;
+      }
+      case MULTISURFACE: {
+        int n = FeatureFileFormat.getVarInt(buffer);
+        GM_MultiSurface<GM_OrientableSurface> multiSurface = new GM_MultiSurface<GM_OrientableSurface>();
+        for (int i = 0; i < n; i++) {
+          multiSurface.add((GM_OrientableSurface) FeatureFileFormat.decode(
+              buffer, scale, previous));
+        }
+        return multiSurface;
+      }
+      default: {
+        int n = FeatureFileFormat.getVarInt(buffer);
+        GM_Aggregate<IGeometry> aggregate = new GM_Aggregate<IGeometry>();
+        for (int i = 0; i < n; i++) {
+          aggregate.add(FeatureFileFormat.decode(buffer, scale, previous));
+        }
+        return aggregate;
+      }
+    }
+  }
+
+  /**
+   * Décode <code>n</code> positions. Comme dans
+   * {@link AdapterFactory#toDirectPositionList(com.vividsolutions.jts.geom.Coordinate[])}
+   * , la dernière position d'une liste fermée est la première.
+   */
+  private static IDirectPositionList decode(ByteBuffer buffer, int n,
+      boolean z, double scale, long[] previous) {
+    int dimension = z ? 3 : 2;
+    if (AdapterFactory.isPackedCoordinates()) {
+      double[] coordinates = new double[n * dimension];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < dimension; j++) {
+          previous[j] += FeatureFileFormat.getVarLong(buffer);
+          coordinates[i * dimension + j] = previous[j] / scale;
+        }
+      }
+      return new PackedDirectPositionList(coordinates, dimension);
+    }
+    DirectPositionList list = new DirectPositionList();
+    long firstX = 0, firstY = 0;
+    for (int i = 0; i < n; i++) {
+      previous[0] += FeatureFileFormat.getVarLong(buffer);
+      previous[1] += FeatureFileFormat.getVarLong(buffer);
+      if (z) {
+        previous[2] += FeatureFileFormat.getVarLong(buffer);
+      }
+      if (i == 0) {
+        firstX = previous[0];
+        firstY = previous[1];
+      } else if (i == n - 1 && previous[0] == firstX && previous[1] == firstY) {
+        list.add(list.get(0));
+        continue;
+      }
+      list.add(z ? new DirectPosition(previous[0] / scale,
+          previous[1] / scale, previous[2] / scale) : new DirectPosition(
+          previous[0] / scale, previous[1] / scale));
+    }
+    return list;
+  }
+}
@@ -0,0 +1,610 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_FeatureType;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.util.conversion.FeatureFileFormat.Bytes;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
+
+/**
+ * Écriture au fil de l'eau d'objets dans un fichier binaire de population (voir
+ * {@link FeatureFileFormat}), relu par {@link MappedFeatureFile}.
+ * <p>
+ * Contrairement au shapefile, ce format conserve le schéma complet (noms
+ * longs, types de valeur), les géométries 3D et les géométries hétérogènes, et
+ * n'a pas de limite de taille. Les objets sont accumulés en mémoire par blocs
+ * de {@link #DEFAULT_BLOCK_SIZE} objets au plus, écrits colonne par colonne ;
+ * seules les enveloppes des objets sont conservées jusqu'à la fermeture, qui
+ * écrit le schéma et l'index spatial.
+ * <p>
+ * Exemple :
+ *
+ * <pre>
+ * FeatureFileWriter writer = new FeatureFileWriter(&quot;routes.gxf&quot;,
+ *     population.getFeatureType());
+ * for (IFeature feature : population) {
+ *   writer.append(feature);
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * Cette classe n'est pas synchronisée.
+ */
+public class FeatureFileWriter implements Closeable {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger.getLogger(FeatureFileWriter.class
+      .getName());
+
+  /** Nombre maximal d'objets par bloc par défaut. */
+  public static final int DEFAULT_BLOCK_SIZE = 65536;
+  /** Taille au-delà de laquelle un bloc est écrit, quel que soit son nombre d'objets. */
+  static final int MAX_BLOCK_BYTES = 1 << 26;
+  /** Nombre de fils par noeud de l'index spatial. */
+  static final int NODE_CAPACITY = PackedRTree.DEFAULT_NODE_CAPACITY;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+  private final String fileName;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  /** Tampon d'écriture séquentielle. */
+  private final ByteBuffer out = ByteBuffer.allocate(1 << 20).order(
+      ByteOrder.LITTLE_ENDIAN);
+  /** Position dans le fichier du début de {@link #out}. */
+  private long position = 0;
+
+  private final GF_FeatureType featureType;
+  private final List<GF_AttributeType> attributes = new ArrayList<GF_AttributeType>();
+  private final double scale = Math.pow(10, DirectPosition.PRECISION);
+  private final int blockSize;
+  private int count = 0;
+  private boolean closed = false;
+
+  /* bloc en cours */
+  private int blockCount = 0;
+  private final int[] ids;
+  private final int[] geometryEnds;
+  private final Bytes geometries = new Bytes(1 << 16);
+  private final Column[] columns;
+
+  /* table des blocs */
+  private long[] blockOffsets = new long[16];
+  private int[] blockFirsts = new int[16];
+  private int nbBlocks = 0;
+
+  /* enveloppes des objets, pour l'index */
+  private double[] envelopes = new double[4 * 1024];
+  private int[] indexed = new int[1024];
+  private int nbIndexed = 0;
+
+  /**
+   * Colonne d'un attribut dans le bloc en cours : valeurs de taille fixe, ou
+   * chaînes UTF-8 et positions de leurs fins.
+   */
+  private static class Column {
+    final byte type;
+    final byte[] nulls;
+    final Bytes values = new Bytes(1 << 12);
+    final int[] ends;
+    boolean warned = false;
+
+    Column(byte type, int blockSize) {
+      this.type = type;
+      this.nulls = new byte[(blockSize + 7) / 8];
+      this.ends = (type == FeatureFileFormat.STRING) ? new int[blockSize] : null;
+    }
+  }
+
+  /**
+   * Crée un fichier.
+   * @param fileName nom du fichier
+   * @param featureType type des objets : ses attributs sont les colonnes du
+   *          fichier
+   * @throws IOException si le fichier ne peut être créé
+   */
+  public FeatureFileWriter(String fileName, GF_FeatureType featureType)
+      throws IOException {
+    this(fileName, featureType, FeatureFileWriter.DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Crée un fichier.
+   * @param fileName nom du fichier
+   * @param featureType type des objets : ses attributs sont les colonnes du
+   *          fichier
+   * @param blockSize nombre maximal d'objets par bloc
+   * @throws IOException si le fichier ne peut être créé
+   */
+  public FeatureFileWriter(String fileName, GF_FeatureType featureType,
+      int blockSize) throws IOException {
+    this.fileName = fileName;
+    this.featureType = featureType;
+    this.blockSize = Math.max(1, blockSize);
+    if (featureType != null) {
+      this.attributes.addAll(featureType.getFeatureAttributes());
+    }
+    this.ids = new int[this.blockSize];
+    this.geometryEnds = new int[this.blockSize];
+    this.columns = new Column[this.attributes.size()];
+    for (int i = 0; i < this.columns.length; i++) {
+      this.columns[i] = new Column(FeatureFileFormat.columnType(this.attributes
+          .get(i).getValueType()), this.blockSize);
+    }
+    this.raf = new RandomAccessFile(fileName, "rw"); //$NON-NLS-1$
+    this.raf.setLength(0);
+    this.channel = this.raf.getChannel();
+    // en-tête écrit à la fermeture : un fichier incomplet n'a pas de nombre
+    // magique
+    this.out.position(FeatureFileFormat.HEADER_SIZE);
+  }
+
+  /**
+   * Écrit une population dans un fichier.
+   * @param features objets à écrire
+   * @param featureType type des objets
+   * @param fileName nom du fichier
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public static void write(Iterable<? extends IFeature> features,
+      GF_FeatureType featureType, String fileName) throws IOException {
+    FeatureFileWriter writer = new FeatureFileWriter(fileName, featureType);
+    try {
+      for (IFeature feature : features) {
+        writer.append(feature);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** @return le nombre d'objets écrits */
+  public int getCount() {
+    return this.count;
+  }
+
+  /**
+   * Ajoute un objet au fichier. Les Z inconnus d'une géométrie 3D sont écrits
+   * comme des 0 (voir {@link FeatureFileFormat}).
+   * @param feature objet à écrire
+   * @throws IOException en cas d'erreur d'écriture
+   * @throws IllegalArgumentException si la géométrie de l'objet ne peut être
+   *           stockée : l'objet n'est alors pas écrit et le fichier reste
+   *           valide
+   */
+  public void append(IFeature feature) throws IOException {
+    if (this.closed) {
+      throw new IOException("file " + this.fileName + " is closed"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    int row = this.blockCount;
+    this.ids[row] = feature.getId();
+    IGeometry geom = feature.getGeom();
+    if (geom != null) {
+      int start = this.geometries.size();
+      try {
+        FeatureFileFormat.encode(geom, this.scale, this.geometries);
+      } catch (IllegalArgumentException e) {
+        // le codage a pu s'arrêter en cours de géométrie
+        this.geometries.truncate(start);
+        throw e;
+      }
+      IEnvelope envelope = geom.envelope();
+      if (envelope != null && !envelope.isEmpty()) {
+        this.addEnvelope(envelope);
+      }
+    }
+    this.geometryEnds[row] = this.geometries.size();
+    for (int i = 0; i < this.columns.length; i++) {
+      this.put(this.columns[i], row, this.attributeValue(feature, i));
+    }
+    this.blockCount++;
+    this.count++;
+    if (this.blockCount == this.blockSize
+        || this.blockBytes() >= FeatureFileWriter.MAX_BLOCK_BYTES) {
+      this.writeBlock();
+    }
+  }
+
+  private void addEnvelope(IEnvelope envelope) {
+    if (this.nbIndexed == this.indexed.length) {
+      this.indexed = Arrays.copyOf(this.indexed, 2 * this.nbIndexed);
+      this.envelopes = Arrays.copyOf(this.envelopes, 8 * this.nbIndexed);
+    }
+    int k = 4 * this.nbIndexed;
+    this.envelopes[k] = envelope.minX();
+    this.envelopes[k + 1] = envelope.minY();
+    this.envelopes[k + 2] = envelope.maxX();
+    this.envelopes[k + 3] = envelope.maxY();
+    this.indexed[this.nbIndexed++] = this.count;
+  }
+
+  /**
+   * Valeur d'un attribut écrit. Les attributs d'un {@link DefaultFeature} sont
+   * lus par leur rang dans son schéma, ce qui évite de confondre un champ
+   * nommé <code>id</code> avec l'identifiant de l'objet.
+   */
+  private Object attributeValue(IFeature feature, int field) {
+    String memberName = this.attributes.get(field).getMemberName();
+    if (feature instanceof DefaultFeature) {
+      DefaultFeature defaultFeature = (DefaultFeature) feature;
+      if (defaultFeature.getSchema() != null) {
+        int rang = defaultFeature.getSchema().getRang(memberName);
+        if (rang >= 0) {
+          return defaultFeature.getAttribute(rang);
+        }
+      }
+    }
+    return feature.getAttribute(memberName);
+  }
+
+  /**
+   * Range une valeur dans une colonne. Les nombres sont convertis dans le type
+   * de la colonne et les chaînes de caractères sont analysées ; une valeur qui
+   * ne peut être convertie est écrite comme nulle.
+   */
+  private void put(Column column, int row, Object value) {
+    if (column.type == FeatureFileFormat.STRING) {
+      if (value != null) {
+        column.values.put(value.toString().getBytes(FeatureFileWriter.UTF8));
+      }
+      column.ends[row] = column.values.size();
+    } else {
+      try {
+        value = FeatureFileWriter.convert(column.type, value);
+      } catch (NumberFormatException e) {
+        if (!column.warned) {
+          column.warned = true;
+          FeatureFileWriter.LOGGER.warn("Value " + value //$NON-NLS-1$
+              + " does not match its attribute type in " + this.fileName); //$NON-NLS-1$
+        }
+        value = null;
+      }
+      switch (column.type) {
+        case FeatureFileFormat.INTEGER:
+          column.values.putInt((value == null) ? 0 : ((Number) value)
+              .intValue());
+          break;
+        case FeatureFileFormat.FLOAT:
+          column.values.putInt(Float.floatToRawIntBits((value == null) ? 0
+              : ((Number) value).floatValue()));
+          break;
+        case FeatureFileFormat.LONG:
+          column.values.putLong((value == null) ? 0 : ((Number) value)
+              .longValue());
+          break;
+        case FeatureFileFormat.DOUBLE:
+          column.values.putDouble((value == null) ? 0 : ((Number) value)
+              .doubleValue());
+          break;
+        case FeatureFileFormat.DATE:
+          column.values.putLong((value == null) ? 0 : ((Date) value)
+              .getTime());
+          break;
+        default:
+          column.values.put((byte) ((value != null && ((Boolean) value)
+              .booleanValue()) ? 1 : 0));
+      }
+    }
+    if (value == null) {
+      column.nulls[row >> 3] |= 1 << (row & 7);
+    }
+  }
+
+  /**
+   * @return la valeur dans le type de la colonne : un {@link Number} pour les
+   *         colonnes numériques, un {@link Date} ou un {@link Boolean}
+   * @throws NumberFormatException si la valeur ne peut être convertie
+   */
+  private static Object convert(byte type, Object value) {
+    if (value == null) {
+      return null;
+    }
+    switch (type) {
+      case FeatureFileFormat.DATE:
+        if (value instanceof Date) {
+          return value;
+        }
+        break;
+      case FeatureFileFormat.BOOLEAN:
+        if (value instanceof Boolean) {
+          return value;
+        }
+        return Boolean.valueOf(value.toString().trim());
+      default:
+        if (value instanceof Number) {
+          return value;
+        }
+        String text = value.toString().trim();
+        if (type == FeatureFileFormat.INTEGER || type == FeatureFileFormat.LONG) {
+          return Long.valueOf(text);
+        }
+        return Double.valueOf(text);
+    }
+    throw new NumberFormatException();
+  }
+
+  /** Taille approximative du bloc en cours, en octets. */
+  private long blockBytes() {
+    long size = this.geometries.size();
+    for (Column column : this.columns) {
+      size += column.values.size();
+    }
+    return size;
+  }
+
+  /**
+   * Écrit le bloc en cours : nombre d'objets, positions des colonnes (depuis le
+   * début du bloc), identifiants, géométries (positions des fins, puis
+   * données), puis chaque attribut (masque des valeurs nulles, puis valeurs ;
+   * pour les chaînes, positions des fins puis données).
+   */
+  private void writeBlock() throws IOException {
+    int n = this.blockCount;
+    this.align();
+    long blockOffset = this.offset();
+    int[] columnOffsets = new int[2 + this.columns.length];
+    int size = 8 + 4 * columnOffsets.length;
+    columnOffsets[0] = size;
+    size += 4 * n;
+    columnOffsets[1] = size;
+    size += 4 * n + this.geometries.size();
+    for (int i = 0; i < this.columns.length; i++) {
+      Column column = this.columns[i];
+      columnOffsets[2 + i] = size;
+      size += (n + 7) / 8 + column.values.size();
+      if (column.ends != null) {
+        size += 4 * n;
+      }
+    }
+    this.putInt(n);
+    this.putInt(columnOffsets.length);
+    for (int offset : columnOffsets) {
+      this.putInt(offset);
+    }
+    for (int i = 0; i < n; i++) {
+      this.putInt(this.ids[i]);
+    }
+    for (int i = 0; i < n; i++) {
+      this.putInt(this.geometryEnds[i]);
+    }
+    this.put(this.geometries.array(), this.geometries.size());
+    for (Column column : this.columns) {
+      this.put(column.nulls, (n + 7) / 8);
+      if (column.ends != null) {
+        for (int i = 0; i < n; i++) {
+          this.putInt(column.ends[i]);
+        }
+      }
+      this.put(column.values.array(), column.values.size());
+      Arrays.fill(column.nulls, (byte) 0);
+      column.values.clear();
+    }
+    if (this.nbBlocks == this.blockOffsets.length) {
+      this.blockOffsets = Arrays.copyOf(this.blockOffsets, 2 * this.nbBlocks);
+      this.blockFirsts = Arrays.copyOf(this.blockFirsts, 2 * this.nbBlocks);
+    }
+    this.blockOffsets[this.nbBlocks] = blockOffset;
+    this.blockFirsts[this.nbBlocks] = this.count - n;
+    this.nbBlocks++;
+    this.geometries.clear();
+    this.blockCount = 0;
+  }
+
+  /**
+   * Termine le fichier : écrit le dernier bloc, le schéma, la table des blocs,
+   * l'index spatial et enfin l'en-tête.
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      if (this.blockCount > 0) {
+        this.writeBlock();
+      }
+      // schéma
+      this.align();
+      long schemaOffset = this.offset();
+      String typeName = (this.featureType == null) ? "" : this.featureType //$NON-NLS-1$
+          .getTypeName();
+      this.putString(typeName);
+      this.putString((this.featureType == null || this.featureType
+          .getGeometryType() == null) ? "" : this.featureType //$NON-NLS-1$
+          .getGeometryType().getName());
+      this.putInt(this.columns.length);
+      for (int i = 0; i < this.columns.length; i++) {
+        GF_AttributeType attributeType = this.attributes.get(i);
+        String nomField = attributeType.getMemberName();
+        if (attributeType instanceof AttributeType
+            && ((AttributeType) attributeType).getNomField() != null) {
+          nomField = ((AttributeType) attributeType).getNomField();
+        }
+        this.putString(attributeType.getMemberName());
+        this.putString(nomField);
+        this.putString(attributeType.getValueType());
+        this.put(new byte[] { this.columns[i].type }, 1);
+      }
+      // table des blocs : début, premier objet et fin de chaque bloc
+      this.align();
+      long blockTableOffset = this.offset();
+      this.putInt(this.nbBlocks);
+      this.putInt(0);
+      for (int i = 0; i < this.nbBlocks; i++) {
+        this.putLong(this.blockOffsets[i]);
+        this.putInt(this.blockFirsts[i]);
+        this.putInt(0);
+      }
+      this.putLong(schemaOffset);
+      // index spatial
+      long indexOffset = this.offset();
+      double[] envelope = this.writeIndex();
+      this.flushBuffer();
+      // en-tête
+      ByteBuffer header = ByteBuffer.allocate(FeatureFileFormat.HEADER_SIZE)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(FeatureFileFormat.MAGIC);
+      header.putInt(FeatureFileFormat.VERSION);
+      header.putInt(this.count);
+      header.putInt(this.columns.length);
+      header.putDouble(this.scale);
+      header.putLong(schemaOffset);
+      header.putLong(blockTableOffset);
+      header.putLong(indexOffset);
+      for (double d : envelope) {
+        header.putDouble(d);
+      }
+      header.flip();
+      long headerPosition = 0;
+      while (header.hasRemaining()) {
+        headerPosition += this.channel.write(header, headerPosition);
+      }
+    } finally {
+      this.raf.close();
+    }
+    FeatureFileWriter.LOGGER.debug(this.count + " features written in " //$NON-NLS-1$
+        + this.fileName);
+  }
+
+  /**
+   * Écrit l'index : nombre d'objets indexés, nombre de fils par noeud, nombre
+   * de niveaux, fins des niveaux, enveloppes des noeuds, numéros des objets
+   * des feuilles.
+   * @return l'enveloppe de tous les objets : xmin, ymin, xmax, ymax
+   */
+  private double[] writeIndex() throws IOException {
+    int n = this.nbIndexed;
+    int[] levelEnds = PackedRTree.levelEnds(n, FeatureFileWriter.NODE_CAPACITY);
+    double[] boxes = new double[4 * levelEnds[levelEnds.length - 1]];
+    int[] order = PackedRTree.pack(this.envelopes, n,
+        FeatureFileWriter.NODE_CAPACITY, levelEnds, boxes);
+    this.envelopes = null;
+    this.putInt(n);
+    this.putInt(FeatureFileWriter.NODE_CAPACITY);
+    this.putInt(levelEnds.length);
+    for (int levelEnd : levelEnds) {
+      this.putInt(levelEnd);
+    }
+    this.align();
+    for (double d : boxes) {
+      this.putDouble(d);
+    }
+    for (int i = 0; i < n; i++) {
+      this.putInt(this.indexed[order[i]]);
+    }
+    if (n == 0) {
+      return new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+    }
+    int root = 4 * (levelEnds[levelEnds.length - 1] - 1);
+    return Arrays.copyOfRange(boxes, root, root + 4);
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Écriture séquentielle -----------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /** @return la position courante dans le fichier */
+  private long offset() {
+    return this.position + this.out.position();
+  }
+
+  /** Complète par des zéros jusqu'à une position multiple de 8. */
+  private void align() throws IOException {
+    while (this.offset() % 8 != 0) {
+      this.put(new byte[1], 1);
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    this.out.flip();
+    // l'en-tête est laissé vide au début du fichier
+    if (this.position == 0) {
+      this.out.position(FeatureFileFormat.HEADER_SIZE);
+    }
+    long writePosition = this.position + this.out.position();
+    while (this.out.hasRemaining()) {
+      writePosition += this.channel.write(this.out, writePosition);
+    }
+    this.position = writePosition;
+    this.out.clear();
+  }
+
+  private void ensure(int n) throws IOException {
+    if (this.out.remaining() < n) {
+      this.flushBuffer();
+    }
+  }
+
+  private void putInt(int v) throws IOException {
+    this.ensure(4);
+    this.out.putInt(v);
+  }
+
+  private void putLong(long v) throws IOException {
+    this.ensure(8);
+    this.out.putLong(v);
+  }
+
+  private void putDouble(double v) throws IOException {
+    this.ensure(8);
+    this.out.putDouble(v);
+  }
+
+  private void put(byte[] bytes, int length) throws IOException {
+    int done = 0;
+    while (done < length) {
+      if (!this.out.hasRemaining()) {
+        this.flushBuffer();
+      }
+      int n = Math.min(length - done, this.out.remaining());
+      this.out.put(bytes, done, n);
+      done += n;
+    }
+  }
+
+  private void putString(String s) throws IOException {
+    byte[] bytes = (s == null) ? new byte[0] : s
+        .getBytes(FeatureFileWriter.UTF8);
+    this.putInt(bytes.length);
+    this.put(bytes, bytes.length);
+  }
+}
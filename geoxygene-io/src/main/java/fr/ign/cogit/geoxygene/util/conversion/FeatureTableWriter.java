@@ -0,0 +1,743 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_FeatureType;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+
+/**
+ * Écriture en flux d'objets sous forme de table, en CSV ou en ARFF (format de
+ * Weka). Les colonnes sont les attributs d'un type d'objets, éventuellement
+ * suivis de la géométrie en WKT ou en EWKB hexadécimal.
+ * <p>
+ * La façon de lire chaque attribut est déterminée une seule fois par schéma
+ * (rang dans le schéma d'un {@link DefaultFeature}, accesseur des autres
+ * objets), et les valeurs sont écrites selon le type de leur colonne dans un
+ * tampon de caractères réutilisé : la mémoire utilisée ne dépend pas du nombre
+ * d'objets.
+ * <p>
+ * Exemple :
+ *
+ * <pre>
+ * FeatureTableWriter writer = new FeatureTableWriter(&quot;routes.csv&quot;,
+ *     population.getFeatureType(), FeatureTableWriter.Format.CSV,
+ *     FeatureTableWriter.Geometry.WKT);
+ * for (IFeature feature : population) {
+ *   writer.write(feature);
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * Les très grandes populations peuvent être écrites par plusieurs threads,
+ * cf. {@link #export(IFeatureCollection, String, Format, Geometry, int)}.
+ * <p>
+ * Cette classe n'est pas synchronisée.
+ */
+public class FeatureTableWriter implements Closeable {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger
+      .getLogger(FeatureTableWriter.class.getName());
+
+  /** Format de la table. */
+  public enum Format {
+    /** Valeurs séparées par des points-virgules, avec une ligne d'en-tête. */
+    CSV,
+    /** Attribute-Relation File Format de Weka. */
+    ARFF
+  }
+
+  /** Écriture de la géométrie des objets. */
+  public enum Geometry {
+    /** Pas de colonne de géométrie. */
+    NONE,
+    /** Well Known Text. */
+    WKT,
+    /** EWKB petit-boutiste en hexadécimal, comme PostGIS. */
+    WKB_HEX
+  }
+
+  /** Nom de la colonne de géométrie. */
+  public static final String GEOMETRY_COLUMN = "geom"; //$NON-NLS-1$
+  /** Nom de la relation ARFF par défaut. */
+  public static final String DEFAULT_RELATION = "MyRelation"; //$NON-NLS-1$
+
+  private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+  private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"; //$NON-NLS-1$
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray(); //$NON-NLS-1$
+  private static final int BUFFER_SIZE = 1 << 16;
+  /** Nombre minimal d'objets écrits par tâche. */
+  private static final int MIN_SHARD_SIZE = 10000;
+
+  private final Writer out;
+  private final Format format;
+  private final Geometry geometry;
+  private final char separator;
+  private final String[] names;
+  private final String[] fields;
+  private final byte[] types;
+  private final SimpleDateFormat dateFormat = new SimpleDateFormat(
+      FeatureTableWriter.DATE_FORMAT);
+  private final char[] buffer = new char[FeatureTableWriter.BUFFER_SIZE];
+  private int length = 0;
+  private ByteBuffer wkb = ByteBuffer.allocate(256).order(
+      ByteOrder.LITTLE_ENDIAN);
+  private long count = 0;
+  private boolean closed = false;
+
+  /* accesseurs par schéma ou par classe d'objets */
+  private final Map<Object, Accessor[]> accessors = new IdentityHashMap<Object, Accessor[]>();
+  private Object lastKey = null;
+  private Accessor[] lastAccessors = null;
+
+  /**
+   * Crée une table.
+   * @param fileName nom du fichier créé
+   * @param featureType type des objets, dont les attributs forment les
+   *          colonnes
+   * @param format format de la table
+   * @param geometry écriture de la géométrie
+   * @throws IOException si le fichier ne peut être créé
+   */
+  public FeatureTableWriter(String fileName, GF_FeatureType featureType,
+      Format format, Geometry geometry) throws IOException {
+    this(new OutputStreamWriter(new FileOutputStream(fileName),
+        FeatureTableWriter.UTF8), featureType, format, geometry);
+  }
+
+  /**
+   * Écrit une table dans un flux de caractères.
+   * @param writer flux dans lequel écrire, fermé avec cet objet
+   * @param featureType type des objets, dont les attributs forment les
+   *          colonnes
+   * @param format format de la table
+   * @param geometry écriture de la géométrie
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public FeatureTableWriter(Writer writer, GF_FeatureType featureType,
+      Format format, Geometry geometry) throws IOException {
+    this(writer, featureType, format, geometry, true);
+  }
+
+  private FeatureTableWriter(Writer writer, GF_FeatureType featureType,
+      Format format, Geometry geometry, boolean header) throws IOException {
+    this.out = writer;
+    this.format = format;
+    this.geometry = geometry;
+    this.separator = (format == Format.CSV) ? ';' : ',';
+    this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC")); //$NON-NLS-1$
+    List<GF_AttributeType> attributes = (featureType == null) ? new ArrayList<GF_AttributeType>()
+        : featureType.getFeatureAttributes();
+    this.names = new String[attributes.size()];
+    this.fields = new String[attributes.size()];
+    this.types = new byte[attributes.size()];
+    for (int i = 0; i < this.names.length; i++) {
+      this.names[i] = attributes.get(i).getMemberName();
+      this.fields[i] = this.names[i];
+      if (attributes.get(i) instanceof AttributeType) {
+        String nomField = ((AttributeType) attributes.get(i)).getNomField();
+        if (nomField != null && !nomField.isEmpty()) {
+          this.fields[i] = nomField;
+        }
+      }
+      this.types[i] = FeatureFileFormat.columnType(attributes.get(i)
+          .getValueType());
+    }
+    if (header) {
+      this.writeHeader((featureType == null || featureType.getTypeName() == null) ? FeatureTableWriter.DEFAULT_RELATION
+          : featureType.getTypeName());
+    }
+  }
+
+  /**
+   * Écrit tous les objets d'une collection dans une table.
+   * @param collection objets à écrire
+   * @param fileName nom du fichier créé
+   * @param format format de la table
+   * @param geometry écriture de la géométrie
+   * @param parallelism nombre de threads formatant les objets ; au-delà de 1,
+   *          la collection est découpée en tranches écrites dans des fichiers
+   *          temporaires, puis recopiés dans l'ordre à la suite de l'en-tête
+   * @return le nombre d'objets écrits
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public static long export(
+      final IFeatureCollection<? extends IFeature> collection,
+      String fileName, final Format format, final Geometry geometry,
+      int parallelism) throws IOException {
+    final GF_FeatureType featureType = FeatureTableWriter
+        .featureType(collection);
+    int size = collection.size();
+    int shards = (int) Math.min(parallelism, Math.max(1L, size
+        / FeatureTableWriter.MIN_SHARD_SIZE));
+    FileOutputStream stream = new FileOutputStream(fileName);
+    FeatureTableWriter writer = new FeatureTableWriter(new OutputStreamWriter(
+        stream, FeatureTableWriter.UTF8), featureType, format, geometry);
+    try {
+      if (shards <= 1) {
+        FeatureTableWriter.write(writer, collection, 0, size);
+      } else {
+        writer.flush();
+        File directory = new File(fileName).getAbsoluteFile().getParentFile();
+        final File[] parts = new File[shards];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(shards);
+        try {
+          for (int i = 0; i < shards; i++) {
+            parts[i] = File.createTempFile(new File(fileName).getName(),
+                ".part", directory); //$NON-NLS-1$
+            final File part = parts[i];
+            final int first = (int) ((long) size * i / shards);
+            final int last = (int) ((long) size * (i + 1) / shards);
+            tasks.add(new Callable<Void>() {
+              @Override
+              public Void call() throws IOException {
+                FeatureTableWriter.write(new FeatureTableWriter(
+                    new OutputStreamWriter(new FileOutputStream(part),
+                        FeatureTableWriter.UTF8), featureType, format,
+                    geometry, false), collection, first, last);
+                return null;
+              }
+            });
+          }
+          FeatureTableWriter.invokeAll(tasks, parallelism);
+          FileChannel output = stream.getChannel();
+          for (File part : parts) {
+            FileInputStream input = new FileInputStream(part);
+            try {
+              FileChannel channel = input.getChannel();
+              long position = 0;
+              while (position < channel.size()) {
+                position += channel.transferTo(position, channel.size()
+                    - position, output);
+              }
+            } finally {
+              input.close();
+            }
+          }
+          writer.count = size;
+        } finally {
+          for (File part : parts) {
+            if (part != null && !part.delete()) {
+              part.deleteOnExit();
+            }
+          }
+        }
+      }
+    } finally {
+      writer.close();
+    }
+    FeatureTableWriter.LOGGER.debug(writer.getCount()
+        + " features written to " + fileName); //$NON-NLS-1$
+    return writer.getCount();
+  }
+
+  /** Écrit un intervalle d'objets de la collection puis ferme la table. */
+  private static void write(FeatureTableWriter writer,
+      IFeatureCollection<? extends IFeature> collection, int first, int last)
+      throws IOException {
+    try {
+      for (int i = first; i < last; i++) {
+        writer.write(collection.get(i));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static void invokeAll(List<Callable<Void>> tasks, int parallelism)
+      throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      for (Future<Void> future : pool.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("export interrupted", e); //$NON-NLS-1$
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /** Type de la collection, ou à défaut de son premier objet. */
+  static GF_FeatureType featureType(
+      IFeatureCollection<? extends IFeature> collection) {
+    if (collection.getFeatureType() != null || collection.isEmpty()) {
+      return collection.getFeatureType();
+    }
+    return collection.get(0).getFeatureType();
+  }
+
+  /** @return le nombre d'objets écrits */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * Écrit un objet. Les attributs absents de l'objet sont écrits comme des
+   * valeurs manquantes.
+   * @param feature objet à écrire
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public void write(IFeature feature) throws IOException {
+    if (this.closed) {
+      throw new IOException("writer closed"); //$NON-NLS-1$
+    }
+    Accessor[] row = this.accessors(feature);
+    for (int i = 0; i < row.length; i++) {
+      if (i > 0) {
+        this.append(this.separator);
+      }
+      this.writeValue(this.types[i], row[i].get(feature));
+    }
+    if (this.geometry != Geometry.NONE) {
+      if (row.length > 0) {
+        this.append(this.separator);
+      }
+      this.writeGeometry(feature.getGeom());
+    }
+    this.append('\n');
+    this.count++;
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- En-tête -------------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  private void writeHeader(String relation) throws IOException {
+    if (this.format == Format.CSV) {
+      for (int i = 0; i < this.names.length; i++) {
+        if (i > 0) {
+          this.append(this.separator);
+        }
+        this.writeText(this.names[i]);
+      }
+      if (this.geometry != Geometry.NONE) {
+        if (this.names.length > 0) {
+          this.append(this.separator);
+        }
+        this.append(FeatureTableWriter.GEOMETRY_COLUMN);
+      }
+      this.append('\n');
+      return;
+    }
+    this.append("@relation "); //$NON-NLS-1$
+    this.writeText(relation);
+    this.append("\n\n"); //$NON-NLS-1$
+    for (int i = 0; i < this.names.length; i++) {
+      this.append("@attribute "); //$NON-NLS-1$
+      this.writeText(this.names[i]);
+      switch (this.types[i]) {
+        case FeatureFileFormat.INTEGER:
+        case FeatureFileFormat.LONG:
+        case FeatureFileFormat.DOUBLE:
+        case FeatureFileFormat.FLOAT:
+          this.append(" numeric\n"); //$NON-NLS-1$
+          break;
+        case FeatureFileFormat.BOOLEAN:
+          this.append(" {false,true}\n"); //$NON-NLS-1$
+          break;
+        case FeatureFileFormat.DATE:
+          this.append(" date \"" + FeatureTableWriter.DATE_FORMAT + "\"\n"); //$NON-NLS-1$ //$NON-NLS-2$
+          break;
+        default:
+          this.append(" string\n"); //$NON-NLS-1$
+      }
+    }
+    if (this.geometry != Geometry.NONE) {
+      this.append("@attribute " + FeatureTableWriter.GEOMETRY_COLUMN //$NON-NLS-1$
+          + " string\n"); //$NON-NLS-1$
+    }
+    this.append("\n@data\n"); //$NON-NLS-1$
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Valeurs -------------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Écrit une valeur selon le type de sa colonne. Les valeurs d'un autre type
+   * que celui de leur colonne sont écrites comme du texte en CSV, et comme des
+   * valeurs manquantes en ARFF.
+   */
+  private void writeValue(byte type, Object value) throws IOException {
+    if (value == null) {
+      this.writeMissing();
+      return;
+    }
+    switch (type) {
+      case FeatureFileFormat.INTEGER:
+      case FeatureFileFormat.LONG:
+      case FeatureFileFormat.DOUBLE:
+      case FeatureFileFormat.FLOAT:
+        if (value instanceof Number) {
+          this.writeNumber((Number) value);
+          return;
+        }
+        break;
+      case FeatureFileFormat.BOOLEAN:
+        if (value instanceof Boolean) {
+          this.append(((Boolean) value).booleanValue() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+          return;
+        }
+        break;
+      case FeatureFileFormat.DATE:
+        if (value instanceof Date) {
+          this.writeText(this.dateFormat.format((Date) value));
+          return;
+        }
+        break;
+      default:
+        this.writeText(value.toString());
+        return;
+    }
+    if (this.format == Format.ARFF) {
+      this.writeMissing();
+    } else {
+      this.writeText(value.toString());
+    }
+  }
+
+  private void writeMissing() throws IOException {
+    if (this.format == Format.ARFF) {
+      this.append('?');
+    }
+  }
+
+  private void writeNumber(Number value) throws IOException {
+    if (value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte) {
+      this.appendLong(value.longValue());
+      return;
+    }
+    double d = value.doubleValue();
+    if (Double.isNaN(d) || Double.isInfinite(d)) {
+      this.writeMissing();
+    } else if (value instanceof Float) {
+      this.append(Float.toString(value.floatValue()));
+    } else if (value instanceof Double) {
+      this.append(Double.toString(d));
+    } else {
+      this.append(value.toString());
+    }
+  }
+
+  /**
+   * Écrit un texte, entre guillemets s'il le faut en CSV (RFC 4180), toujours
+   * entre apostrophes en ARFF.
+   */
+  private void writeText(String text) throws IOException {
+    if (this.format == Format.ARFF) {
+      this.append('\'');
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        switch (c) {
+          case '\'':
+          case '\\':
+            this.append('\\');
+            this.append(c);
+            break;
+          case '\n':
+            this.append("\\n"); //$NON-NLS-1$
+            break;
+          case '\r':
+            this.append("\\r"); //$NON-NLS-1$
+            break;
+          case '\t':
+            this.append("\\t"); //$NON-NLS-1$
+            break;
+          default:
+            this.append(c);
+        }
+      }
+      this.append('\'');
+      return;
+    }
+    boolean quote = false;
+    for (int i = 0; i < text.length() && !quote; i++) {
+      char c = text.charAt(i);
+      quote = c == this.separator || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      this.append(text);
+      return;
+    }
+    this.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"') {
+        this.append('"');
+      }
+      this.append(c);
+    }
+    this.append('"');
+  }
+
+  private void writeGeometry(IGeometry geom) throws IOException {
+    if (geom == null) {
+      this.writeMissing();
+      return;
+    }
+    if (this.geometry == Geometry.WKT) {
+      this.writeText(WktGeOxygene.makeWkt(geom));
+      return;
+    }
+    int size = WkbGeOxygene.wkbSize(geom, true);
+    if (this.wkb.capacity() < size) {
+      this.wkb = ByteBuffer.allocate(Math.max(size, 2 * this.wkb.capacity()))
+          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+    this.wkb.clear();
+    WkbGeOxygene.writeWkb(geom, true, this.wkb);
+    byte[] bytes = this.wkb.array();
+    if (this.format == Format.ARFF) {
+      this.append('\'');
+    }
+    for (int i = 0; i < size; i++) {
+      if (this.length + 2 > this.buffer.length) {
+        this.flushBuffer();
+      }
+      this.buffer[this.length++] = FeatureTableWriter.HEX[(bytes[i] >> 4) & 0xF];
+      this.buffer[this.length++] = FeatureTableWriter.HEX[bytes[i] & 0xF];
+    }
+    if (this.format == Format.ARFF) {
+      this.append('\'');
+    }
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Tampon --------------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  private void append(char c) throws IOException {
+    if (this.length == this.buffer.length) {
+      this.flushBuffer();
+    }
+    this.buffer[this.length++] = c;
+  }
+
+  private void append(String s) throws IOException {
+    int n = s.length();
+    if (this.length + n > this.buffer.length) {
+      this.flushBuffer();
+      if (n > this.buffer.length) {
+        this.out.write(s);
+        return;
+      }
+    }
+    s.getChars(0, n, this.buffer, this.length);
+    this.length += n;
+  }
+
+  /** Écrit un entier sans créer de chaîne. */
+  private void appendLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      this.append(Long.toString(value));
+      return;
+    }
+    if (this.length + 20 > this.buffer.length) {
+      this.flushBuffer();
+    }
+    if (value < 0) {
+      this.buffer[this.length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v != 0; v /= 10) {
+      digits++;
+    }
+    int end = this.length + digits;
+    for (int i = end - 1; i >= this.length; i--) {
+      this.buffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    this.length = end;
+  }
+
+  private void flushBuffer() throws IOException {
+    this.out.write(this.buffer, 0, this.length);
+    this.length = 0;
+  }
+
+  /**
+   * Écrit le contenu du tampon dans le flux.
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public void flush() throws IOException {
+    this.flushBuffer();
+    this.out.flush();
+  }
+
+  /**
+   * Termine l'écriture et ferme le fichier.
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      this.flushBuffer();
+    } finally {
+      this.out.close();
+    }
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Accesseurs ----------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Accesseurs des colonnes pour un objet, déterminés une fois par schéma pour
+   * les {@link DefaultFeature}, une fois par classe pour les autres objets.
+   */
+  private Accessor[] accessors(IFeature feature) {
+    SchemaDefaultFeature schema = (feature instanceof DefaultFeature) ? ((DefaultFeature) feature)
+        .getSchema()
+        : null;
+    Object key = (schema != null) ? schema : feature.getClass();
+    if (key == this.lastKey) {
+      return this.lastAccessors;
+    }
+    Accessor[] row = this.accessors.get(key);
+    if (row == null) {
+      row = new Accessor[this.names.length];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = (schema != null) ? FeatureTableWriter.rankAccessor(schema,
+            this.names[i]) : FeatureTableWriter.getterAccessor(feature
+            .getClass(), this.fields[i], this.names[i]);
+      }
+      this.accessors.put(key, row);
+    }
+    this.lastKey = key;
+    this.lastAccessors = row;
+    return row;
+  }
+
+  private static Accessor rankAccessor(SchemaDefaultFeature schema,
+      final String memberName) {
+    final int rang = schema.getRang(memberName);
+    if (rang < 0) {
+      return new NameAccessor(memberName);
+    }
+    return new Accessor() {
+      @Override
+      Object get(IFeature feature) {
+        return ((DefaultFeature) feature).getAttribute(rang);
+      }
+    };
+  }
+
+  /**
+   * Accesseur public "get" + champ d'un attribut, comme dans
+   * {@link fr.ign.cogit.geoxygene.feature.AbstractFeature#getAttribute(GF_AttributeType)}
+   * , ou à défaut lecture par {@link IFeature#getAttribute(String)}.
+   */
+  private static Accessor getterAccessor(Class<?> featureClass, String field,
+      final String memberName) {
+    if (field == null || field.isEmpty()) {
+      return new NameAccessor(memberName);
+    }
+    try {
+      final Method getter = featureClass.getMethod("get" //$NON-NLS-1$
+          + Character.toUpperCase(field.charAt(0)) + field.substring(1));
+      if (getter.getReturnType() == Void.TYPE) {
+        return new NameAccessor(memberName);
+      }
+      return new Accessor() {
+        @Override
+        Object get(IFeature feature) {
+          try {
+            return getter.invoke(feature);
+          } catch (IllegalAccessException e) {
+            return feature.getAttribute(memberName);
+          } catch (InvocationTargetException e) {
+            FeatureTableWriter.LOGGER.error("Error reading " + memberName, e //$NON-NLS-1$
+                .getCause());
+            return null;
+          }
+        }
+      };
+    } catch (NoSuchMethodException e) {
+      return new NameAccessor(memberName);
+    }
+  }
+
+  /** Lecture d'une colonne d'un objet. */
+  private static abstract class Accessor {
+    abstract Object get(IFeature feature);
+  }
+
+  private static class NameAccessor extends Accessor {
+    private final String memberName;
+
+    NameAccessor(String memberName) {
+      this.memberName = memberName;
+    }
+
+    @Override
+    Object get(IFeature feature) {
+      return feature.getAttribute(this.memberName);
+    }
+  }
+}
@@ -0,0 +1,1232 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableCurve;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
+import fr.ign.cogit.geoxygene.util.conversion.JsonParser.Token;
+
+/**
+ * Lecture en flux de fichiers GeoJSON (RFC 7946) : une FeatureCollection, un
+ * tableau de Features, ou une suite de Features, une par ligne (NDJSON,
+ * GeoJSON délimité par des retours à la ligne).
+ * <p>
+ * Les objets sont lus un à un par {@link #cursor()}, sans charger le fichier :
+ * la mémoire utilisée ne dépend pas de sa taille. Lorsque aucun schéma n'est
+ * fourni, il est déduit par une première lecture qui ne décode pas les
+ * géométries : chaque propriété devient un attribut, de type Integer, Long,
+ * Double, Boolean ou String selon les valeurs rencontrées. Les objets et
+ * tableaux JSON sont conservés sous forme de texte.
+ * <p>
+ * Un fichier NDJSON peut être découpé aux retours à la ligne et ses morceaux
+ * décodés en parallèle, cf. {@link #read(int)}.
+ * <p>
+ * Le membre <code>id</code> d'un objet devient son identifiant s'il est entier
+ * ; sinon l'objet reçoit son numéro d'ordre dans le fichier. Les membres
+ * <code>crs</code> et <code>bbox</code> sont ignorés.
+ */
+public class GeoJsonReader {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger.getLogger(GeoJsonReader.class
+      .getName());
+
+  private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+  /** Taille minimale d'un morceau de fichier décodé par une tâche. */
+  private static long minChunkSize = 1 << 20;
+
+  /** Type d'une propriété dont toutes les valeurs rencontrées sont nulles. */
+  private static final byte UNKNOWN = -1;
+
+  private final String fileName;
+  private final File file;
+  private final boolean newlineDelimited;
+  private final SchemaDefaultFeature schema;
+
+  /**
+   * @return la taille minimale, en octets, d'un morceau de fichier NDJSON
+   *         décodé par une tâche
+   */
+  public static long getMinChunkSize() {
+    return GeoJsonReader.minChunkSize;
+  }
+
+  /**
+   * Affecte la taille minimale, en octets, d'un morceau de fichier NDJSON
+   * décodé par une tâche (1 Mo par défaut). Un fichier plus petit que deux
+   * morceaux est lu séquentiellement.
+   * @param size taille minimale d'un morceau
+   */
+  public static void setMinChunkSize(long size) {
+    GeoJsonReader.minChunkSize = Math.max(1, size);
+  }
+
+  /**
+   * Ouvre un fichier GeoJSON et déduit son schéma, en parallèle s'il s'agit
+   * d'un fichier NDJSON.
+   * @param fileName nom ou URL (file:) du fichier
+   * @throws IOException si le fichier ne peut être lu ou n'est pas du GeoJSON
+   */
+  public GeoJsonReader(String fileName) throws IOException {
+    this(fileName, null);
+  }
+
+  /**
+   * Ouvre un fichier GeoJSON dont les objets seront lus avec un schéma donné.
+   * Les propriétés absentes du schéma sont ignorées, et les valeurs sont
+   * converties dans le type de leur attribut.
+   * @param fileName nom ou URL (file:) du fichier
+   * @param schema schéma des objets lus ; s'il est null, il est déduit du
+   *          fichier
+   * @throws IOException si le fichier ne peut être lu ou n'est pas du GeoJSON
+   */
+  public GeoJsonReader(String fileName, SchemaDefaultFeature schema)
+      throws IOException {
+    this.fileName = fileName;
+    String path = fileName;
+    if (path.startsWith("file:")) { //$NON-NLS-1$
+      try {
+        path = new File(new URL(path).toURI()).getPath();
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
+    }
+    this.file = new File(path);
+    this.newlineDelimited = this.isNewlineDelimited(this.file);
+    if (schema != null) {
+      this.schema = schema;
+    } else {
+      String typeName = this.file.getName();
+      int dot = typeName.lastIndexOf('.');
+      if (dot > 0) {
+        typeName = typeName.substring(0, dot);
+      }
+      this.schema = this.inferSchema(typeName, Runtime.getRuntime()
+          .availableProcessors());
+    }
+  }
+
+  /**
+   * Lit tous les objets d'un fichier GeoJSON dans une nouvelle population.
+   * @param fileName nom ou URL (file:) du fichier
+   * @return une population contenant les objets du fichier
+   * @throws IOException en cas d'erreur de lecture
+   */
+  public static IPopulation<IFeature> read(String fileName) throws IOException {
+    return new GeoJsonReader(fileName).read();
+  }
+
+  /**
+   * Renvoie un curseur sur les objets GeoJSON d'un flux de caractères.
+   * @param reader flux à lire, fermé avec le curseur
+   * @param schema schéma des objets lus
+   * @return un curseur sur les objets du flux
+   */
+  public static FeatureCursor<DefaultFeature> cursor(Reader reader,
+      SchemaDefaultFeature schema) {
+    return new Scanner(new JsonParser(reader), schema, null);
+  }
+
+  /** @return le schéma des objets lus */
+  public SchemaDefaultFeature getSchema() {
+    return this.schema;
+  }
+
+  /**
+   * @return vrai si le fichier contient un objet par ligne et peut donc être
+   *         décodé en parallèle
+   */
+  public boolean isNewlineDelimited() {
+    return this.newlineDelimited;
+  }
+
+  /**
+   * Renvoie un curseur sur les objets du fichier, lus un à un.
+   * @return un curseur sur les objets du fichier
+   * @throws IOException si le fichier ne peut être ouvert
+   */
+  public FeatureCursor<DefaultFeature> cursor() throws IOException {
+    return GeoJsonReader.cursor(new InputStreamReader(new FileInputStream(
+        this.file), GeoJsonReader.UTF8), this.schema);
+  }
+
+  /**
+   * Lit tous les objets du fichier, avec autant de tâches que de processeurs.
+   * @return une population contenant les objets du fichier
+   * @throws IOException en cas d'erreur de lecture
+   * @see #read(int)
+   */
+  public IPopulation<IFeature> read() throws IOException {
+    return this.read(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Lit tous les objets du fichier et les ajoute, dans l'ordre du fichier, à
+   * une nouvelle population en un seul chargement en masse. Un fichier NDJSON
+   * est découpé aux retours à la ligne en morceaux décodés en parallèle ; les
+   * autres fichiers sont lus séquentiellement.
+   * @param parallelism nombre maximal de tâches simultanées
+   * @return une population contenant les objets du fichier
+   * @throws IOException en cas d'erreur de lecture
+   */
+  public IPopulation<IFeature> read(int parallelism) throws IOException {
+    Population<IFeature> population = new Population<IFeature>(this.schema
+        .getNom());
+    population.setFeatureType(this.schema.getFeatureType());
+    long[] bounds = this.chunks(parallelism);
+    if (bounds.length <= 2) {
+      ShapefileReader.read(this.cursor(), population);
+    } else {
+      ChunkTask task = new ChunkTask(this, bounds, false);
+      GeoJsonReader.invoke(task, parallelism);
+      population.beginBulk();
+      try {
+        // les identifiants attribués dans chaque morceau sont des numéros
+        // d'ordre locaux, décalés ici du nombre d'objets des morceaux
+        // précédents
+        int offset = 0;
+        for (int i = 0; i < task.features.length; i++) {
+          BitSet generated = task.generated[i];
+          for (int j = generated.nextSetBit(0); j >= 0; j = generated
+              .nextSetBit(j + 1)) {
+            DefaultFeature feature = task.features[i].get(j);
+            feature.setId(feature.getId() + offset);
+          }
+          population.addAll(task.features[i]);
+          offset += task.features[i].size();
+        }
+      } finally {
+        population.endBulk();
+      }
+    }
+    GeoJsonReader.LOGGER.debug(population.size() + " features read from " //$NON-NLS-1$
+        + this.fileName);
+    return population;
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Déduction du schéma -------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /** Types des propriétés et des géométries rencontrées. */
+  private static class Inference {
+    private final Map<String, byte[]> types = new LinkedHashMap<String, byte[]>();
+    private Class<? extends GM_Object> geometryType = null;
+
+    void property(String name, byte type) {
+      byte[] current = this.types.get(name);
+      if (current == null) {
+        this.types.put(name, new byte[] { type });
+      } else {
+        current[0] = GeoJsonReader.merge(current[0], type);
+      }
+    }
+
+    void geometry(String type) {
+      if (type != null) {
+        this.geometry(GeoJsonReader.geometryClass(type));
+      }
+    }
+
+    /** Ajoute les types d'un morceau suivant du fichier. */
+    void merge(Inference other) {
+      for (Map.Entry<String, byte[]> entry : other.types.entrySet()) {
+        this.property(entry.getKey(), entry.getValue()[0]);
+      }
+      if (other.geometryType != null) {
+        this.geometry(other.geometryType);
+      }
+    }
+
+    private void geometry(Class<? extends GM_Object> geometryClass) {
+      if (this.geometryType == null) {
+        this.geometryType = geometryClass;
+      } else if (this.geometryType != geometryClass) {
+        this.geometryType = GM_Object.class;
+      }
+    }
+  }
+
+  /**
+   * Type commun à deux types de valeurs : les entiers sont promus en entiers
+   * longs puis en doubles, et les types incompatibles donnent des chaînes.
+   */
+  static byte merge(byte type1, byte type2) {
+    if (type1 == type2 || type2 == GeoJsonReader.UNKNOWN) {
+      return type1;
+    }
+    if (type1 == GeoJsonReader.UNKNOWN) {
+      return type2;
+    }
+    if (GeoJsonReader.isNumber(type1) && GeoJsonReader.isNumber(type2)) {
+      return (byte) Math.max(type1, type2);
+    }
+    return FeatureFileFormat.STRING;
+  }
+
+  private static boolean isNumber(byte type) {
+    return type == FeatureFileFormat.INTEGER || type == FeatureFileFormat.LONG
+        || type == FeatureFileFormat.DOUBLE;
+  }
+
+  /** @return le type d'un nombre JSON selon son écriture */
+  static byte numberType(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '.' || c == 'e' || c == 'E') {
+        return FeatureFileFormat.DOUBLE;
+      }
+    }
+    try {
+      long value = Long.parseLong(text);
+      return (value == (int) value) ? FeatureFileFormat.INTEGER
+          : FeatureFileFormat.LONG;
+    } catch (NumberFormatException e) {
+      return FeatureFileFormat.DOUBLE;
+    }
+  }
+
+  private SchemaDefaultFeature inferSchema(String typeName, int parallelism)
+      throws IOException {
+    Inference inference;
+    long[] bounds = this.chunks(parallelism);
+    if (bounds.length <= 2) {
+      Scanner scanner = new Scanner(new JsonParser(new InputStreamReader(
+          new FileInputStream(this.file), GeoJsonReader.UTF8)), null,
+          new Inference());
+      try {
+        scanner.scan();
+      } finally {
+        scanner.close();
+      }
+      inference = scanner.inference;
+    } else {
+      ChunkTask task = new ChunkTask(this, bounds, true);
+      GeoJsonReader.invoke(task, parallelism);
+      inference = task.inferences[0];
+      for (int i = 1; i < task.inferences.length; i++) {
+        inference.merge(task.inferences[i]);
+      }
+    }
+    String[] names = inference.types.keySet().toArray(
+        new String[inference.types.size()]);
+    Class<?>[] classes = new Class<?>[names.length];
+    for (int i = 0; i < names.length; i++) {
+      switch (inference.types.get(names[i])[0]) {
+        case FeatureFileFormat.INTEGER:
+          classes[i] = Integer.class;
+          break;
+        case FeatureFileFormat.LONG:
+          classes[i] = Long.class;
+          break;
+        case FeatureFileFormat.DOUBLE:
+          classes[i] = Double.class;
+          break;
+        case FeatureFileFormat.BOOLEAN:
+          classes[i] = Boolean.class;
+          break;
+        default:
+          classes[i] = String.class;
+      }
+    }
+    SchemaDefaultFeature inferred = new SchemaDefaultFeature();
+    inferred.setNom(typeName);
+    inferred.setNomSchema(typeName);
+    ShapefileReader.initFeatureType(inferred, typeName, names, classes,
+        inference.geometryType);
+    return inferred;
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Découpage des fichiers NDJSON ---------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Un fichier est délimité par des retours à la ligne si son premier élément
+   * est un objet qui n'est pas une FeatureCollection et qui tient sur la
+   * première ligne.
+   */
+  private boolean isNewlineDelimited(File input) throws IOException {
+    Scanner scanner = new Scanner(new JsonParser(new InputStreamReader(
+        new FileInputStream(input), GeoJsonReader.UTF8)), null,
+        new Inference());
+    long end;
+    try {
+      if (scanner.parser.peek() != Token.BEGIN_OBJECT || !scanner.advance()
+          || scanner.mode != Scanner.SEQUENCE) {
+        return false;
+      }
+      end = scanner.parser.position();
+    } finally {
+      scanner.close();
+    }
+    Reader reader = new InputStreamReader(new FileInputStream(input),
+        GeoJsonReader.UTF8);
+    try {
+      char[] buffer = new char[8192];
+      long read = 0;
+      while (read < end) {
+        int n = reader.read(buffer, 0, (int) Math.min(buffer.length, end
+            - read));
+        if (n < 0) {
+          break;
+        }
+        for (int i = 0; i < n; i++) {
+          if (buffer[i] == '\n') {
+            return false;
+          }
+        }
+        read += n;
+      }
+    } finally {
+      reader.close();
+    }
+    return true;
+  }
+
+  /**
+   * Découpe le fichier en morceaux commençant en début de ligne.
+   * @return les positions des débuts des morceaux, suivies de la taille du
+   *         fichier ; deux positions seulement si le fichier n'est pas découpé
+   */
+  private long[] chunks(int parallelism) throws IOException {
+    long length = this.file.length();
+    if (!this.newlineDelimited || parallelism <= 1) {
+      return new long[] { 0, length };
+    }
+    int n = (int) Math.min(4L * parallelism, length
+        / GeoJsonReader.minChunkSize);
+    if (n <= 1) {
+      return new long[] { 0, length };
+    }
+    long[] bounds = new long[n + 1];
+    RandomAccessFile raf = new RandomAccessFile(this.file, "r"); //$NON-NLS-1$
+    try {
+      byte[] buffer = new byte[8192];
+      for (int i = 1; i < n; i++) {
+        long position = Math.max(length * i / n, bounds[i - 1]);
+        // recherche du retour à la ligne suivant
+        raf.seek(position);
+        search: while (position < length) {
+          int read = raf.read(buffer);
+          if (read < 0) {
+            break;
+          }
+          for (int j = 0; j < read; j++) {
+            if (buffer[j] == '\n') {
+              position += j + 1;
+              break search;
+            }
+          }
+          position += read;
+        }
+        bounds[i] = Math.min(position, length);
+      }
+    } finally {
+      raf.close();
+    }
+    bounds[n] = length;
+    return bounds;
+  }
+
+  /** Flux limité à un nombre d'octets. */
+  private static class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long length) {
+      super(in);
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (this.remaining <= 0) {
+        return -1;
+      }
+      int b = super.read();
+      if (b >= 0) {
+        this.remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (this.remaining <= 0) {
+        return -1;
+      }
+      int n = super.read(b, off, (int) Math.min(len, this.remaining));
+      if (n > 0) {
+        this.remaining -= n;
+      }
+      return n;
+    }
+  }
+
+  private Reader chunkReader(long start, long end) throws IOException {
+    FileInputStream in = new FileInputStream(this.file);
+    in.getChannel().position(start);
+    return new InputStreamReader(new BoundedInputStream(in, end - start),
+        GeoJsonReader.UTF8);
+  }
+
+  private static void invoke(ChunkTask task, int parallelism)
+      throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(task);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Décodage d'un intervalle de morceaux d'un fichier NDJSON, divisé jusqu'à
+   * un morceau par tâche : lecture des objets, ou seulement de leurs types.
+   */
+  private static class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final GeoJsonReader reader;
+    private final long[] bounds;
+    private final boolean infer;
+    private final int first;
+    private final int last;
+    final List<DefaultFeature>[] features;
+    final BitSet[] generated;
+    final Inference[] inferences;
+
+    @SuppressWarnings("unchecked")
+    ChunkTask(GeoJsonReader reader, long[] bounds, boolean infer) {
+      this.reader = reader;
+      this.bounds = bounds;
+      this.infer = infer;
+      this.first = 0;
+      this.last = bounds.length - 1;
+      this.features = new List[this.last];
+      this.generated = new BitSet[this.last];
+      this.inferences = new Inference[this.last];
+    }
+
+    private ChunkTask(ChunkTask parent, int first, int last) {
+      this.reader = parent.reader;
+      this.bounds = parent.bounds;
+      this.infer = parent.infer;
+      this.first = first;
+      this.last = last;
+      this.features = parent.features;
+      this.generated = parent.generated;
+      this.inferences = parent.inferences;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.last - this.first > 1) {
+        int middle = (this.first + this.last) >>> 1;
+        RecursiveAction.invokeAll(new ChunkTask(this, this.first, middle),
+            new ChunkTask(this, middle, this.last));
+        return;
+      }
+      try {
+        Scanner scanner = new Scanner(new JsonParser(this.reader.chunkReader(
+            this.bounds[this.first], this.bounds[this.last])),
+            this.infer ? null : this.reader.schema, this.infer ? new Inference()
+                : null);
+        try {
+          if (this.infer) {
+            scanner.scan();
+            this.inferences[this.first] = scanner.inference;
+          } else {
+            List<DefaultFeature> list = new ArrayList<DefaultFeature>();
+            while (scanner.hasNext()) {
+              list.add(scanner.next());
+            }
+            this.features[this.first] = list;
+            this.generated[this.first] = scanner.generated;
+          }
+        } finally {
+          scanner.close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Lecture des objets --------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Parcours des objets d'un flux GeoJSON : construction des objets selon un
+   * schéma, ou seulement relevé des types de leurs valeurs.
+   */
+  private static class Scanner implements FeatureCursor<DefaultFeature> {
+    /** Suite d'éléments au premier niveau. */
+    static final int SEQUENCE = 0;
+    /** Dans un tableau de Features. */
+    static final int ARRAY = 1;
+    /** Dans le membre features d'une FeatureCollection. */
+    static final int COLLECTION = 2;
+
+    final JsonParser parser;
+    private final SchemaDefaultFeature schema;
+    final Inference inference;
+    private final Map<String, Integer> ranks = new HashMap<String, Integer>();
+    private final byte[] columnTypes;
+
+    int mode = Scanner.SEQUENCE;
+    private DefaultFeature next = null;
+    private int number = 0;
+    /** Numéros des objets dont l'identifiant est leur numéro d'ordre. */
+    final BitSet generated = new BitSet();
+
+    Scanner(JsonParser parser, SchemaDefaultFeature schema, Inference inference) {
+      this.parser = parser;
+      this.schema = schema;
+      this.inference = inference;
+      if (schema == null) {
+        this.columnTypes = new byte[0];
+        return;
+      }
+      List<GF_AttributeType> attributes = schema.getFeatureType()
+          .getFeatureAttributes();
+      byte[] types = new byte[attributes.size()];
+      int nbFields = 0;
+      for (GF_AttributeType attributeType : attributes) {
+        int rang = schema.getRang(attributeType.getMemberName());
+        if (rang < 0) {
+          continue;
+        }
+        String name = attributeType.getMemberName();
+        if (attributeType instanceof AttributeType
+            && ((AttributeType) attributeType).getNomField() != null) {
+          name = ((AttributeType) attributeType).getNomField();
+        }
+        this.ranks.put(name, Integer.valueOf(rang));
+        if (rang >= types.length) {
+          types = Arrays.copyOf(types, rang + 1);
+        }
+        types[rang] = FeatureFileFormat.columnType(attributeType
+            .getValueType());
+        nbFields = Math.max(nbFields, rang + 1);
+      }
+      this.columnTypes = Arrays.copyOf(types, nbFields);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      return this.next != null || this.advance();
+    }
+
+    @Override
+    public DefaultFeature next() throws IOException {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      DefaultFeature feature = this.next;
+      this.next = null;
+      return feature;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.parser.close();
+    }
+
+    /** Parcourt tous les objets restants. */
+    void scan() throws IOException {
+      while (this.advance()) {
+        this.next = null;
+      }
+    }
+
+    /**
+     * Lit l'objet suivant.
+     * @return faux à la fin du flux
+     */
+    boolean advance() throws IOException {
+      while (true) {
+        if (this.mode == Scanner.SEQUENCE) {
+          Token token = this.parser.peek();
+          if (token == Token.END_DOCUMENT) {
+            return false;
+          }
+          if (token == Token.BEGIN_ARRAY) {
+            this.parser.beginArray();
+            this.mode = Scanner.ARRAY;
+            continue;
+          }
+          if (token != Token.BEGIN_OBJECT) {
+            throw this.parser.syntaxError("expected a feature but was " //$NON-NLS-1$
+                + token);
+          }
+          this.parser.beginObject();
+          if (this.readFeature(true)) {
+            return true;
+          }
+          // début du membre features d'une FeatureCollection
+          continue;
+        }
+        if (this.parser.hasNext()) {
+          this.parser.beginObject();
+          this.readFeature(false);
+          return true;
+        }
+        this.parser.endArray();
+        if (this.mode == Scanner.COLLECTION) {
+          // membres suivant le tableau des objets
+          while (this.parser.hasNext()) {
+            this.parser.nextName();
+            this.parser.skipValue();
+          }
+          this.parser.endObject();
+        }
+        this.mode = Scanner.SEQUENCE;
+      }
+    }
+
+    /**
+     * Lit les membres d'un objet dont l'accolade ouvrante a été lue.
+     * @param topLevel vrai si l'objet est au premier niveau et peut être une
+     *          FeatureCollection
+     * @return faux si l'objet est une FeatureCollection, dont le tableau des
+     *         objets vient d'être ouvert
+     */
+    private boolean readFeature(boolean topLevel) throws IOException {
+      Object[] values = (this.inference == null) ? new Object[this.columnTypes.length]
+          : null;
+      IGeometry geom = null;
+      int id = this.number;
+      boolean hasId = false;
+      while (this.parser.hasNext()) {
+        String name = this.parser.nextName();
+        if (name.equals("geometry")) { //$NON-NLS-1$
+          if (this.inference != null) {
+            this.inference.geometry(this.readGeometryType());
+          } else {
+            geom = this.readGeometry();
+          }
+        } else if (name.equals("properties")) { //$NON-NLS-1$
+          this.readProperties(values);
+        } else if (name.equals("id")) { //$NON-NLS-1$
+          Token token = this.parser.peek();
+          String text = null;
+          if (token == Token.NUMBER) {
+            text = this.parser.nextNumber();
+          } else if (token == Token.STRING) {
+            text = this.parser.nextString();
+          } else {
+            this.parser.skipValue();
+          }
+          if (text != null) {
+            try {
+              id = Integer.parseInt(text);
+              hasId = true;
+            } catch (NumberFormatException e) {
+              // identifiant non entier : le numéro d'ordre est utilisé
+            }
+          }
+        } else if (topLevel && name.equals("features") //$NON-NLS-1$
+            && this.parser.peek() == Token.BEGIN_ARRAY) {
+          this.parser.beginArray();
+          this.mode = Scanner.COLLECTION;
+          return false;
+        } else {
+          this.parser.skipValue();
+        }
+      }
+      this.parser.endObject();
+      if (!hasId) {
+        this.generated.set(this.number);
+      }
+      this.number++;
+      if (this.inference == null) {
+        DefaultFeature feature = new DefaultFeature();
+        feature.setFeatureType(this.schema.getFeatureType());
+        feature.setSchema(this.schema);
+        feature.setId(id);
+        feature.setGeom(geom);
+        feature.setAttributes(values);
+        this.next = feature;
+      }
+      return true;
+    }
+
+    private void readProperties(Object[] values) throws IOException {
+      if (this.parser.peek() == Token.NULL) {
+        this.parser.nextNull();
+        return;
+      }
+      this.parser.beginObject();
+      while (this.parser.hasNext()) {
+        String name = this.parser.nextName();
+        if (this.inference != null) {
+          this.inference.property(name, this.readType());
+          continue;
+        }
+        Integer rang = this.ranks.get(name);
+        if (rang == null) {
+          this.parser.skipValue();
+        } else {
+          values[rang.intValue()] = this.readValue(this.columnTypes[rang
+              .intValue()]);
+        }
+      }
+      this.parser.endObject();
+    }
+
+    /** Lit une valeur et renvoie son type. */
+    private byte readType() throws IOException {
+      switch (this.parser.peek()) {
+        case NUMBER:
+          return GeoJsonReader.numberType(this.parser.nextNumber());
+        case BOOLEAN:
+          this.parser.nextBoolean();
+          return FeatureFileFormat.BOOLEAN;
+        case NULL:
+          this.parser.nextNull();
+          return GeoJsonReader.UNKNOWN;
+        default:
+          this.parser.skipValue();
+          return FeatureFileFormat.STRING;
+      }
+    }
+
+    /**
+     * Lit une valeur et la convertit dans le type d'une colonne ; les valeurs
+     * non convertibles donnent null.
+     */
+    private Object readValue(byte columnType) throws IOException {
+      switch (this.parser.peek()) {
+        case NULL:
+          this.parser.nextNull();
+          return null;
+        case BOOLEAN:
+          boolean b = this.parser.nextBoolean();
+          if (columnType == FeatureFileFormat.BOOLEAN) {
+            return Boolean.valueOf(b);
+          }
+          return (columnType == FeatureFileFormat.STRING) ? Boolean.toString(b)
+              : null;
+        case NUMBER:
+          if (columnType == FeatureFileFormat.DOUBLE) {
+            return Double.valueOf(this.parser.nextDouble());
+          }
+          if (columnType == FeatureFileFormat.FLOAT) {
+            return Float.valueOf((float) this.parser.nextDouble());
+          }
+          return GeoJsonReader.convert(this.parser.nextNumber(), columnType);
+        case STRING:
+          return GeoJsonReader.convert(this.parser.nextString(), columnType);
+        default:
+          String json = this.parser.nextJson();
+          return (columnType == FeatureFileFormat.STRING) ? json : null;
+      }
+    }
+
+    /*-- Géométries ----------------------------------------------*/
+
+    /** Lit une géométrie et ne renvoie que son type. */
+    private String readGeometryType() throws IOException {
+      if (this.parser.peek() == Token.NULL) {
+        this.parser.nextNull();
+        return null;
+      }
+      String type = null;
+      this.parser.beginObject();
+      while (this.parser.hasNext()) {
+        if (this.parser.nextName().equals("type")) { //$NON-NLS-1$
+          type = this.parser.nextString();
+        } else {
+          this.parser.skipValue();
+        }
+      }
+      this.parser.endObject();
+      return type;
+    }
+
+    /** Lit une géométrie, dont les membres peuvent être dans un ordre quelconque. */
+    private IGeometry readGeometry() throws IOException {
+      if (this.parser.peek() == Token.NULL) {
+        this.parser.nextNull();
+        return null;
+      }
+      String type = null;
+      Object coordinates = null;
+      List<IGeometry> geometries = null;
+      this.parser.beginObject();
+      while (this.parser.hasNext()) {
+        String name = this.parser.nextName();
+        if (name.equals("type")) { //$NON-NLS-1$
+          type = this.parser.nextString();
+        } else if (name.equals("coordinates")) { //$NON-NLS-1$
+          coordinates = this.readCoordinates();
+        } else if (name.equals("geometries") //$NON-NLS-1$
+            && this.parser.peek() == Token.BEGIN_ARRAY) {
+          geometries = new ArrayList<IGeometry>();
+          this.parser.beginArray();
+          while (this.parser.hasNext()) {
+            IGeometry geometry = this.readGeometry();
+            if (geometry != null) {
+              geometries.add(geometry);
+            }
+          }
+          this.parser.endArray();
+        } else {
+          this.parser.skipValue();
+        }
+      }
+      this.parser.endObject();
+      if (type == null) {
+        throw this.parser.syntaxError("geometry without type"); //$NON-NLS-1$
+      }
+      try {
+        return GeoJsonReader.geometry(type, coordinates, geometries);
+      } catch (ClassCastException e) {
+        throw this.parser.syntaxError("invalid coordinates for " + type); //$NON-NLS-1$
+      }
+    }
+
+    /**
+     * Lit des coordonnées : une position donne un tableau de doubles, une
+     * liste de positions un {@link Positions}, et les niveaux supérieurs des
+     * listes.
+     */
+    private Object readCoordinates() throws IOException {
+      if (this.parser.peek() == Token.NULL) {
+        this.parser.nextNull();
+        return null;
+      }
+      this.parser.beginArray();
+      return this.readCoordinatesRest();
+    }
+
+    /** Lit la fin d'un tableau de coordonnées dont le crochet ouvrant a été lu. */
+    private Object readCoordinatesRest() throws IOException {
+      if (this.parser.peek() == Token.NUMBER) {
+        Positions position = new Positions(1);
+        position.readRest(this.parser);
+        return Arrays.copyOf(position.coordinates, 3);
+      }
+      List<Object> list = new ArrayList<Object>();
+      if (!this.parser.hasNext()) {
+        this.parser.endArray();
+        return list;
+      }
+      // le premier élément dit s'il s'agit d'une liste de positions
+      this.parser.beginArray();
+      if (this.parser.peek() == Token.NUMBER) {
+        Positions positions = new Positions(16);
+        positions.readRest(this.parser);
+        while (this.parser.hasNext()) {
+          this.parser.beginArray();
+          positions.readRest(this.parser);
+        }
+        this.parser.endArray();
+        return positions;
+      }
+      list.add(this.readCoordinatesRest());
+      while (this.parser.hasNext()) {
+        list.add(this.readCoordinates());
+      }
+      this.parser.endArray();
+      return list;
+    }
+  }
+
+  /**
+   * Liste de positions lues, rangées par triplets (x, y, z), z valant NaN pour
+   * les positions en deux dimensions.
+   */
+  private static class Positions {
+    double[] coordinates;
+    int size = 0;
+    boolean z = false;
+
+    Positions(int capacity) {
+      this.coordinates = new double[3 * capacity];
+    }
+
+    /** Lit une position dont le crochet ouvrant a été lu. */
+    void readRest(JsonParser parser) throws IOException {
+      if (3 * this.size + 3 > this.coordinates.length) {
+        this.coordinates = Arrays.copyOf(this.coordinates,
+            2 * this.coordinates.length);
+      }
+      int k = 3 * this.size;
+      int dimension = 0;
+      while (parser.hasNext()) {
+        double value = parser.nextDouble();
+        if (dimension < 3) {
+          this.coordinates[k + dimension] = value;
+        }
+        // au-delà de z (mesure...) : valeur ignorée
+        dimension++;
+      }
+      parser.endArray();
+      if (dimension < 2) {
+        throw parser.syntaxError("position with " + dimension //$NON-NLS-1$
+            + " coordinates"); //$NON-NLS-1$
+      }
+      if (dimension == 2) {
+        this.coordinates[k + 2] = Double.NaN;
+      } else {
+        this.z = true;
+      }
+      this.size++;
+    }
+
+    /**
+     * Comme dans
+     * {@link AdapterFactory#toDirectPositionList(com.vividsolutions.jts.geom.Coordinate[])}
+     * , la dernière position d'une liste fermée est la première.
+     */
+    IDirectPositionList toList() {
+      if (AdapterFactory.isPackedCoordinates()) {
+        int dimension = this.z ? 3 : 2;
+        double[] packed = new double[this.size * dimension];
+        for (int i = 0; i < this.size; i++) {
+          System.arraycopy(this.coordinates, 3 * i, packed, dimension * i,
+              dimension);
+        }
+        return new PackedDirectPositionList(packed, dimension);
+      }
+      DirectPositionList list = new DirectPositionList();
+      for (int i = 0; i < this.size; i++) {
+        if (i > 0 && i == this.size - 1
+            && this.coordinates[3 * i] == this.coordinates[0]
+            && this.coordinates[3 * i + 1] == this.coordinates[1]) {
+          list.add(list.get(0));
+        } else {
+          list.add(this.position(i));
+        }
+      }
+      return list;
+    }
+
+    DirectPosition position(int i) {
+      double zValue = this.coordinates[3 * i + 2];
+      return Double.isNaN(zValue) ? new DirectPosition(this.coordinates[3 * i],
+          this.coordinates[3 * i + 1]) : new DirectPosition(
+          this.coordinates[3 * i], this.coordinates[3 * i + 1], zValue);
+    }
+  }
+
+  /**
+   * Convertit une valeur lue sous forme de texte dans le type d'une colonne.
+   * Une valeur qui ne peut être représentée dans ce type est remplacée par
+   * null, plutôt que tronquée.
+   */
+  static Object convert(String text, byte columnType) {
+    try {
+      switch (columnType) {
+        case FeatureFileFormat.INTEGER:
+          return Integer.valueOf(Math.toIntExact(GeoJsonReader
+              .parseLong(text)));
+        case FeatureFileFormat.LONG:
+          return Long.valueOf(GeoJsonReader.parseLong(text));
+        case FeatureFileFormat.DOUBLE:
+          return Double.valueOf(text);
+        case FeatureFileFormat.FLOAT:
+          return Float.valueOf(text);
+        case FeatureFileFormat.BOOLEAN:
+          return Boolean.valueOf(text);
+        case FeatureFileFormat.DATE:
+          return GeoJsonReader.parseDate(text);
+        default:
+          return text;
+      }
+    } catch (NumberFormatException | ArithmeticException e) {
+      return null;
+    }
+  }
+
+  /** Date écrite au format ISO 8601 ou en millisecondes. */
+  private static Date parseDate(String text) {
+    try {
+      return Date.from(Instant.parse(text));
+    } catch (DateTimeParseException e) {
+      return new Date(GeoJsonReader.parseLong(text));
+    }
+  }
+
+  private static long parseLong(String text) {
+    try {
+      return Long.parseLong(text);
+    } catch (NumberFormatException e) {
+      return (long) Double.parseDouble(text);
+    }
+  }
+
+  /** @return la classe GeOxygene d'un type de géométrie GeoJSON */
+  static Class<? extends GM_Object> geometryClass(String type) {
+    if (type.equals("Point")) { //$NON-NLS-1$
+      return GM_Point.class;
+    }
+    if (type.equals("LineString")) { //$NON-NLS-1$
+      return GM_LineString.class;
+    }
+    if (type.equals("Polygon")) { //$NON-NLS-1$
+      return GM_Polygon.class;
+    }
+    if (type.equals("MultiPoint")) { //$NON-NLS-1$
+      return GM_MultiPoint.class;
+    }
+    if (type.equals("MultiLineString")) { //$NON-NLS-1$
+      return GM_MultiCurve.class;
+    }
+    if (type.equals("MultiPolygon")) { //$NON-NLS-1$
+      return GM_MultiSurface.class;
+    }
+    if (type.equals("GeometryCollection")) { //$NON-NLS-1$
+      return GM_Aggregate.class;
+    }
+    return GM_Object.class;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static IGeometry geometry(String type, Object coordinates,
+      List<IGeometry> geometries) throws IOException {
+    if (type.equals("GeometryCollection")) { //$NON-NLS-1$
+      GM_Aggregate<IGeometry> aggregate = new GM_Aggregate<IGeometry>();
+      if (geometries != null) {
+        for (IGeometry geometry : geometries) {
+          aggregate.add(geometry);
+        }
+      }
+      return aggregate;
+    }
+    if (type.equals("Point")) { //$NON-NLS-1$
+      if (!(coordinates instanceof double[])) {
+        return new GM_Point();
+      }
+      double[] xyz = (double[]) coordinates;
+      return new GM_Point(Double.isNaN(xyz[2]) ? new DirectPosition(xyz[0],
+          xyz[1]) : new DirectPosition(xyz[0], xyz[1], xyz[2]));
+    }
+    if (coordinates instanceof double[]) {
+      throw new IOException("invalid coordinates for " + type); //$NON-NLS-1$
+    }
+    List<Object> list = (coordinates instanceof List) ? (List<Object>) coordinates
+        : new ArrayList<Object>(0);
+    if (type.equals("LineString")) { //$NON-NLS-1$
+      return (coordinates instanceof Positions) ? new GM_LineString(
+          ((Positions) coordinates).toList()) : new GM_LineString();
+    }
+    if (type.equals("Polygon")) { //$NON-NLS-1$
+      return GeoJsonReader.polygon(list);
+    }
+    if (type.equals("MultiPoint")) { //$NON-NLS-1$
+      GM_MultiPoint multiPoint = new GM_MultiPoint();
+      if (coordinates instanceof Positions) {
+        Positions positions = (Positions) coordinates;
+        for (int i = 0; i < positions.size; i++) {
+          multiPoint.add(new GM_Point(positions.position(i)));
+        }
+      }
+      return multiPoint;
+    }
+    if (type.equals("MultiLineString")) { //$NON-NLS-1$
+      GM_MultiCurve<GM_OrientableCurve> multiCurve = new GM_MultiCurve<GM_OrientableCurve>();
+      for (Object line : list) {
+        if (line instanceof Positions) {
+          multiCurve.add(new GM_LineString(((Positions) line).toList()));
+        }
+      }
+      return multiCurve;
+    }
+    if (type.equals("MultiPolygon")) { //$NON-NLS-1$
+      GM_MultiSurface<GM_OrientableSurface> multiSurface = new GM_MultiSurface<GM_OrientableSurface>();
+      for (Object polygon : list) {
+        // les polygones vides sont ignorés
+        if (!((List<Object>) polygon).isEmpty()) {
+          multiSurface.add(GeoJsonReader.polygon((List<Object>) polygon));
+        }
+      }
+      return multiSurface;
+    }
+    throw new IOException("unknown geometry type " + type); //$NON-NLS-1$
+  }
+
+  private static GM_Polygon polygon(List<Object> rings) {
+    if (rings.isEmpty()) {
+      return new GM_Polygon();
+    }
+    GM_Polygon polygon = new GM_Polygon(new GM_Ring(new GM_LineString(
+        ((Positions) rings.get(0)).toList())));
+    for (int i = 1; i < rings.size(); i++) {
+      polygon.addInterior(new GM_Ring(new GM_LineString(((Positions) rings
+          .get(i)).toList())));
+    }
+    return polygon;
+  }
+}
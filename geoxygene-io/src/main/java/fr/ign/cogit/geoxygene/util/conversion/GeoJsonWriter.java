@@ -0,0 +1,375 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_FeatureType;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+
+/**
+ * Écriture en flux d'objets au format GeoJSON (RFC 7946), sous forme d'une
+ * FeatureCollection ou d'un objet par ligne (NDJSON). Les objets sont écrits
+ * au fur et à mesure de leur ajout : la mémoire utilisée ne dépend pas de leur
+ * nombre.
+ * <p>
+ * Exemple :
+ *
+ * <pre>
+ * GeoJsonWriter writer = new GeoJsonWriter(&quot;routes.ndjson&quot;, true);
+ * for (IFeature feature : population) {
+ *   writer.write(feature);
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * Les propriétés écrites sont les attributs du type de chaque objet ; les
+ * dates sont écrites au format ISO 8601, et les nombres non finis comme null.
+ * Les coordonnées sont écrites telles quelles, sans reprojection.
+ * <p>
+ * Cette classe n'est pas synchronisée.
+ */
+public class GeoJsonWriter implements Closeable {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger.getLogger(GeoJsonWriter.class
+      .getName());
+
+  private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+  private final Writer out;
+  private final boolean newlineDelimited;
+  private final SimpleDateFormat dateFormat = new SimpleDateFormat(
+      "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"); //$NON-NLS-1$
+  private int count = 0;
+  private boolean closed = false;
+
+  /* attributs du dernier type d'objet écrit */
+  private GF_FeatureType featureType = null;
+  private final List<GF_AttributeType> attributes = new ArrayList<GF_AttributeType>();
+
+  /**
+   * Crée un fichier GeoJSON.
+   * @param fileName nom du fichier créé
+   * @param newlineDelimited vrai pour écrire un objet par ligne, faux pour
+   *          écrire une FeatureCollection
+   * @throws IOException si le fichier ne peut être créé
+   */
+  public GeoJsonWriter(String fileName, boolean newlineDelimited)
+      throws IOException {
+    this(new OutputStreamWriter(new FileOutputStream(fileName),
+        GeoJsonWriter.UTF8), newlineDelimited);
+  }
+
+  /**
+   * Écrit des objets GeoJSON dans un flux de caractères.
+   * @param writer flux dans lequel écrire, fermé avec cet objet
+   * @param newlineDelimited vrai pour écrire un objet par ligne, faux pour
+   *          écrire une FeatureCollection
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public GeoJsonWriter(Writer writer, boolean newlineDelimited)
+      throws IOException {
+    this.out = new BufferedWriter(writer, 1 << 16);
+    this.newlineDelimited = newlineDelimited;
+    this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC")); //$NON-NLS-1$
+    if (!newlineDelimited) {
+      this.out.write("{\"type\":\"FeatureCollection\",\"features\":[\n"); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Écrit tous les objets d'une collection dans un fichier GeoJSON. Les
+   * fichiers d'extension <code>.ndjson</code>, <code>.geojsonl</code> ou
+   * <code>.jsonl</code> sont écrits avec un objet par ligne.
+   * @param collection objets à écrire
+   * @param fileName nom du fichier créé
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public static void write(IFeatureCollection<? extends IFeature> collection,
+      String fileName) throws IOException {
+    String lowerCase = fileName.toLowerCase();
+    GeoJsonWriter writer = new GeoJsonWriter(fileName, lowerCase
+        .endsWith(".ndjson") //$NON-NLS-1$
+        || lowerCase.endsWith(".geojsonl") //$NON-NLS-1$
+        || lowerCase.endsWith(".jsonl")); //$NON-NLS-1$
+    try {
+      for (IFeature feature : collection) {
+        writer.write(feature);
+      }
+    } finally {
+      writer.close();
+    }
+    GeoJsonWriter.LOGGER.debug(writer.getCount() + " features written to " //$NON-NLS-1$
+        + fileName);
+  }
+
+  /** @return le nombre d'objets écrits */
+  public int getCount() {
+    return this.count;
+  }
+
+  /**
+   * Écrit un objet.
+   * @param feature objet à écrire
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  public void write(IFeature feature) throws IOException {
+    if (this.closed) {
+      throw new IOException("writer closed"); //$NON-NLS-1$
+    }
+    if (this.count > 0 && !this.newlineDelimited) {
+      this.out.write(",\n"); //$NON-NLS-1$
+    }
+    this.out.write("{\"type\":\"Feature\",\"id\":"); //$NON-NLS-1$
+    this.out.write(Integer.toString(feature.getId()));
+    this.out.write(",\"geometry\":"); //$NON-NLS-1$
+    IGeometry geom = feature.getGeom();
+    if (geom == null) {
+      this.out.write("null"); //$NON-NLS-1$
+    } else {
+      this.writeGeometry(geom);
+    }
+    this.out.write(",\"properties\":{"); //$NON-NLS-1$
+    GF_FeatureType type = feature.getFeatureType();
+    if (type != this.featureType) {
+      this.featureType = type;
+      this.attributes.clear();
+      if (type != null) {
+        this.attributes.addAll(type.getFeatureAttributes());
+      }
+    }
+    for (int i = 0; i < this.attributes.size(); i++) {
+      if (i > 0) {
+        this.out.write(',');
+      }
+      String memberName = this.attributes.get(i).getMemberName();
+      JsonParser.quote(memberName, this.out);
+      this.out.write(':');
+      this.writeValue(GeoJsonWriter.attributeValue(feature, memberName));
+    }
+    this.out.write("}}"); //$NON-NLS-1$
+    if (this.newlineDelimited) {
+      this.out.write('\n');
+    }
+    this.count++;
+  }
+
+  /**
+   * Valeur d'un attribut. Comme dans {@link FeatureFileWriter}, les attributs
+   * d'un {@link DefaultFeature} sont lus par leur rang dans son schéma.
+   */
+  private static Object attributeValue(IFeature feature, String memberName) {
+    if (feature instanceof DefaultFeature) {
+      DefaultFeature defaultFeature = (DefaultFeature) feature;
+      if (defaultFeature.getSchema() != null) {
+        int rang = defaultFeature.getSchema().getRang(memberName);
+        if (rang >= 0) {
+          return defaultFeature.getAttribute(rang);
+        }
+      }
+    }
+    return feature.getAttribute(memberName);
+  }
+
+  private void writeValue(Object value) throws IOException {
+    if (value == null) {
+      this.out.write("null"); //$NON-NLS-1$
+    } else if (value instanceof Number) {
+      double d = ((Number) value).doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        this.out.write("null"); //$NON-NLS-1$
+      } else {
+        this.out.write(value.toString());
+      }
+    } else if (value instanceof Boolean) {
+      this.out.write(value.toString());
+    } else if (value instanceof Date) {
+      JsonParser.quote(this.dateFormat.format((Date) value), this.out);
+    } else {
+      JsonParser.quote(value.toString(), this.out);
+    }
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Géométries ----------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  @SuppressWarnings("unchecked")
+  private void writeGeometry(IGeometry geom) throws IOException {
+    if (geom instanceof IAggregate && !(geom instanceof IMultiPoint)
+        && !(geom instanceof IMultiCurve) && !(geom instanceof IMultiSurface)) {
+      this.out.write("{\"type\":\"GeometryCollection\",\"geometries\":["); //$NON-NLS-1$
+      boolean first = true;
+      for (IGeometry element : (IAggregate<IGeometry>) geom) {
+        if (!first) {
+          this.out.write(',');
+        }
+        this.writeGeometry(element);
+        first = false;
+      }
+      this.out.write("]}"); //$NON-NLS-1$
+      return;
+    }
+    this.out.write("{\"type\":\""); //$NON-NLS-1$
+    this.out.write(GeoJsonWriter.geometryType(geom));
+    this.out.write("\",\"coordinates\":"); //$NON-NLS-1$
+    this.writeCoordinates(geom);
+    this.out.write('}');
+  }
+
+  private static String geometryType(IGeometry geom) {
+    if (geom instanceof IPoint) {
+      return "Point"; //$NON-NLS-1$
+    }
+    if (geom instanceof IPolygon) {
+      return "Polygon"; //$NON-NLS-1$
+    }
+    if (geom instanceof IMultiPoint) {
+      return "MultiPoint"; //$NON-NLS-1$
+    }
+    if (geom instanceof IMultiCurve) {
+      return "MultiLineString"; //$NON-NLS-1$
+    }
+    if (geom instanceof IMultiSurface) {
+      return "MultiPolygon"; //$NON-NLS-1$
+    }
+    return "LineString"; //$NON-NLS-1$
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeCoordinates(IGeometry geom) throws IOException {
+    if (geom instanceof IPoint) {
+      IDirectPosition position = ((IPoint) geom).getPosition();
+      if (position == null || Double.isNaN(position.getX())) {
+        this.out.write("[]"); //$NON-NLS-1$
+      } else {
+        this.writePosition(position.getX(), position.getY(), position.getZ());
+      }
+    } else if (geom instanceof IPolygon) {
+      IPolygon polygon = (IPolygon) geom;
+      this.out.write('[');
+      if (polygon.getExterior() != null) {
+        this.writePositions(polygon.getExterior().coord());
+        for (int i = 0; i < polygon.sizeInterior(); i++) {
+          this.out.write(',');
+          this.writePositions(polygon.getInterior(i).coord());
+        }
+      }
+      this.out.write(']');
+    } else if (geom instanceof IAggregate) {
+      this.out.write('[');
+      boolean first = true;
+      for (IGeometry element : (IAggregate<IGeometry>) geom) {
+        if (!first) {
+          this.out.write(',');
+        }
+        this.writeCoordinates(element);
+        first = false;
+      }
+      this.out.write(']');
+    } else if (geom instanceof ILineString) {
+      this.writePositions(((ILineString) geom).getControlPoint());
+    } else {
+      this.writePositions(geom.coord());
+    }
+  }
+
+  private void writePositions(IDirectPositionList positions)
+      throws IOException {
+    this.out.write('[');
+    if (positions instanceof PackedDirectPositionList) {
+      PackedDirectPositionList packed = (PackedDirectPositionList) positions;
+      for (int i = 0; i < packed.size(); i++) {
+        if (i > 0) {
+          this.out.write(',');
+        }
+        this.writePosition(packed.getX(i), packed.getY(i), packed.getZ(i));
+      }
+    } else {
+      for (int i = 0; i < positions.size(); i++) {
+        if (i > 0) {
+          this.out.write(',');
+        }
+        IDirectPosition position = positions.get(i);
+        this.writePosition(position.getX(), position.getY(), position.getZ());
+      }
+    }
+    this.out.write(']');
+  }
+
+  private void writePosition(double x, double y, double z) throws IOException {
+    this.out.write('[');
+    this.out.write(Double.toString(x));
+    this.out.write(',');
+    this.out.write(Double.toString(y));
+    if (!Double.isNaN(z)) {
+      this.out.write(',');
+      this.out.write(Double.toString(z));
+    }
+    this.out.write(']');
+  }
+
+  /**
+   * Termine l'écriture et ferme le fichier.
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      if (!this.newlineDelimited) {
+        this.out.write("\n]}\n"); //$NON-NLS-1$
+      }
+    } finally {
+      this.out.close();
+    }
+  }
+}
@@ -2,6 +2,7 @@ package fr.ign.cogit.geoxygene.util.conversion;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -81,4 +82,26 @@ public class GeoTiffReader {
     // Return image
     return PlanarImage.wrapRenderedImage(renderedImage).getAsBufferedImage();
   }
+
+  /**
+   * Ouvre une image GeoTiff pour la lire par tuiles, sans la charger en
+   * mémoire, contrairement à
+   * {@link #loadGeoTiffImage(String, double[][], CoordinateReferenceSystem[])}
+   * . Seule la première bande est lue.
+   * @param fileName nom du fichier
+   * @param crs tableau recevant le système de coordonnées de l'image, ou null
+   * @return la grille des valeurs de l'image, à fermer après usage
+   * @throws IOException si le fichier ne peut être lu
+   */
+  public static TiledRaster openGeoTiff(String fileName,
+      CoordinateReferenceSystem[] crs) throws IOException {
+    ImageIO.setUseCache(false);
+    org.geotools.gce.geotiff.GeoTiffReader reader = new org.geotools.gce.geotiff.GeoTiffReader(
+        new File(fileName));
+    GridCoverage2D coverage = reader.read(null);
+    if (crs != null) {
+      crs[0] = coverage.getCoordinateReferenceSystem2D();
+    }
+    return new CoverageRaster(reader, coverage, TiledRaster.DEFAULT_CACHE_SIZE);
+  }
 }
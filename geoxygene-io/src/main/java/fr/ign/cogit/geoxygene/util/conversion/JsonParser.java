@@ -0,0 +1,557 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Analyseur JSON en flux : les valeurs sont lues une à une, sans construire
+ * d'arbre, avec une mémoire indépendante de la taille du document.
+ * <p>
+ * L'analyseur est tolérant : les virgules et deux-points sont traités comme des
+ * séparateurs sans être vérifiés, et plusieurs valeurs peuvent se suivre au
+ * premier niveau, ce qui permet de lire directement du JSON délimité par des
+ * retours à la ligne (NDJSON) ou par des séparateurs d'enregistrement (RFC
+ * 8142).
+ */
+class JsonParser implements Closeable {
+
+  /** Types des éléments lus. */
+  enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER,
+    BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  /** Contextes de la pile. */
+  private static final byte ARRAY = 0;
+  private static final byte OBJECT_NAME = 1;
+  private static final byte OBJECT_VALUE = 2;
+
+  /** Puissances de 10 représentées exactement par un double. */
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    JsonParser.POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < JsonParser.POWERS_OF_TEN.length; i++) {
+      JsonParser.POWERS_OF_TEN[i] = 10 * JsonParser.POWERS_OF_TEN[i - 1];
+    }
+  }
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int pos = 0;
+  private int limit = 0;
+  /** Nombre de caractères lus avant le début du tampon. */
+  private long consumed = 0;
+
+  private byte[] stack = new byte[32];
+  private int depth = 0;
+  private Token peeked = null;
+  private final StringBuilder text = new StringBuilder();
+
+  JsonParser(Reader in) {
+    this.in = in;
+  }
+
+  /** @return le nombre de caractères lus */
+  long position() {
+    return this.consumed + this.pos;
+  }
+
+  /**
+   * Renvoie le type de l'élément suivant sans le lire.
+   * @return le type de l'élément suivant
+   * @throws IOException en cas d'erreur de lecture
+   */
+  Token peek() throws IOException {
+    if (this.peeked != null) {
+      return this.peeked;
+    }
+    int c = this.nextNonSeparator();
+    switch (c) {
+      case -1:
+        if (this.depth > 0) {
+          throw this.syntaxError("unexpected end of document"); //$NON-NLS-1$
+        }
+        this.peeked = Token.END_DOCUMENT;
+        break;
+      case '{':
+        this.peeked = Token.BEGIN_OBJECT;
+        break;
+      case '}':
+        this.peeked = Token.END_OBJECT;
+        break;
+      case '[':
+        this.peeked = Token.BEGIN_ARRAY;
+        break;
+      case ']':
+        this.peeked = Token.END_ARRAY;
+        break;
+      case '"':
+        this.peeked = (this.depth > 0 && this.stack[this.depth - 1] == JsonParser.OBJECT_NAME) ? Token.NAME
+            : Token.STRING;
+        break;
+      case 't':
+      case 'f':
+        this.peeked = Token.BOOLEAN;
+        break;
+      case 'n':
+        this.peeked = Token.NULL;
+        break;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          this.peeked = Token.NUMBER;
+        } else {
+          throw this.syntaxError("unexpected character '" + (char) c + "'"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+    return this.peeked;
+  }
+
+  /** @return vrai si l'objet ou le tableau courant a encore un élément */
+  boolean hasNext() throws IOException {
+    Token token = this.peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY
+        && token != Token.END_DOCUMENT;
+  }
+
+  void beginObject() throws IOException {
+    this.expect(Token.BEGIN_OBJECT);
+    this.pos++;
+    this.push(JsonParser.OBJECT_NAME);
+  }
+
+  void endObject() throws IOException {
+    this.expect(Token.END_OBJECT);
+    this.pos++;
+    this.depth--;
+    this.valueRead();
+  }
+
+  void beginArray() throws IOException {
+    this.expect(Token.BEGIN_ARRAY);
+    this.pos++;
+    this.push(JsonParser.ARRAY);
+  }
+
+  void endArray() throws IOException {
+    this.expect(Token.END_ARRAY);
+    this.pos++;
+    this.depth--;
+    this.valueRead();
+  }
+
+  String nextName() throws IOException {
+    this.expect(Token.NAME);
+    String name = this.readString();
+    this.stack[this.depth - 1] = JsonParser.OBJECT_VALUE;
+    return name;
+  }
+
+  String nextString() throws IOException {
+    this.expect(Token.STRING);
+    String value = this.readString();
+    this.valueRead();
+    return value;
+  }
+
+  /** @return le texte du nombre suivant, tel qu'il est écrit */
+  String nextNumber() throws IOException {
+    this.expect(Token.NUMBER);
+    this.readNumber();
+    this.valueRead();
+    return this.text.toString();
+  }
+
+  double nextDouble() throws IOException {
+    this.expect(Token.NUMBER);
+    double value = this.readNumber();
+    this.valueRead();
+    return value;
+  }
+
+  boolean nextBoolean() throws IOException {
+    this.expect(Token.BOOLEAN);
+    boolean value = this.buffer[this.pos] == 't';
+    this.readLiteral(value ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+    this.valueRead();
+    return value;
+  }
+
+  void nextNull() throws IOException {
+    this.expect(Token.NULL);
+    this.readLiteral("null"); //$NON-NLS-1$
+    this.valueRead();
+  }
+
+  /** Saute la valeur suivante, avec tout son contenu. */
+  void skipValue() throws IOException {
+    int level = 0;
+    do {
+      switch (this.peek()) {
+        case BEGIN_OBJECT:
+          this.beginObject();
+          level++;
+          break;
+        case BEGIN_ARRAY:
+          this.beginArray();
+          level++;
+          break;
+        case END_OBJECT:
+          this.endObject();
+          level--;
+          break;
+        case END_ARRAY:
+          this.endArray();
+          level--;
+          break;
+        case NAME:
+          this.nextName();
+          break;
+        case STRING:
+          this.nextString();
+          break;
+        case NUMBER:
+          this.readNumber();
+          this.peeked = null;
+          this.valueRead();
+          break;
+        case BOOLEAN:
+          this.nextBoolean();
+          break;
+        case NULL:
+          this.nextNull();
+          break;
+        default:
+          throw this.syntaxError("unexpected end of document"); //$NON-NLS-1$
+      }
+    } while (level > 0);
+  }
+
+  /**
+   * Lit la valeur suivante et la renvoie sous forme de texte JSON compact.
+   * @return le texte JSON de la valeur
+   */
+  String nextJson() throws IOException {
+    StringBuilder json = new StringBuilder();
+    int level = 0;
+    boolean first = true;
+    do {
+      Token token = this.peek();
+      if (!first && token != Token.END_OBJECT && token != Token.END_ARRAY) {
+        char last = json.charAt(json.length() - 1);
+        if (last != '{' && last != '[' && last != ':') {
+          json.append(',');
+        }
+      }
+      first = false;
+      switch (token) {
+        case BEGIN_OBJECT:
+          this.beginObject();
+          json.append('{');
+          level++;
+          break;
+        case BEGIN_ARRAY:
+          this.beginArray();
+          json.append('[');
+          level++;
+          break;
+        case END_OBJECT:
+          this.endObject();
+          json.append('}');
+          level--;
+          break;
+        case END_ARRAY:
+          this.endArray();
+          json.append(']');
+          level--;
+          break;
+        case NAME:
+          JsonParser.quote(this.nextName(), json);
+          json.append(':');
+          break;
+        case STRING:
+          JsonParser.quote(this.nextString(), json);
+          break;
+        case NUMBER:
+          json.append(this.nextNumber());
+          break;
+        case BOOLEAN:
+          json.append(this.nextBoolean());
+          break;
+        case NULL:
+          this.nextNull();
+          json.append("null"); //$NON-NLS-1$
+          break;
+        default:
+          throw this.syntaxError("unexpected end of document"); //$NON-NLS-1$
+      }
+    } while (level > 0);
+    return json.toString();
+  }
+
+  /** Ajoute une chaîne entre guillemets, avec les échappements JSON. */
+  static void quote(String s, Appendable out) throws IOException {
+    out.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\""); //$NON-NLS-1$
+          break;
+        case '\\':
+          out.append("\\\\"); //$NON-NLS-1$
+          break;
+        case '\n':
+          out.append("\\n"); //$NON-NLS-1$
+          break;
+        case '\r':
+          out.append("\\r"); //$NON-NLS-1$
+          break;
+        case '\t':
+          out.append("\\t"); //$NON-NLS-1$
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", Integer.valueOf(c))); //$NON-NLS-1$
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Lecture des caractères ----------------------------------*/
+  /*------------------------------------------------------------*/
+
+  private void push(byte context) {
+    if (this.depth == this.stack.length) {
+      this.stack = Arrays.copyOf(this.stack, 2 * this.depth);
+    }
+    this.stack[this.depth++] = context;
+    this.peeked = null;
+  }
+
+  /** Une valeur a été lue : dans un objet, un nom est maintenant attendu. */
+  private void valueRead() {
+    this.peeked = null;
+    if (this.depth > 0 && this.stack[this.depth - 1] == JsonParser.OBJECT_VALUE) {
+      this.stack[this.depth - 1] = JsonParser.OBJECT_NAME;
+    }
+  }
+
+  private void expect(Token expected) throws IOException {
+    Token token = this.peek();
+    if (token != expected) {
+      throw this.syntaxError("expected " + expected + " but was " + token); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  IOException syntaxError(String message) {
+    return new IOException(message + " at character " + this.position()); //$NON-NLS-1$
+  }
+
+  /** Remplit le tampon ; renvoie faux à la fin du flux. */
+  private boolean fill() throws IOException {
+    this.consumed += this.pos;
+    this.limit -= this.pos;
+    System.arraycopy(this.buffer, this.pos, this.buffer, 0, this.limit);
+    this.pos = 0;
+    while (this.limit < this.buffer.length) {
+      int n = this.in.read(this.buffer, this.limit, this.buffer.length
+          - this.limit);
+      if (n < 0) {
+        return this.limit > 0;
+      }
+      this.limit += n;
+      if (n > 0) {
+        return true;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Saute les blancs et séparateurs et renvoie le caractère suivant sans le
+   * consommer, -1 à la fin du flux.
+   */
+  private int nextNonSeparator() throws IOException {
+    while (true) {
+      if (this.pos == this.limit && !this.fill()) {
+        return -1;
+      }
+      char c = this.buffer[this.pos];
+      if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ','
+          || c == ':' || c == '\uFEFF' || c == '\u001E') {
+        this.pos++;
+      } else {
+        return c;
+      }
+    }
+  }
+
+  private void readLiteral(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (this.pos == this.limit && !this.fill()) {
+        throw this.syntaxError("unexpected end of document"); //$NON-NLS-1$
+      }
+      if (this.buffer[this.pos++] != literal.charAt(i)) {
+        throw this.syntaxError("expected " + literal); //$NON-NLS-1$
+      }
+    }
+  }
+
+  /** Lit une chaîne ; le tampon est positionné sur le guillemet ouvrant. */
+  private String readString() throws IOException {
+    this.pos++;
+    this.text.setLength(0);
+    while (true) {
+      // recherche du guillemet fermant dans le tampon
+      int start = this.pos;
+      while (this.pos < this.limit) {
+        char c = this.buffer[this.pos];
+        if (c == '"') {
+          String value;
+          if (this.text.length() == 0) {
+            value = new String(this.buffer, start, this.pos - start);
+          } else {
+            this.text.append(this.buffer, start, this.pos - start);
+            value = this.text.toString();
+          }
+          this.pos++;
+          this.peeked = null;
+          return value;
+        }
+        if (c == '\\') {
+          this.text.append(this.buffer, start, this.pos - start);
+          this.pos++;
+          this.readEscape();
+          start = this.pos;
+          continue;
+        }
+        this.pos++;
+      }
+      this.text.append(this.buffer, start, this.pos - start);
+      if (!this.fill()) {
+        throw this.syntaxError("unterminated string"); //$NON-NLS-1$
+      }
+    }
+  }
+
+  private void readEscape() throws IOException {
+    if (this.pos == this.limit && !this.fill()) {
+      throw this.syntaxError("unterminated string"); //$NON-NLS-1$
+    }
+    char c = this.buffer[this.pos++];
+    switch (c) {
+      case 'b':
+        this.text.append('\b');
+        break;
+      case 'f':
+        this.text.append('\f');
+        break;
+      case 'n':
+        this.text.append('\n');
+        break;
+      case 'r':
+        this.text.append('\r');
+        break;
+      case 't':
+        this.text.append('\t');
+        break;
+      case 'u':
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+          if (this.pos == this.limit && !this.fill()) {
+            throw this.syntaxError("unterminated string"); //$NON-NLS-1$
+          }
+          int digit = Character.digit(this.buffer[this.pos++], 16);
+          if (digit < 0) {
+            throw this.syntaxError("invalid unicode escape"); //$NON-NLS-1$
+          }
+          code = 16 * code + digit;
+        }
+        this.text.append((char) code);
+        break;
+      default:
+        this.text.append(c);
+    }
+  }
+
+  /**
+   * Lit un nombre dans {@link #text} et renvoie sa valeur. Les nombres d'au
+   * plus 15 chiffres significatifs avec un petit exposant sont convertis
+   * directement, de façon exacte ; les autres par
+   * {@link Double#parseDouble(String)}.
+   */
+  private double readNumber() throws IOException {
+    this.text.setLength(0);
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = 0;
+    boolean negative = false;
+    boolean dot = false;
+    boolean simple = true;
+    while (true) {
+      if (this.pos == this.limit && !this.fill()) {
+        break;
+      }
+      char c = this.buffer[this.pos];
+      if (c >= '0' && c <= '9') {
+        if (mantissa != 0 || c != '0') {
+          digits++;
+        }
+        mantissa = 10 * mantissa + (c - '0');
+        if (dot) {
+          decimals++;
+        }
+      } else if (c == '.') {
+        dot = true;
+      } else if (c == '-' && this.text.length() == 0) {
+        negative = true;
+      } else if (c == 'e' || c == 'E' || c == '+' || c == '-') {
+        simple = false;
+      } else {
+        break;
+      }
+      this.text.append(c);
+      this.pos++;
+    }
+    this.peeked = null;
+    if (simple && digits <= 15 && decimals < JsonParser.POWERS_OF_TEN.length) {
+      double value = mantissa / JsonParser.POWERS_OF_TEN[decimals];
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(this.text.toString());
+    } catch (NumberFormatException e) {
+      throw this.syntaxError("invalid number " + this.text); //$NON-NLS-1$
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.AttributeColumns;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+
+/**
+ * Objet d'un {@link MappedShapefile} dont la géométrie et les attributs sont
+ * décodés à la demande. Tant que les attributs n'ont pas été tous lus ou
+ * modifiés, chaque accès à un attribut par son rang décode seulement le champ
+ * correspondant du .dbf.
+ */
+class MappedFeature extends DefaultFeature {
+
+  private final MappedShapefile file;
+  private final int record;
+  private boolean geometryLoaded = false;
+  private boolean attributesLoaded = false;
+
+  MappedFeature(MappedShapefile file, int record) {
+    super();
+    this.file = file;
+    this.record = record;
+  }
+
+  @Override
+  public IGeometry getGeom() {
+    if (!this.geometryLoaded) {
+      this.geometryLoaded = true;
+      this.geom = this.file.getGeometry(this.record);
+    }
+    return this.geom;
+  }
+
+  @Override
+  public void setGeom(IGeometry g) {
+    this.geometryLoaded = true;
+    super.setGeom(g);
+  }
+
+  @Override
+  public boolean hasGeom() {
+    return this.getGeom() != null;
+  }
+
+  /** Décode tous les attributs de l'enregistrement s'ils ne l'ont pas été. */
+  private void loadAttributes() {
+    if (!this.attributesLoaded) {
+      this.attributesLoaded = true;
+      super.setAttributes(this.file.readAttributes(this.record));
+    }
+  }
+
+  @Override
+  public Object[] getAttributes() {
+    this.loadAttributes();
+    return super.getAttributes();
+  }
+
+  @Override
+  public Object getAttribute(int rang) {
+    if (!this.attributesLoaded) {
+      return this.file.readAttribute(this.record, rang);
+    }
+    return super.getAttribute(rang);
+  }
+
+  @Override
+  public double getDouble(int rang) {
+    if (!this.attributesLoaded) {
+      Object value = this.getAttribute(rang);
+      return (value instanceof Number) ? ((Number) value).doubleValue()
+          : Double.NaN;
+    }
+    return super.getDouble(rang);
+  }
+
+  @Override
+  public long getLong(int rang) {
+    if (!this.attributesLoaded) {
+      Object value = this.getAttribute(rang);
+      return (value instanceof Number) ? ((Number) value).longValue() : 0;
+    }
+    return super.getLong(rang);
+  }
+
+  @Override
+  public String getString(int rang) {
+    if (!this.attributesLoaded) {
+      Object value = this.getAttribute(rang);
+      return (value == null) ? null : value.toString();
+    }
+    return super.getString(rang);
+  }
+
+  @Override
+  public void setAttributes(Object[] attributes) {
+    this.attributesLoaded = true;
+    super.setAttributes(attributes);
+  }
+
+  @Override
+  public void setRow(AttributeColumns table, int rowIndex) {
+    this.attributesLoaded = true;
+    super.setRow(table, rowIndex);
+  }
+
+  @Override
+  public void setAttribute(int rang, Object value) {
+    this.loadAttributes();
+    super.setAttribute(rang, value);
+  }
+}
@@ -0,0 +1,473 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
+
+/**
+ * Lecture d'un fichier binaire de population écrit par
+ * {@link FeatureFileWriter}. Le fichier est projeté en mémoire : l'ouverture ne
+ * lit que l'en-tête, le schéma et la table des blocs, et chaque objet est
+ * décodé à la demande en lisant une valeur dans chaque colonne de son bloc.
+ * <p>
+ * {@link #read()} décode tous les blocs en parallèle, et
+ * {@link #select(IEnvelope)} utilise l'index spatial stocké dans le fichier
+ * sans le charger.
+ * <p>
+ * Une instance peut être partagée entre plusieurs threads.
+ */
+public class MappedFeatureFile {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger.getLogger(MappedFeatureFile.class
+      .getName());
+
+  private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+  private final String fileName;
+  private final MappedFile file;
+  private final int count;
+  private final double scale;
+  private final IEnvelope envelope;
+
+  private final SchemaDefaultFeature schema;
+  private final byte[] columnTypes;
+
+  /** Vue sur chaque bloc, premier objet de chaque bloc. */
+  private final ByteBuffer[] blocks;
+  private final int[] blockFirsts;
+
+  /* index spatial */
+  private final int nbIndexed;
+  private final int nodeCapacity;
+  private final int[] levelEnds;
+  private final long boxesOffset;
+  private final long leavesOffset;
+
+  /**
+   * Projette un fichier en mémoire.
+   * @param fileName nom ou URL (file:) du fichier
+   * @throws IOException si le fichier ne peut être lu ou n'est pas un fichier
+   *           complet
+   */
+  public MappedFeatureFile(String fileName) throws IOException {
+    this.fileName = fileName;
+    String path = fileName;
+    if (path.startsWith("file:")) { //$NON-NLS-1$
+      try {
+        path = new File(new URL(path).toURI()).getPath();
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
+    }
+    this.file = MappedFile.map(new File(path));
+    if (this.file.size() < FeatureFileFormat.HEADER_SIZE) {
+      throw new IOException(fileName + " is not a feature file"); //$NON-NLS-1$
+    }
+    ByteBuffer header = this.file.slice(0, FeatureFileFormat.HEADER_SIZE);
+    if (header.getInt(0) != FeatureFileFormat.MAGIC) {
+      throw new IOException(fileName
+          + " is not a feature file or was not closed"); //$NON-NLS-1$
+    }
+    if (header.getInt(4) != FeatureFileFormat.VERSION) {
+      throw new IOException("unsupported version " + header.getInt(4) //$NON-NLS-1$
+          + " of " + fileName); //$NON-NLS-1$
+    }
+    this.count = header.getInt(8);
+    int nbFields = header.getInt(12);
+    this.scale = header.getDouble(16);
+    long schemaOffset = header.getLong(24);
+    long blockTableOffset = header.getLong(32);
+    long indexOffset = header.getLong(40);
+    this.envelope = Double.isNaN(header.getDouble(48)) ? null
+        : new GM_Envelope(header.getDouble(48), header.getDouble(64),
+            header.getDouble(56), header.getDouble(72));
+
+    // schéma
+    ByteBuffer schemaBuffer = this.file.slice(schemaOffset,
+        (int) (blockTableOffset - schemaOffset));
+    String typeName = MappedFeatureFile.getString(schemaBuffer);
+    String geometryTypeName = MappedFeatureFile.getString(schemaBuffer);
+    schemaBuffer.getInt();
+    this.columnTypes = new byte[nbFields];
+    FeatureType featureType = new FeatureType();
+    featureType.setTypeName(typeName);
+    Map<Integer, String[]> attLookup = new HashMap<Integer, String[]>(0);
+    for (int i = 0; i < nbFields; i++) {
+      String memberName = MappedFeatureFile.getString(schemaBuffer);
+      String nomField = MappedFeatureFile.getString(schemaBuffer);
+      String valueType = MappedFeatureFile.getString(schemaBuffer);
+      this.columnTypes[i] = schemaBuffer.get();
+      AttributeType type = new AttributeType();
+      type.setNomField(nomField);
+      type.setMemberName(memberName);
+      type.setValueType(valueType);
+      featureType.addFeatureAttribute(type);
+      attLookup.put(i, new String[] { nomField, memberName });
+    }
+    featureType.setGeometryType(MappedFeatureFile
+        .geometryType(geometryTypeName));
+    this.schema = new SchemaDefaultFeature();
+    this.schema.setNom(typeName);
+    this.schema.setNomSchema(typeName);
+    this.schema.setFeatureType(featureType);
+    featureType.setSchema(this.schema);
+    this.schema.setAttLookup(attLookup);
+
+    // blocs
+    int nbBlocks = this.file.getInt(blockTableOffset);
+    this.blocks = new ByteBuffer[nbBlocks];
+    this.blockFirsts = new int[nbBlocks];
+    long[] offsets = new long[nbBlocks + 1];
+    for (int i = 0; i < nbBlocks; i++) {
+      ByteBuffer entry = this.file.slice(blockTableOffset + 8 + 16 * i, 16);
+      offsets[i] = entry.getLong(0);
+      this.blockFirsts[i] = entry.getInt(8);
+    }
+    offsets[nbBlocks] = schemaOffset;
+    for (int i = 0; i < nbBlocks; i++) {
+      this.blocks[i] = this.file.slice(offsets[i],
+          (int) (offsets[i + 1] - offsets[i]));
+    }
+
+    // index
+    this.nbIndexed = this.file.getInt(indexOffset);
+    this.nodeCapacity = this.file.getInt(indexOffset + 4);
+    this.levelEnds = new int[this.file.getInt(indexOffset + 8)];
+    for (int i = 0; i < this.levelEnds.length; i++) {
+      this.levelEnds[i] = this.file.getInt(indexOffset + 12 + 4 * i);
+    }
+    long boxes = indexOffset + 12 + 4 * this.levelEnds.length;
+    this.boxesOffset = (boxes + 7) / 8 * 8;
+    this.leavesOffset = this.boxesOffset + 32L
+        * this.levelEnds[this.levelEnds.length - 1];
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, MappedFeatureFile.UTF8);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends IGeometry> geometryType(String name) {
+    try {
+      Class<?> geometryType = Class.forName(name);
+      if (IGeometry.class.isAssignableFrom(geometryType)) {
+        return (Class<? extends IGeometry>) geometryType;
+      }
+    } catch (ClassNotFoundException e) {
+      // type inconnu ou absent
+    }
+    return GM_Object.class;
+  }
+
+  /** @return le nombre d'objets du fichier */
+  public int size() {
+    return this.count;
+  }
+
+  /** @return le schéma des objets du fichier */
+  public SchemaDefaultFeature getSchema() {
+    return this.schema;
+  }
+
+  /** @return l'enveloppe des objets, null si aucun objet n'a de géométrie */
+  public IEnvelope getEnvelope() {
+    return this.envelope;
+  }
+
+  /** @return le numéro du bloc contenant un objet */
+  private int block(int feature) {
+    if (feature < 0 || feature >= this.count) {
+      throw new IndexOutOfBoundsException("feature " + feature //$NON-NLS-1$
+          + " out of " + this.count); //$NON-NLS-1$
+    }
+    int b = Arrays.binarySearch(this.blockFirsts, feature);
+    return (b >= 0) ? b : -b - 2;
+  }
+
+  /**
+   * Décode un objet.
+   * @param feature numéro de l'objet dans le fichier, à partir de 0
+   * @return l'objet, avec l'identifiant qu'il avait à l'écriture
+   */
+  public DefaultFeature getFeature(int feature) {
+    int b = this.block(feature);
+    return this.decode(this.blocks[b], feature - this.blockFirsts[b]);
+  }
+
+  /**
+   * Décode la géométrie d'un objet.
+   * @param feature numéro de l'objet dans le fichier, à partir de 0
+   * @return la géométrie, null si l'objet n'en a pas
+   */
+  public IGeometry getGeometry(int feature) {
+    int b = this.block(feature);
+    return this.geometry(this.blocks[b], feature - this.blockFirsts[b]);
+  }
+
+  private DefaultFeature decode(ByteBuffer block, int row) {
+    DefaultFeature feature = new DefaultFeature();
+    feature.setFeatureType(this.schema.getFeatureType());
+    feature.setSchema(this.schema);
+    feature.setId(block.getInt(block.getInt(8) + 4 * row));
+    feature.setGeom(this.geometry(block, row));
+    Object[] values = new Object[this.columnTypes.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = this.attribute(block, row, i);
+    }
+    feature.setAttributes(values);
+    return feature;
+  }
+
+  private IGeometry geometry(ByteBuffer block, int row) {
+    int n = block.getInt(0);
+    int column = block.getInt(12);
+    int start = (row == 0) ? 0 : block.getInt(column + 4 * (row - 1));
+    int end = block.getInt(column + 4 * row);
+    if (start == end) {
+      return null;
+    }
+    ByteBuffer buffer = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    buffer.position(column + 4 * n + start);
+    return FeatureFileFormat.decode(buffer, this.scale);
+  }
+
+  private Object attribute(ByteBuffer block, int row, int field) {
+    int n = block.getInt(0);
+    int column = block.getInt(16 + 4 * field);
+    if ((block.get(column + (row >> 3)) & (1 << (row & 7))) != 0) {
+      return null;
+    }
+    int values = column + (n + 7) / 8;
+    switch (this.columnTypes[field]) {
+      case FeatureFileFormat.INTEGER:
+        return Integer.valueOf(block.getInt(values + 4 * row));
+      case FeatureFileFormat.FLOAT:
+        return Float.valueOf(block.getFloat(values + 4 * row));
+      case FeatureFileFormat.LONG:
+        return Long.valueOf(block.getLong(values + 8 * row));
+      case FeatureFileFormat.DOUBLE:
+        return Double.valueOf(block.getDouble(values + 8 * row));
+      case FeatureFileFormat.DATE:
+        return new Date(block.getLong(values + 8 * row));
+      case FeatureFileFormat.BOOLEAN:
+        return Boolean.valueOf(block.get(values + row) != 0);
+      default:
+        int start = (row == 0) ? 0 : block.getInt(values + 4 * (row - 1));
+        int end = block.getInt(values + 4 * row);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer buffer = block.duplicate();
+        buffer.position(values + 4 * n + start);
+        buffer.get(bytes);
+        return new String(bytes, MappedFeatureFile.UTF8);
+    }
+  }
+
+  /**
+   * Renvoie un curseur sur tous les objets du fichier, à utiliser par exemple
+   * avec {@link ShapefileReader#read(FeatureCursor, IPopulation)}.
+   * @return un curseur sur les objets du fichier
+   */
+  public FeatureCursor<DefaultFeature> cursor() {
+    return new FeatureCursor<DefaultFeature>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < MappedFeatureFile.this.count;
+      }
+
+      @Override
+      public DefaultFeature next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return MappedFeatureFile.this.getFeature(this.next++);
+      }
+
+      @Override
+      public void close() {
+        // rien à libérer : les projections sont libérées par le ramasse-miettes
+      }
+    };
+  }
+
+  /**
+   * Décode tous les objets du fichier, les blocs étant décodés en parallèle,
+   * et les ajoute dans l'ordre du fichier à une nouvelle population, en un
+   * seul chargement en masse.
+   * @return une population contenant tous les objets du fichier
+   */
+  public IPopulation<IFeature> read() {
+    final DefaultFeature[] features = new DefaultFeature[this.count];
+    ForkJoinPool.commonPool().invoke(
+        new BlockTask(this, features, 0, this.blocks.length));
+    Population<IFeature> population = new Population<IFeature>(this.schema
+        .getNom());
+    population.setFeatureType(this.schema.getFeatureType());
+    population.beginBulk();
+    try {
+      for (DefaultFeature feature : features) {
+        population.add(feature);
+      }
+    } finally {
+      population.endBulk();
+    }
+    MappedFeatureFile.LOGGER.debug(this.count + " features read from " //$NON-NLS-1$
+        + this.fileName);
+    return population;
+  }
+
+  /** Décodage d'un intervalle de blocs, divisé jusqu'à un bloc par tâche. */
+  private static class BlockTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final MappedFeatureFile file;
+    private final DefaultFeature[] features;
+    private final int first;
+    private final int last;
+
+    BlockTask(MappedFeatureFile file, DefaultFeature[] features, int first,
+        int last) {
+      this.file = file;
+      this.features = features;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.last - this.first > 1) {
+        int middle = (this.first + this.last) >>> 1;
+        RecursiveAction.invokeAll(new BlockTask(this.file, this.features,
+            this.first, middle), new BlockTask(this.file, this.features,
+            middle, this.last));
+        return;
+      }
+      for (int b = this.first; b < this.last; b++) {
+        ByteBuffer block = this.file.blocks[b];
+        int n = block.getInt(0);
+        for (int row = 0; row < n; row++) {
+          this.features[this.file.blockFirsts[b] + row] = this.file.decode(
+              block, row);
+        }
+      }
+    }
+  }
+
+  /**
+   * Renvoie les numéros des objets dont l'enveloppe intersecte un rectangle,
+   * en parcourant l'index spatial du fichier.
+   * @return les numéros des objets, dans l'ordre du fichier
+   * @throws IOException en cas d'erreur de lecture de l'index
+   */
+  public int[] query(double minX, double minY, double maxX, double maxY)
+      throws IOException {
+    if (this.nbIndexed == 0) {
+      return new int[0];
+    }
+    int[] result = new int[16];
+    int size = 0;
+    // parcours en profondeur : pile des (niveau, noeud)
+    int[] stack = new int[2 * 64 * this.nodeCapacity];
+    int top = 0;
+    stack[top++] = this.levelEnds.length - 1;
+    stack[top++] = this.levelEnds[this.levelEnds.length - 1] - 1;
+    while (top > 0) {
+      int pos = stack[--top];
+      int level = stack[--top];
+      long box = this.boxesOffset + 32L * pos;
+      if (this.file.getDouble(box) > maxX
+          || this.file.getDouble(box + 8) > maxY
+          || this.file.getDouble(box + 16) < minX
+          || this.file.getDouble(box + 24) < minY) {
+        continue;
+      }
+      if (level == 0) {
+        if (size == result.length) {
+          result = Arrays.copyOf(result, 2 * size);
+        }
+        result[size++] = this.file.getInt(this.leavesOffset + 4L * pos);
+        continue;
+      }
+      int levelStart = this.levelEnds[level - 1];
+      int childLevelStart = (level == 1) ? 0 : this.levelEnds[level - 2];
+      int firstChild = childLevelStart + (pos - levelStart) * this.nodeCapacity;
+      int lastChild = Math.min(firstChild + this.nodeCapacity,
+          this.levelEnds[level - 1]);
+      if (top + 2 * (lastChild - firstChild) > stack.length) {
+        stack = Arrays.copyOf(stack, 2 * stack.length);
+      }
+      for (int child = lastChild - 1; child >= firstChild; child--) {
+        stack[top++] = level - 1;
+        stack[top++] = child;
+      }
+    }
+    int[] features = Arrays.copyOf(result, size);
+    Arrays.sort(features);
+    return features;
+  }
+
+  /**
+   * Décode les objets dont l'enveloppe intersecte une enveloppe donnée.
+   * @param env enveloppe recherchée
+   * @return les objets, dans l'ordre du fichier
+   * @throws IOException en cas d'erreur de lecture de l'index
+   */
+  public List<DefaultFeature> select(IEnvelope env) throws IOException {
+    int[] selected = this.query(env.minX(), env.minY(), env.maxX(), env.maxY());
+    List<DefaultFeature> features = new ArrayList<DefaultFeature>(
+        selected.length);
+    for (int feature : selected) {
+      features.add(this.getFeature(feature));
+    }
+    return features;
+  }
+}
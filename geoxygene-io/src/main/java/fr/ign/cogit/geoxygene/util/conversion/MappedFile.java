@@ -0,0 +1,126 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fichier projeté en mémoire par segments d'au plus {@link #SEGMENT_SIZE}
+ * octets, pour lever la limite de 2 Go d'une projection unique.
+ */
+class MappedFile {
+
+  /** Taille maximale d'une projection en mémoire. */
+  static final long SEGMENT_SIZE = 1L << 30;
+
+  private final File file;
+  private final long size;
+  private final MappedByteBuffer[] segments;
+
+  private MappedFile(File file, long size, MappedByteBuffer[] segments) {
+    this.file = file;
+    this.size = size;
+    this.segments = segments;
+  }
+
+  static MappedFile map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      int nbSegments = (int) ((size + MappedFile.SEGMENT_SIZE - 1)
+          / MappedFile.SEGMENT_SIZE);
+      MappedByteBuffer[] segments = new MappedByteBuffer[nbSegments];
+      for (int i = 0; i < nbSegments; i++) {
+        long position = i * MappedFile.SEGMENT_SIZE;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MappedFile.SEGMENT_SIZE, size - position));
+        segments[i].order(ByteOrder.LITTLE_ENDIAN);
+      }
+      // les projections restent valides après la fermeture du fichier
+      return new MappedFile(file, size, segments);
+    } finally {
+      raf.close();
+    }
+  }
+
+  long size() {
+    return this.size;
+  }
+
+  /**
+   * Renvoie une vue en petit-boutiste sur <code>length</code> octets à
+   * partir de <code>offset</code>. Les rares zones à cheval sur deux
+   * segments sont copiées depuis le fichier.
+   */
+  ByteBuffer slice(long offset, int length) throws IOException {
+    if (offset < 0 || offset + length > this.size) {
+      throw new IOException("read beyond end of " + this.file); //$NON-NLS-1$
+    }
+    int segment = (int) (offset / MappedFile.SEGMENT_SIZE);
+    int position = (int) (offset % MappedFile.SEGMENT_SIZE);
+    if (position + length <= this.segments[segment].capacity()) {
+      ByteBuffer buffer = this.segments[segment].duplicate();
+      buffer.position(position);
+      buffer.limit(position + length);
+      return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    byte[] bytes = new byte[length];
+    RandomAccessFile raf = new RandomAccessFile(this.file, "r"); //$NON-NLS-1$
+    try {
+      raf.seek(offset);
+      raf.readFully(bytes);
+    } finally {
+      raf.close();
+    }
+    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Lit un entier en petit-boutiste, sans créer de vue. Les lectures ne
+   * modifient pas les projections et peuvent être faites par plusieurs threads.
+   */
+  int getInt(long offset) throws IOException {
+    int segment = (int) (offset / MappedFile.SEGMENT_SIZE);
+    int position = (int) (offset % MappedFile.SEGMENT_SIZE);
+    if (offset >= 0 && offset + 4 <= this.size
+        && position + 4 <= this.segments[segment].capacity()) {
+      return this.segments[segment].getInt(position);
+    }
+    return this.slice(offset, 4).getInt(0);
+  }
+
+  /** Lit un double en petit-boutiste, sans créer de vue. */
+  double getDouble(long offset) throws IOException {
+    int segment = (int) (offset / MappedFile.SEGMENT_SIZE);
+    int position = (int) (offset % MappedFile.SEGMENT_SIZE);
+    if (offset >= 0 && offset + 8 <= this.size
+        && position + 8 <= this.segments[segment].capacity()) {
+      return this.segments[segment].getDouble(position);
+    }
+    return this.slice(offset, 8).getDouble(0);
+  }
+}
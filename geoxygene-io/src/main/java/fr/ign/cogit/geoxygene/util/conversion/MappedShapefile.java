@@ -0,0 +1,595 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
+
+/**
+ * Accès en lecture seule à un shapefile projeté en mémoire (
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)}). Les fichiers .shp,
+ * .shx et .dbf ne sont pas lus à l'ouverture : seuls les en-têtes sont
+ * décodés, et chaque géométrie ou valeur d'attribut est décodée au moment où
+ * elle est demandée. Les pages des fichiers sont partagées, via le cache du
+ * système, entre toutes les JVM qui ouvrent le même shapefile.
+ * <p>
+ * Les objets renvoyés par {@link #getFeature(int)} ne décodent leur géométrie
+ * qu'au premier appel de <code>getGeom()</code> et leurs attributs qu'au
+ * premier accès. Les géométries et attributs obtenus sont les mêmes qu'avec
+ * {@link ShapefileReader#read(String)}.
+ * <p>
+ * Une instance peut être partagée entre plusieurs threads.
+ */
+public class MappedShapefile {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger.getLogger(MappedShapefile.class
+      .getName());
+
+  /** Taille de l'en-tête des fichiers .shp et .shx. */
+  private static final int HEADER_SIZE = 100;
+
+  private final String shapefileName;
+  private final MappedFile shp;
+  private final MappedFile dbf;
+  /** Positions des enregistrements dans le .shp, en octets. */
+  private final long[] offsets;
+  private final int shapeType;
+  private final IEnvelope envelope;
+  private final GeometryFactory factory = new GeometryFactory();
+
+  private final int nbRecords;
+  private final int dbfHeaderLength;
+  private final int dbfRecordLength;
+  private final String[] fieldNames;
+  private final char[] fieldTypes;
+  private final Class<?>[] fieldClasses;
+  /** Positions des champs dans un enregistrement du .dbf. */
+  private final int[] fieldOffsets;
+  private final int[] fieldLengths;
+  private final Charset charset = Charset.forName("ISO-8859-1"); //$NON-NLS-1$
+
+  private final SchemaDefaultFeature schema;
+  private final Class<? extends IGeometry> geometryType;
+
+  /**
+   * Projette en mémoire les fichiers d'un shapefile.
+   * @param shapefileName nom ou URL (file:) du fichier .shp
+   * @throws IOException si un des fichiers ne peut être lu
+   */
+  public MappedShapefile(String shapefileName) throws IOException {
+    this.shapefileName = shapefileName;
+    String path = shapefileName;
+    if (path.startsWith("file:")) { //$NON-NLS-1$
+      try {
+        path = new File(new URL(path).toURI()).getPath();
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
+    }
+    String baseName = path.substring(0, path.lastIndexOf('.'));
+    this.shp = MappedFile.map(MappedShapefile.required(baseName, "shp")); //$NON-NLS-1$
+    this.dbf = MappedFile.map(MappedShapefile.required(baseName, "dbf")); //$NON-NLS-1$
+    ByteBuffer header = this.shp.slice(0, MappedShapefile.HEADER_SIZE);
+    this.shapeType = header.getInt(32);
+    this.envelope = new GM_Envelope(header.getDouble(36),
+        header.getDouble(52), header.getDouble(44), header.getDouble(60));
+
+    ByteBuffer dbfHeader = this.dbf.slice(0, 32);
+    this.nbRecords = dbfHeader.getInt(4);
+    this.dbfHeaderLength = dbfHeader.getShort(8) & 0xFFFF;
+    this.dbfRecordLength = dbfHeader.getShort(10) & 0xFFFF;
+    int nbFields = (this.dbfHeaderLength - 33) / 32;
+    ByteBuffer descriptors = this.dbf.slice(32, nbFields * 32 + 1);
+    List<String> names = new ArrayList<String>(nbFields);
+    List<Character> types = new ArrayList<Character>(nbFields);
+    List<Integer> lengths = new ArrayList<Integer>(nbFields);
+    List<Integer> decimals = new ArrayList<Integer>(nbFields);
+    for (int i = 0; i < nbFields && descriptors.get(i * 32) != 0x0D; i++) {
+      byte[] name = new byte[11];
+      for (int j = 0; j < 11; j++) {
+        name[j] = descriptors.get(i * 32 + j);
+      }
+      int nameLength = 0;
+      while (nameLength < 11 && name[nameLength] != 0) {
+        nameLength++;
+      }
+      names.add(new String(name, 0, nameLength, this.charset).trim());
+      types.add(Character.valueOf((char) descriptors.get(i * 32 + 11)));
+      lengths.add(Integer.valueOf(descriptors.get(i * 32 + 16) & 0xFF));
+      decimals.add(Integer.valueOf(descriptors.get(i * 32 + 17) & 0xFF));
+    }
+    this.fieldNames = names.toArray(new String[names.size()]);
+    this.fieldTypes = new char[names.size()];
+    this.fieldClasses = new Class<?>[names.size()];
+    this.fieldOffsets = new int[names.size()];
+    this.fieldLengths = new int[names.size()];
+    int offset = 1; // indicateur de suppression
+    for (int i = 0; i < this.fieldNames.length; i++) {
+      this.fieldTypes[i] = types.get(i).charValue();
+      this.fieldLengths[i] = lengths.get(i).intValue();
+      this.fieldOffsets[i] = offset;
+      this.fieldClasses[i] = MappedShapefile.fieldClass(this.fieldTypes[i],
+          this.fieldLengths[i], decimals.get(i).intValue());
+      offset += this.fieldLengths[i];
+    }
+
+    File shx = MappedShapefile.sibling(baseName, "shx"); //$NON-NLS-1$
+    this.offsets = (shx != null) ? this.readIndex(MappedFile.map(shx)) : this
+        .scanRecords();
+
+    this.schema = new SchemaDefaultFeature();
+    String name = new File(baseName).getName();
+    this.schema.setNom(name);
+    this.schema.setNomSchema(name);
+    FeatureType featureType = ShapefileReader.initFeatureType(this.schema,
+        name, this.fieldNames, this.fieldClasses,
+        MappedShapefile.geometryType(this.shapeType));
+    this.geometryType = featureType.getGeometryType();
+  }
+
+  /**
+   * Renvoie le fichier de même nom et d'extension donnée, en minuscules ou en
+   * majuscules.
+   * @return le fichier, null s'il n'existe pas
+   */
+  private static File sibling(String baseName, String extension) {
+    File file = new File(baseName + "." + extension); //$NON-NLS-1$
+    if (!file.exists()) {
+      file = new File(baseName + "." + extension.toUpperCase()); //$NON-NLS-1$
+    }
+    return file.exists() ? file : null;
+  }
+
+  /**
+   * Renvoie le fichier de même nom et d'extension donnée.
+   * @throws FileNotFoundException s'il n'existe pas
+   */
+  private static File required(String baseName, String extension)
+      throws FileNotFoundException {
+    File file = MappedShapefile.sibling(baseName, extension);
+    if (file == null) {
+      throw new FileNotFoundException(baseName + "." + extension); //$NON-NLS-1$
+    }
+    return file;
+  }
+
+  /**
+   * Lit les positions des enregistrements dans le fichier d'index .shx.
+   */
+  private long[] readIndex(MappedFile shx) throws IOException {
+    int nb = (int) ((shx.size() - MappedShapefile.HEADER_SIZE) / 8);
+    long[] result = new long[Math.min(nb, this.nbRecords)];
+    ByteBuffer index = shx.slice(MappedShapefile.HEADER_SIZE, result.length * 8)
+        .order(ByteOrder.BIG_ENDIAN);
+    for (int i = 0; i < result.length; i++) {
+      // positions en mots de 16 bits, non signées
+      result[i] = (index.getInt(i * 8) & 0xFFFFFFFFL) * 2;
+    }
+    return result;
+  }
+
+  /**
+   * Retrouve les positions des enregistrements en parcourant leurs en-têtes
+   * quand le shapefile n'a pas de fichier .shx.
+   */
+  private long[] scanRecords() throws IOException {
+    MappedShapefile.LOGGER.warn("no .shx for " + this.shapefileName //$NON-NLS-1$
+        + ", scanning record headers"); //$NON-NLS-1$
+    long[] result = new long[this.nbRecords];
+    long position = MappedShapefile.HEADER_SIZE;
+    int nb = 0;
+    while (nb < result.length && position + 8 <= this.shp.size()) {
+      result[nb++] = position;
+      int contentLength = this.shp.slice(position, 8)
+          .order(ByteOrder.BIG_ENDIAN).getInt(4);
+      position += 8 + 2L * contentLength;
+    }
+    return (nb == result.length) ? result : Arrays.copyOf(result,
+        nb);
+  }
+
+  /**
+   * Type Java d'un champ du .dbf, comme le renvoie GeoTools.
+   */
+  private static Class<?> fieldClass(char type, int length, int decimalCount) {
+    switch (type) {
+      case 'N':
+      case 'n':
+        if (decimalCount == 0) {
+          return (length < 10) ? Integer.class : Long.class;
+        }
+        return Double.class;
+      case 'F':
+      case 'f':
+        return Double.class;
+      case 'L':
+      case 'l':
+        return Boolean.class;
+      case 'D':
+      case 'd':
+        return java.util.Date.class;
+      default:
+        return String.class;
+    }
+  }
+
+  /**
+   * Classe de géométrie associée à un type de shapefile.
+   * @see Reader#geometryType(org.geotools.data.shapefile.shp.ShapeType)
+   */
+  static Class<? extends GM_Object> geometryType(int shapeType) {
+    switch (shapeType) {
+      case 1:
+      case 11:
+      case 21:
+        return GM_Point.class;
+      case 8:
+      case 18:
+      case 28:
+        return GM_MultiPoint.class;
+      case 3:
+      case 13:
+      case 23:
+        return GM_MultiCurve.class;
+      default:
+        return GM_MultiSurface.class;
+    }
+  }
+
+  /** @return le nombre d'enregistrements du shapefile */
+  public int getNbRecords() {
+    return this.offsets.length;
+  }
+
+  /** @return le schéma des objets du shapefile */
+  public SchemaDefaultFeature getSchema() {
+    return this.schema;
+  }
+
+  /** @return l'enveloppe stockée dans l'en-tête du .shp */
+  public IEnvelope getEnvelope() {
+    return this.envelope;
+  }
+
+  /**
+   * Renvoie l'objet correspondant à un enregistrement. Sa géométrie et ses
+   * attributs ne sont décodés qu'au premier accès.
+   * @param record numéro de l'enregistrement, à partir de 0
+   * @return l'objet, d'identifiant <code>record</code>
+   */
+  public DefaultFeature getFeature(int record) {
+    MappedFeature feature = new MappedFeature(this, record);
+    feature.setFeatureType(this.schema.getFeatureType());
+    feature.setSchema(this.schema);
+    feature.setId(record);
+    return feature;
+  }
+
+  /**
+   * Renvoie un curseur sur tous les objets du shapefile, à utiliser par exemple
+   * avec {@link ShapefileReader#read(FeatureCursor, fr.ign.cogit.geoxygene.api.feature.IPopulation)}.
+   * @return un curseur sur les objets du shapefile
+   */
+  public FeatureCursor<DefaultFeature> cursor() {
+    return new FeatureCursor<DefaultFeature>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < MappedShapefile.this.getNbRecords();
+      }
+
+      @Override
+      public DefaultFeature next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return MappedShapefile.this.getFeature(this.next++);
+      }
+
+      @Override
+      public void close() {
+        // rien à libérer : les projections sont libérées par le ramasse-miettes
+      }
+    };
+  }
+
+  /**
+   * Décode la géométrie d'un enregistrement.
+   * @param record numéro de l'enregistrement, à partir de 0
+   * @return la géométrie GeOxygene, null si elle ne peut être convertie
+   */
+  public IGeometry getGeometry(int record) {
+    try {
+      return ShapefileReader.toGeometry(this.readGeometry(record),
+          this.geometryType, record);
+    } catch (Exception e) {
+      MappedShapefile.LOGGER.error("cannot convert geometry of record " //$NON-NLS-1$
+          + record + " in " + this.shapefileName, e); //$NON-NLS-1$
+      return null;
+    }
+  }
+
+  /**
+   * Décode la géométrie JTS d'un enregistrement du .shp.
+   * @param record numéro de l'enregistrement, à partir de 0
+   * @return la géométrie JTS, null pour une géométrie vide
+   * @throws IOException en cas d'erreur de lecture
+   */
+  public Geometry readGeometry(int record) throws IOException {
+    long offset = this.offsets[record];
+    int contentLength = this.shp.slice(offset, 8).order(ByteOrder.BIG_ENDIAN)
+        .getInt(4) * 2;
+    if (contentLength < 4) {
+      return null;
+    }
+    ByteBuffer buffer = this.shp.slice(offset + 8, contentLength);
+    int type = buffer.getInt(0);
+    boolean z = type == 11 || type == 13 || type == 15 || type == 18;
+    switch (type) {
+      case 1:
+      case 11:
+      case 21:
+        return this.factory.createPoint(new Coordinate(buffer.getDouble(4),
+            buffer.getDouble(12), z ? buffer.getDouble(20) : Coordinate.NULL_ORDINATE));
+      case 8:
+      case 18:
+      case 28: {
+        int nbPoints = buffer.getInt(36);
+        Coordinate[] coordinates = MappedShapefile.readCoordinates(buffer, 40,
+            nbPoints, z ? 40 + 16 * nbPoints + 16 : -1, 0, nbPoints);
+        return this.factory.createMultiPoint(coordinates);
+      }
+      case 3:
+      case 13:
+      case 23:
+      case 5:
+      case 15:
+      case 25: {
+        int nbParts = buffer.getInt(36);
+        int nbPoints = buffer.getInt(40);
+        int pointsOffset = 44 + 4 * nbParts;
+        int zOffset = z ? pointsOffset + 16 * nbPoints + 16 : -1;
+        Coordinate[][] parts = new Coordinate[nbParts][];
+        for (int i = 0; i < nbParts; i++) {
+          int start = buffer.getInt(44 + 4 * i);
+          int end = (i + 1 < nbParts) ? buffer.getInt(44 + 4 * (i + 1))
+              : nbPoints;
+          parts[i] = MappedShapefile.readCoordinates(buffer, pointsOffset,
+              nbPoints, zOffset, start, end);
+        }
+        if (type == 3 || type == 13 || type == 23) {
+          LineString[] lines = new LineString[nbParts];
+          for (int i = 0; i < nbParts; i++) {
+            lines[i] = this.factory.createLineString(parts[i]);
+          }
+          return this.factory.createMultiLineString(lines);
+        }
+        return this.buildPolygons(parts);
+      }
+      case 0:
+        return null;
+      default:
+        throw new IOException("unsupported shape type " + type //$NON-NLS-1$
+            + " for record " + record); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Lit les points <code>start</code> à <code>end</code> (exclu) d'un
+   * enregistrement.
+   */
+  private static Coordinate[] readCoordinates(ByteBuffer buffer,
+      int pointsOffset, int nbPoints, int zOffset, int start, int end) {
+    Coordinate[] coordinates = new Coordinate[end - start];
+    for (int i = start; i < end; i++) {
+      coordinates[i - start] = new Coordinate(buffer.getDouble(pointsOffset + 16
+          * i), buffer.getDouble(pointsOffset + 16 * i + 8),
+          (zOffset < 0) ? Coordinate.NULL_ORDINATE : buffer.getDouble(zOffset
+              + 8 * i));
+    }
+    return coordinates;
+  }
+
+  /**
+   * Construit les polygones d'un enregistrement : les anneaux orientés dans le
+   * sens horaire sont des contours extérieurs, les autres des trous rattachés
+   * au plus petit contour qui les contient.
+   */
+  private Geometry buildPolygons(Coordinate[][] parts) {
+    List<LinearRing> shells = new ArrayList<LinearRing>();
+    List<LinearRing> holes = new ArrayList<LinearRing>();
+    for (Coordinate[] part : parts) {
+      Coordinate[] ring = part;
+      if (ring.length > 0 && !ring[0].equals2D(ring[ring.length - 1])) {
+        ring = Arrays.copyOf(part, part.length + 1);
+        ring[part.length] = new Coordinate(part[0]);
+      }
+      if (ring.length < 4) {
+        continue;
+      }
+      LinearRing linearRing = this.factory.createLinearRing(ring);
+      if (CGAlgorithms.isCCW(ring)) {
+        holes.add(linearRing);
+      } else {
+        shells.add(linearRing);
+      }
+    }
+    if (shells.isEmpty()) {
+      // anneaux mal orientés : on les considère tous comme extérieurs
+      shells = holes;
+      holes = new ArrayList<LinearRing>();
+    }
+    List<List<LinearRing>> holesPerShell = new ArrayList<List<LinearRing>>();
+    for (int i = 0; i < shells.size(); i++) {
+      holesPerShell.add(new ArrayList<LinearRing>());
+    }
+    for (LinearRing hole : holes) {
+      int best = -1;
+      double bestArea = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < shells.size(); i++) {
+        LinearRing shell = shells.get(i);
+        if (shell.getEnvelopeInternal().contains(hole.getEnvelopeInternal())
+            && CGAlgorithms.isPointInRing(hole.getCoordinateN(0),
+                shell.getCoordinates())) {
+          double area = shell.getEnvelopeInternal().getArea();
+          if (area < bestArea) {
+            bestArea = area;
+            best = i;
+          }
+        }
+      }
+      if (best < 0) {
+        // trou orphelin : il devient un contour extérieur
+        shells.add(this.factory.createLinearRing(hole.getCoordinates()));
+        holesPerShell.add(new ArrayList<LinearRing>());
+      } else {
+        holesPerShell.get(best).add(hole);
+      }
+    }
+    Polygon[] polygons = new Polygon[shells.size()];
+    for (int i = 0; i < polygons.length; i++) {
+      List<LinearRing> shellHoles = holesPerShell.get(i);
+      polygons[i] = this.factory.createPolygon(shells.get(i),
+          shellHoles.toArray(new LinearRing[shellHoles.size()]));
+    }
+    return this.factory.createMultiPolygon(polygons);
+  }
+
+  /**
+   * Décode tous les attributs d'un enregistrement du .dbf.
+   * @param record numéro de l'enregistrement, à partir de 0
+   * @return les valeurs des attributs, dans l'ordre des champs
+   */
+  public Object[] readAttributes(int record) {
+    Object[] values = new Object[this.fieldNames.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = this.readAttribute(record, i);
+    }
+    return values;
+  }
+
+  /**
+   * Décode un attribut d'un enregistrement du .dbf.
+   * @param record numéro de l'enregistrement, à partir de 0
+   * @param field rang du champ
+   * @return la valeur de l'attribut, null si elle est vide ou invalide
+   */
+  public Object readAttribute(int record, int field) {
+    ByteBuffer buffer;
+    try {
+      buffer = this.dbf.slice(this.dbfHeaderLength + (long) record
+          * this.dbfRecordLength + this.fieldOffsets[field],
+          this.fieldLengths[field]);
+    } catch (IOException e) {
+      MappedShapefile.LOGGER.error("cannot read record " + record //$NON-NLS-1$
+          + " in " + this.shapefileName, e); //$NON-NLS-1$
+      return null;
+    }
+    byte[] bytes = new byte[this.fieldLengths[field]];
+    buffer.get(bytes);
+    String text = new String(bytes, this.charset).trim();
+    Class<?> fieldClass = this.fieldClasses[field];
+    if (fieldClass == String.class) {
+      return text;
+    }
+    if (text.isEmpty()) {
+      return null;
+    }
+    try {
+      if (fieldClass == Integer.class) {
+        return Integer.valueOf(text);
+      }
+      if (fieldClass == Long.class) {
+        return Long.valueOf(text);
+      }
+      if (fieldClass == Double.class) {
+        return Double.valueOf(text);
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (fieldClass == Boolean.class) {
+      switch (text.charAt(0)) {
+        case 'T':
+        case 't':
+        case 'Y':
+        case 'y':
+          return Boolean.TRUE;
+        case 'F':
+        case 'f':
+        case 'N':
+        case 'n':
+          return Boolean.FALSE;
+        default:
+          return null;
+      }
+    }
+    // date au format AAAAMMJJ
+    if (text.length() != 8) {
+      return null;
+    }
+    try {
+      Calendar calendar = Calendar.getInstance();
+      calendar.clear();
+      calendar.set(Integer.parseInt(text.substring(0, 4)),
+          Integer.parseInt(text.substring(4, 6)) - 1,
+          Integer.parseInt(text.substring(6, 8)));
+      return calendar.getTime();
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.index.CloseableCollection;
+import org.geotools.data.shapefile.index.Data;
+import org.geotools.data.shapefile.index.quadtree.QuadTree;
+import org.geotools.data.shapefile.index.quadtree.StoreException;
+import org.geotools.data.shapefile.index.quadtree.fs.FileSystemIndexStore;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.data.shapefile.shp.ShapefileReader.Record;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+
+/**
+ * Lecture d'un shapefile enregistrement par enregistrement. Contrairement à
+ * {@link Reader}, qui charge tous les attributs et toutes les géométries avant
+ * la création des objets, le curseur lit chaque enregistrement dans les
+ * fichiers .shp et .dbf au moment où l'objet est demandé : la mémoire utilisée
+ * ne dépend pas de la taille du fichier.
+ * <p>
+ * Le curseur peut ne renvoyer que les objets dont l'enveloppe intersecte un
+ * rectangle. Si le shapefile possède un index spatial (.qix) et un fichier
+ * d'index (.shx), seuls les enregistrements désignés par l'index sont lus ;
+ * sinon, les enregistrements sont filtrés d'après l'enveloppe stockée dans
+ * leur en-tête, sans décoder leur géométrie ni leurs attributs.
+ * <p>
+ * Les objets créés ont pour identifiant le numéro de leur enregistrement (à
+ * partir de 0), comme avec {@link ShapefileReader#read(String)}.
+ *
+ * @see ShapefileReader#read(FeatureCursor, fr.ign.cogit.geoxygene.api.feature.IPopulation)
+ */
+public class ShapefileCursor implements FeatureCursor<DefaultFeature> {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger.getLogger(ShapefileCursor.class
+      .getName());
+
+  private final String shapefileName;
+  private final ShpFiles shpFiles;
+  private final org.geotools.data.shapefile.shp.ShapefileReader shpReader;
+  private final DbaseFileReader dbfReader;
+  private final SchemaDefaultFeature schema;
+  private final Class<? extends IGeometry> geometryType;
+  private final IEnvelope fileEnvelope;
+  /** Rectangle de sélection, null pour lire tous les objets. */
+  private final Envelope filter;
+  /**
+   * Numéros (à partir de 1) et positions dans le .shp des enregistrements
+   * désignés par l'index spatial, null si les enregistrements sont lus
+   * séquentiellement.
+   */
+  private int[] recnos = null;
+  private long[] offsets = null;
+  /** Rang du prochain enregistrement désigné par l'index. */
+  private int position = 0;
+  /** Numéro (à partir de 0) du prochain enregistrement lu séquentiellement. */
+  private int recno = 0;
+  private DefaultFeature next = null;
+  private boolean closed = false;
+
+  /**
+   * Ouvre un curseur sur tous les objets d'un shapefile.
+   * @param shapefileName nom du fichier .shp
+   * @throws IOException si le fichier ne peut pas être ouvert
+   */
+  public ShapefileCursor(String shapefileName) throws IOException {
+    this(shapefileName, null);
+  }
+
+  /**
+   * Ouvre un curseur sur les objets d'un shapefile dont l'enveloppe intersecte
+   * un rectangle.
+   * @param shapefileName nom du fichier .shp
+   * @param envelope rectangle de sélection, null pour lire tous les objets
+   * @throws IOException si le fichier ne peut pas être ouvert
+   */
+  public ShapefileCursor(String shapefileName, IEnvelope envelope)
+      throws IOException {
+    this.shapefileName = shapefileName;
+    this.shpFiles = new ShpFiles(shapefileName);
+    this.shpReader = new org.geotools.data.shapefile.shp.ShapefileReader(
+        this.shpFiles, true, false, new GeometryFactory());
+    try {
+      this.dbfReader = new DbaseFileReader(this.shpFiles, false,
+          Charset.forName("ISO-8859-1")); //$NON-NLS-1$
+    } catch (IOException e) {
+      this.shpReader.close();
+      throw e;
+    }
+    this.fileEnvelope = new GM_Envelope(this.shpReader.getHeader().minX(),
+        this.shpReader.getHeader().maxX(), this.shpReader.getHeader().minY(),
+        this.shpReader.getHeader().maxY());
+    DbaseFileHeader header = this.dbfReader.getHeader();
+    String[] fieldNames = new String[header.getNumFields()];
+    Class<?>[] fieldClasses = new Class<?>[header.getNumFields()];
+    for (int i = 0; i < fieldNames.length; i++) {
+      fieldNames[i] = header.getFieldName(i);
+      fieldClasses[i] = header.getFieldClass(i);
+    }
+    this.schema = new SchemaDefaultFeature();
+    String name = new File(shapefileName).getName();
+    if (name.lastIndexOf('.') > 0) {
+      name = name.substring(0, name.lastIndexOf('.'));
+    }
+    this.schema.setNom(name);
+    this.schema.setNomSchema(name);
+    FeatureType featureType = ShapefileReader.initFeatureType(this.schema,
+        name, fieldNames, fieldClasses,
+        Reader.geometryType(this.shpReader.getHeader().getShapeType()));
+    this.geometryType = featureType.getGeometryType();
+    if (envelope == null) {
+      this.filter = null;
+    } else {
+      this.filter = new Envelope(envelope.minX(), envelope.maxX(),
+          envelope.minY(), envelope.maxY());
+      this.queryIndex();
+    }
+  }
+
+  /**
+   * Interroge l'index spatial du shapefile, s'il existe, pour ne lire que les
+   * enregistrements proches du rectangle de sélection.
+   */
+  private void queryIndex() {
+    File qix = ShapefileCursor.sibling(this.shapefileName, "qix"); //$NON-NLS-1$
+    if (qix == null || !this.shpFiles.exists(ShpFileType.SHX)) {
+      return;
+    }
+    List<long[]> found = new ArrayList<long[]>();
+    try {
+      IndexFile shx = new IndexFile(this.shpFiles, false);
+      QuadTree tree;
+      try {
+        tree = new FileSystemIndexStore(qix).load(shx, false);
+      } catch (StoreException e) {
+        shx.close();
+        throw e;
+      }
+      try {
+        CloseableCollection<Data> records = tree.search(this.filter);
+        try {
+          for (Data data : records) {
+            found.add(new long[] { ((Number) data.getValue(0)).longValue(),
+                ((Number) data.getValue(1)).longValue() });
+          }
+        } finally {
+          records.close();
+        }
+      } finally {
+        // ferme aussi le .shx
+        tree.close();
+      }
+    } catch (Exception e) {
+      ShapefileCursor.LOGGER.warn("Index spatial inutilisable pour " //$NON-NLS-1$
+          + this.shapefileName + " : lecture sequentielle"); //$NON-NLS-1$
+      return;
+    }
+    // lecture dans l'ordre des fichiers
+    long[][] sorted = found.toArray(new long[found.size()][]);
+    Arrays.sort(sorted, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] a, long[] b) {
+        return Long.compare(a[0], b[0]);
+      }
+    });
+    this.recnos = new int[sorted.length];
+    this.offsets = new long[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      this.recnos[i] = (int) sorted[i][0];
+      this.offsets[i] = sorted[i][1];
+    }
+  }
+
+  /**
+   * Fichier de même nom qu'un shapefile avec une autre extension, en minuscules
+   * ou en majuscules.
+   * @return le fichier s'il existe, null sinon
+   */
+  private static File sibling(String shapefileName, String extension) {
+    int dot = shapefileName.lastIndexOf('.');
+    String base = (dot > 0) ? shapefileName.substring(0, dot) : shapefileName;
+    File file = new File(base + "." + extension); //$NON-NLS-1$
+    if (file.exists()) {
+      return file;
+    }
+    file = new File(base + "." + extension.toUpperCase()); //$NON-NLS-1$
+    return file.exists() ? file : null;
+  }
+
+  /** @return le schéma des objets lus */
+  public SchemaDefaultFeature getSchema() {
+    return this.schema;
+  }
+
+  /** @return l'enveloppe de tous les objets du fichier (en-tête du .shp) */
+  public IEnvelope getEnvelope() {
+    return this.fileEnvelope;
+  }
+
+  /** @return le nombre d'enregistrements du fichier */
+  public int getNbRecords() {
+    return this.dbfReader.getHeader().getNumRecords();
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    if (this.next == null && !this.closed) {
+      this.next = this.readNext();
+    }
+    return this.next != null;
+  }
+
+  @Override
+  public DefaultFeature next() throws IOException {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    DefaultFeature feature = this.next;
+    this.next = null;
+    return feature;
+  }
+
+  /** @return l'objet suivant satisfaisant le filtre, null à la fin */
+  private DefaultFeature readNext() throws IOException {
+    if (this.recnos != null) {
+      while (this.position < this.recnos.length) {
+        int recordNumber = this.recnos[this.position];
+        long offset = this.offsets[this.position];
+        this.position++;
+        this.shpReader.goTo((int) offset);
+        Record record = this.shpReader.nextRecord();
+        if (!this.accept(record)) {
+          continue;
+        }
+        this.dbfReader.goTo(recordNumber);
+        DefaultFeature feature = this.feature(record,
+            this.dbfReader.readEntry(), recordNumber - 1);
+        if (feature != null) {
+          return feature;
+        }
+      }
+      return null;
+    }
+    while (this.shpReader.hasNext() && this.dbfReader.hasNext()) {
+      Record record = this.shpReader.nextRecord();
+      int index = this.recno++;
+      if (!this.accept(record)) {
+        this.dbfReader.skip();
+        continue;
+      }
+      DefaultFeature feature = this.feature(record,
+          this.dbfReader.readEntry(), index);
+      if (feature != null) {
+        return feature;
+      }
+    }
+    return null;
+  }
+
+  /** Vrai si l'enveloppe de l'enregistrement intersecte le filtre. */
+  private boolean accept(Record record) {
+    return this.filter == null
+        || !(record.minX > this.filter.getMaxX()
+            || record.maxX < this.filter.getMinX()
+            || record.minY > this.filter.getMaxY() || record.maxY < this.filter
+            .getMinY());
+  }
+
+  /**
+   * Crée l'objet correspondant à un enregistrement.
+   * @return l'objet, null si sa géométrie n'a pas pu être convertie (l'objet
+   *         est alors ignoré, comme par {@link ShapefileReader})
+   */
+  private DefaultFeature feature(Record record, Object[] entry, int index) {
+    Geometry shape;
+    try {
+      shape = (Geometry) record.shape();
+    } catch (Exception e) {
+      shape = null;
+    }
+    DefaultFeature feature = new DefaultFeature();
+    feature.setFeatureType(this.schema.getFeatureType());
+    feature.setSchema(this.schema);
+    feature.setAttributes(entry);
+    feature.setId(index);
+    try {
+      feature.setGeom(ShapefileReader.toGeometry(shape, this.geometryType,
+          index));
+    } catch (Exception e) {
+      ShapefileCursor.LOGGER.error(I18N
+          .getString("ShapefileReader.ProblemWhileConvertingGeometry") //$NON-NLS-1$
+          + I18N.getString("ShapefileReader.ObjectIgnored")); //$NON-NLS-1$
+      return null;
+    }
+    return feature;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.next = null;
+    try {
+      this.shpReader.close();
+    } finally {
+      this.dbfReader.close();
+    }
+  }
+}
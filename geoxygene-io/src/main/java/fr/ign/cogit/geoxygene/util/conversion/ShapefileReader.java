@@ -26,6 +26,13 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,15 +46,19 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.vividsolutions.jts.geom.Geometry;
+
 import fr.ign.cogit.geoxygene.api.feature.IDataSet;
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IPopulation;
 import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.feature.DefaultFeature;
 import fr.ign.cogit.geoxygene.feature.Population;
 import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
 import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
@@ -203,6 +214,28 @@ public class ShapefileReader implements Runnable {
    */
   public static IPopulation<IFeature> read(String shapefileName,
       String populationName, IDataSet dataset, boolean initSpatialIndex) {
+    return ShapefileReader.read(shapefileName, populationName, dataset,
+        initSpatialIndex, 1);
+  }
+
+  /**
+   * Lit les features contenus dans le fichier en paramètre comme
+   * {@link #read(String, String, IDataSet, boolean)}, en convertissant les
+   * géométries sur <code>parallelism</code> threads.
+   * 
+   * @see #read(Reader, SchemaDefaultFeature, IPopulation, int)
+   * 
+   * @param shapefileName un shapefile
+   * @param populationName non de la population
+   * @param dataset jeu de données auquel ajouter la population
+   * @param initSpatialIndex si ce boolean est vrai, alors on initialise la
+   *          population.
+   * @param parallelism nombre de threads de conversion des géométries
+   * @return une population contenant les features contenues dans le fichier.
+   */
+  public static IPopulation<IFeature> read(String shapefileName,
+      String populationName, IDataSet dataset, boolean initSpatialIndex,
+      int parallelism) {
     // creation de la collection de features
     Population<IFeature> population = new Population<IFeature>(populationName);
     if (dataset != null) {
@@ -222,7 +255,8 @@ public class ShapefileReader implements Runnable {
        * Parcours de features du fichier et création de Default features
        * équivalents
        */
-      ShapefileReader.read(reader, schemaDefaultFeature, population);
+      ShapefileReader.read(reader, schemaDefaultFeature, population,
+          parallelism);
     } catch (MalformedURLException e1) {
       ShapefileReader.logger.log(
           Level.SEVERE,
@@ -322,16 +356,39 @@ public class ShapefileReader implements Runnable {
         I18N.getString("ShapefileReader.SpatialIndexInitialised") //$NON-NLS-1$
             + minX + "," + maxX + "," //$NON-NLS-1$ //$NON-NLS-2$
             + minY + "," + maxY); //$NON-NLS-1$
+    FeatureType newFeatureType = ShapefileReader.initFeatureType(
+        schemaDefaultFeature, population.getNom(), reader.fieldNames,
+        reader.fieldClasses, reader.getShapeType());
+    population.setFeatureType(newFeatureType);
+    for (GF_AttributeType fa : newFeatureType.getFeatureAttributes()) {
+      ShapefileReader.logger.log(Level.FINE, "FeatureAttibute = " //$NON-NLS-1$
+          + fa.getMemberName() + "-" + fa.getValueType()); //$NON-NLS-1$
+    }
+    return reader;
+  }
+
+  /**
+   * Crée le featureType correspondant aux champs d'un shapefile et l'associe au
+   * schéma.
+   * @param schemaDefaultFeature schéma à initialiser
+   * @param typeName nom du featureType
+   * @param fieldNames noms des champs du fichier dbf
+   * @param fieldClasses classes des valeurs des champs
+   * @param shapeType type de géométrie du fichier, éventuellement null
+   * @return le featureType créé
+   */
+  static FeatureType initFeatureType(SchemaDefaultFeature schemaDefaultFeature,
+      String typeName, String[] fieldNames, Class<?>[] fieldClasses,
+      Class<? extends GM_Object> shapeType) {
     /** Créer un featuretype de jeu correspondant */
-    fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType newFeatureType = new fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType();
-    newFeatureType.setTypeName(population.getNom());
-    int nbFields = reader.getNbFields();
+    FeatureType newFeatureType = new FeatureType();
+    newFeatureType.setTypeName(typeName);
     Map<Integer, String[]> attLookup = new HashMap<Integer, String[]>(0);
-    for (int i = 0; i < nbFields; i++) {
+    for (int i = 0; i < fieldNames.length; i++) {
       AttributeType type = new AttributeType();
-      String nomField = reader.getFieldName(i);
-      String memberName = reader.getFieldName(i);
-      String valueType = reader.getFieldClass(i).getSimpleName();
+      String nomField = fieldNames[i];
+      String memberName = fieldNames[i];
+      String valueType = fieldClasses[i].getSimpleName();
       type.setNomField(nomField);
       type.setMemberName(memberName);
       type.setValueType(valueType);
@@ -342,22 +399,15 @@ public class ShapefileReader implements Runnable {
               + " = " + nomField); //$NON-NLS-1$
     }
     /** Création d'un schéma associé au featureType */
-    newFeatureType
-        .setGeometryType((reader.getShapeType() == null) ? GM_Object.class
-            : reader.getShapeType());
-    ShapefileReader.logger.log(Level.FINE,
-        "shapeType = " + reader.getShapeType() //$NON-NLS-1$
-            + I18N.getString("ShapefileReader.GeometryType") //$NON-NLS-1$
-            + newFeatureType.getGeometryType());
+    newFeatureType.setGeometryType((shapeType == null) ? GM_Object.class
+        : shapeType);
+    ShapefileReader.logger.log(Level.FINE, "shapeType = " + shapeType //$NON-NLS-1$
+        + I18N.getString("ShapefileReader.GeometryType") //$NON-NLS-1$
+        + newFeatureType.getGeometryType());
     schemaDefaultFeature.setFeatureType(newFeatureType);
     newFeatureType.setSchema(schemaDefaultFeature);
     schemaDefaultFeature.setAttLookup(attLookup);
-    population.setFeatureType(newFeatureType);
-    for (GF_AttributeType fa : newFeatureType.getFeatureAttributes()) {
-      ShapefileReader.logger.log(Level.FINE, "FeatureAttibute = " //$NON-NLS-1$
-          + fa.getMemberName() + "-" + fa.getValueType()); //$NON-NLS-1$
-    }
-    return reader;
+    return newFeatureType;
   }
 
   protected static EventListenerList listenerList = new EventListenerList();
@@ -401,54 +451,33 @@ public class ShapefileReader implements Runnable {
     ShapefileReader.fireActionPerformed(new ActionEvent(population, 0,
         "Read", reader.getNbFeatures())); //$NON-NLS-1$
 
-    for (int indexFeature = 0; indexFeature < reader.getNbFeatures(); indexFeature++) {
-      DefaultFeature defaultFeature = new DefaultFeature();
-      defaultFeature.setFeatureType(schema.getFeatureType());
-      defaultFeature.setSchema(schema);
-      defaultFeature.setAttributes(reader.fieldValues[indexFeature]);
-      Class<? extends IGeometry> geometryType = schema.getFeatureType()
-          .getGeometryType();
-      try {
-    	  	IGeometry geometry = null ;
-			if (reader.geometries[indexFeature] == null) {
-				// support for empty geometries added
-				logger.log(
-					Level.WARNING, 
-					"null geometry for object "+ indexFeature+ " (considered EMPTY)"
-				);
-				geometry = new GM_Aggregate<IGeometry>();
-			} else {
-				geometry = AdapterFactory.toGM_Object(reader.geometries[indexFeature]);
-			}
-			
-			if (!geometryType.isAssignableFrom(geometry.getClass())) {
-				ShapefileReader.logger.log(Level.FINE,
-						"Geometry of type " //$NON-NLS-1$
-								+ geometry.getClass().getSimpleName() + " instead of " //$NON-NLS-1$
-								+ geometryType.getSimpleName());
-				// TODO make it more robust: a lot of assumptions here
-				if (geometry instanceof GM_MultiSurface<?>) {
-					geometry = ((GM_MultiSurface<?>) geometry).get(0);
-				} else {
-					if (geometry instanceof GM_MultiCurve<?>) {
-						geometry = ((GM_MultiCurve<?>) geometry).get(0);
-					} else {
-						if (geometry instanceof GM_MultiPoint) {
-							geometry = ((GM_MultiPoint) geometry).get(0);
-						}
-					}
-				}
-			}
-			defaultFeature.setGeom(geometry);
-			defaultFeature.setId(indexFeature);
-			population.add(defaultFeature);
-			ShapefileReader.fireActionPerformed(new ActionEvent(population, 1, "Read", indexFeature)); //$NON-NLS-1$
-      } catch (Exception e) {
-        ShapefileReader.logger.log(Level.SEVERE, I18N
-            .getString("ShapefileReader" + //$NON-NLS-1$
-                ".ProblemWhileConvertingGeometry") //$NON-NLS-1$
-            + I18N.getString("ShapefileReader.ObjectIgnored")); //$NON-NLS-1$
+    // un seul evenement et une seule mise a jour de l'index pour tout le fichier
+    population.beginBulk();
+    try {
+      for (int indexFeature = 0; indexFeature < reader.getNbFeatures(); indexFeature++) {
+        DefaultFeature defaultFeature = new DefaultFeature();
+        defaultFeature.setFeatureType(schema.getFeatureType());
+        defaultFeature.setSchema(schema);
+        defaultFeature.setAttributes(reader.fieldValues[indexFeature]);
+        Class<? extends IGeometry> geometryType = schema.getFeatureType()
+            .getGeometryType();
+        try {
+          IGeometry geometry = ShapefileReader.toGeometry(
+              reader.geometries[indexFeature], geometryType, indexFeature);
+          defaultFeature.setGeom(geometry);
+          defaultFeature.setId(indexFeature);
+          population.add(defaultFeature);
+          ShapefileReader.fireActionPerformed(new ActionEvent(population, 1,
+              "Read", indexFeature)); //$NON-NLS-1$
+        } catch (Exception e) {
+          ShapefileReader.logger.log(Level.SEVERE, I18N
+              .getString("ShapefileReader" + //$NON-NLS-1$
+                  ".ProblemWhileConvertingGeometry") //$NON-NLS-1$
+              + I18N.getString("ShapefileReader.ObjectIgnored")); //$NON-NLS-1$
+        }
       }
+    } finally {
+      population.endBulk();
     }
     ShapefileReader.logger.log(Level.FINE, population.size()
         + " features created for " //$NON-NLS-1$
@@ -457,6 +486,236 @@ public class ShapefileReader implements Runnable {
         "Finished", reader.getNbFeatures())); //$NON-NLS-1$
   }
 
+  /**
+   * Taille des paquets d'enregistrements convertis par une même tâche lors du
+   * chargement parallèle.
+   */
+  static final int CHUNK_SIZE = 4096;
+  /**
+   * Intervalle (en millisecondes) entre deux événements de progression lors du
+   * chargement parallèle.
+   */
+  static final long PROGRESS_INTERVAL = 200;
+
+  /**
+   * Lit la collection de features <code> reader </code> comme
+   * {@link #read(Reader, SchemaDefaultFeature, IPopulation)}, en convertissant
+   * les géométries en parallèle. Les enregistrements sont découpés en paquets
+   * de {@link #CHUNK_SIZE} convertis sur un {@link ForkJoinPool} ; les objets
+   * sont ensuite ajoutés à la population dans l'ordre du fichier, avec leur
+   * numéro d'enregistrement comme identifiant. La progression est publiée
+   * périodiquement depuis le thread appelant et non plus pour chaque objet.
+   * @param reader lecteur du shapefile
+   * @param schema schéma des features à créer
+   * @param population population à laquelle ajouter les features créés
+   * @param parallelism nombre de threads de conversion, 1 pour un chargement
+   *          séquentiel
+   * @throws IOException renvoie une exception en cas d'erreur de lecture
+   */
+  public static void read(final Reader reader,
+      final SchemaDefaultFeature schema, IPopulation<IFeature> population,
+      int parallelism) throws IOException {
+    if (parallelism <= 1) {
+      ShapefileReader.read(reader, schema, population);
+      return;
+    }
+    int nbFeatures = reader.getNbFeatures();
+    ShapefileReader.fireActionPerformed(new ActionEvent(population, 0,
+        "Read", nbFeatures)); //$NON-NLS-1$
+    final DefaultFeature[] features = new DefaultFeature[nbFeatures];
+    final AtomicInteger converted = new AtomicInteger();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      ForkJoinTask<?> task = pool.submit(new ConversionTask(reader, schema,
+          features, converted, 0, nbFeatures));
+      while (true) {
+        try {
+          task.get(ShapefileReader.PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+          break;
+        } catch (TimeoutException e) {
+          ShapefileReader.fireActionPerformed(new ActionEvent(population, 1,
+              "Read", converted.get())); //$NON-NLS-1$
+        } catch (InterruptedException e) {
+          task.cancel(true);
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    population.beginBulk();
+    try {
+      for (DefaultFeature feature : features) {
+        if (feature != null) {
+          population.add(feature);
+        }
+      }
+    } finally {
+      population.endBulk();
+    }
+    ShapefileReader.logger.log(Level.FINE, population.size()
+        + " features created for " //$NON-NLS-1$
+        + nbFeatures);
+    ShapefileReader.fireActionPerformed(new ActionEvent(population, 2,
+        "Finished", nbFeatures)); //$NON-NLS-1$
+  }
+
+  /**
+   * Tâche de conversion d'un intervalle d'enregistrements, découpée
+   * récursivement jusqu'à la taille {@link #CHUNK_SIZE}. Chaque objet créé est
+   * rangé à l'indice de son enregistrement ; les enregistrements dont la
+   * géométrie ne peut être convertie laissent une case vide.
+   */
+  private static class ConversionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Reader reader;
+    private final SchemaDefaultFeature schema;
+    private final DefaultFeature[] features;
+    private final AtomicInteger converted;
+    private final int start;
+    private final int end;
+
+    ConversionTask(Reader reader, SchemaDefaultFeature schema,
+        DefaultFeature[] features, AtomicInteger converted, int start, int end) {
+      this.reader = reader;
+      this.schema = schema;
+      this.features = features;
+      this.converted = converted;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.end - this.start > ShapefileReader.CHUNK_SIZE) {
+        int middle = (this.start + this.end) >>> 1;
+        ForkJoinTask.invokeAll(new ConversionTask(this.reader, this.schema,
+            this.features, this.converted, this.start, middle),
+            new ConversionTask(this.reader, this.schema, this.features,
+                this.converted, middle, this.end));
+        return;
+      }
+      Class<? extends IGeometry> geometryType = this.schema.getFeatureType()
+          .getGeometryType();
+      for (int indexFeature = this.start; indexFeature < this.end; indexFeature++) {
+        try {
+          IGeometry geometry = ShapefileReader.toGeometry(
+              this.reader.geometries[indexFeature], geometryType, indexFeature);
+          DefaultFeature defaultFeature = new DefaultFeature();
+          defaultFeature.setFeatureType(this.schema.getFeatureType());
+          defaultFeature.setSchema(this.schema);
+          defaultFeature.setAttributes(this.reader.fieldValues[indexFeature]);
+          defaultFeature.setGeom(geometry);
+          defaultFeature.setId(indexFeature);
+          this.features[indexFeature] = defaultFeature;
+        } catch (Exception e) {
+          ShapefileReader.logger.log(Level.SEVERE, I18N
+              .getString("ShapefileReader" + //$NON-NLS-1$
+                  ".ProblemWhileConvertingGeometry") //$NON-NLS-1$
+              + I18N.getString("ShapefileReader.ObjectIgnored")); //$NON-NLS-1$
+        }
+      }
+      this.converted.addAndGet(this.end - this.start);
+    }
+  }
+
+  /**
+   * Lit les objets d'un shapefile dont l'enveloppe intersecte un rectangle. Les
+   * enregistrements sont lus un par un (cf. {@link ShapefileCursor}), en
+   * utilisant l'index spatial du fichier (.qix) s'il existe.
+   * 
+   * @param shapefileName un shapefile
+   * @param envelope rectangle de sélection, null pour lire tous les objets
+   * @return une population contenant les objets sélectionnés, null en cas
+   *         d'erreur de lecture
+   */
+  public static IPopulation<IFeature> read(String shapefileName,
+      IEnvelope envelope) {
+    try {
+      ShapefileCursor cursor = new ShapefileCursor(shapefileName, envelope);
+      Population<IFeature> population = new Population<IFeature>(cursor
+          .getSchema().getNom());
+      population.setFeatureType(cursor.getSchema().getFeatureType());
+      ShapefileReader.read(cursor, population);
+      return population;
+    } catch (IOException e) {
+      ShapefileReader.logger.log(
+          Level.SEVERE,
+          I18N.getString("ShapefileReader.ProblemReadingFile") //$NON-NLS-1$
+              + shapefileName
+              + I18N.getString("ShapefileReader.FileNotLoaded")); //$NON-NLS-1$
+      return null;
+    }
+  }
+
+  /**
+   * Ajoute à une population tous les objets d'un curseur, puis ferme le
+   * curseur. Les objets sont ajoutés en un seul chargement en masse (cf.
+   * {@link IPopulation#beginBulk()}).
+   * @param cursor curseur sur les objets à ajouter
+   * @param population population à laquelle ajouter les objets
+   * @throws IOException en cas d'erreur de lecture
+   */
+  public static void read(FeatureCursor<? extends IFeature> cursor,
+      IPopulation<IFeature> population) throws IOException {
+    ShapefileReader.fireActionPerformed(new ActionEvent(population, 0,
+        "Read", -1)); //$NON-NLS-1$
+    int nb = 0;
+    population.beginBulk();
+    try {
+      while (cursor.hasNext()) {
+        population.add(cursor.next());
+        ShapefileReader.fireActionPerformed(new ActionEvent(population, 1,
+            "Read", nb++)); //$NON-NLS-1$
+      }
+    } finally {
+      population.endBulk();
+      cursor.close();
+    }
+    ShapefileReader.fireActionPerformed(new ActionEvent(population, 2,
+        "Finished", nb)); //$NON-NLS-1$
+  }
+
+  /**
+   * Convertit la géométrie JTS d'un enregistrement en géométrie GeOxygene du
+   * type attendu par le schéma. Une géométrie absente donne un agrégat vide,
+   * et un agrégat est remplacé par son premier élément si le schéma attend une
+   * géométrie simple.
+   * @param geometry géométrie JTS de l'enregistrement, éventuellement null
+   * @param geometryType type de géométrie du schéma
+   * @param indexFeature numéro de l'enregistrement
+   * @return la géométrie GeOxygene
+   * @throws Exception en cas d'erreur de conversion
+   */
+  static IGeometry toGeometry(Geometry geometry,
+      Class<? extends IGeometry> geometryType, int indexFeature)
+      throws Exception {
+    if (geometry == null) {
+      // support for empty geometries added
+      ShapefileReader.logger.log(Level.WARNING, "null geometry for object " //$NON-NLS-1$
+          + indexFeature + " (considered EMPTY)"); //$NON-NLS-1$
+      return new GM_Aggregate<IGeometry>();
+    }
+    IGeometry result = AdapterFactory.toGM_Object(geometry);
+    if (!geometryType.isAssignableFrom(result.getClass())) {
+      ShapefileReader.logger.log(Level.FINE, "Geometry of type " //$NON-NLS-1$
+          + result.getClass().getSimpleName() + " instead of " //$NON-NLS-1$
+          + geometryType.getSimpleName());
+      // TODO make it more robust: a lot of assumptions here
+      if (result instanceof GM_MultiSurface<?>) {
+        result = ((GM_MultiSurface<?>) result).get(0);
+      } else if (result instanceof GM_MultiCurve<?>) {
+        result = ((GM_MultiCurve<?>) result).get(0);
+      } else if (result instanceof GM_MultiPoint) {
+        result = ((GM_MultiPoint) result).get(0);
+      }
+    }
+    return result;
+  }
+
   @Override
   public void run() {
     try {
@@ -0,0 +1,770 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_FeatureType;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+
+/**
+ * Écriture d'un shapefile objet par objet. Contrairement à
+ * {@link ShapefileWriter#write(fr.ign.cogit.geoxygene.api.feature.IFeatureCollection, String)}
+ * , qui construit une collection GeoTools contenant une copie de tous les
+ * objets avant de l'écrire, les objets ajoutés par {@link #append(IFeature)}
+ * sont convertis et écrits par paquets de taille fixe : les fichiers .shp,
+ * .shx et .dbf grandissent au fur et à mesure et seules leurs en-têtes sont
+ * réécrites à la fermeture.
+ * <p>
+ * Un shapefile est limité à 2 Go. Quand le .shp ou le .dbf atteindrait cette
+ * taille, le fichier en cours est terminé et l'écriture continue dans un
+ * nouveau fichier numéroté : <code>nom.shp</code>, <code>nom_1.shp</code>,
+ * <code>nom_2.shp</code>, etc.
+ * <p>
+ * Exemple :
+ *
+ * <pre>
+ * ShapefileStreamWriter writer = ShapefileWriter.open(&quot;routes.shp&quot;,
+ *     featureType, crs);
+ * try {
+ *   for (IFeature feature : features) {
+ *     writer.append(feature);
+ *   }
+ * } finally {
+ *   writer.close();
+ * }
+ * </pre>
+ *
+ * @see ShapefileWriter#open(String, GF_FeatureType, CoordinateReferenceSystem)
+ */
+public class ShapefileStreamWriter implements Closeable {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = Logger
+      .getLogger(ShapefileStreamWriter.class.getName());
+
+  /** Nombre d'objets convertis et écrits en une fois par défaut. */
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+  /** Taille maximale d'un fichier .shp ou .dbf. */
+  public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+  private static final int HEADER_SIZE = 100;
+  private static final int NULL_SHAPE = 0;
+  private static final int POINT = 1;
+  private static final int POLYLINE = 3;
+  private static final int POLYGON = 5;
+  private static final int MULTIPOINT = 8;
+  /** Décalage entre un type de forme et sa variante avec Z. */
+  private static final int Z = 10;
+  /** Largeur des champs numériques réels et nombre de décimales. */
+  private static final int DOUBLE_LENGTH = 33;
+  private static final int DOUBLE_DECIMALS = 15;
+  /**
+   * Largeur des champs entiers : moins de 10 caractères pour qu'ils soient
+   * relus comme des Integer, 19 pour les Long.
+   */
+  private static final int INTEGER_LENGTH = 9;
+  private static final int LONG_LENGTH = 19;
+  /** Longueur maximale d'un enregistrement ou d'une en-tête du .dbf. */
+  private static final int MAX_DBF_LENGTH = Short.MAX_VALUE;
+
+  private final String baseName;
+  private final CoordinateReferenceSystem crs;
+  private final int batchSize;
+  private long maxFileSize = ShapefileStreamWriter.MAX_FILE_SIZE;
+  private final GeometryFactory factory = new GeometryFactory();
+  private final Charset charset = Charset.forName("ISO-8859-1"); //$NON-NLS-1$
+
+  /** Attributs écrits et description des champs du .dbf. */
+  private final List<GF_AttributeType> attributes = new ArrayList<GF_AttributeType>();
+  private final List<String> fieldNames = new ArrayList<String>();
+  private final List<Class<?>> fieldClasses = new ArrayList<Class<?>>();
+  private int[] fieldLengths;
+  private int recordLength;
+
+  /** Famille de formes du fichier (point, multipoint, ligne, surface). */
+  private int shapeFamily = ShapefileStreamWriter.NULL_SHAPE;
+  /** Vrai si les coordonnées ont un Z. */
+  private boolean hasZ = false;
+  /** Vrai quand la première géométrie a fixé le type de forme. */
+  private boolean shapeFixed = false;
+
+  private final List<IFeature> pending = new ArrayList<IFeature>();
+  private final List<String> partNames = new ArrayList<String>();
+  private int count = 0;
+  private boolean closed = false;
+
+  /** Fichiers de la partie en cours, null si aucune n'est ouverte. */
+  private FileChannel shp;
+  private FileChannel shx;
+  private FileChannel dbf;
+  private long shpLength;
+  private long dbfLength;
+  private int partCount;
+  private final Envelope partEnvelope = new Envelope();
+  private String partName;
+
+  /**
+   * Crée un shapefile et les fichiers associés. Les attributs écrits sont ceux
+   * du type d'objets, comme avec {@link ShapefileWriter}.
+   * @param shapefileName nom du fichier .shp
+   * @param featureType type des objets à écrire, ou null pour n'écrire que la
+   *          géométrie
+   * @param crs système de coordonnées écrit dans le .prj, ou null
+   * @param batchSize nombre d'objets convertis et écrits en une fois
+   * @throws IOException si les fichiers ne peuvent être créés
+   */
+  public ShapefileStreamWriter(String shapefileName,
+      GF_FeatureType featureType, CoordinateReferenceSystem crs, int batchSize)
+      throws IOException {
+    if (shapefileName.endsWith(".shp") || shapefileName.endsWith(".SHP")) { //$NON-NLS-1$ //$NON-NLS-2$
+      this.baseName = shapefileName.substring(0, shapefileName.length() - 4);
+    } else {
+      this.baseName = shapefileName;
+    }
+    this.crs = crs;
+    this.batchSize = Math.max(1, batchSize);
+    if (featureType != null) {
+      this.shapeFamily = ShapefileStreamWriter.shapeFamily(AdapterFactory
+          .toJTSGeometryType(featureType.getGeometryType()));
+      for (GF_AttributeType attributeType : featureType.getFeatureAttributes()) {
+        Class<?> attributeClass = ShapefileStreamWriter
+            .fieldClass(attributeType.getValueType());
+        if (attributeClass == null) {
+          attributeClass = String.class;
+        }
+        String attributeName = attributeType.getMemberName();
+        if (AttributeType.class.isAssignableFrom(attributeType.getClass())) {
+          attributeName = ((AttributeType) attributeType).getNomField();
+        }
+        this.attributes.add(attributeType);
+        this.fieldNames.add(attributeName);
+        this.fieldClasses.add(attributeClass);
+      }
+    }
+    this.initFields();
+    this.openPart();
+  }
+
+  /**
+   * Fixe la taille maximale d'un fichier .shp ou .dbf avant le passage au
+   * fichier numéroté suivant. Elle vaut {@link #MAX_FILE_SIZE} par défaut.
+   * @param maxFileSize taille maximale, en octets
+   */
+  public void setMaxFileSize(long maxFileSize) {
+    this.maxFileSize = Math.min(maxFileSize, ShapefileStreamWriter.MAX_FILE_SIZE);
+  }
+
+  /**
+   * @return le nombre d'objets ajoutés
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+  /**
+   * @return les noms des fichiers .shp écrits, dans l'ordre
+   */
+  public List<String> getPartNames() {
+    return Collections.unmodifiableList(this.partNames);
+  }
+
+  /**
+   * Ajoute un objet. Il est écrit avec le paquet auquel il appartient, au plus
+   * tard à la fermeture.
+   * @param feature objet à écrire
+   * @throws IOException en cas d'erreur d'écriture, ou si une valeur d'un
+   *           objet du paquet ne tient pas dans son champ
+   */
+  public void append(IFeature feature) throws IOException {
+    if (this.closed) {
+      throw new IOException("writer closed for " + this.baseName); //$NON-NLS-1$
+    }
+    this.pending.add(feature);
+    this.count++;
+    if (this.pending.size() >= this.batchSize) {
+      this.flush();
+    }
+  }
+
+  /**
+   * Convertit et écrit les objets en attente. Si une valeur d'un objet ne
+   * tient pas dans son champ, les objets qui le précèdent sont écrits, puis
+   * l'objet est abandonné et une exception est levée ; les objets suivants
+   * restent en attente.
+   * @throws IOException en cas d'erreur d'écriture, ou si une valeur ne tient
+   *           pas dans son champ
+   */
+  public void flush() throws IOException {
+    if (this.pending.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream shpBatch = new ByteArrayOutputStream();
+    ByteArrayOutputStream shxBatch = new ByteArrayOutputStream();
+    ByteArrayOutputStream dbfBatch = new ByteArrayOutputStream();
+    long shpPosition = this.shpLength;
+    for (int f = 0; f < this.pending.size(); f++) {
+      IFeature feature = this.pending.get(f);
+      byte[] attributeRecord;
+      try {
+        attributeRecord = this.encodeAttributes(feature);
+      } catch (IOException e) {
+        this.writeBatch(shpBatch, shxBatch, dbfBatch);
+        this.pending.subList(0, f + 1).clear();
+        this.count--;
+        throw e;
+      }
+      Geometry geometry = null;
+      if (feature.getGeom() != null && !feature.getGeom().isEmpty()) {
+        try {
+          geometry = AdapterFactory.toGeometry(this.factory, feature.getGeom());
+        } catch (Exception e) {
+          ShapefileStreamWriter.LOGGER.error("cannot convert geometry of " //$NON-NLS-1$
+              + feature + ", written as a null shape", e); //$NON-NLS-1$
+        }
+      }
+      byte[] content = this.encodeGeometry(geometry);
+      if (this.partCount > 0
+          && (shpPosition + 8 + content.length > this.maxFileSize || this.dbfLength
+              + dbfBatch.size() + attributeRecord.length + 1 > this.maxFileSize)) {
+        // la partie en cours est pleine : on la termine
+        this.writeBatch(shpBatch, shxBatch, dbfBatch);
+        this.closePart();
+        this.openPart();
+        shpPosition = this.shpLength;
+      }
+      ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+      header.putInt(this.partCount + 1);
+      header.putInt(content.length / 2);
+      shpBatch.write(header.array());
+      shpBatch.write(content);
+      ByteBuffer index = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+      index.putInt((int) (shpPosition / 2));
+      index.putInt(content.length / 2);
+      shxBatch.write(index.array());
+      dbfBatch.write(attributeRecord);
+      shpPosition += 8 + content.length;
+      this.partCount++;
+      if (geometry != null) {
+        this.partEnvelope.expandToInclude(geometry.getEnvelopeInternal());
+      }
+    }
+    this.writeBatch(shpBatch, shxBatch, dbfBatch);
+    this.pending.clear();
+  }
+
+  /**
+   * Écrit les objets en attente, termine le fichier en cours et ferme les
+   * fichiers.
+   * @throws IOException en cas d'erreur d'écriture
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    try {
+      this.flush();
+    } finally {
+      this.closed = true;
+      this.closePart();
+    }
+  }
+
+  /**
+   * Famille de formes shapefile correspondant à un type de géométrie JTS,
+   * {@link #NULL_SHAPE} si elle ne peut être déterminée.
+   */
+  private static int shapeFamily(Class<?> geometryClass) {
+    if (Point.class.equals(geometryClass)) {
+      return ShapefileStreamWriter.POINT;
+    }
+    if (MultiPoint.class.equals(geometryClass)) {
+      return ShapefileStreamWriter.MULTIPOINT;
+    }
+    if (LineString.class.isAssignableFrom(geometryClass)
+        || MultiLineString.class.equals(geometryClass)) {
+      return ShapefileStreamWriter.POLYLINE;
+    }
+    if (Polygon.class.equals(geometryClass)
+        || MultiPolygon.class.equals(geometryClass)) {
+      return ShapefileStreamWriter.POLYGON;
+    }
+    return ShapefileStreamWriter.NULL_SHAPE;
+  }
+
+  /** Type de forme écrit dans les en-têtes et les enregistrements. */
+  private int shapeType() {
+    if (this.shapeFamily == ShapefileStreamWriter.NULL_SHAPE) {
+      return ShapefileStreamWriter.NULL_SHAPE;
+    }
+    return this.shapeFamily + (this.hasZ ? ShapefileStreamWriter.Z : 0);
+  }
+
+  /**
+   * Type Java d'un champ du .dbf. Contrairement à
+   * {@link ShapefileWriter#valueType2Class(String)}, les attributs de type
+   * <code>long</code> restent des Long, pour que leur champ soit assez large.
+   */
+  private static Class<?> fieldClass(String valueType) {
+    if (valueType != null && valueType.equalsIgnoreCase("long")) { //$NON-NLS-1$
+      return Long.class;
+    }
+    return (valueType == null) ? null : ShapefileWriter
+        .valueType2Class(valueType);
+  }
+
+  /** Vrai si le champ est de type numérique entier. */
+  private static boolean isInteger(Class<?> fieldClass) {
+    return fieldClass == Integer.class || fieldClass == Long.class;
+  }
+
+  /** Vrai si le champ est de type numérique réel. */
+  private static boolean isReal(Class<?> fieldClass) {
+    return fieldClass == Double.class || fieldClass == Float.class;
+  }
+
+  /**
+   * Calcule la largeur des champs du .dbf d'après leur type.
+   * @throws IOException si les enregistrements ou l'en-tête du .dbf sont trop
+   *           longs
+   */
+  private void initFields() throws IOException {
+    this.fieldLengths = new int[this.fieldClasses.size()];
+    this.recordLength = 1; // indicateur de suppression
+    for (int i = 0; i < this.fieldLengths.length; i++) {
+      Class<?> fieldClass = this.fieldClasses.get(i);
+      if (fieldClass == Integer.class) {
+        this.fieldLengths[i] = ShapefileStreamWriter.INTEGER_LENGTH;
+      } else if (fieldClass == Long.class) {
+        this.fieldLengths[i] = ShapefileStreamWriter.LONG_LENGTH;
+      } else if (ShapefileStreamWriter.isReal(fieldClass)) {
+        this.fieldLengths[i] = ShapefileStreamWriter.DOUBLE_LENGTH;
+      } else if (fieldClass == Date.class) {
+        this.fieldLengths[i] = 8;
+      } else {
+        this.fieldLengths[i] = 254;
+      }
+      this.recordLength += this.fieldLengths[i];
+    }
+    if (this.recordLength > ShapefileStreamWriter.MAX_DBF_LENGTH
+        || 32 + 32 * this.fieldLengths.length + 1 > ShapefileStreamWriter.MAX_DBF_LENGTH) {
+      throw new IOException("too many fields for a dbf record: " //$NON-NLS-1$
+          + this.fieldLengths.length + " fields, " + this.recordLength //$NON-NLS-1$
+          + " bytes"); //$NON-NLS-1$
+    }
+  }
+
+  /** Crée les fichiers de la partie suivante. */
+  private void openPart() throws IOException {
+    String name = this.baseName;
+    if (!this.partNames.isEmpty()) {
+      name += "_" + this.partNames.size(); //$NON-NLS-1$
+    }
+    this.partName = name;
+    this.partNames.add(name + ".shp"); //$NON-NLS-1$
+    this.shp = new RandomAccessFile(name + ".shp", "rw").getChannel(); //$NON-NLS-1$ //$NON-NLS-2$
+    this.shx = new RandomAccessFile(name + ".shx", "rw").getChannel(); //$NON-NLS-1$ //$NON-NLS-2$
+    this.dbf = new RandomAccessFile(name + ".dbf", "rw").getChannel(); //$NON-NLS-1$ //$NON-NLS-2$
+    this.shp.truncate(0);
+    this.shx.truncate(0);
+    this.dbf.truncate(0);
+    this.partCount = 0;
+    this.partEnvelope.setToNull();
+    // en-têtes provisoires, réécrites à la fermeture de la partie
+    this.shp.write(ByteBuffer.allocate(ShapefileStreamWriter.HEADER_SIZE));
+    this.shx.write(ByteBuffer.allocate(ShapefileStreamWriter.HEADER_SIZE));
+    this.shpLength = ShapefileStreamWriter.HEADER_SIZE;
+    this.dbf.write(this.dbfHeader());
+    this.dbfLength = this.dbf.position();
+    this.writePrj(name);
+  }
+
+  /** Écrit un paquet d'enregistrements dans les fichiers de la partie. */
+  private void writeBatch(ByteArrayOutputStream shpBatch,
+      ByteArrayOutputStream shxBatch, ByteArrayOutputStream dbfBatch)
+      throws IOException {
+    ShapefileStreamWriter.writeFully(this.shp, shpBatch.toByteArray());
+    ShapefileStreamWriter.writeFully(this.shx, shxBatch.toByteArray());
+    ShapefileStreamWriter.writeFully(this.dbf, dbfBatch.toByteArray());
+    this.shpLength += shpBatch.size();
+    this.dbfLength += dbfBatch.size();
+    shpBatch.reset();
+    shxBatch.reset();
+    dbfBatch.reset();
+  }
+
+  private static void writeFully(FileChannel channel, byte[] bytes)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /** Réécrit les en-têtes de la partie en cours et ferme ses fichiers. */
+  private void closePart() throws IOException {
+    if (this.shp == null) {
+      return;
+    }
+    try {
+      this.shp.write(this.shpHeader(this.shpLength), 0);
+      this.shx.write(this.shpHeader(ShapefileStreamWriter.HEADER_SIZE + 8L
+          * this.partCount), 0);
+      this.dbf.write(ByteBuffer.wrap(new byte[] { 0x1A }), this.dbfLength);
+      this.dbf.write(this.dbfHeader(), 0);
+    } finally {
+      this.shp.close();
+      this.shx.close();
+      this.dbf.close();
+      this.shp = null;
+      this.shx = null;
+      this.dbf = null;
+    }
+    ShapefileStreamWriter.LOGGER.debug(this.partCount + " features written to " //$NON-NLS-1$
+        + this.partName);
+  }
+
+  /** En-tête d'un fichier .shp ou .shx de longueur donnée. */
+  private ByteBuffer shpHeader(long fileLength) {
+    ByteBuffer header = ByteBuffer.allocate(ShapefileStreamWriter.HEADER_SIZE);
+    header.order(ByteOrder.BIG_ENDIAN);
+    header.putInt(0, 9994);
+    header.putInt(24, (int) (fileLength / 2));
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(28, 1000);
+    header.putInt(32, this.shapeType());
+    if (!this.partEnvelope.isNull()) {
+      header.putDouble(36, this.partEnvelope.getMinX());
+      header.putDouble(44, this.partEnvelope.getMinY());
+      header.putDouble(52, this.partEnvelope.getMaxX());
+      header.putDouble(60, this.partEnvelope.getMaxY());
+    }
+    return header;
+  }
+
+  /** En-tête et description des champs du .dbf de la partie en cours. */
+  private ByteBuffer dbfHeader() {
+    int headerLength = 32 + 32 * this.fieldLengths.length + 1;
+    ByteBuffer header = ByteBuffer.allocate(headerLength).order(
+        ByteOrder.LITTLE_ENDIAN);
+    Calendar today = Calendar.getInstance();
+    header.put(0, (byte) 0x03);
+    header.put(1, (byte) (today.get(Calendar.YEAR) - 1900));
+    header.put(2, (byte) (today.get(Calendar.MONTH) + 1));
+    header.put(3, (byte) today.get(Calendar.DAY_OF_MONTH));
+    header.putInt(4, this.partCount);
+    header.putShort(8, (short) headerLength);
+    header.putShort(10, (short) this.recordLength);
+    for (int i = 0; i < this.fieldLengths.length; i++) {
+      int position = 32 + 32 * i;
+      byte[] name = this.fieldNames.get(i).getBytes(this.charset);
+      for (int j = 0; j < Math.min(10, name.length); j++) {
+        header.put(position + j, name[j]);
+      }
+      Class<?> fieldClass = this.fieldClasses.get(i);
+      char type = (ShapefileStreamWriter.isInteger(fieldClass) || ShapefileStreamWriter
+          .isReal(fieldClass)) ? 'N' : (fieldClass == Date.class) ? 'D' : 'C';
+      header.put(position + 11, (byte) type);
+      header.put(position + 16, (byte) this.fieldLengths[i]);
+      if (ShapefileStreamWriter.isReal(fieldClass)) {
+        header.put(position + 17, (byte) ShapefileStreamWriter.DOUBLE_DECIMALS);
+      }
+    }
+    header.put(headerLength - 1, (byte) 0x0D);
+    return header;
+  }
+
+  /** Écrit le système de coordonnées dans le .prj. */
+  private void writePrj(String name) throws IOException {
+    if (this.crs == null) {
+      return;
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(name
+        + ".prj"), this.charset); //$NON-NLS-1$
+    try {
+      writer.write(this.crs.toWKT());
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Encode un enregistrement du .dbf.
+   * @throws IOException si une valeur ne tient pas dans son champ
+   */
+  private byte[] encodeAttributes(IFeature feature) throws IOException {
+    byte[] record = new byte[this.recordLength];
+    Arrays.fill(record, (byte) ' ');
+    int position = 1;
+    for (int i = 0; i < this.fieldLengths.length; i++) {
+      int length = this.fieldLengths[i];
+      Object value = this.attributeValue(feature, i);
+      String text = this.format(value, this.fieldClasses.get(i), length);
+      byte[] bytes = text.getBytes(this.charset);
+      int n = bytes.length;
+      if (n > length) {
+        // une valeur tronquée serait fausse sans que rien ne le signale
+        throw new IOException("value " + text + " of field " //$NON-NLS-1$ //$NON-NLS-2$
+            + this.fieldNames.get(i) + " longer than " + length //$NON-NLS-1$
+            + " characters in " + this.partName); //$NON-NLS-1$
+      }
+      if (this.fieldClasses.get(i) == String.class) {
+        // texte cadré à gauche
+        System.arraycopy(bytes, 0, record, position, n);
+      } else {
+        // nombres cadrés à droite
+        System.arraycopy(bytes, 0, record, position + length - n, n);
+      }
+      position += length;
+    }
+    return record;
+  }
+
+  /**
+   * Valeur d'un attribut écrit. Les attributs d'un {@link DefaultFeature} sont
+   * lus par leur rang dans son schéma, ce qui évite de confondre un champ
+   * nommé <code>id</code> avec l'identifiant de l'objet.
+   */
+  private Object attributeValue(IFeature feature, int field) {
+    String memberName = this.attributes.get(field).getMemberName();
+    if (feature instanceof DefaultFeature) {
+      DefaultFeature defaultFeature = (DefaultFeature) feature;
+      if (defaultFeature.getSchema() != null) {
+        int rang = defaultFeature.getSchema().getRang(memberName);
+        if (rang >= 0) {
+          return defaultFeature.getAttribute(rang);
+        }
+      }
+    }
+    return feature.getAttribute(memberName);
+  }
+
+  /**
+   * Représentation textuelle d'une valeur dans un champ du .dbf. Elle peut
+   * être plus longue que le champ : c'est à l'appelant de le vérifier.
+   */
+  private String format(Object value, Class<?> fieldClass, int length) {
+    if (value == null) {
+      return ""; //$NON-NLS-1$
+    }
+    if (ShapefileStreamWriter.isInteger(fieldClass)) {
+      if (value instanceof Number) {
+        return Long.toString(((Number) value).longValue());
+      }
+      return value.toString().trim();
+    }
+    if (ShapefileStreamWriter.isReal(fieldClass)) {
+      double d = (value instanceof Number) ? ((Number) value).doubleValue()
+          : Double.parseDouble(value.toString().trim());
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        return ""; //$NON-NLS-1$
+      }
+      // décimales significatives de la valeur : celles d'un float ne sont
+      // pas celles du double qui le représente
+      BigDecimal decimal = (value instanceof Float) ? new BigDecimal(
+          value.toString()) : BigDecimal.valueOf(d);
+      String text = decimal.setScale(ShapefileStreamWriter.DOUBLE_DECIMALS,
+          RoundingMode.HALF_UP).toPlainString();
+      if (text.length() <= length) {
+        return text;
+      }
+      // grande valeur : moins de décimales que le champ n'en annonce
+      return decimal.stripTrailingZeros().toPlainString();
+    }
+    if (fieldClass == Date.class) {
+      if (!(value instanceof Date)) {
+        return ""; //$NON-NLS-1$
+      }
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTime((Date) value);
+      return String.format("%04d%02d%02d", //$NON-NLS-1$
+          Integer.valueOf(calendar.get(Calendar.YEAR)),
+          Integer.valueOf(calendar.get(Calendar.MONTH) + 1),
+          Integer.valueOf(calendar.get(Calendar.DAY_OF_MONTH)));
+    }
+    return value.toString();
+  }
+
+  /**
+   * Encode le contenu d'un enregistrement du .shp. La famille de formes et la
+   * présence de Z sont fixées par la première géométrie si le type d'objets
+   * ne les donne pas.
+   */
+  private byte[] encodeGeometry(Geometry geometry) {
+    if (geometry != null && !this.shapeFixed) {
+      this.shapeFixed = true;
+      if (this.shapeFamily == ShapefileStreamWriter.NULL_SHAPE) {
+        this.shapeFamily = ShapefileStreamWriter.shapeFamily(geometry
+            .getClass());
+      }
+      this.hasZ = !Double.isNaN(geometry.getCoordinate().z);
+    }
+    int family = (geometry == null) ? ShapefileStreamWriter.NULL_SHAPE
+        : ShapefileStreamWriter.shapeFamily(geometry.getClass());
+    if (family == ShapefileStreamWriter.POINT
+        && this.shapeFamily == ShapefileStreamWriter.MULTIPOINT) {
+      family = ShapefileStreamWriter.MULTIPOINT;
+    }
+    if (family != this.shapeFamily) {
+      if (geometry != null) {
+        ShapefileStreamWriter.LOGGER.warn("geometry " //$NON-NLS-1$
+            + geometry.getGeometryType() + " written as a null shape in " //$NON-NLS-1$
+            + this.partName);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(ShapefileStreamWriter.NULL_SHAPE);
+      return buffer.array();
+    }
+    if (family == ShapefileStreamWriter.POINT) {
+      Coordinate c = geometry.getCoordinate();
+      ByteBuffer buffer = ByteBuffer.allocate(this.hasZ ? 36 : 20).order(
+          ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(this.shapeType());
+      buffer.putDouble(c.x);
+      buffer.putDouble(c.y);
+      if (this.hasZ) {
+        buffer.putDouble(ShapefileStreamWriter.z(c));
+        buffer.putDouble(0);
+      }
+      return buffer.array();
+    }
+    List<Coordinate[]> parts = new ArrayList<Coordinate[]>();
+    if (family == ShapefileStreamWriter.MULTIPOINT) {
+      parts.add(geometry.getCoordinates());
+    } else {
+      for (int i = 0; i < geometry.getNumGeometries(); i++) {
+        Geometry element = geometry.getGeometryN(i);
+        if (element instanceof Polygon) {
+          Polygon polygon = (Polygon) element;
+          // contours extérieurs dans le sens horaire, trous dans l'autre sens
+          parts.add(ShapefileStreamWriter.orient(polygon.getExteriorRing()
+              .getCoordinates(), false));
+          for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+            parts.add(ShapefileStreamWriter.orient(polygon.getInteriorRingN(j)
+                .getCoordinates(), true));
+          }
+        } else {
+          parts.add(element.getCoordinates());
+        }
+      }
+    }
+    int nbPoints = 0;
+    for (Coordinate[] part : parts) {
+      nbPoints += part.length;
+    }
+    boolean multiPoint = family == ShapefileStreamWriter.MULTIPOINT;
+    int size = 4 + 32 + (multiPoint ? 4 : 8 + 4 * parts.size()) + 16
+        * nbPoints + (this.hasZ ? 16 + 8 * nbPoints : 0);
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    Envelope envelope = geometry.getEnvelopeInternal();
+    buffer.putInt(this.shapeType());
+    buffer.putDouble(envelope.getMinX());
+    buffer.putDouble(envelope.getMinY());
+    buffer.putDouble(envelope.getMaxX());
+    buffer.putDouble(envelope.getMaxY());
+    if (!multiPoint) {
+      buffer.putInt(parts.size());
+    }
+    buffer.putInt(nbPoints);
+    if (!multiPoint) {
+      int start = 0;
+      for (Coordinate[] part : parts) {
+        buffer.putInt(start);
+        start += part.length;
+      }
+    }
+    double zMin = Double.POSITIVE_INFINITY;
+    double zMax = Double.NEGATIVE_INFINITY;
+    for (Coordinate[] part : parts) {
+      for (Coordinate c : part) {
+        buffer.putDouble(c.x);
+        buffer.putDouble(c.y);
+        zMin = Math.min(zMin, ShapefileStreamWriter.z(c));
+        zMax = Math.max(zMax, ShapefileStreamWriter.z(c));
+      }
+    }
+    if (this.hasZ) {
+      buffer.putDouble(nbPoints == 0 ? 0 : zMin);
+      buffer.putDouble(nbPoints == 0 ? 0 : zMax);
+      for (Coordinate[] part : parts) {
+        for (Coordinate c : part) {
+          buffer.putDouble(ShapefileStreamWriter.z(c));
+        }
+      }
+    }
+    return buffer.array();
+  }
+
+  private static double z(Coordinate c) {
+    return Double.isNaN(c.z) ? 0 : c.z;
+  }
+
+  /**
+   * Renvoie les points d'un anneau dans le sens voulu.
+   * @param ccw vrai pour le sens trigonométrique
+   */
+  private static Coordinate[] orient(Coordinate[] ring, boolean ccw) {
+    if (ring.length < 4 || CGAlgorithms.isCCW(ring) == ccw) {
+      return ring;
+    }
+    Coordinate[] reversed = new Coordinate[ring.length];
+    for (int i = 0; i < ring.length; i++) {
+      reversed[i] = ring[ring.length - 1 - i];
+    }
+    return reversed;
+  }
+}
@@ -335,6 +335,24 @@ public class ShapefileWriter {
     }
   }
 
+  /**
+   * Crée un shapefile dans lequel les features sont écrits au fur et à mesure
+   * de leur ajout, sans construire de collection intermédiaire.
+   * 
+   * @param shapefileName nom du fichier dans lequel sauver les shapes
+   * @param featureType type des features à écrire
+   * @param crs système de coordonnées, ou null
+   * @return le flux d'écriture, à fermer après le dernier ajout
+   * @throws IOException si le fichier ne peut être créé
+   * @see ShapefileStreamWriter
+   */
+  public static ShapefileStreamWriter open(String shapefileName,
+      GF_FeatureType featureType, CoordinateReferenceSystem crs)
+      throws IOException {
+    return new ShapefileStreamWriter(shapefileName, featureType, crs,
+        ShapefileStreamWriter.DEFAULT_BATCH_SIZE);
+  }
+
   /**
    * Renvoie la classe correspondant au nom d'un type primitif, null si le
    * paramètre ne correspond pas à un type primitif ou s'il n'est pas géré.
@@ -0,0 +1,327 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+
+/**
+ * Grille de valeurs (MNT, image à une bande...) lue par tuiles, sans être
+ * chargée en mémoire : seules les tuiles couvrant les cellules demandées sont
+ * lues, et les dernières tuiles utilisées sont gardées dans un cache de taille
+ * bornée. Les valeurs sont rendues sous forme de tableaux de <code>float</code>
+ * , ligne par ligne.
+ * <p>
+ * Les cellules sont numérotées à partir du coin nord-ouest : la ligne 0 est
+ * celle du haut de la grille, d'ordonnée maximale. Les sous-classes
+ * fournissent la lecture d'une tuile, cf.
+ * {@link #readTile(int, int, int, int, float[])}.
+ * <p>
+ * Une instance peut être partagée entre plusieurs threads.
+ * @see GeoTiffReader#openGeoTiff(String, org.opengis.referencing.crs.CoordinateReferenceSystem[])
+ * @see ArcGridReader#openAsc(String)
+ */
+public abstract class TiledRaster implements Closeable {
+
+  /** Taille par défaut du cache de tuiles, en octets. */
+  public static final long DEFAULT_CACHE_SIZE = 64L << 20;
+
+  private final int width;
+  private final int height;
+  private final int tileWidth;
+  private final int tileHeight;
+  private final int nbTilesX;
+  private final double minX;
+  private final double maxY;
+  private final double cellSizeX;
+  private final double cellSizeY;
+  private final double noDataValue;
+
+  /** Tuiles lues, de la moins récemment utilisée à la plus récente. */
+  private final Map<Integer, float[]> cache;
+  private long tileReads = 0;
+
+  /**
+   * @param width nombre de colonnes de la grille
+   * @param height nombre de lignes de la grille
+   * @param tileWidth nombre de colonnes d'une tuile
+   * @param tileHeight nombre de lignes d'une tuile
+   * @param envelope emprise de la grille
+   * @param noDataValue valeur des cellules sans donnée, NaN s'il n'y en a pas
+   * @param cacheSize taille maximale du cache de tuiles, en octets ; au moins
+   *          une ligne de tuiles est toujours gardée
+   */
+  protected TiledRaster(int width, int height, int tileWidth, int tileHeight,
+      IEnvelope envelope, double noDataValue, long cacheSize) {
+    if (width <= 0 || height <= 0 || tileWidth <= 0 || tileHeight <= 0) {
+      throw new IllegalArgumentException("invalid raster size " + width //$NON-NLS-1$
+          + "x" + height + " with tiles " + tileWidth + "x" + tileHeight); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+    this.width = width;
+    this.height = height;
+    this.tileWidth = Math.min(tileWidth, width);
+    this.tileHeight = Math.min(tileHeight, height);
+    this.nbTilesX = (width + this.tileWidth - 1) / this.tileWidth;
+    this.minX = envelope.minX();
+    this.maxY = envelope.maxY();
+    this.cellSizeX = (envelope.maxX() - envelope.minX()) / width;
+    this.cellSizeY = (envelope.maxY() - envelope.minY()) / height;
+    this.noDataValue = noDataValue;
+    final int maxTiles = (int) Math.max(this.nbTilesX, Math.min(
+        Integer.MAX_VALUE, cacheSize
+            / (4L * this.tileWidth * this.tileHeight)));
+    this.cache = new LinkedHashMap<Integer, float[]>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+        return this.size() > maxTiles;
+      }
+    };
+  }
+
+  /** @return le nombre de colonnes de la grille */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /** @return le nombre de lignes de la grille */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /** @return le nombre de colonnes d'une tuile */
+  public int getTileWidth() {
+    return this.tileWidth;
+  }
+
+  /** @return le nombre de lignes d'une tuile */
+  public int getTileHeight() {
+    return this.tileHeight;
+  }
+
+  /** @return la largeur d'une cellule */
+  public double getCellSizeX() {
+    return this.cellSizeX;
+  }
+
+  /** @return la hauteur d'une cellule */
+  public double getCellSizeY() {
+    return this.cellSizeY;
+  }
+
+  /** @return la valeur des cellules sans donnée, NaN s'il n'y en a pas */
+  public double getNoDataValue() {
+    return this.noDataValue;
+  }
+
+  /** @return l'emprise de la grille */
+  public IEnvelope getEnvelope() {
+    return new GM_Envelope(this.minX, this.minX + this.width * this.cellSizeX,
+        this.maxY - this.height * this.cellSizeY, this.maxY);
+  }
+
+  /** @return le nombre de tuiles lues depuis la création de la grille */
+  public synchronized long getTileReads() {
+    return this.tileReads;
+  }
+
+  /** @return l'abscisse du centre des cellules d'une colonne */
+  public double toX(int column) {
+    return this.minX + (column + 0.5) * this.cellSizeX;
+  }
+
+  /** @return l'ordonnée du centre des cellules d'une ligne */
+  public double toY(int row) {
+    return this.maxY - (row + 0.5) * this.cellSizeY;
+  }
+
+  /** @return la colonne contenant une abscisse, éventuellement hors grille */
+  public int toColumn(double x) {
+    return (int) Math.floor((x - this.minX) / this.cellSizeX);
+  }
+
+  /** @return la ligne contenant une ordonnée, éventuellement hors grille */
+  public int toRow(double y) {
+    return (int) Math.floor((this.maxY - y) / this.cellSizeY);
+  }
+
+  /**
+   * Renvoie les cellules intersectant une emprise.
+   * @param envelope emprise
+   * @return {colonne, ligne, largeur, hauteur} des cellules, null si
+   *         l'emprise n'intersecte pas la grille
+   */
+  public int[] window(IEnvelope envelope) {
+    int column = Math.max(0, this.toColumn(envelope.minX()));
+    int row = Math.max(0, this.toRow(envelope.maxY()));
+    int lastColumn = Math.min(this.width - 1, this.toColumn(envelope.maxX()));
+    int lastRow = Math.min(this.height - 1, this.toRow(envelope.minY()));
+    if (column > lastColumn || row > lastRow) {
+      return null;
+    }
+    return new int[] { column, row, lastColumn - column + 1,
+        lastRow - row + 1 };
+  }
+
+  /**
+   * Renvoie la valeur d'une cellule.
+   * @param column colonne de la cellule
+   * @param row ligne de la cellule
+   * @return la valeur de la cellule
+   * @throws IOException en cas d'erreur de lecture de sa tuile
+   */
+  public float getValue(int column, int row) throws IOException {
+    this.check(column, row, 1, 1);
+    int tileX = column / this.tileWidth;
+    int tileY = row / this.tileHeight;
+    float[] tile = this.getTile(tileX, tileY);
+    int w = this.tileWidth(tileX);
+    return tile[(row - tileY * this.tileHeight) * w + column - tileX
+        * this.tileWidth];
+  }
+
+  /**
+   * Lit un rectangle de cellules.
+   * @param column première colonne
+   * @param row première ligne
+   * @param w nombre de colonnes
+   * @param h nombre de lignes
+   * @return les valeurs des cellules, ligne par ligne
+   * @throws IOException en cas d'erreur de lecture des tuiles
+   */
+  public float[] read(int column, int row, int w, int h) throws IOException {
+    this.check(column, row, w, h);
+    float[] values = new float[w * h];
+    int firstTileX = column / this.tileWidth;
+    int lastTileX = (column + w - 1) / this.tileWidth;
+    int firstTileY = row / this.tileHeight;
+    int lastTileY = (row + h - 1) / this.tileHeight;
+    for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+      int tileRow = tileY * this.tileHeight;
+      int rowStart = Math.max(row, tileRow);
+      int rowEnd = Math.min(row + h, tileRow + this.tileHeight);
+      for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+        float[] tile = this.getTile(tileX, tileY);
+        int tileColumn = tileX * this.tileWidth;
+        int tw = this.tileWidth(tileX);
+        int columnStart = Math.max(column, tileColumn);
+        int length = Math.min(column + w, tileColumn + tw) - columnStart;
+        for (int r = rowStart; r < rowEnd; r++) {
+          System.arraycopy(tile, (r - tileRow) * tw + columnStart
+              - tileColumn, values, (r - row) * w + columnStart - column,
+              length);
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Lit les cellules intersectant une emprise.
+   * @param envelope emprise
+   * @param window tableau de 4 entiers recevant {colonne, ligne, largeur,
+   *          hauteur} des cellules lues, cf. {@link #window(IEnvelope)}
+   * @return les valeurs des cellules, ligne par ligne, null si l'emprise
+   *         n'intersecte pas la grille
+   * @throws IOException en cas d'erreur de lecture des tuiles
+   */
+  public float[] read(IEnvelope envelope, int[] window) throws IOException {
+    int[] cells = this.window(envelope);
+    if (cells == null) {
+      return null;
+    }
+    System.arraycopy(cells, 0, window, 0, 4);
+    return this.read(cells[0], cells[1], cells[2], cells[3]);
+  }
+
+  /**
+   * Renvoie une tuile, lue si elle n'est pas dans le cache. Le tableau rendu
+   * est partagé et ne doit pas être modifié.
+   * @param tileX colonne de la tuile
+   * @param tileY ligne de la tuile
+   * @return les valeurs de la tuile, ligne par ligne ; les tuiles du bord
+   *         droit ou du bas peuvent être plus petites que les autres
+   * @throws IOException en cas d'erreur de lecture
+   */
+  public float[] getTile(int tileX, int tileY) throws IOException {
+    Integer key = Integer.valueOf(tileY * this.nbTilesX + tileX);
+    synchronized (this) {
+      float[] tile = this.cache.get(key);
+      if (tile != null) {
+        return tile;
+      }
+    }
+    // lecture hors verrou : deux threads peuvent lire la même tuile
+    int column = tileX * this.tileWidth;
+    int row = tileY * this.tileHeight;
+    int w = this.tileWidth(tileX);
+    int h = Math.min(this.tileHeight, this.height - row);
+    float[] tile = new float[w * h];
+    this.readTile(column, row, w, h, tile);
+    synchronized (this) {
+      this.tileReads++;
+      this.cache.put(key, tile);
+    }
+    return tile;
+  }
+
+  private int tileWidth(int tileX) {
+    return Math.min(this.tileWidth, this.width - tileX * this.tileWidth);
+  }
+
+  private void check(int column, int row, int w, int h) {
+    if (column < 0 || row < 0 || w <= 0 || h <= 0 || column + w > this.width
+        || row + h > this.height) {
+      throw new IndexOutOfBoundsException("cells " + column + "," + row //$NON-NLS-1$ //$NON-NLS-2$
+          + " " + w + "x" + h + " out of " + this.width + "x" + this.height); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+  }
+
+  /**
+   * Lit les valeurs d'une tuile.
+   * @param column première colonne de la tuile
+   * @param row première ligne de la tuile
+   * @param w nombre de colonnes de la tuile
+   * @param h nombre de lignes de la tuile
+   * @param tile tableau de <code>w * h</code> valeurs à remplir, ligne par
+   *          ligne
+   * @throws IOException en cas d'erreur de lecture
+   */
+  protected abstract void readTile(int column, int row, int w, int h,
+      float[] tile) throws IOException;
+
+  /**
+   * Vide le cache de tuiles. Les sous-classes libèrent en plus leurs
+   * ressources.
+   * @throws IOException en cas d'erreur à la fermeture
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      this.cache.clear();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ign.cogit.geoxygene.util.conversion.ArcGridReader;
+import fr.ign.cogit.geoxygene.util.conversion.AsciiGrid;
+import junit.framework.TestCase;
+
+public class TestAsciiGrid extends TestCase {
+
+	private static final String GRID = "ncols 4\r\nnrows         3\n"
+			+ "XLLCENTER 1000.5\nyllcorner 500\ncellsize 1\nNODATA_value -9999\n"
+			+ " 1 2.5 -3.25 4e2\n"
+			+ "-9999 0.1 1234.5678 -0\n"
+			+ "7\t8 123456789012345678 1.5E-3";
+
+	@Test
+	public void testRead() throws IOException {
+		AsciiGrid grid = AsciiGrid.read(new ByteArrayInputStream(GRID.getBytes("US-ASCII")));
+		check(grid);
+		grid.close();
+	}
+
+	@Test
+	public void testSidecar() throws IOException {
+		File file = new File(Files.createTempDir(), "mnt.asc");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+		writer.write(GRID);
+		writer.close();
+		File sidecar = new File(file.getAbsolutePath() + AsciiGrid.SIDECAR_EXTENSION);
+
+		AsciiGrid grid = ArcGridReader.openAsc(file.getAbsolutePath(), true);
+		assertTrue(grid.isSidecar());
+		assertTrue(sidecar.isFile());
+		check(grid);
+		grid.close();
+
+		// le fichier annexe est relu tel quel
+		long modified = sidecar.lastModified();
+		grid = ArcGridReader.openAsc(file.getAbsolutePath(), true);
+		assertTrue(grid.isSidecar());
+		assertEquals(modified, sidecar.lastModified());
+		check(grid);
+		grid.close();
+
+		// puis ignoré si la grille change
+		writer = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+		writer.write(GRID.replace("-3.25", "-3.75"));
+		writer.close();
+		grid = ArcGridReader.openAsc(file.getAbsolutePath(), true);
+		assertEquals(-3.75f, grid.getValue(2, 0));
+		grid.close();
+
+		grid = ArcGridReader.openAsc(file.getAbsolutePath(), false);
+		assertFalse(grid.isSidecar());
+		assertEquals(-3.75f, grid.getValue(2, 0));
+		grid.close();
+	}
+
+	@Test
+	public void testInvalid() throws IOException {
+		try {
+			AsciiGrid.read(new ByteArrayInputStream("ncols 2\nnrows 2\n1 2 3 4".getBytes("US-ASCII")));
+			fail();
+		} catch (IOException e) {
+			// en-tête incomplet
+		}
+		try {
+			AsciiGrid.read(new ByteArrayInputStream(GRID.substring(0, GRID.length() - 6).getBytes("US-ASCII")));
+			fail();
+		} catch (IOException e) {
+			// grille tronquée
+		}
+		try {
+			AsciiGrid.read(new ByteArrayInputStream(GRID.replace("0.1", "0.1x").getBytes("US-ASCII")));
+			fail();
+		} catch (IOException e) {
+			// valeur invalide
+		}
+	}
+
+	private static void check(AsciiGrid grid) throws IOException {
+		assertEquals(4, grid.getWidth());
+		assertEquals(3, grid.getHeight());
+		assertEquals(1000.0, grid.getEnvelope().minX(), 1e-9);
+		assertEquals(503.0, grid.getEnvelope().maxY(), 1e-9);
+		assertEquals(-9999.0, grid.getNoDataValue());
+		float[] values = grid.read(0, 0, 4, 3);
+		float[] expected = { 1f, 2.5f, -3.25f, 400f, -9999f, 0.1f, 1234.5678f, -0f, 7f, 8f,
+				123456789012345678f, 1.5e-3f };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], values[i]);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.util.conversion.FeatureFileWriter;
+import fr.ign.cogit.geoxygene.util.conversion.MappedFeatureFile;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
+import junit.framework.TestCase;
+
+public class TestFeatureFile extends TestCase {
+
+	@Test
+	public void testWriteAndReadBack() throws IOException {
+		IPopulation<IFeature> population = ShapefileReader.read(getClass().getClassLoader().getResource("shp/DOC_URBA.shp").toString());
+		String fileName = new File(Files.createTempDir(), "doc_urba.gxf").getAbsolutePath();
+
+		// petits blocs pour en écrire plusieurs
+		FeatureFileWriter writer = new FeatureFileWriter(fileName, population.getFeatureType(), 2);
+		for (IFeature feature : population) {
+			writer.append(feature);
+		}
+		writer.close();
+
+		MappedFeatureFile file = new MappedFeatureFile(fileName);
+		assertEquals(population.size(), file.size());
+		IPopulation<IFeature> copy = file.read();
+		assertEquals(population.size(), copy.size());
+		for (int i = 0; i < population.size(); i++) {
+			IFeature expected = population.get(i);
+			IFeature actual = copy.get(i);
+			assertEquals( expected.getId(), actual.getId() );
+			assertEquals( expected.getAttribute("IDURBA"), actual.getAttribute("IDURBA") );
+			assertEquals( expected.getAttribute("URLPLAN"), actual.getAttribute("URLPLAN") );
+			assertEquals( expected.getGeom().toString(), actual.getGeom().toString() );
+		}
+	}
+
+	@Test
+	public void testSelect() throws IOException {
+		IPopulation<IFeature> population = ShapefileReader.read(getClass().getClassLoader().getResource("shp/shp_point.shp").toString());
+		String fileName = new File(Files.createTempDir(), "points.gxf").getAbsolutePath();
+		FeatureFileWriter.write(population, population.getFeatureType(), fileName);
+
+		MappedFeatureFile file = new MappedFeatureFile(fileName);
+		IEnvelope envelope = population.get(0).getGeom().envelope();
+		List<DefaultFeature> selected = file.select(envelope);
+		int expected = 0;
+		for (IFeature feature : population) {
+			if (feature.getGeom().envelope().intersects(envelope)) {
+				expected++;
+			}
+		}
+		assertEquals(expected, selected.size());
+		assertEquals(population.get(0).getId(), selected.get(0).getId());
+	}
+
+	@Test
+	public void testRejectedGeometry() throws IOException {
+		String fileName = new File(Files.createTempDir(), "lines.gxf").getAbsolutePath();
+		FeatureFileWriter writer = new FeatureFileWriter(fileName, null);
+		DefaultFeature before = new DefaultFeature(new GM_LineString(new DirectPositionList(new DirectPosition(0, 0), new DirectPosition(1, 1))));
+		writer.append(before);
+		// the first point is encoded before the second one is rejected
+		DefaultFeature rejected = new DefaultFeature(new GM_LineString(new DirectPositionList(new DirectPosition(2, 2), new DirectPosition(1e300, 3))));
+		try {
+			writer.append(rejected);
+			fail("a coordinate too large for the scale must be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		DefaultFeature after = new DefaultFeature(new GM_LineString(new DirectPositionList(new DirectPosition(5, 5), new DirectPosition(6, 7))));
+		writer.append(after);
+		writer.close();
+		assertEquals(2, writer.getCount());
+
+		IPopulation<IFeature> copy = new MappedFeatureFile(fileName).read();
+		assertEquals(2, copy.size());
+		assertEquals( before.getGeom().toString(), copy.get(0).getGeom().toString() );
+		assertEquals( after.getGeom().toString(), copy.get(1).getGeom().toString() );
+	}
+
+}
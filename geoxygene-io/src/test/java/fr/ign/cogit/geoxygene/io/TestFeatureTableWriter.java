@@ -0,0 +1,106 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.FeatureTableWriter;
+import junit.framework.TestCase;
+
+public class TestFeatureTableWriter extends TestCase {
+
+	private static IPopulation<IFeature> population(int size) {
+		FeatureType featureType = new FeatureType();
+		featureType.setTypeName("parcelle");
+		Map<Integer, String[]> attLookup = new HashMap<Integer, String[]>();
+		String[][] attributes = { { "nom", "String" }, { "surface", "Double" }, { "rang", "Integer" } };
+		for (int i = 0; i < attributes.length; i++) {
+			featureType.addFeatureAttribute(new AttributeType(attributes[i][0], attributes[i][0], attributes[i][1]));
+			attLookup.put(i, new String[] { attributes[i][0], attributes[i][0] });
+		}
+		SchemaDefaultFeature schema = new SchemaDefaultFeature();
+		schema.setFeatureType(featureType);
+		schema.setAttLookup(attLookup);
+		IPopulation<IFeature> population = new Population<IFeature>(false, "parcelle", DefaultFeature.class, true);
+		population.setFeatureType(featureType);
+		for (int i = 0; i < size; i++) {
+			DefaultFeature feature = new DefaultFeature(new GM_Point(new DirectPosition(i, 2 * i)));
+			feature.setId(i);
+			feature.setSchema(schema);
+			feature.setFeatureType(featureType);
+			feature.setAttributes(new Object[] { (i == 1) ? "a;\"b\"" : "p" + i, (i == 2) ? null : Double.valueOf(i / 2.0), Integer.valueOf(-i) });
+			population.add(feature);
+		}
+		return population;
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		IPopulation<IFeature> population = population(3);
+		StringWriter out = new StringWriter();
+		FeatureTableWriter writer = new FeatureTableWriter(out, population.getFeatureType(), FeatureTableWriter.Format.CSV, FeatureTableWriter.Geometry.WKT);
+		for (IFeature feature : population) {
+			writer.write(feature);
+		}
+		writer.close();
+		assertEquals(3, writer.getCount());
+		assertEquals("nom;surface;rang;geom\n"
+				+ "p0;0.0;0;POINT (0.0 0.0 0.0)\n"
+				+ "\"a;\"\"b\"\"\";0.5;-1;POINT (1.0 2.0 0.0)\n"
+				+ "p2;;-2;POINT (2.0 4.0 0.0)\n", out.toString());
+	}
+
+	@Test
+	public void testArff() throws IOException {
+		IPopulation<IFeature> population = population(3);
+		StringWriter out = new StringWriter();
+		FeatureTableWriter writer = new FeatureTableWriter(out, population.getFeatureType(), FeatureTableWriter.Format.ARFF, FeatureTableWriter.Geometry.WKB_HEX);
+		for (IFeature feature : population) {
+			writer.write(feature);
+		}
+		writer.close();
+		String[] lines = out.toString().split("\n");
+		assertEquals("@relation 'parcelle'", lines[0]);
+		assertEquals("@attribute 'nom' string", lines[2]);
+		assertEquals("@attribute 'surface' numeric", lines[3]);
+		assertEquals("@attribute 'rang' numeric", lines[4]);
+		assertEquals("@attribute geom string", lines[5]);
+		assertEquals("@data", lines[7]);
+		assertEquals("'a;\"b\"',0.5,-1,'0101000080000000000000F03F00000000000000400000000000000000'", lines[9]);
+		assertEquals("'p2',?,-2,'0101000080000000000000004000000000000010400000000000000000'", lines[10]);
+	}
+
+	@Test
+	public void testParallelExport() throws IOException {
+		IPopulation<IFeature> population = population(25000);
+		File directory = Files.createTempDir();
+		File sequential = new File(directory, "sequential.csv");
+		File parallel = new File(directory, "parallel.csv");
+		assertEquals(25000, FeatureTableWriter.export(population, sequential.getAbsolutePath(), FeatureTableWriter.Format.CSV, FeatureTableWriter.Geometry.WKB_HEX, 1));
+		assertEquals(25000, FeatureTableWriter.export(population, parallel.getAbsolutePath(), FeatureTableWriter.Format.CSV, FeatureTableWriter.Geometry.WKB_HEX, 4));
+		List<String> expected = java.nio.file.Files.readAllLines(sequential.toPath(), Charset.forName("UTF-8"));
+		List<String> actual = java.nio.file.Files.readAllLines(parallel.toPath(), Charset.forName("UTF-8"));
+		assertEquals(25001, actual.size());
+		assertEquals(expected, actual);
+		// les fichiers temporaires sont supprimés
+		assertEquals(2, directory.list().length);
+	}
+
+}
@@ -0,0 +1,144 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.feature.type.GF_FeatureType;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.util.conversion.GeoJsonReader;
+import fr.ign.cogit.geoxygene.util.conversion.GeoJsonWriter;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
+import junit.framework.TestCase;
+
+public class TestGeoJson extends TestCase {
+
+	@Test
+	public void testWriteAndReadBack() throws IOException {
+		IPopulation<IFeature> population = ShapefileReader.read(getClass().getClassLoader().getResource("shp/shp_point.shp").toString());
+		File directory = Files.createTempDir();
+		for (String name : new String[] { "points.geojson", "points.ndjson" }) {
+			String fileName = new File(directory, name).getAbsolutePath();
+			GeoJsonWriter.write(population, fileName);
+
+			GeoJsonReader reader = new GeoJsonReader(fileName);
+			assertEquals(name.endsWith(".ndjson"), reader.isNewlineDelimited());
+			IPopulation<IFeature> copy = reader.read();
+			assertEquals(population.size(), copy.size());
+			for (int i = 0; i < population.size(); i++) {
+				IFeature expected = population.get(i);
+				IFeature actual = copy.get(i);
+				assertEquals( expected.getId(), actual.getId() );
+				assertEquals( expected.getAttribute("a_text"), actual.getAttribute("a_text") );
+				// le type des entiers est déduit de leurs valeurs
+				assertEquals( String.valueOf(expected.getAttribute("a_integer")), String.valueOf(actual.getAttribute("a_integer")) );
+				assertEquals( expected.getGeom().toString(), actual.getGeom().toString() );
+			}
+		}
+	}
+
+	@Test
+	public void testInferSchema() throws IOException {
+		File file = new File(Files.createTempDir(), "parcels.geojson");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		writer.write("{\"type\":\"FeatureCollection\",\"features\":[\n"
+				+ "{\"type\":\"Feature\",\"id\":7,\"properties\":{\"n\":1,\"x\":2,\"name\":\"a \\\"b\\\"\",\"tags\":[1,2]},"
+				+ "\"geometry\":{\"coordinates\":[[[0,0],[10,0],[10,10],[0,0]]],\"type\":\"Polygon\"}},\n"
+				+ "{\"type\":\"Feature\",\"properties\":{\"n\":3000000000,\"x\":2.5,\"name\":null,\"flag\":true},"
+				+ "\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":[[[[0,0],[1,0],[1,1],[0,0]]]]}}\n"
+				+ "]}");
+		writer.close();
+
+		GeoJsonReader reader = new GeoJsonReader(file.getAbsolutePath());
+		assertFalse(reader.isNewlineDelimited());
+		GF_FeatureType featureType = reader.getSchema().getFeatureType();
+		assertEquals("Long", featureType.getFeatureAttributeByName("n").getValueType());
+		assertEquals("Double", featureType.getFeatureAttributeByName("x").getValueType());
+		assertEquals("String", featureType.getFeatureAttributeByName("name").getValueType());
+		assertEquals("String", featureType.getFeatureAttributeByName("tags").getValueType());
+		assertEquals("Boolean", featureType.getFeatureAttributeByName("flag").getValueType());
+
+		IPopulation<IFeature> population = reader.read();
+		assertEquals(2, population.size());
+		IFeature first = population.get(0);
+		assertEquals(7, first.getId());
+		assertEquals(Long.valueOf(1), first.getAttribute("n"));
+		assertEquals(Double.valueOf(2), first.getAttribute("x"));
+		assertEquals("a \"b\"", first.getAttribute("name"));
+		assertEquals("[1,2]", first.getAttribute("tags"));
+		assertNull(first.getAttribute("flag"));
+		assertEquals(50.0, first.getGeom().area(), 1e-9);
+		IFeature second = population.get(1);
+		assertEquals(1, second.getId());
+		assertEquals(Long.valueOf(3000000000L), second.getAttribute("n"));
+		assertEquals(Boolean.TRUE, second.getAttribute("flag"));
+		assertTrue(second.getGeom() instanceof GM_MultiSurface<?>);
+	}
+
+	@Test
+	public void testParallelChunks() throws IOException {
+		File file = new File(Files.createTempDir(), "points.ndjson");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		for (int i = 0; i < 500; i++) {
+			writer.write("{\"type\":\"Feature\",");
+			// un objet sur trois a un identifiant, les autres sont numérotés
+			if (i % 3 == 0) {
+				writer.write("\"id\":" + (10000 + i) + ",");
+			}
+			writer.write("\"properties\":{\"n\":" + i + "},"
+					+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[" + i + ",1]}}\n");
+		}
+		writer.close();
+
+		long minChunkSize = GeoJsonReader.getMinChunkSize();
+		GeoJsonReader.setMinChunkSize(1024);
+		try {
+			GeoJsonReader reader = new GeoJsonReader(file.getAbsolutePath());
+			assertTrue(reader.isNewlineDelimited());
+			IPopulation<IFeature> sequential = reader.read(1);
+			IPopulation<IFeature> parallel = reader.read(4);
+			assertEquals(500, sequential.size());
+			assertEquals(500, parallel.size());
+			for (int i = 0; i < 500; i++) {
+				IFeature expected = sequential.get(i);
+				IFeature actual = parallel.get(i);
+				assertEquals(i % 3 == 0 ? 10000 + i : i, expected.getId());
+				assertEquals(expected.getId(), actual.getId());
+				assertEquals(Integer.valueOf(i), actual.getAttribute("n"));
+				assertEquals(expected.getGeom().toString(), actual.getGeom().toString());
+			}
+		} finally {
+			GeoJsonReader.setMinChunkSize(minChunkSize);
+		}
+	}
+
+	@Test
+	public void testIntegerOverflow() throws IOException {
+		File directory = Files.createTempDir();
+		File small = new File(directory, "small.ndjson");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(small), "UTF-8");
+		writer.write("{\"type\":\"Feature\",\"properties\":{\"n\":1},\"geometry\":null}\n");
+		writer.close();
+		File big = new File(directory, "big.ndjson");
+		writer = new OutputStreamWriter(new FileOutputStream(big), "UTF-8");
+		writer.write("{\"type\":\"Feature\",\"properties\":{\"n\":3000000000},\"geometry\":null}\n");
+		writer.write("{\"type\":\"Feature\",\"properties\":{\"n\":2},\"geometry\":null}\n");
+		writer.close();
+
+		GeoJsonReader reader = new GeoJsonReader(small.getAbsolutePath());
+		assertEquals("Integer", reader.getSchema().getFeatureType().getFeatureAttributeByName("n").getValueType());
+		// une valeur hors des entiers n'est pas tronquée
+		IPopulation<IFeature> population = new GeoJsonReader(big.getAbsolutePath(), reader.getSchema()).read();
+		assertNull(population.get(0).getAttribute("n"));
+		assertEquals(Integer.valueOf(2), population.get(1).getAttribute("n"));
+	}
+
+}
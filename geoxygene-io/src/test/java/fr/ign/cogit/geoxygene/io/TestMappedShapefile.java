@@ -0,0 +1,48 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.util.conversion.MappedShapefile;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
+import junit.framework.TestCase;
+
+public class TestMappedShapefile extends TestCase {
+
+	// helper to test dates
+	private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+	@Test
+	public void testPoint() throws IOException {
+		MappedShapefile shapefile = new MappedShapefile(getClass().getClassLoader().getResource("shp/shp_point.shp").toString());
+		assertEquals(2, shapefile.getNbRecords());
+
+		IFeature second = shapefile.getFeature(1);
+		assertEquals( 1, second.getAttribute("id") );
+		assertEquals( "texte2", second.getAttribute("a_text") );
+		assertEquals( "2", second.getAttribute("a_integer").toString() );
+		assertEquals( "2015-01-02" , dateFormat.format( second.getAttribute("a_date") ) );
+		assertEquals( "POINT (-2.067066 0.099401 0.0)", second.getGeom().toString() ) ;
+	}
+
+	@Test
+	public void testSameAsShapefileReader() throws IOException {
+		String url = getClass().getClassLoader().getResource("shp/DOC_URBA.shp").toString();
+		IPopulation<IFeature> population = ShapefileReader.read(url);
+		MappedShapefile shapefile = new MappedShapefile(url);
+		assertEquals(population.size(), shapefile.getNbRecords());
+		for (int i = 0; i < population.size(); i++) {
+			IFeature expected = population.get(i);
+			IFeature actual = shapefile.getFeature(i);
+			assertEquals( expected.getId(), actual.getId() );
+			assertEquals( expected.getAttribute("IDURBA"), actual.getAttribute("IDURBA") );
+			assertEquals( expected.getAttribute("URLPLAN"), actual.getAttribute("URLPLAN") );
+			assertEquals( expected.getGeom().toString(), actual.getGeom().toString() );
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package fr.ign.cogit.geoxygene.io;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 
 import org.junit.Test;
@@ -52,4 +53,23 @@ public class TestShapeReader extends TestCase {
     	}	
     }
 
+	@Test
+    public void testParallelSameAsSequential() throws IOException {
+    	// several chunks of records converted in parallel
+    	String shapefileName = TestShapefileCursor.writePoints(getClass(), 3 * 4096 + 100);
+    	IPopulation<IFeature> sequential = ShapefileReader.read(shapefileName);
+    	IPopulation<IFeature> parallel = ShapefileReader.read(shapefileName, "points", null, false, 4);
+    	assertEquals(3 * 4096 + 100, sequential.size());
+    	assertEquals(sequential.size(), parallel.size());
+    	for (int i = 0; i < sequential.size(); i++) {
+	    	IFeature expected = sequential.get(i);
+	    	IFeature actual = parallel.get(i);
+	    	assertEquals( expected.getId(), actual.getId() );
+	    	assertEquals( expected.getAttribute("a_text"), actual.getAttribute("a_text") );
+	    	assertEquals( expected.getAttribute("a_integer"), actual.getAttribute("a_integer") );
+	    	assertEquals( expected.getAttribute("a_date"), actual.getAttribute("a_date") );
+	    	assertEquals( expected.getGeom().toString(), actual.getGeom().toString() );
+    	}
+    }
+
 }
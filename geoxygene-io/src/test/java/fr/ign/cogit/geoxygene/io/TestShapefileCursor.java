@@ -0,0 +1,121 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.shapefile.ShapeFileIndexer;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.util.NullProgressListener;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.MappedShapefile;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileCursor;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileStreamWriter;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileWriter;
+import junit.framework.TestCase;
+
+public class TestShapefileCursor extends TestCase {
+
+	/**
+	 * Writes n random points with the schema of shp/shp_point.shp in a new
+	 * temporary directory.
+	 */
+	static String writePoints(Class<?> testClass, int n) throws IOException {
+		MappedShapefile input = new MappedShapefile(testClass.getClassLoader().getResource("shp/shp_point.shp").toString());
+		String shapefileName = new File(Files.createTempDir(), "points.shp").getAbsolutePath();
+		ShapefileStreamWriter writer = ShapefileWriter.open(shapefileName, input.getSchema().getFeatureType(), null);
+		Random random = new Random(n);
+		for (int i = 0; i < n; i++) {
+			DefaultFeature feature = new DefaultFeature(new GM_Point(new DirectPosition(random.nextDouble() * 100, random.nextDouble() * 100)));
+			feature.setFeatureType(input.getSchema().getFeatureType());
+			feature.setSchema(input.getSchema());
+			feature.setAttributes(input.getFeature(i % input.getNbRecords()).getAttributes().clone());
+			feature.setAttribute("a_text", "texte" + i);
+			writer.append(feature);
+		}
+		writer.close();
+		return shapefileName;
+	}
+
+	/** The features of the population whose envelope intersects env, in order. */
+	private static List<IFeature> filter(IPopulation<IFeature> population, IEnvelope env) {
+		List<IFeature> result = new ArrayList<IFeature>();
+		for (IFeature feature : population) {
+			IEnvelope e = feature.getGeom().envelope();
+			if (e.minX() <= env.maxX() && e.maxX() >= env.minX() && e.minY() <= env.maxY() && e.maxY() >= env.minY()) {
+				result.add(feature);
+			}
+		}
+		return result;
+	}
+
+	private static void assertSameFeatures(List<IFeature> expected, IPopulation<IFeature> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals( expected.get(i).getId(), actual.get(i).getId() );
+			assertEquals( expected.get(i).getAttribute("a_text"), actual.get(i).getAttribute("a_text") );
+			assertEquals( expected.get(i).getGeom().toString(), actual.get(i).getGeom().toString() );
+		}
+	}
+
+	private static void checkBboxQueries(String shapefileName) {
+		IPopulation<IFeature> all = ShapefileReader.read(shapefileName);
+		Random random = new Random(1);
+		for (int q = 0; q < 20; q++) {
+			double x = random.nextDouble() * 110 - 10;
+			double y = random.nextDouble() * 110 - 10;
+			IEnvelope env = new GM_Envelope(x, x + 15, y, y + 10);
+			assertSameFeatures(filter(all, env), ShapefileReader.read(shapefileName, env));
+		}
+		// outside of the file: nothing
+		assertEquals(0, ShapefileReader.read(shapefileName, new GM_Envelope(200, 300, 200, 300)).size());
+		// no envelope: everything
+		assertSameFeatures(filter(all, all.getEnvelope()), ShapefileReader.read(shapefileName, (IEnvelope) null));
+	}
+
+	@Test
+	public void testPoint() throws IOException {
+		ShapefileCursor cursor = new ShapefileCursor(new File(getClass().getClassLoader().getResource("shp/shp_point.shp").getFile()).getAbsolutePath());
+		assertEquals(2, cursor.getNbRecords());
+		assertTrue(cursor.hasNext());
+		IFeature first = cursor.next();
+		assertEquals( 0, first.getId() );
+		assertEquals( "texte1", first.getAttribute("a_text") );
+		IFeature second = cursor.next();
+		assertEquals( 1, second.getId() );
+		assertEquals( "POINT (-2.067066 0.099401 0.0)", second.getGeom().toString() );
+		assertFalse(cursor.hasNext());
+		cursor.close();
+	}
+
+	@Test
+	public void testBboxWithoutIndex() throws IOException {
+		String shapefileName = writePoints(getClass(), 3000);
+		assertFalse(new File(shapefileName.replace(".shp", ".qix")).exists());
+		checkBboxQueries(shapefileName);
+	}
+
+	@Test
+	public void testBboxWithIndex() throws Exception {
+		String shapefileName = writePoints(getClass(), 3000);
+		ShapeFileIndexer indexer = new ShapeFileIndexer();
+		indexer.setShapeFileName(new ShpFiles(shapefileName));
+		indexer.index(false, new NullProgressListener());
+		assertTrue(new File(shapefileName.replace(".shp", ".qix")).exists());
+		checkBboxQueries(shapefileName);
+	}
+
+}
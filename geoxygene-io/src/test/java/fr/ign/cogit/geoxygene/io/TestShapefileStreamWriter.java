@@ -0,0 +1,153 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.MappedShapefile;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileStreamWriter;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileWriter;
+import junit.framework.TestCase;
+
+public class TestShapefileStreamWriter extends TestCase {
+
+	/** A point feature type with the given attributes, as { name, value type } pairs. */
+	private static SchemaDefaultFeature schema(String[]... attributes) {
+		FeatureType featureType = new FeatureType();
+		featureType.setGeometryType(GM_Point.class);
+		Map<Integer, String[]> attLookup = new HashMap<Integer, String[]>();
+		for (int i = 0; i < attributes.length; i++) {
+			featureType.addFeatureAttribute(new AttributeType(attributes[i][0], attributes[i][0], attributes[i][1]));
+			attLookup.put(i, new String[] { attributes[i][0], attributes[i][0] });
+		}
+		SchemaDefaultFeature schema = new SchemaDefaultFeature();
+		schema.setFeatureType(featureType);
+		schema.setAttLookup(attLookup);
+		return schema;
+	}
+
+	private static DefaultFeature feature(SchemaDefaultFeature schema, Object... values) {
+		DefaultFeature feature = new DefaultFeature(new GM_Point(new DirectPosition(1, 2)));
+		feature.setSchema(schema);
+		feature.setFeatureType(schema.getFeatureType());
+		feature.setAttributes(values);
+		return feature;
+	}
+
+	@Test
+	public void testWriteAndReadBack() throws IOException {
+		MappedShapefile input = new MappedShapefile(getClass().getClassLoader().getResource("shp/shp_point.shp").toString());
+		String shapefileName = new File(Files.createTempDir(), "points.shp").getAbsolutePath();
+
+		ShapefileStreamWriter writer = ShapefileWriter.open(shapefileName, input.getSchema().getFeatureType(), null);
+		for (int i = 0; i < input.getNbRecords(); i++) {
+			writer.append(input.getFeature(i));
+		}
+		writer.close();
+
+		assertEquals(1, writer.getPartNames().size());
+		MappedShapefile output = new MappedShapefile(shapefileName);
+		assertEquals(input.getNbRecords(), output.getNbRecords());
+		for (int i = 0; i < input.getNbRecords(); i++) {
+			IFeature expected = input.getFeature(i);
+			IFeature actual = output.getFeature(i);
+			assertEquals( expected.getAttribute("a_text"), actual.getAttribute("a_text") );
+			assertEquals( expected.getAttribute("a_integer").toString(), actual.getAttribute("a_integer").toString() );
+			assertEquals( expected.getGeom().toString(), actual.getGeom().toString() );
+		}
+	}
+
+	@Test
+	public void testSplit() throws IOException {
+		MappedShapefile input = new MappedShapefile(getClass().getClassLoader().getResource("shp/shp_point.shp").toString());
+		String shapefileName = new File(Files.createTempDir(), "points.shp").getAbsolutePath();
+
+		// chaque fichier ne peut contenir qu'un point
+		ShapefileStreamWriter writer = new ShapefileStreamWriter(shapefileName, input.getSchema().getFeatureType(), null, 1);
+		writer.setMaxFileSize(130);
+		for (int i = 0; i < input.getNbRecords(); i++) {
+			writer.append(input.getFeature(i));
+		}
+		writer.close();
+
+		assertEquals(input.getNbRecords(), writer.getPartNames().size());
+		for (String partName : writer.getPartNames()) {
+			assertEquals(1, new MappedShapefile(partName).getNbRecords());
+		}
+	}
+
+	@Test
+	public void testNumbersReadBack() throws IOException {
+		SchemaDefaultFeature schema = schema(new String[] { "big", "Long" }, new String[] { "ratio", "Double" }, new String[] { "small", "Float" });
+		String shapefileName = new File(Files.createTempDir(), "numbers.shp").getAbsolutePath();
+		Object[][] values = { { Long.valueOf(1234567890123456789L), Double.valueOf(0.1), Float.valueOf(0.1f) },
+				{ Long.valueOf(-123456789012345678L), Double.valueOf(1e20), Float.valueOf(-3.5f) } };
+		ShapefileStreamWriter writer = ShapefileWriter.open(shapefileName, schema.getFeatureType(), null);
+		for (Object[] row : values) {
+			writer.append(feature(schema, row));
+		}
+		writer.close();
+
+		MappedShapefile output = new MappedShapefile(shapefileName);
+		assertEquals(values.length, output.getNbRecords());
+		for (int i = 0; i < values.length; i++) {
+			IFeature actual = output.getFeature(i);
+			assertEquals( values[i][0], actual.getAttribute("big") );
+			assertEquals( ((Number) values[i][1]).doubleValue(), ((Number) actual.getAttribute("ratio")).doubleValue() );
+			assertEquals( values[i][2].toString(), actual.getAttribute("small").toString() );
+		}
+	}
+
+	@Test
+	public void testValueTooLong() throws IOException {
+		SchemaDefaultFeature schema = schema(new String[] { "rang", "Integer" });
+		String shapefileName = new File(Files.createTempDir(), "overflow.shp").getAbsolutePath();
+		ShapefileStreamWriter writer = new ShapefileStreamWriter(shapefileName, schema.getFeatureType(), null, 10);
+		writer.append(feature(schema, Integer.valueOf(123456789)));
+		writer.append(feature(schema, Integer.valueOf(1234567890)));
+		writer.append(feature(schema, Integer.valueOf(7)));
+		try {
+			writer.flush();
+			fail("a value wider than its field must not be truncated");
+		} catch (IOException e) {
+			// expected
+		}
+		writer.close();
+
+		// the rejected feature is not written, the others are
+		MappedShapefile output = new MappedShapefile(shapefileName);
+		assertEquals(2, output.getNbRecords());
+		assertEquals(2, writer.getCount());
+		assertEquals( Integer.valueOf(123456789), output.getFeature(0).getAttribute("rang") );
+		assertEquals( Integer.valueOf(7), output.getFeature(1).getAttribute("rang") );
+	}
+
+	@Test
+	public void testRecordTooLong() throws IOException {
+		String[][] attributes = new String[200][];
+		for (int i = 0; i < attributes.length; i++) {
+			attributes[i] = new String[] { "text" + i, "String" };
+		}
+		SchemaDefaultFeature schema = schema(attributes);
+		String shapefileName = new File(Files.createTempDir(), "wide.shp").getAbsolutePath();
+		try {
+			ShapefileWriter.open(shapefileName, schema.getFeatureType(), null);
+			fail("a dbf record longer than 32767 bytes must be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
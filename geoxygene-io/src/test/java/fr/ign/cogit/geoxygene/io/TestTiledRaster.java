@@ -0,0 +1,90 @@
+package fr.ign.cogit.geoxygene.io;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.util.conversion.ArcGridReader;
+import fr.ign.cogit.geoxygene.util.conversion.TiledRaster;
+import junit.framework.TestCase;
+
+public class TestTiledRaster extends TestCase {
+
+	/** Grille de 10 x 7 cellules de 2 m, de valeur 100 * ligne + colonne. */
+	private static TiledRaster grid(long cacheSize) {
+		return new TiledRaster(10, 7, 4, 3, new GM_Envelope(1000, 1020, 500, 514), -9999, cacheSize) {
+			@Override
+			protected void readTile(int column, int row, int w, int h, float[] tile) {
+				for (int j = 0; j < h; j++) {
+					for (int i = 0; i < w; i++) {
+						tile[j * w + i] = 100 * (row + j) + column + i;
+					}
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		TiledRaster raster = grid(TiledRaster.DEFAULT_CACHE_SIZE);
+		assertEquals(203f, raster.getValue(3, 2));
+		assertEquals(609f, raster.getValue(9, 6));
+		float[] values = raster.read(2, 1, 7, 5);
+		for (int j = 0; j < 5; j++) {
+			for (int i = 0; i < 7; i++) {
+				assertEquals(100f * (1 + j) + 2 + i, values[j * 7 + i]);
+			}
+		}
+		// 3 x 3 tuiles, chacune lue une seule fois
+		raster.read(0, 0, 10, 7);
+		assertEquals(9, raster.getTileReads());
+		try {
+			raster.read(5, 5, 6, 1);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// hors grille
+		}
+	}
+
+	@Test
+	public void testWindow() throws IOException {
+		TiledRaster raster = grid(TiledRaster.DEFAULT_CACHE_SIZE);
+		IEnvelope envelope = new GM_Envelope(1003, 1007, 509, 511);
+		int[] window = new int[4];
+		float[] values = raster.read(envelope, window);
+		assertEquals(1, window[0]);
+		assertEquals(1, window[1]);
+		assertEquals(3, window[2]);
+		assertEquals(2, window[3]);
+		assertEquals(101f, values[0]);
+		assertEquals(203f, values[5]);
+		assertNull(raster.window(new GM_Envelope(0, 10, 0, 10)));
+		assertEquals(1001.0, raster.toX(0), 1e-9);
+		assertEquals(513.0, raster.toY(0), 1e-9);
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		// une seule ligne de tuiles gardée en cache
+		TiledRaster raster = grid(1);
+		raster.getValue(0, 0);
+		raster.getValue(0, 0);
+		assertEquals(1, raster.getTileReads());
+		raster.read(0, 0, 10, 7);
+		raster.getValue(0, 0);
+		assertEquals(10, raster.getTileReads());
+	}
+
+	@Test
+	public void testAltitude() throws IOException {
+		TiledRaster raster = grid(TiledRaster.DEFAULT_CACHE_SIZE);
+		// coin nord-ouest de la cellule (2, 1)
+		assertEquals(102.0, ArcGridReader.altitude(raster, 1004, 512), 1e-6);
+		// à égale distance des coins des cellules (2, 1), (3, 1), (2, 2) et (3, 2)
+		assertEquals(152.5, ArcGridReader.altitude(raster, 1005, 511), 1e-6);
+		assertEquals(-999.0, ArcGridReader.altitude(raster, 999, 510), 1e-6);
+	}
+
+}
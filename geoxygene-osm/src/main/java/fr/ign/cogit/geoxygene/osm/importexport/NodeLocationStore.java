@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * This software is released under the licence CeCILL
+ *
+ * see Licence_CeCILL-C_fr.html see Licence_CeCILL-C_en.html
+ *
+ * see <a href="http://www.cecill.info/">http://www.cecill.info/a>
+ *
+ * @copyright IGN
+ ******************************************************************************/
+package fr.ign.cogit.geoxygene.osm.importexport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+
+/**
+ * Stores the location of OSM nodes by id, so that ways and relations can be
+ * assembled without scanning the whole node collection for each vertex.
+ * Coordinates are kept in the OSM fixed-point precision (1e-7 degree), which
+ * is lossless for OSM data.
+ * <p>
+ * The default mode keeps a sorted array of ids along with packed lat/lon
+ * arrays and looks them up by binary search: nodes are usually put in id
+ * order, otherwise the arrays are sorted once before the first lookup. The
+ * dense mode indexes a memory-mapped file directly by id (8 bytes per id),
+ * for planet-scale id ranges that do not fit in the heap.
+ * <p>
+ * When the same id is put several times (history files), the last location
+ * put wins, except in the stores built by {@link #fromResources(Collection)}
+ * where the first one wins, as in a scan of the collection. A store may be
+ * read by several threads once it is filled.
+ *
+ * @author GeOxygene
+ */
+public class NodeLocationStore implements Closeable {
+
+    /** The number of fixed-point units per degree. */
+    public static final double SCALE = 1e7;
+
+    /** The number of node locations per mapped chunk in dense mode. */
+    private static final int DENSE_CHUNK = 1 << 27;
+
+    /**
+     * Offset added to the stored latitude in dense mode, so that a zero slot
+     * of the (sparse) file means a missing node.
+     */
+    private static final int DENSE_OFFSET = 1000000000;
+
+    // sorted mode
+    private long[] ids;
+    private int[] coords;
+    private int size;
+    private boolean sorted = true;
+    /** Keep the first location put for an id instead of the last one. */
+    private boolean keepFirst = false;
+
+    // dense mode
+    private File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer[] chunks;
+    private boolean deleteOnClose;
+
+    /**
+     * Creates an empty store in sorted mode.
+     */
+    public NodeLocationStore() {
+        this(1024);
+    }
+
+    /**
+     * Creates an empty store in sorted mode, sized for the given number of
+     * nodes.
+     *
+     * @param expectedSize
+     */
+    public NodeLocationStore(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.ids = new long[capacity];
+        this.coords = new int[2 * capacity];
+    }
+
+    /**
+     * Creates a store in dense mode, backed by the given file. The file is
+     * grown as needed and left on disk when the store is closed, so it can be
+     * reopened for another pass.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public NodeLocationStore(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.chunks = new MappedByteBuffer[0];
+    }
+
+    /**
+     * Creates a store in dense mode, backed by a temporary file deleted when
+     * the store is closed.
+     *
+     * @return
+     * @throws IOException
+     */
+    public static NodeLocationStore dense() throws IOException {
+        File file = File.createTempFile("nodes", ".loc");
+        file.deleteOnExit();
+        NodeLocationStore store = new NodeLocationStore(file);
+        store.deleteOnClose = true;
+        return store;
+    }
+
+    /**
+     * Builds a store in sorted mode from the nodes of a collection of OSM
+     * resources. Other resources are ignored. When a node id appears several
+     * times, the first occurrence wins.
+     *
+     * @param resources
+     * @return
+     */
+    public static NodeLocationStore fromResources(
+            Collection<OSMResource> resources) {
+        NodeLocationStore store = new NodeLocationStore(resources.size());
+        store.keepFirst = true;
+        store.putAll(resources);
+        return store;
+    }
+
+    /**
+     * Records the location of the nodes of a collection of OSM resources.
+     * Other resources are ignored.
+     *
+     * @param resources
+     */
+    public synchronized void putAll(Collection<OSMResource> resources) {
+        for (OSMResource resource : resources) {
+            if (resource.getGeom() instanceof OSMNode) {
+                OSMNode node = (OSMNode) resource.getGeom();
+                this.put(resource.getId(), node.getLatitude(),
+                        node.getLongitude());
+            }
+        }
+    }
+
+    public boolean isDense() {
+        return this.file != null;
+    }
+
+    /**
+     * @return the number of locations in the store, or the size of the id
+     *         range in dense mode.
+     */
+    public synchronized long size() {
+        if (this.isDense())
+            return this.fileLength() / 8;
+        this.sort();
+        return this.size;
+    }
+
+    /**
+     * Records the location of a node.
+     *
+     * @param id
+     * @param latitude
+     * @param longitude
+     */
+    public synchronized void put(long id, double latitude, double longitude) {
+        int lat = (int) Math.round(latitude * SCALE);
+        int lon = (int) Math.round(longitude * SCALE);
+        if (this.isDense()) {
+            if (id < 0)
+                throw new IllegalArgumentException(
+                        "Negative node id in dense mode: " + id);
+            MappedByteBuffer chunk = this.chunk(id, true);
+            int offset = (int) (id % DENSE_CHUNK) * 8;
+            chunk.putInt(offset, lat + DENSE_OFFSET);
+            chunk.putInt(offset + 4, lon);
+            return;
+        }
+        if (this.size > 0 && this.sorted) {
+            long last = this.ids[this.size - 1];
+            if (id == last) {
+                if (!this.keepFirst) {
+                    this.coords[2 * this.size - 2] = lat;
+                    this.coords[2 * this.size - 1] = lon;
+                }
+                return;
+            }
+            if (id < last)
+                this.sorted = false;
+        }
+        if (this.size == this.ids.length) {
+            int capacity = this.ids.length + (this.ids.length >> 1);
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.coords = Arrays.copyOf(this.coords, 2 * capacity);
+        }
+        this.ids[this.size] = id;
+        this.coords[2 * this.size] = lat;
+        this.coords[2 * this.size + 1] = lon;
+        this.size++;
+    }
+
+    public boolean contains(long id) {
+        return this.getPosition(id) != null;
+    }
+
+    /**
+     * Returns the location of a node as a position (longitude, latitude), like
+     * {@link OSMNode#getPosition()}.
+     *
+     * @param id
+     * @return the position, or null if the node is unknown.
+     */
+    public IDirectPosition getPosition(long id) {
+        int lat, lon;
+        if (this.isDense()) {
+            MappedByteBuffer chunk = id < 0 ? null : this.chunk(id, false);
+            if (chunk == null)
+                return null;
+            int offset = (int) (id % DENSE_CHUNK) * 8;
+            lat = chunk.getInt(offset);
+            if (lat == 0)
+                return null;
+            lat -= DENSE_OFFSET;
+            lon = chunk.getInt(offset + 4);
+        } else {
+            int index = this.indexOf(id);
+            if (index < 0)
+                return null;
+            lat = this.coords[2 * index];
+            lon = this.coords[2 * index + 1];
+        }
+        return new DirectPosition(lon / SCALE, lat / SCALE);
+    }
+
+    private int indexOf(long id) {
+        synchronized (this) {
+            if (!this.sorted)
+                this.sort();
+        }
+        return Arrays.binarySearch(this.ids, 0, this.size, id);
+    }
+
+    private synchronized MappedByteBuffer chunk(long id, boolean create) {
+        long number = id / DENSE_CHUNK;
+        if (number >= this.chunks.length) {
+            if (!create && number * DENSE_CHUNK * 8 >= this.fileLength())
+                return null;
+            this.chunks = Arrays.copyOf(this.chunks, (int) number + 1);
+        }
+        MappedByteBuffer chunk = this.chunks[(int) number];
+        if (chunk == null) {
+            if (!create && number * DENSE_CHUNK * 8 >= this.fileLength())
+                return null;
+            try {
+                chunk = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        number * DENSE_CHUNK * 8, (long) DENSE_CHUNK * 8);
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                        "Cannot map node locations file " + this.file, e);
+            }
+            chunk.order(ByteOrder.nativeOrder());
+            this.chunks[(int) number] = chunk;
+        }
+        return chunk;
+    }
+
+    private long fileLength() {
+        try {
+            return this.raf.length();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Sorts the ids with a stable merge sort, then keeps the last location put
+     * for each id, or the first one if {@link #keepFirst} is set.
+     */
+    private void sort() {
+        if (this.sorted)
+            return;
+        long[] idBuffer = new long[this.size];
+        int[] coordBuffer = new int[2 * this.size];
+        for (int width = 1; width < this.size; width *= 2) {
+            for (int low = 0; low < this.size; low += 2 * width) {
+                int middle = Math.min(low + width, this.size);
+                int high = Math.min(low + 2 * width, this.size);
+                int i = low, j = middle, k = low;
+                while (i < middle && j < high) {
+                    int from = this.ids[j] < this.ids[i] ? j++ : i++;
+                    idBuffer[k] = this.ids[from];
+                    coordBuffer[2 * k] = this.coords[2 * from];
+                    coordBuffer[2 * k + 1] = this.coords[2 * from + 1];
+                    k++;
+                }
+                for (int from = i < middle ? i : j, end = i < middle ? middle
+                        : high; from < end; from++, k++) {
+                    idBuffer[k] = this.ids[from];
+                    coordBuffer[2 * k] = this.coords[2 * from];
+                    coordBuffer[2 * k + 1] = this.coords[2 * from + 1];
+                }
+            }
+            System.arraycopy(idBuffer, 0, this.ids, 0, this.size);
+            System.arraycopy(coordBuffer, 0, this.coords, 0, 2 * this.size);
+        }
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.keepFirst ? count > 0 && this.ids[count - 1] == this.ids[i]
+                    : i + 1 < this.size && this.ids[i + 1] == this.ids[i])
+                continue;
+            this.ids[count] = this.ids[i];
+            this.coords[2 * count] = this.coords[2 * i];
+            this.coords[2 * count + 1] = this.coords[2 * i + 1];
+            count++;
+        }
+        this.size = count;
+        this.sorted = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!this.isDense())
+            return;
+        this.chunks = new MappedByteBuffer[0];
+        this.raf.close();
+        if (this.deleteOnClose)
+            this.file.delete();
+    }
+}
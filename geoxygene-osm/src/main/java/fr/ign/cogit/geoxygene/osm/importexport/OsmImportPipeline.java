@@ -0,0 +1,678 @@
+/*******************************************************************************
+ * This software is released under the licence CeCILL
+ *
+ * see Licence_CeCILL-C_fr.html see Licence_CeCILL-C_en.html
+ *
+ * see <a href="http://www.cecill.info/">http://www.cecill.info/a>
+ *
+ * @copyright IGN
+ ******************************************************************************/
+package fr.ign.cogit.geoxygene.osm.importexport;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMLoader.OsmLoadingTask;
+import fr.ign.cogit.geoxygene.osm.importexport.pbf.PbfResourceReader;
+import fr.ign.cogit.geoxygene.osm.schema.OSMDefaultFeature;
+import fr.ign.cogit.geoxygene.osm.schema.OsmGeometryConversion;
+import fr.ign.cogit.geoxygene.osm.schema.OsmSource;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomengine.GeometryEngine;
+
+/**
+ * A headless import of an OSM file into feature collections of nodes, lines
+ * and polygons. The import runs as four stages connected by bounded queues of
+ * batches, so that they overlap: parsing (SAX for XML files, osmosis for PBF
+ * files), geometry assembly from the node locations, projection in the target
+ * coordinate system, and feature building in the calling thread.
+ * <p>
+ * Ways and relations are assembled once the whole file is parsed, as they
+ * may reference any node or way of the file. Progress is reported per batch,
+ * at most every {@link #PROGRESS_INTERVAL} milliseconds.
+ *
+ * @author GeOxygene
+ */
+public class OsmImportPipeline {
+
+    /**
+     * Receives the progress of an import. It is called from the import
+     * threads.
+     */
+    public interface ProgressListener {
+        void progress(OsmLoadingTask task, int percent);
+    }
+
+    /**
+     * A source of OSM resources, such as a file.
+     */
+    public interface Source {
+
+        /**
+         * Reads all the resources of the source, passing them to the listener
+         * in source order. A source may filter out the nodes on their tags,
+         * passing only their location.
+         *
+         * @param listener
+         * @throws Exception
+         */
+        void read(OsmResourceListener listener) throws Exception;
+
+        /**
+         * @return the percentage of the source already read, or -1 if unknown.
+         */
+        int getProgress();
+    }
+
+    /** The number of resources or geometries per batch. */
+    public static final int BATCH_SIZE = 1024;
+
+    /** The number of batches waiting between two stages. */
+    public static final int QUEUE_CAPACITY = 16;
+
+    /** The minimum delay between two progress reports, in milliseconds. */
+    public static final long PROGRESS_INTERVAL = 100;
+
+    private enum GeometryType {
+        POINT, LINE, POLYGON, INNER_RINGS
+    }
+
+    /**
+     * A resource with its geometry, first in WGS84 coordinates, then
+     * projected.
+     */
+    private static final class Item {
+        private final OSMResource resource;
+        private final GeometryType type;
+        private final IDirectPositionList coords;
+        private List<IDirectPositionList> rings;
+        private long[] ringRefs;
+        private IGeometry geometry;
+        private List<IRing> projectedRings;
+
+        Item(OSMResource resource, GeometryType type,
+                IDirectPositionList coords) {
+            this.resource = resource;
+            this.type = type;
+            this.coords = coords;
+        }
+    }
+
+    private final OsmGeometryConversion convertor;
+    private final String tagFilter;
+    private ProgressListener progressListener;
+
+    private IPopulation<IFeature> nodeFeats, lineFeats, polygonFeats;
+    private int nbNodes, nbWays, nbRelations;
+
+    private volatile Throwable failure;
+    private volatile boolean parsed;
+    private OsmLoadingTask reportedTask;
+    private int reportedPercent;
+    private long reportTime;
+
+    /**
+     * @param convertor
+     *            the conversion to the target coordinate system.
+     * @param tagFilter
+     *            if not null nor empty, only nodes and ways with this tag key
+     *            are imported.
+     */
+    public OsmImportPipeline(OsmGeometryConversion convertor,
+            String tagFilter) {
+        this.convertor = convertor;
+        this.tagFilter = tagFilter;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Imports an OSM file, read as PBF if its name ends with ".pbf", as XML
+     * otherwise.
+     *
+     * @param file
+     * @throws Exception
+     */
+    public void importFile(File file) throws Exception {
+        if (file.getName().toLowerCase().endsWith(".pbf")) {
+            PbfResourceReader reader = new PbfResourceReader(file);
+            reader.setTagFilter(this.tagFilter);
+            this.run(reader);
+        } else
+            this.run(new XmlSource(file));
+    }
+
+    /**
+     * Imports the resources of a source.
+     *
+     * @param source
+     * @throws Exception
+     */
+    public void run(final Source source) throws Exception {
+        this.nodeFeats = new Population<>("nodes");
+        this.lineFeats = new Population<>("lines");
+        this.polygonFeats = new Population<>("polygons");
+        this.nbNodes = this.nbWays = this.nbRelations = 0;
+        this.failure = null;
+        this.parsed = false;
+        this.reportedTask = null;
+
+        final NodeLocationStore locations = new NodeLocationStore();
+        final BlockingQueue<List<OSMResource>> resources = new ArrayBlockingQueue<>(
+                QUEUE_CAPACITY);
+        final BlockingQueue<List<Item>> assembled = new ArrayBlockingQueue<>(
+                QUEUE_CAPACITY);
+        final BlockingQueue<List<Item>> projected = new ArrayBlockingQueue<>(
+                QUEUE_CAPACITY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3,
+                new ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "osm-import-" + (++this.count));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        List<Future<Void>> stages = new ArrayList<>();
+        try {
+            stages.add(executor.submit(this.stage(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    parse(source, locations, resources);
+                    return null;
+                }
+            })));
+            stages.add(executor.submit(this.stage(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    assemble(resources, locations, assembled);
+                    return null;
+                }
+            })));
+            stages.add(executor.submit(this.stage(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    project(assembled, projected);
+                    return null;
+                }
+            })));
+            this.stage(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    build(projected);
+                    return null;
+                }
+            }).call();
+            for (Future<Void> stage : stages) {
+                stage.get();
+            }
+        } catch (CancellationException | ExecutionException e) {
+            // the failure of the first stage to fail is thrown below
+            if (this.failure == null)
+                this.failure = e;
+        } finally {
+            executor.shutdownNow();
+        }
+        Throwable t = this.failure;
+        if (t instanceof Exception)
+            throw (Exception) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        this.report(OsmLoadingTask.OBJECTS, 100);
+    }
+
+    /**
+     * Records the failure of a stage, so that the other stages stop.
+     */
+    private Callable<Void> stage(final Callable<Void> body) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    return body.call();
+                } catch (CancellationException e) {
+                    throw e;
+                } catch (Throwable t) {
+                    synchronized (OsmImportPipeline.this) {
+                        if (failure == null)
+                            failure = t;
+                    }
+                    throw new CancellationException(t.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * First stage: reads the resources and the node locations.
+     */
+    private void parse(final Source source, final NodeLocationStore locations,
+            final BlockingQueue<List<OSMResource>> resources)
+            throws Exception {
+        final List<List<OSMResource>> batch = new ArrayList<>(1);
+        batch.add(new ArrayList<OSMResource>(BATCH_SIZE));
+        source.read(new OsmResourceListener() {
+            @Override
+            public void resourceRead(OSMResource resource) {
+                if (resource.getGeom() instanceof OSMNode) {
+                    OSMNode node = (OSMNode) resource.getGeom();
+                    locations.put(resource.getId(), node.getLatitude(),
+                            node.getLongitude());
+                    nbNodes++;
+                } else if (resource.getGeom() instanceof OSMWay) {
+                    nbWays++;
+                } else if (resource.getGeom() instanceof OSMRelation) {
+                    nbRelations++;
+                }
+                batch.get(0).add(resource);
+                if (batch.get(0).size() == BATCH_SIZE) {
+                    put(resources, batch.get(0));
+                    batch.set(0, new ArrayList<OSMResource>(BATCH_SIZE));
+                    report(OsmLoadingTask.PARSING, source.getProgress());
+                }
+            }
+
+            @Override
+            public void nodeLocationRead(long id, double latitude,
+                    double longitude) {
+                locations.put(id, latitude, longitude);
+                nbNodes++;
+            }
+        });
+        if (!batch.get(0).isEmpty())
+            this.put(resources, batch.get(0));
+        this.parsed = true;
+        this.put(resources, new ArrayList<OSMResource>(0));
+    }
+
+    /**
+     * Second stage: assembles the geometries in WGS84 coordinates. Nodes go
+     * through as they come, ways and relations wait for the end of the
+     * parsing.
+     */
+    private void assemble(BlockingQueue<List<OSMResource>> resources,
+            NodeLocationStore locations, BlockingQueue<List<Item>> assembled) {
+        List<OSMResource> ways = new ArrayList<>();
+        List<OSMResource> relations = new ArrayList<>();
+        List<Item> items = new ArrayList<>(BATCH_SIZE);
+        int done = 0;
+        for (List<OSMResource> batch = this.take(
+                resources); !batch.isEmpty(); batch = this.take(resources)) {
+            for (OSMResource resource : batch) {
+                if (resource.getGeom() instanceof OSMNode) {
+                    done++;
+                    if (!this.accept(resource))
+                        continue;
+                    IDirectPositionList coords = new DirectPositionList();
+                    coords.add(((OSMNode) resource.getGeom()).getPosition());
+                    items = this.add(assembled, items,
+                            new Item(resource, GeometryType.POINT, coords));
+                } else if (resource.getGeom() instanceof OSMWay) {
+                    ways.add(resource);
+                } else if (resource.getGeom() instanceof OSMRelation) {
+                    relations.add(resource);
+                }
+            }
+            this.reportObjects(done);
+        }
+
+        // then the ways
+        Map<Long, OSMWay> waysById = new HashMap<>(ways.size());
+        for (OSMResource resource : ways) {
+            OSMWay way = (OSMWay) resource.getGeom();
+            if (!waysById.containsKey(resource.getId()))
+                waysById.put(resource.getId(), way);
+            if (++done % BATCH_SIZE == 0)
+                this.reportObjects(done);
+            if (!this.accept(resource))
+                continue;
+            items = this.add(assembled, items,
+                    new Item(resource, way.isPolygon() ? GeometryType.POLYGON
+                            : GeometryType.LINE, vertices(way, locations)));
+        }
+
+        // and the multipolygon relations
+        for (OSMResource resource : relations) {
+            if (++done % BATCH_SIZE == 0)
+                this.reportObjects(done);
+            if (!"multipolygon".equals(resource.getTags().get("type")))
+                continue;
+            OSMRelation relation = (OSMRelation) resource.getGeom();
+            List<OsmRelationMember> outers = relation.getOuterMembers();
+            List<OsmRelationMember> inners = relation.getInnerMembers();
+            Item item;
+            if (outers.size() > 1) {
+                // the outer ways form the polygonal geometry
+                IDirectPositionList coords = new DirectPositionList();
+                for (OsmRelationMember outer : outers) {
+                    OSMWay way = waysById.get(outer.getRef());
+                    if (way != null)
+                        coords.addAll(vertices(way, locations));
+                }
+                item = new Item(resource, GeometryType.POLYGON, coords);
+            } else if (outers.size() == 1) {
+                // inner rings to add to the feature of the outer way
+                item = new Item(resource, GeometryType.INNER_RINGS, null);
+                item.ringRefs = new long[inners.size() + 1];
+                item.ringRefs[0] = outers.get(0).getRef();
+            } else {
+                continue;
+            }
+            item.rings = new ArrayList<>();
+            int i = 1;
+            for (OsmRelationMember inner : inners) {
+                OSMWay way = waysById.get(inner.getRef());
+                IDirectPositionList ring = null;
+                if (way != null && way.isPolygon())
+                    ring = vertices(way, locations);
+                if (item.ringRefs != null) {
+                    item.ringRefs[i++] = inner.getRef();
+                    item.rings.add(ring);
+                } else if (ring != null && ring.size() >= 4) {
+                    item.rings.add(ring);
+                }
+            }
+            items = this.add(assembled, items, item);
+        }
+        if (!items.isEmpty())
+            this.put(assembled, items);
+        this.put(assembled, new ArrayList<Item>(0));
+    }
+
+    private static IDirectPositionList vertices(OSMWay way,
+            NodeLocationStore locations) {
+        IDirectPositionList coords = new DirectPositionList();
+        for (long id : way.getVertices()) {
+            IDirectPosition position = locations.getPosition(id);
+            if (position != null)
+                coords.add(position);
+        }
+        return coords;
+    }
+
+    /**
+     * Third stage: projects the geometries.
+     */
+    private void project(BlockingQueue<List<Item>> assembled,
+            BlockingQueue<List<Item>> projected) throws Exception {
+        for (List<Item> batch = this.take(
+                assembled); !batch.isEmpty(); batch = this.take(assembled)) {
+            for (Item item : batch) {
+                IDirectPositionList coords = item.coords == null ? null
+                        : this.convertor.project(item.coords);
+                switch (item.type) {
+                case POINT:
+                    item.geometry = coords.get(0).toGM_Point();
+                    break;
+                case LINE:
+                    item.geometry = new GM_LineString(coords);
+                    break;
+                case POLYGON:
+                    if (item.rings == null) {
+                        // a closed way
+                        if (coords.size() != 1)
+                            item.geometry = new GM_Polygon(
+                                    new GM_LineString(coords));
+                        break;
+                    }
+                    IPolygon polygon = GeometryEngine.getFactory()
+                            .createIPolygon(coords);
+                    for (IDirectPositionList ring : item.rings) {
+                        polygon.addInterior(this.projectRing(ring));
+                    }
+                    item.geometry = polygon;
+                    break;
+                case INNER_RINGS:
+                    item.projectedRings = new ArrayList<>();
+                    for (IDirectPositionList ring : item.rings) {
+                        item.projectedRings.add(
+                                ring == null ? null : this.projectRing(ring));
+                    }
+                    break;
+                }
+            }
+            this.put(projected, batch);
+        }
+        this.put(projected, new ArrayList<Item>(0));
+    }
+
+    private IRing projectRing(IDirectPositionList ring) throws Exception {
+        return new GM_Polygon(new GM_LineString(this.convertor.project(ring)))
+                .getExterior();
+    }
+
+    /**
+     * Last stage: builds the features.
+     */
+    private void build(BlockingQueue<List<Item>> projected) {
+        Map<Long, IFeature> wayFeatures = new HashMap<>();
+        List<Item> innerRings = new ArrayList<>();
+        for (List<Item> batch = this.take(
+                projected); !batch.isEmpty(); batch = this.take(projected)) {
+            for (Item item : batch) {
+                if (item.type == GeometryType.INNER_RINGS) {
+                    innerRings.add(item);
+                    continue;
+                }
+                OSMResource resource = item.resource;
+                OSMDefaultFeature feature = new OSMDefaultFeature(
+                        resource.getContributeur(), item.geometry,
+                        resource.getId(), resource.getChangeSet(),
+                        resource.getVersion(), resource.getUid(),
+                        resource.getDate(), resource.getTags());
+                feature.setSource(OsmSource.valueOfTag(resource.getSource()));
+                feature.setCaptureTool(resource.getCaptureTool());
+                if (item.type == GeometryType.POINT) {
+                    this.nodeFeats.add(feature);
+                } else if (item.type == GeometryType.LINE) {
+                    this.lineFeats.add(feature);
+                } else {
+                    this.polygonFeats.add(feature);
+                }
+                if (resource.getGeom() instanceof OSMWay
+                        && !wayFeatures.containsKey(resource.getId()))
+                    wayFeatures.put(resource.getId(), feature);
+            }
+        }
+
+        // add the inner rings of the single outer multipolygons
+        for (Item item : innerRings) {
+            IFeature outer = wayFeatures.get(item.ringRefs[0]);
+            if (outer == null || !(outer.getGeom() instanceof IPolygon))
+                continue;
+            for (int i = 1; i < item.ringRefs.length; i++) {
+                IFeature inner = wayFeatures.get(item.ringRefs[i]);
+                IRing ring;
+                if (inner != null && inner.getGeom() instanceof IPolygon)
+                    ring = ((IPolygon) inner.getGeom()).getExterior();
+                else
+                    ring = item.projectedRings.get(i - 1);
+                if (ring == null || ring.coord().size() < 4)
+                    continue;
+                IPolygon polygon = (IPolygon) ((IPolygon) outer.getGeom())
+                        .clone();
+                polygon.addInterior(ring);
+                if (polygon.getExterior().coord().size() >= 4)
+                    outer.setGeom(polygon);
+            }
+        }
+    }
+
+    private boolean accept(OSMResource resource) {
+        return this.tagFilter == null || this.tagFilter.equals("")
+                || resource.getTags().containsKey(this.tagFilter);
+    }
+
+    private List<Item> add(BlockingQueue<List<Item>> queue, List<Item> items,
+            Item item) {
+        items.add(item);
+        if (items.size() < BATCH_SIZE)
+            return items;
+        this.put(queue, items);
+        return new ArrayList<>(BATCH_SIZE);
+    }
+
+    /**
+     * Puts a batch in a queue, giving up if another stage failed.
+     */
+    private <T> void put(BlockingQueue<List<T>> queue, List<T> batch) {
+        try {
+            while (!queue.offer(batch, PROGRESS_INTERVAL,
+                    TimeUnit.MILLISECONDS)) {
+                if (this.failure != null)
+                    throw new CancellationException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("OSM import interrupted");
+        }
+    }
+
+    /**
+     * Takes a batch from a queue, giving up if another stage failed. An empty
+     * batch marks the end of the queue.
+     */
+    private <T> List<T> take(BlockingQueue<List<T>> queue) {
+        try {
+            List<T> batch;
+            while ((batch = queue.poll(PROGRESS_INTERVAL,
+                    TimeUnit.MILLISECONDS)) == null) {
+                if (this.failure != null)
+                    throw new CancellationException();
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("OSM import interrupted");
+        }
+    }
+
+    private void reportObjects(int done) {
+        if (this.parsed)
+            this.report(OsmLoadingTask.OBJECTS, (int) (done * 100L
+                    / Math.max(1, this.nbNodes + this.nbWays + this.nbRelations)));
+    }
+
+    private synchronized void report(OsmLoadingTask task, int percent) {
+        if (this.progressListener == null || percent < 0)
+            return;
+        percent = Math.min(100, percent);
+        long time = System.currentTimeMillis();
+        if (task == this.reportedTask && (percent == this.reportedPercent
+                || (percent < 100 && time - this.reportTime < PROGRESS_INTERVAL)))
+            return;
+        this.reportedTask = task;
+        this.reportedPercent = percent;
+        this.reportTime = time;
+        this.progressListener.progress(task, percent);
+    }
+
+    public IPopulation<IFeature> getNodeFeatures() {
+        return this.nodeFeats;
+    }
+
+    public IPopulation<IFeature> getLineFeatures() {
+        return this.lineFeats;
+    }
+
+    public IPopulation<IFeature> getPolygonFeatures() {
+        return this.polygonFeats;
+    }
+
+    public int getNbNodes() {
+        return this.nbNodes;
+    }
+
+    public int getNbWays() {
+        return this.nbWays;
+    }
+
+    public int getNbRelations() {
+        return this.nbRelations;
+    }
+
+    /**
+     * An XML file read with SAX, its progress measured on the bytes read.
+     */
+    private static final class XmlSource implements Source {
+        private final File file;
+        private volatile long read;
+
+        XmlSource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void read(OsmResourceListener listener) throws Exception {
+            SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+            InputStream in = new BufferedInputStream(
+                    new FilterInputStream(new FileInputStream(this.file)) {
+                        @Override
+                        public int read() throws IOException {
+                            int b = super.read();
+                            if (b >= 0)
+                                XmlSource.this.read++;
+                            return b;
+                        }
+
+                        @Override
+                        public int read(byte[] b, int off, int len)
+                                throws IOException {
+                            int n = super.read(b, off, len);
+                            if (n > 0)
+                                XmlSource.this.read += n;
+                            return n;
+                        }
+                    }, 1 << 16);
+            try {
+                parser.parse(in, new OsmResourceHandler(listener));
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public int getProgress() {
+            long length = this.file.length();
+            return length == 0 ? -1 : (int) (this.read * 100 / length);
+        }
+    }
+
+}
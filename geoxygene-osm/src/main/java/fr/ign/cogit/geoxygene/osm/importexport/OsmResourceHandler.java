@@ -5,9 +5,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -20,42 +18,25 @@ import fr.ign.cogit.geoxygene.osm.schema.OsmCaptureTool;
 
 public class OsmResourceHandler extends DefaultHandler {
 
-  private OSMLoader loader;
+  private OsmResourceListener listener;
   private StringBuffer buffer;
-  private Map<String, Boolean> elements = new HashMap<String, Boolean>();
   private DateFormat formatDate = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-  private int i = 0;
   private OSMResource resource;
-  private long nbResources;
-  private int nbNodes = 0, nbWays = 0, nbRelations = 0;
   private ArrayList<Long> vertices;
   private List<OsmRelationMember> members;
   private TypeRelation type = TypeRelation.NON_DEF;;
 
-  public OsmResourceHandler(OSMLoader loader, long nbResources) {
+  public OsmResourceHandler(OsmResourceListener listener) {
     super();
-    this.loader = loader;
-    this.nbResources = nbResources;
+    this.listener = listener;
   }
 
   @Override
   public void startElement(String uri, String localName, String qName,
       Attributes attributes) throws SAXException {
-    elements.put(qName, true);
-    if (qName.equals("bounds")) {
-      loader.xMin = Double.valueOf(attributes.getValue(OSMLoader.TAG_MIN_LAT));
-      loader.xMax = Double.valueOf(attributes.getValue(OSMLoader.TAG_MAX_LAT));
-      loader.yMin = Double.valueOf(attributes.getValue(OSMLoader.TAG_MIN_LON));
-      loader.yMax = Double.valueOf(attributes.getValue(OSMLoader.TAG_MAX_LON));
-    } else if (qName.equals("osm")) {
+    if (qName.equals("bounds") || qName.equals("osm")) {
       // Do nothing, unused metadata
     } else if (qName.equals("node")) {
-      // Sleep for up to one second.
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException ignore) {
-      }
-      i++;
       resource = createResource(attributes);
       // on récupère sa géométrie
       double lat = Double.valueOf(attributes.getValue(OSMFeature.ATTR_LAT));
@@ -63,27 +44,12 @@ public class OsmResourceHandler extends DefaultHandler {
       OSMNode geom = new OSMNode(lat, lon);
       resource.setGeom(geom);
       geom.setObjet(resource);
-      nbNodes++;
     } else if (qName.equals("way")) {
-      // Sleep for up to one second.
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException ignore) {
-      }
-      i++;
       resource = createResource(attributes);
       vertices = new ArrayList<Long>();
-      nbWays++;
     } else if (qName.equals("relation")) {
-      // Sleep for up to one second.
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException ignore) {
-      }
-      i++;
       resource = createResource(attributes);
       members = new ArrayList<OsmRelationMember>();
-      nbRelations++;
     } else if (qName.equals("tag")) {
       // case of the relation type tag
       if (attributes.getValue("k").equals("type")) {
@@ -117,10 +83,6 @@ public class OsmResourceHandler extends DefaultHandler {
     } else {
       // do nothing for unknowns tags
     }
-    this.loader.setNbResources((int) nbResources);
-    this.loader.setNbNoeuds(nbNodes);
-    this.loader.setNbWays(nbWays);
-    this.loader.setNbRels(nbRelations);
   }
 
   private OSMResource createResource(Attributes attributes) {
@@ -153,30 +115,18 @@ public class OsmResourceHandler extends DefaultHandler {
 
   @Override
   public void characters(char[] ch, int start, int length) throws SAXException {
-    String lecture = new String(ch, start, length);
     if (buffer != null)
-      buffer.append(lecture);
+      buffer.append(ch, start, length);
   }
 
   @Override
   public void endElement(String uri, String localName, String qName)
       throws SAXException {
 
-    if (qName.equals("node")) {
-      loader.getNodes().add(resource);
-      resource = null;
-      loader
-          .setProgressForBar(Math.min(100, (int) (i * 100 / this.nbResources)));
-    } else if (qName.equals("way")) {
-      loader.getWays().add(resource);
-      resource = null;
-      loader
-          .setProgressForBar(Math.min(100, (int) (i * 100 / this.nbResources)));
-    } else if (qName.equals("relation")) {
-      loader.getRelations().add(resource);
+    if (qName.equals("node") || qName.equals("way")
+        || qName.equals("relation")) {
+      listener.resourceRead(resource);
       resource = null;
-      loader
-          .setProgressForBar(Math.min(100, (int) (i * 100 / this.nbResources)));
     } else if (qName.equals("nd")) {
       OSMWay geom = new OSMWay(vertices);
       resource.setGeom(geom);
@@ -190,7 +140,6 @@ public class OsmResourceHandler extends DefaultHandler {
     } else {
       // do nothing
     }
-    elements.put(qName, false);
   }
 
 }
@@ -0,0 +1,27 @@
+package fr.ign.cogit.geoxygene.osm.importexport;
+
+/**
+ * Receives the OSM resources (nodes, ways and relations) as they are read
+ * from a file, whatever its format.
+ */
+public interface OsmResourceListener {
+
+    /**
+     * Called once for each resource read, in file order.
+     * 
+     * @param resource
+     */
+    void resourceRead(OSMResource resource);
+
+    /**
+     * Called instead of {@link #resourceRead(OSMResource)} for the nodes
+     * filtered out by the source: they are not imported, but their location
+     * is still needed to assemble the ways.
+     * 
+     * @param id
+     * @param latitude
+     * @param longitude
+     */
+    void nodeLocationRead(long id, double latitude, double longitude);
+
+}
@@ -23,6 +23,7 @@ import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
 import fr.ign.cogit.geoxygene.contrib.geometrie.IndicesForme;
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMObject;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMRelation;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMResource;
@@ -122,7 +123,8 @@ public class BuildingAssessment {
                     OSMDefaultFeature feature = new OSMDefaultFeature(
                             b.getContributeur(),
                             converter.convertOSMPolygon((OSMWay) b.getGeom(),
-                                    nodes, true),
+                                    NodeLocationStore.fromResources(nodes),
+                                    true),
                             b.getId(), b.getChangeSet(), b.getVersion(),
                             b.getUid(), b.getDate(), b.getTags());
                     feature.setSource(OsmSource.valueOfTag(b.getSource()));
@@ -143,14 +145,18 @@ public class BuildingAssessment {
                         ((OSMWay) outerWay.getGeom()).getVertices(), timestamp);
                 if (nodes == null)
                     continue;
+                // les nodes de chaque way sont chargés à la date du snapshot :
+                // un seul index pour tous les ways de la relation
+                NodeLocationStore locations = NodeLocationStore
+                        .fromResources(nodes);
                 IPolygon polygon = null;
                 if (epsg.equals("2154"))
                     polygon = OsmGeometryConversion
                             .convertOSMPolygonToLambert93(
-                                    (OSMWay) outerWay.getGeom(), nodes);
+                                    (OSMWay) outerWay.getGeom(), locations);
                 else
                     polygon = converter.convertOSMPolygon(
-                            (OSMWay) outerWay.getGeom(), nodes, true);
+                            (OSMWay) outerWay.getGeom(), locations, true);
                 // if (polygon.dimension() < 2)
                 // throw new NumberPointsException("Way #" + b.getId() + " est
                 // composé de " + nodes.size() + "nodes");
@@ -168,16 +174,17 @@ public class BuildingAssessment {
                             timestamp);
                     if (nodes == null)
                         continue;
+                    locations.putAll(nodes);
                     IRing ring = null;
                     if (epsg.equals("2154"))
                         ring = OsmGeometryConversion
                                 .convertOSMPolygonToLambert93(
-                                        (OSMWay) resource.getGeom(), nodes)
+                                        (OSMWay) resource.getGeom(), locations)
                                 .getExterior();
                     else
                         ring = converter
                                 .convertOSMPolygon((OSMWay) resource.getGeom(),
-                                        nodes, true)
+                                        locations, true)
                                 .getExterior();
                     if (ring.coord().size() < 4)
                         continue;
@@ -436,8 +443,8 @@ public class BuildingAssessment {
 
                 OSMDefaultFeature feature = new OSMDefaultFeature(
                         b.getContributeur(),
-                        converter.convertOSMPolygon((OSMWay) b.getGeom(), nodes,
-                                true),
+                        converter.convertOSMPolygon((OSMWay) b.getGeom(),
+                                NodeLocationStore.fromResources(nodes), true),
                         b.getId(), b.getChangeSet(), b.getVersion(), b.getUid(),
                         b.getDate(), b.getTags());
 
@@ -474,7 +481,8 @@ public class BuildingAssessment {
             OsmGeometryConversion converter = new OsmGeometryConversion(epsg);
             OSMDefaultFeature feature = new OSMDefaultFeature(
                     r.getContributeur(),
-                    converter.convertOSMLine((OSMWay) r.getGeom(), nodes, true),
+                    converter.convertOSMLine((OSMWay) r.getGeom(),
+                            NodeLocationStore.fromResources(nodes), true),
                     r.getId(), r.getChangeSet(), r.getVersion(), r.getUid(),
                     r.getDate(), r.getTags());
 
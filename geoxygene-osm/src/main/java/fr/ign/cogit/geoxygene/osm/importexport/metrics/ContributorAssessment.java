@@ -15,6 +15,7 @@ import au.com.bytecode.opencsv.CSVWriter;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
 import fr.ign.cogit.geoxygene.osm.contributor.OSMContributor;
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMNode;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMResource;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMWay;
@@ -115,7 +116,7 @@ public class ContributorAssessment {
             List<OSMResource> myNodes = IntrinsicAssessment
                     .getNodesComposingWay(myJavaObjects, resource);
             igeom = convertor.convertOSMLine((OSMWay) resource.getGeom(),
-                    myNodes, true);
+                    NodeLocationStore.fromResources(myNodes), true);
         }
         if (resource.getGeom().getClass().getSimpleName()
                 .equals("OSMRelation")) {
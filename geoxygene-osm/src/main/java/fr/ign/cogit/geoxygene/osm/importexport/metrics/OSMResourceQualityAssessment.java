@@ -16,6 +16,7 @@ import java.util.Set;
 
 import au.com.bytecode.opencsv.CSVWriter;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMNode;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMObject;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMRelation;
@@ -521,7 +522,7 @@ public class OSMResourceQualityAssessment {
         if (resource.getGeom().getClass().getSimpleName().equals("OSMWay")) {
             List<OSMResource> myNodes = this.getWayComposition(resource);
             igeom = convertor.convertOSMLine((OSMWay) resource.getGeom(),
-                    myNodes, true);
+                    NodeLocationStore.fromResources(myNodes), true);
         }
         if (resource.getGeom().getClass().getSimpleName()
                 .equals("OSMRelation")) {
@@ -22,6 +22,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import fr.ign.cogit.geoxygene.osm.anonymization.db.SQLDBPreAnonymization;
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
 
 public class GeoxPbfReader {
 
@@ -40,6 +41,20 @@ public class GeoxPbfReader {
 	 *            path to PBF file
 	 */
 	public static void pbf2postgis(String pbfFilePath) {
+		pbf2postgis(pbfFilePath, null);
+	}
+
+	/*******
+	 * Parses a PBF file and fills a PostGIS database, recording the node
+	 * locations in the given store on the way.
+	 * 
+	 * @param pbfFilePath:
+	 *            path to PBF file
+	 * @param nodeLocations:
+	 *            store of the node locations, may be null
+	 */
+	public static void pbf2postgis(String pbfFilePath, NodeLocationStore nodeLocations) {
+		mySink.setNodeLocations(nodeLocations);
 		long tdeb = System.currentTimeMillis();
 		PbfReader reader = new PbfReader(new File(pbfFilePath), 1);
 		reader.setSink(mySink);
@@ -16,6 +16,8 @@ import org.openstreetmap.osmosis.core.domain.v0_6.Way;
 import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
 import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
+
 public class GeoxSink implements Sink {
 
 	private static Logger LOGGER = Logger.getLogger(GeoxSink.class);
@@ -28,6 +30,8 @@ public class GeoxSink implements Sink {
 	public StringBuffer relValues;
 	public StringBuffer relmbValues;
 	public String name;
+	/** Optional store of the node locations, to assemble ways afterwards. */
+	private NodeLocationStore nodeLocations;
 
 	String host = "localhost";
 	String port = "5432";
@@ -36,6 +40,21 @@ public class GeoxSink implements Sink {
 	String dbPwd = "postgres";
 	String url = "jdbc:postgresql://" + host + ":" + port + "/" + dbName;
 
+	public NodeLocationStore getNodeLocations() {
+		return nodeLocations;
+	}
+
+	/**
+	 * Sets a store filled with the location of every node read, so that way
+	 * and relation geometries can be assembled without querying the node
+	 * table.
+	 * 
+	 * @param nodeLocations
+	 */
+	public void setNodeLocations(NodeLocationStore nodeLocations) {
+		this.nodeLocations = nodeLocations;
+	}
+
 	@Override
 	public void initialize(Map<String, Object> arg0) {
 		this.myQueries = new StringBuffer();
@@ -131,6 +150,8 @@ public class GeoxSink implements Sink {
 	}
 
 	private void processNode(Node myNode) {
+		if (nodeLocations != null)
+			nodeLocations.put(myNode.getId(), myNode.getLatitude(), myNode.getLongitude());
 		StringBuffer hstore = new StringBuffer();
 		String wkt = "POINT(" + myNode.getLongitude() + " " + myNode.getLatitude() + ")";
 		for (Tag tag : myNode.getTags()) {
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This software is released under the licence CeCILL
+ * 
+ * see Licence_CeCILL-C_fr.html see Licence_CeCILL-C_en.html
+ * 
+ * see <a href="http://www.cecill.info/">http://www.cecill.info/a>
+ * 
+ * @copyright IGN
+ ******************************************************************************/
+package fr.ign.cogit.geoxygene.osm.importexport.pbf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.openstreetmap.osmosis.pbf2.v0_6.PbfReader;
+
+import fr.ign.cogit.geoxygene.osm.importexport.OSMNode;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMRelation;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMRelation.RoleMembre;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMRelation.TypeRelation;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMResource;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMWay;
+import fr.ign.cogit.geoxygene.osm.importexport.OsmImportPipeline;
+import fr.ign.cogit.geoxygene.osm.importexport.OsmRelationMember;
+import fr.ign.cogit.geoxygene.osm.importexport.OsmResourceListener;
+import fr.ign.cogit.geoxygene.osm.importexport.PrimitiveGeomOSM;
+import fr.ign.cogit.geoxygene.osm.schema.OsmCaptureTool;
+
+/**
+ * Reads a PBF file with osmosis and converts its entities into
+ * {@link OSMResource}, like the SAX handler does for XML files. The blobs of
+ * the file are independent and are decoded in parallel by osmosis worker
+ * threads, the entities being still passed to the listener in file order.
+ * <p>
+ * With a tag filter, the nodes without the tag key are not converted: only
+ * their location is passed to the listener. Ways and relations are always
+ * converted, as multipolygons may reference untagged ways.
+ */
+public class PbfResourceReader implements OsmImportPipeline.Source {
+
+	private File file;
+	private int workers;
+	private String tagFilter;
+
+	/**
+	 * Creates a reader decoding the file with one worker per processor.
+	 * 
+	 * @param file
+	 */
+	public PbfResourceReader(File file) {
+		this(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param file
+	 * @param workers
+	 *            the number of threads decoding the blobs, 0 to decode them
+	 *            in the reading thread.
+	 */
+	public PbfResourceReader(File file, int workers) {
+		this.file = file;
+		this.workers = workers;
+	}
+
+	public String getTagFilter() {
+		return tagFilter;
+	}
+
+	/**
+	 * @param tagFilter
+	 *            if not null nor empty, only the nodes with this tag key are
+	 *            converted into resources.
+	 */
+	public void setTagFilter(String tagFilter) {
+		this.tagFilter = tagFilter;
+	}
+
+	@Override
+	public void read(final OsmResourceListener listener) throws Exception {
+		final boolean filter = tagFilter != null && !tagFilter.equals("");
+		PbfReader reader = new PbfReader(file, workers);
+		reader.setSink(new Sink() {
+			@Override
+			public void initialize(Map<String, Object> metaData) {
+				// nothing to initialize
+			}
+
+			@Override
+			public void process(EntityContainer container) {
+				Entity entity = container.getEntity();
+				if (filter && entity instanceof Node && !hasTag(entity, tagFilter)) {
+					Node node = (Node) entity;
+					listener.nodeLocationRead(node.getId(), node.getLatitude(), node.getLongitude());
+					return;
+				}
+				OSMResource resource = convert(entity);
+				if (resource != null)
+					listener.resourceRead(resource);
+			}
+
+			@Override
+			public void complete() {
+				// nothing to flush
+			}
+
+			@Override
+			public void release() {
+				// nothing to release
+			}
+		});
+		reader.run();
+	}
+
+	/**
+	 * The size of the decoded blocks is not known.
+	 */
+	@Override
+	public int getProgress() {
+		return -1;
+	}
+
+	private static boolean hasTag(Entity entity, String key) {
+		for (Tag tag : entity.getTags()) {
+			if (tag.getKey().equals(key))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Converts an osmosis entity into a resource.
+	 * 
+	 * @param entity
+	 * @return the resource, or null for bounds.
+	 */
+	public static OSMResource convert(Entity entity) {
+		PrimitiveGeomOSM geom;
+		if (entity instanceof Node) {
+			Node node = (Node) entity;
+			geom = new OSMNode(node.getLatitude(), node.getLongitude());
+		} else if (entity instanceof Way) {
+			List<Long> vertices = new ArrayList<Long>();
+			for (WayNode wayNode : ((Way) entity).getWayNodes())
+				vertices.add(wayNode.getNodeId());
+			geom = new OSMWay(vertices);
+		} else if (entity instanceof Relation) {
+			List<OsmRelationMember> members = new ArrayList<OsmRelationMember>();
+			for (RelationMember member : ((Relation) entity).getMembers()) {
+				EntityType type = member.getMemberType();
+				members.add(new OsmRelationMember(RoleMembre.valueOfTexte(member.getMemberRole()),
+						type == EntityType.Node, type == EntityType.Way, type == EntityType.Relation,
+						member.getMemberId()));
+			}
+			geom = new OSMRelation(TypeRelation.NON_DEF, members);
+		} else {
+			return null;
+		}
+		String contributor = entity.getUser().getName();
+		OSMResource resource = new OSMResource(contributor.equals("") ? null : contributor, geom, entity.getId(),
+				(int) entity.getChangesetId(), entity.getVersion(), entity.getUser().getId(), entity.getTimestamp());
+		geom.setObjet(resource);
+		for (Tag tag : entity.getTags()) {
+			if (tag.getKey().equals(OSMRelation.TAG_TYPE) && geom instanceof OSMRelation)
+				((OSMRelation) geom).setType(TypeRelation.valueOfTexte(tag.getValue()));
+			else if (tag.getKey().equals("created_by"))
+				resource.setCaptureTool(OsmCaptureTool.valueOfTexte(tag.getValue()));
+			else if (tag.getKey().equals("source"))
+				resource.setSource(tag.getValue());
+			resource.addTag(tag.getKey(), tag.getValue());
+		}
+		return resource;
+	}
+
+}
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * This software is released under the licence CeCILL
+ *
+ * see Licence_CeCILL-C_fr.html see Licence_CeCILL-C_en.html
+ *
+ * see <a href="http://www.cecill.info/">http://www.cecill.info/a>
+ *
+ * @copyright IGN
+ ******************************************************************************/
+
+package fr.ign.cogit.geoxygene.osm.importexport.postgis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.openstreetmap.osmosis.pbf2.v0_6.PbfReader;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import fr.ign.cogit.geoxygene.osm.anonymization.db.access.PostgresAccess;
+import fr.ign.cogit.geoxygene.osm.importexport.pbf.GeoxSink;
+
+/**
+ * Loads OSM entities, including the full history of their versions, in the
+ * node, way, relation and relationmember tables of
+ * <code>sql/osm_creation_tables_sans_pk.sql</code>, like {@link GeoxSink}
+ * does with INSERT queries. The rows are sent with the binary
+ * <code>COPY ... FROM STDIN</code> protocol on a pooled connection, and
+ * committed every {@link #getBatchSize()} entities. The indexes of the tables
+ * are dropped before the load and built once it is complete, which is much
+ * faster than maintaining them row by row.
+ * <p>
+ * As in {@link GeoxSink}, the key of a version (idnode, idway or idrel) is
+ * the concatenation of the id and the version number.
+ *
+ * @author GeOxygene
+ */
+public class OsmHistoryCopyLoader implements Sink {
+
+	private static Logger LOGGER = Logger.getLogger(OsmHistoryCopyLoader.class);
+
+	/** The default number of entities per transaction. */
+	public static final int DEFAULT_BATCH_SIZE = 100000;
+
+	/** The SRID of the node geometries. */
+	public static final int SRID = 4326;
+
+	/** The indexes of the tables, by name. */
+	private static final String[][] INDEXES = { { "node_geom_gist", "CREATE INDEX node_geom_gist ON node USING GIST (geom)" },
+			{ "id_idx", "CREATE INDEX id_idx ON node (id)" }, { "id_way_idx", "CREATE INDEX id_way_idx ON way (id)" },
+			{ "id_relation_idx", "CREATE INDEX id_relation_idx ON relation (id)" },
+			{ "idmb_idx", "CREATE INDEX idmb_idx ON relationmember (idmb)" } };
+
+	/**
+	 * The rows of a table waiting for the next COPY.
+	 */
+	private static class Table {
+		private final String name;
+		private final String copy;
+		private final Buffer buffer = new Buffer();
+		private PgBinaryCopyWriter writer = new PgBinaryCopyWriter(buffer);
+		private long rows;
+
+		Table(String name, String columns) {
+			this.name = name;
+			this.copy = "COPY " + name + " (" + columns + ") FROM STDIN WITH BINARY";
+		}
+
+		void reset() {
+			rows += writer.getRows();
+			buffer.reset();
+			writer = new PgBinaryCopyWriter(buffer);
+		}
+	}
+
+	/**
+	 * A byte buffer read back without being copied.
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(1 << 20);
+		}
+
+		InputStream input() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+
+	private PostgresAccess access;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private boolean rebuildIndexes = true;
+
+	private Connection connection;
+	private CopyManager copyManager;
+	private Table nodes = new Table("node", "idnode, id, uid, vnode, changeset, username, datemodif, tags, lat, lon, geom");
+	private Table ways = new Table("way", "idway, id, uid, vway, changeset, username, datemodif, tags, composedof");
+	private Table relations = new Table("relation", "idrel, id, uid, vrel, changeset, username, datemodif, tags");
+	private Table members = new Table("relationmember", "idrel, idmb, idrelmb, typemb, rolemb");
+	private List<Table> tables = Arrays.asList(nodes, ways, relations, members);
+	private int pending;
+	private long[] wayNodes = new long[256];
+	private Map<String, String> tags = new LinkedHashMap<String, String>();
+
+	public OsmHistoryCopyLoader(PostgresAccess access) {
+		this.access = access;
+	}
+
+	/**
+	 * Loads a PBF file, its blobs being decoded by one thread per processor.
+	 *
+	 * @param pbfFile
+	 * @param access
+	 */
+	public static void load(File pbfFile, PostgresAccess access) {
+		PbfReader reader = new PbfReader(pbfFile, Runtime.getRuntime().availableProcessors());
+		reader.setSink(new OsmHistoryCopyLoader(access));
+		reader.run();
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isRebuildIndexes() {
+		return rebuildIndexes;
+	}
+
+	/**
+	 * @param rebuildIndexes
+	 *            if false, the indexes are left as they are, for instance
+	 *            when loading a small file in large tables.
+	 */
+	public void setRebuildIndexes(boolean rebuildIndexes) {
+		this.rebuildIndexes = rebuildIndexes;
+	}
+
+	@Override
+	public void initialize(Map<String, Object> metaData) {
+		try {
+			connection = access.getConnection();
+			connection.setAutoCommit(false);
+			copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+			if (rebuildIndexes) {
+				Statement statement = connection.createStatement();
+				for (String[] index : INDEXES)
+					statement.execute("DROP INDEX IF EXISTS " + index[0]);
+				statement.close();
+				connection.commit();
+			}
+		} catch (SQLException e) {
+			throw new OsmosisRuntimeException("Unable to prepare the OSM tables", e);
+		}
+	}
+
+	@Override
+	public void process(EntityContainer container) {
+		Entity entity = container.getEntity();
+		try {
+			if (entity instanceof Node)
+				writeNode((Node) entity);
+			else if (entity instanceof Way)
+				writeWay((Way) entity);
+			else if (entity instanceof Relation)
+				writeRelation((Relation) entity);
+			else
+				return;
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write entity " + entity.getId(), e);
+		}
+		if (++pending >= batchSize)
+			flush();
+	}
+
+	private void writeNode(Node node) throws IOException {
+		PgBinaryCopyWriter writer = nodes.writer;
+		writeCommon(writer, node, 11);
+		writer.writeNumeric(node.getLatitude());
+		writer.writeNumeric(node.getLongitude());
+		writer.writePoint(node.getLongitude(), node.getLatitude(), SRID);
+	}
+
+	private void writeWay(Way way) throws IOException {
+		PgBinaryCopyWriter writer = ways.writer;
+		writeCommon(writer, way, 9);
+		List<WayNode> vertices = way.getWayNodes();
+		if (wayNodes.length < vertices.size())
+			wayNodes = new long[Math.max(vertices.size(), 2 * wayNodes.length)];
+		for (int i = 0; i < vertices.size(); i++)
+			wayNodes[i] = vertices.get(i).getNodeId();
+		writer.writeLongArray(wayNodes, vertices.size());
+	}
+
+	private void writeRelation(Relation relation) throws IOException {
+		writeCommon(relations.writer, relation, 8);
+		long idrel = versionedId(relation);
+		PgBinaryCopyWriter writer = members.writer;
+		for (RelationMember member : relation.getMembers()) {
+			writer.startRow(5);
+			writer.writeLong(idrel);
+			writer.writeLong(member.getMemberId());
+			writer.writeText(String.valueOf(idrel) + member.getMemberId());
+			writer.writeText(member.getMemberType().toString());
+			writer.writeText(member.getMemberRole());
+		}
+	}
+
+	/**
+	 * Writes the columns shared by the three entity tables.
+	 */
+	private void writeCommon(PgBinaryCopyWriter writer, Entity entity, int fields) throws IOException {
+		writer.startRow(fields);
+		writer.writeLong(versionedId(entity));
+		writer.writeLong(entity.getId());
+		writer.writeLong(entity.getUser().getId());
+		writer.writeInt(entity.getVersion());
+		writer.writeInt((int) entity.getChangesetId());
+		writer.writeText(entity.getUser().getName());
+		writer.writeTimestamp(entity.getTimestamp());
+		tags.clear();
+		for (Tag tag : entity.getTags())
+			tags.put(tag.getKey(), tag.getValue());
+		writer.writeHstore(tags);
+	}
+
+	private static long versionedId(Entity entity) {
+		return Long.parseLong(String.valueOf(entity.getId()) + entity.getVersion());
+	}
+
+	/**
+	 * Copies the pending rows of every table and commits them.
+	 */
+	private void flush() {
+		try {
+			for (Table table : tables) {
+				if (table.writer.getRows() == 0)
+					continue;
+				table.writer.finish();
+				copyManager.copyIn(table.copy, table.buffer.input());
+				table.reset();
+			}
+			connection.commit();
+		} catch (SQLException | IOException e) {
+			throw new OsmosisRuntimeException("Unable to copy the OSM entities", e);
+		}
+		pending = 0;
+	}
+
+	@Override
+	public void complete() {
+		flush();
+		try {
+			Statement statement = connection.createStatement();
+			if (rebuildIndexes) {
+				for (String[] index : INDEXES)
+					statement.execute(index[1]);
+			}
+			for (Table table : tables)
+				statement.execute("ANALYZE " + table.name);
+			statement.close();
+			connection.commit();
+		} catch (SQLException e) {
+			throw new OsmosisRuntimeException("Unable to index the OSM tables", e);
+		}
+		LOGGER.info(nodes.rows + " nodes, " + ways.rows + " ways, " + relations.rows + " relations and " + members.rows
+				+ " relation members loaded");
+	}
+
+	@Override
+	public void release() {
+		if (connection == null)
+			return;
+		try {
+			connection.rollback();
+			connection.close();
+		} catch (SQLException e) {
+			LOGGER.error(e.getMessage());
+		}
+		connection = null;
+	}
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * This software is released under the licence CeCILL
+ *
+ * see Licence_CeCILL-C_fr.html see Licence_CeCILL-C_en.html
+ *
+ * see <a href="http://www.cecill.info/">http://www.cecill.info/a>
+ *
+ * @copyright IGN
+ ******************************************************************************/
+
+package fr.ign.cogit.geoxygene.osm.importexport.postgis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows in the binary format of the PostgreSQL
+ * <code>COPY ... FROM STDIN WITH BINARY</code> command. Values are written
+ * in the binary representation of the column types, so the server does not
+ * parse any text: the types must match the columns exactly (bigint, integer,
+ * numeric, varchar, timestamp with time zone, hstore, bigint[] and PostGIS
+ * geometry).
+ *
+ * @author GeOxygene
+ */
+public class PgBinaryCopyWriter {
+
+	/** The signature starting a binary COPY stream. */
+	public static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+
+	/** The OID of the bigint type, for the elements of bigint arrays. */
+	public static final int INT8_OID = 20;
+
+	/** The PostgreSQL epoch (2000-01-01 UTC) in Java milliseconds. */
+	private static final long PG_EPOCH = 946684800000L;
+
+	/** The flag of an extended WKB type with a SRID. */
+	private static final int EWKB_SRID_FLAG = 0x20000000;
+
+	private DataOutputStream out;
+	private ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+	private DataOutputStream scratchOut = new DataOutputStream(scratch);
+	private boolean started;
+	private int rows;
+
+	public PgBinaryCopyWriter(OutputStream out) {
+		this.out = new DataOutputStream(out);
+	}
+
+	/**
+	 * @return the number of rows started so far.
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Starts a new row, to be followed by exactly the given number of values.
+	 *
+	 * @param fields
+	 * @throws IOException
+	 */
+	public void startRow(int fields) throws IOException {
+		if (!started)
+			writeHeader();
+		out.writeShort(fields);
+		rows++;
+	}
+
+	public void writeNull() throws IOException {
+		out.writeInt(-1);
+	}
+
+	public void writeLong(long value) throws IOException {
+		out.writeInt(8);
+		out.writeLong(value);
+	}
+
+	public void writeInt(int value) throws IOException {
+		out.writeInt(4);
+		out.writeInt(value);
+	}
+
+	/**
+	 * Writes a text value in UTF-8, or null. The NUL characters, which
+	 * PostgreSQL does not accept in text values, are removed.
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeText(String value) throws IOException {
+		if (value == null) {
+			writeNull();
+			return;
+		}
+		if (value.indexOf('\0') >= 0)
+			value = value.replace("\0", "");
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes a timestamp with time zone, as microseconds from the PostgreSQL
+	 * epoch.
+	 *
+	 * @param date
+	 * @throws IOException
+	 */
+	public void writeTimestamp(Date date) throws IOException {
+		if (date == null) {
+			writeNull();
+			return;
+		}
+		writeLong((date.getTime() - PG_EPOCH) * 1000);
+	}
+
+	/**
+	 * Writes a numeric value with the decimals of its shortest representation,
+	 * like the text of {@link Double#toString(double)}.
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeNumeric(double value) throws IOException {
+		writeNumeric(BigDecimal.valueOf(value));
+	}
+
+	/**
+	 * Writes a numeric value: its digits are written in base 10000, grouped
+	 * from the decimal point.
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeNumeric(BigDecimal value) throws IOException {
+		if (value == null) {
+			writeNull();
+			return;
+		}
+		if (value.scale() < 0)
+			value = value.setScale(0);
+		int scale = value.scale();
+		String digits = value.unscaledValue().abs().toString();
+		int intLength = digits.length() - scale;
+		StringBuilder padded = new StringBuilder();
+		if (intLength > 0) {
+			for (int i = 0; i < (4 - intLength % 4) % 4; i++)
+				padded.append('0');
+		} else {
+			for (int i = 0; i < -intLength; i++)
+				padded.append('0');
+		}
+		int weight = (intLength > 0 ? (intLength + 3) / 4 : 0) - 1;
+		padded.append(digits);
+		while (padded.length() % 4 != 0)
+			padded.append('0');
+		List<Short> groups = new ArrayList<Short>(padded.length() / 4);
+		for (int i = 0; i < padded.length(); i += 4)
+			groups.add(Short.valueOf(padded.substring(i, i + 4)));
+		while (!groups.isEmpty() && groups.get(0).shortValue() == 0) {
+			groups.remove(0);
+			weight--;
+		}
+		while (!groups.isEmpty() && groups.get(groups.size() - 1).shortValue() == 0)
+			groups.remove(groups.size() - 1);
+		if (groups.isEmpty())
+			weight = 0;
+		out.writeInt(8 + 2 * groups.size());
+		out.writeShort(groups.size());
+		out.writeShort(weight);
+		out.writeShort(groups.isEmpty() || value.signum() >= 0 ? 0 : 0x4000);
+		out.writeShort(scale);
+		for (Short group : groups)
+			out.writeShort(group.shortValue());
+	}
+
+	/**
+	 * Writes the pairs of a map as an hstore value.
+	 *
+	 * @param tags
+	 * @throws IOException
+	 */
+	public void writeHstore(Map<String, String> tags) throws IOException {
+		if (tags == null) {
+			writeNull();
+			return;
+		}
+		scratch.reset();
+		scratchOut.writeInt(tags.size());
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			writeScratchText(tag.getKey());
+			if (tag.getValue() == null)
+				scratchOut.writeInt(-1);
+			else
+				writeScratchText(tag.getValue());
+		}
+		out.writeInt(scratch.size());
+		scratch.writeTo(out);
+	}
+
+	private void writeScratchText(String value) throws IOException {
+		if (value.indexOf('\0') >= 0)
+			value = value.replace("\0", "");
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		scratchOut.writeInt(bytes.length);
+		scratchOut.write(bytes);
+	}
+
+	/**
+	 * Writes a one dimension bigint array, or null if the array is empty.
+	 *
+	 * @param values
+	 * @param count
+	 *            the number of values to write
+	 * @throws IOException
+	 */
+	public void writeLongArray(long[] values, int count) throws IOException {
+		if (values == null || count == 0) {
+			writeNull();
+			return;
+		}
+		out.writeInt(20 + 12 * count);
+		out.writeInt(1); // dimensions
+		out.writeInt(0); // no null element
+		out.writeInt(INT8_OID);
+		out.writeInt(count);
+		out.writeInt(1); // lower bound
+		for (int i = 0; i < count; i++) {
+			out.writeInt(8);
+			out.writeLong(values[i]);
+		}
+	}
+
+	/**
+	 * Writes a PostGIS point geometry, as big-endian extended WKB.
+	 *
+	 * @param x
+	 * @param y
+	 * @param srid
+	 * @throws IOException
+	 */
+	public void writePoint(double x, double y, int srid) throws IOException {
+		out.writeInt(25);
+		out.writeByte(0);
+		out.writeInt(EWKB_SRID_FLAG | 1);
+		out.writeInt(srid);
+		out.writeDouble(x);
+		out.writeDouble(y);
+	}
+
+	/**
+	 * Ends the stream. The writer must not be used afterwards.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (!started)
+			writeHeader();
+		out.writeShort(-1);
+		out.flush();
+	}
+
+	private void writeHeader() throws IOException {
+		out.write(SIGNATURE);
+		out.writeInt(0); // flags
+		out.writeInt(0); // header extension length
+		started = true;
+	}
+}
@@ -1,8 +1,8 @@
 package fr.ign.cogit.geoxygene.osm.lodanalysis.relations;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,6 +14,7 @@ import fr.ign.cogit.geoxygene.contrib.multicriteriadecision.classifying.electret
 import fr.ign.cogit.geoxygene.osm.lodanalysis.LoDCategory;
 import fr.ign.cogit.geoxygene.osm.lodanalysis.individual.LoDMultiCriteria;
 import fr.ign.cogit.geoxygene.osm.schema.OSMFeature;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 
 public class BuildingNotCrossingRiver extends LoDSpatialRelationDetection {
 
@@ -34,6 +35,8 @@ public class BuildingNotCrossingRiver extends LoDSpatialRelationDetection {
         .initConclusion(electre.getCriteria());
     Set<LoDSpatialRelation> instances = new HashSet<LoDSpatialRelation>();
     // features1 is the set of buildings
+    Map<IFeature, List<IFeature>> closeRivers = join(
+        SpatialJoin.Predicate.WITHIN_DISTANCE, distanceThreshold);
     for (IFeature building : getFeatures1()) {
       // get the LoD category for the building
       Map<String, Double> valeursCourantes = new HashMap<String, Double>();
@@ -47,10 +50,9 @@ public class BuildingNotCrossingRiver extends LoDSpatialRelationDetection {
               .getCategory());
 
       // searches for a water areas that cross the building
-      Collection<IFeature> rivers = getFeatures2()
-          .select(building.getGeom().buffer(distanceThreshold));
+      List<IFeature> rivers = closeRivers.get(building);
 
-      if (rivers.size() == 0) {
+      if (rivers == null) {
         continue;
       } else {
         // there should be only one built-up area
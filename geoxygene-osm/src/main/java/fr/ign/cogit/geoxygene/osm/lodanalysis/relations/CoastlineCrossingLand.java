@@ -1,8 +1,8 @@
 package fr.ign.cogit.geoxygene.osm.lodanalysis.relations;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,6 +14,7 @@ import fr.ign.cogit.geoxygene.contrib.multicriteriadecision.classifying.electret
 import fr.ign.cogit.geoxygene.osm.lodanalysis.LoDCategory;
 import fr.ign.cogit.geoxygene.osm.lodanalysis.individual.LoDMultiCriteria;
 import fr.ign.cogit.geoxygene.osm.schema.OSMFeature;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 
 public class CoastlineCrossingLand extends LoDSpatialRelationDetection {
 
@@ -30,9 +31,13 @@ public class CoastlineCrossingLand extends LoDSpatialRelationDetection {
         .initConclusion(electre.getCriteria());
     Set<LoDSpatialRelation> instances = new HashSet<LoDSpatialRelation>();
     // features1 is the set of urban blocks
+    Map<IFeature, List<IFeature>> intersecting = join(
+        SpatialJoin.Predicate.INTERSECTS, 0);
     for (IFeature coastline : getFeatures1()) {
       // get the land use parcels that intersect the coastline
-      Collection<IFeature> parcels = getFeatures2().select(coastline.getGeom());
+      List<IFeature> parcels = intersecting.get(coastline);
+      if (parcels == null)
+        continue;
       Map<String, Double> valeursCourantes = new HashMap<String, Double>();
       for (Criterion crit : electre.getCriteria()) {
         Map<String, Object> param = LoDMultiCriteria
@@ -1,9 +1,12 @@
 package fr.ign.cogit.geoxygene.osm.lodanalysis.relations;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 
 /**
  * the classes that extend LoDSpatialRelationDetection are classes to identify
@@ -47,6 +50,21 @@ public abstract class LoDSpatialRelationDetection {
    */
   public abstract Set<LoDSpatialRelation> findInstances();
 
+  /**
+   * Spatial join of features1 with features2, to get the candidate features2
+   * of each feature of features1 without a select loop.
+   * @param predicate the join predicate
+   * @param distance the join distance, for WITHIN_DISTANCE and NEAREST
+   * @return for each feature of features1 with candidates, its candidates
+   */
+  protected Map<IFeature, List<IFeature>> join(SpatialJoin.Predicate predicate,
+      double distance) {
+    SpatialJoin<IFeature, IFeature> join = new SpatialJoin<IFeature, IFeature>(
+        features1, features2, predicate);
+    join.setDistance(distance);
+    return join.join();
+  }
+
   public abstract String getName();
 
   public void setLodDiffThreshold(int lodDiffThreshold) {
@@ -2,6 +2,7 @@ package fr.ign.cogit.geoxygene.osm.lodanalysis.relations;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -19,6 +20,7 @@ import fr.ign.cogit.geoxygene.osm.schema.OSMFeature;
 import fr.ign.cogit.geoxygene.util.algo.geometricAlgorithms.GeometryFactory;
 import fr.ign.cogit.geoxygene.util.algo.geometricAlgorithms.morphomaths.BufferComputing;
 import fr.ign.cogit.geoxygene.util.algo.geometricAlgorithms.morphomaths.Side;
+import fr.ign.cogit.geoxygene.util.index.SpatialJoin;
 
 public class TreeAlongRoad extends LoDSpatialRelationDetection {
 
@@ -49,7 +51,14 @@ public class TreeAlongRoad extends LoDSpatialRelationDetection {
         .initConclusion(electrePt.getCriteria());
     Set<LoDSpatialRelation> instances = new HashSet<LoDSpatialRelation>();
 
+    // the trees that may touch the half buffers of each road, i.e. closer than
+    // the buffer width plus the tree width
+    Map<IFeature, List<IFeature>> closeTrees = join(
+        SpatialJoin.Predicate.WITHIN_DISTANCE, roadWidth + 2 * treeWidth);
     for (IFeature road : getFeatures1()) {
+      List<IFeature> trees = closeTrees.get(road);
+      if (trees == null)
+        continue;
 
       // get the LoD category for the road
       Map<String, Double> valeursCourantes = new HashMap<String, Double>();
@@ -72,7 +81,7 @@ public class TreeAlongRoad extends LoDSpatialRelationDetection {
       IPolygon leftBuffer = BufferComputing.buildHalfOffsetBuffer(Side.LEFT,
           (ILineString) road.getGeom(), widthBuffer);
 
-      for (IFeature tree : getFeatures2()) {
+      for (IFeature tree : trees) {
         // search for trees close to the buffer
         if (rightBuffer != null
             && rightBuffer.intersects(GeometryFactory.buildCircle(
@@ -8,13 +8,14 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
 import fr.ign.cogit.geoxygene.datatools.CRSConversion;
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMNode;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMResource;
 import fr.ign.cogit.geoxygene.osm.importexport.OSMWay;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
-import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 
 public class OsmGeometryConversion {
 
@@ -46,28 +47,30 @@ public class OsmGeometryConversion {
      * @param nodes
      * @return
      * @throws Exception
+     * @deprecated builds a {@link NodeLocationStore} on each call: build the
+     *             store once and use
+     *             {@link #convertOSMLine(OSMWay, NodeLocationStore, boolean)}
      */
+    @Deprecated
     public ILineString convertOSMLine(OSMWay way, Collection<OSMResource> nodes,
             boolean crsConversion) throws Exception {
-        IDirectPositionList coord = new DirectPositionList();
-        for (long index : way.getVertices()) {
-            OSMNode vertex = null;
-            for (OSMResource node : nodes) {
-                if (node.getId() == index) {
-                    vertex = (OSMNode) node.getGeom();
-                    break;
-                }
-            }
-            if (vertex != null && crsConversion) {
-                IDirectPosition pt = CRSConversion
-                        .changeCRS(new GM_Point(vertex.getPosition()), "4326",
-                                epsg, false, true)
-                        .coord().get(0);
-                coord.add(pt);
-            } else if (vertex != null)
-                coord.add(vertex.getPosition());
-        }
-        return new GM_LineString(coord);
+        return convertOSMLine(way, NodeLocationStore.fromResources(nodes),
+                crsConversion);
+    }
+
+    /**
+     * Converts a way into a {@link ILineString} using a store of the node
+     * locations, as ways only describe the node id of the vertices. The
+     * coordinates are projected in the given coordinate system.
+     * 
+     * @param way
+     * @param nodes
+     * @return
+     * @throws Exception
+     */
+    public ILineString convertOSMLine(OSMWay way, NodeLocationStore nodes,
+            boolean crsConversion) throws Exception {
+        return new GM_LineString(convertVertices(way, nodes, crsConversion));
     }
 
     /**
@@ -78,25 +81,29 @@ public class OsmGeometryConversion {
      * @param way
      * @param nodes
      * @return
+     * @deprecated builds a {@link NodeLocationStore} on each call: build the
+     *             store once and use
+     *             {@link #convertOSMLineToLambert93(OSMWay, NodeLocationStore)}
      */
+    @Deprecated
     public static ILineString convertOSMLineToLambert93(OSMWay way,
             Collection<OSMResource> nodes) {
-        IDirectPositionList coord = new DirectPositionList();
-        for (long index : way.getVertices()) {
-            OSMNode vertex = null;
-            for (OSMResource node : nodes) {
-                if (node.getId() == index) {
-                    vertex = (OSMNode) node.getGeom();
-                    break;
-                }
-            }
-            if (vertex != null) {
-                IDirectPosition pt = CRSConversion.wgs84ToLambert93(
-                        vertex.getLatitude(), vertex.getLongitude());
-                coord.add(pt);
-            }
-        }
-        return new GM_LineString(coord);
+        return convertOSMLineToLambert93(way,
+                NodeLocationStore.fromResources(nodes));
+    }
+
+    /**
+     * Converts a way into a {@link ILineString} using a store of the node
+     * locations. The coordinates are projected in Lambert93 so it doesn't work
+     * on non-French data.
+     * 
+     * @param way
+     * @param nodes
+     * @return
+     */
+    public static ILineString convertOSMLineToLambert93(OSMWay way,
+            NodeLocationStore nodes) {
+        return new GM_LineString(convertVerticesToLambert93(way, nodes));
     }
 
     /**
@@ -108,28 +115,37 @@ public class OsmGeometryConversion {
      * @param way
      * @param nodes
      * @return
+     * @deprecated builds a {@link NodeLocationStore} on each call: build the
+     *             store once and use
+     *             {@link #convertOSMPolygonToLambert93(OSMWay, NodeLocationStore)}
      */
+    @Deprecated
     public static IPolygon convertOSMPolygonToLambert93(OSMWay way,
             Collection<OSMResource> nodes) {
         if (!way.isPolygon()) {
             return null;
         }
-        IDirectPositionList coord = new DirectPositionList();
-        for (long index : way.getVertices()) {
-            OSMNode vertex = null;
-            for (OSMResource node : nodes) {
-                if (node.getId() == index) {
-                    vertex = (OSMNode) node.getGeom();
-                    break;
-                }
-            }
-            if (vertex != null) {
-                IDirectPosition pt = CRSConversion.wgs84ToLambert93(
-                        vertex.getLatitude(), vertex.getLongitude());
-                coord.add(pt);
-            }
+        return convertOSMPolygonToLambert93(way,
+                NodeLocationStore.fromResources(nodes));
+    }
+
+    /**
+     * Converts a way into a {@link IPolygon} using a store of the node
+     * locations. If the way does not represent a polygon, returns null. The
+     * coordinates are projected in Lambert93 so it doesn't work on non-French
+     * data.
+     * 
+     * @param way
+     * @param nodes
+     * @return
+     */
+    public static IPolygon convertOSMPolygonToLambert93(OSMWay way,
+            NodeLocationStore nodes) {
+        if (!way.isPolygon()) {
+            return null;
         }
-        return new GM_Polygon(new GM_LineString(coord));
+        return new GM_Polygon(
+                new GM_LineString(convertVerticesToLambert93(way, nodes)));
     }
 
     /**
@@ -141,34 +157,97 @@ public class OsmGeometryConversion {
      * @param nodes
      * @return
      * @throws Exception
+     * @deprecated builds a {@link NodeLocationStore} on each call: build the
+     *             store once and use
+     *             {@link #convertOSMPolygon(OSMWay, NodeLocationStore, boolean)}
      */
+    @Deprecated
     public IPolygon convertOSMPolygon(OSMWay way, Collection<OSMResource> nodes,
             boolean crsConversion) throws Exception {
         if (!way.isPolygon()) {
             return null;
         }
+        return convertOSMPolygon(way, NodeLocationStore.fromResources(nodes),
+                crsConversion);
+    }
+
+    /**
+     * Converts a way into a {@link IPolygon} using a store of the node
+     * locations. If the way does not represent a polygon, returns null.
+     * 
+     * @param way
+     * @param nodes
+     * @return
+     * @throws Exception
+     */
+    public IPolygon convertOSMPolygon(OSMWay way, NodeLocationStore nodes,
+            boolean crsConversion) throws Exception {
+        if (!way.isPolygon()) {
+            return null;
+        }
+        IDirectPositionList coord = convertVertices(way, nodes, crsConversion);
+        if (coord.size() == 1)
+            return null;
+        return new GM_Polygon(new GM_LineString(coord));
+    }
+
+    /**
+     * Looks up the vertices of a way in the store, skipping the unknown nodes.
+     */
+    private IDirectPositionList convertVertices(OSMWay way,
+            NodeLocationStore nodes, boolean crsConversion) throws Exception {
         IDirectPositionList coord = new DirectPositionList();
         for (long index : way.getVertices()) {
-            OSMNode vertex = null;
-            for (OSMResource node : nodes) {
-                if (node.getId() == index) {
-                    vertex = (OSMNode) node.getGeom();
-                    break;
-                }
+            IDirectPosition vertex = nodes.getPosition(index);
+            if (vertex != null) {
+                coord.add(vertex);
             }
-            if (vertex != null && crsConversion) {
-                IDirectPosition pt = CRSConversion
-                        .changeCRS(new GM_Point(vertex.getPosition()), "4326",
-                                epsg, false, true)
-                        .coord().get(0);
-                coord.add(pt);
-            } else if (vertex != null) {
-                coord.add(vertex.getPosition());
+        }
+        if (crsConversion)
+            return project(coord);
+        return coord;
+    }
+
+    /**
+     * Projects a WGS84 position (longitude, latitude) in the coordinate
+     * system of this conversion.
+     * 
+     * @param position
+     * @return
+     * @throws Exception
+     */
+    public IDirectPosition project(IDirectPosition position)
+            throws Exception {
+        double[] coords = { position.getX(), position.getY() };
+        CRSConversion.transform(coords, 1, "4326", epsg, false, true);
+        return new DirectPosition(coords[0], coords[1]);
+    }
+
+    /**
+     * Projects a list of WGS84 positions (longitude, latitude) in the
+     * coordinate system of this conversion, in place, in a single call to the
+     * cached transform.
+     * 
+     * @param positions
+     * @return the given list
+     * @throws Exception
+     */
+    public IDirectPositionList project(IDirectPositionList positions)
+            throws Exception {
+        return CRSConversion.transform(positions, "4326", epsg, false, true);
+    }
+
+    private static IDirectPositionList convertVerticesToLambert93(OSMWay way,
+            NodeLocationStore nodes) {
+        IDirectPositionList coord = new DirectPositionList();
+        for (long index : way.getVertices()) {
+            IDirectPosition vertex = nodes.getPosition(index);
+            if (vertex != null) {
+                coord.add(CRSConversion.wgs84ToLambert93(vertex.getY(),
+                        vertex.getX()));
             }
         }
-        if (coord.size() == 1)
-            return null;
-        return new GM_Polygon(new GM_LineString(coord));
+        return coord;
     }
 
     public static IPoint convertOsmPointToLambert93(OSMNode node) {
@@ -181,8 +260,7 @@ public class OsmGeometryConversion {
             throws Exception {
         IDirectPosition pt = null;
         if (crsConversion)
-            pt = CRSConversion.changeCRS(new GM_Point(node.getPosition()),
-                    "4326", epsg, false, true).coord().get(0);
+            pt = project(node.getPosition());
         else
             pt = node.getPosition();
         return pt.toGM_Point();
@@ -0,0 +1,104 @@
+package fr.ign.cogit.osm.importexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.osm.importexport.NodeLocationStore;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMNode;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMResource;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMWay;
+
+public class NodeLocationStoreTest {
+
+  @Test
+  public void testSorted() {
+    NodeLocationStore store = new NodeLocationStore(2);
+    store.put(10, 48.856614, 2.352222);
+    store.put(12, -33.868819, 151.209295);
+    store.put(12, -33.868821, 151.209297);
+    store.put(30, 0, 0);
+    IDirectPosition position = store.getPosition(10);
+    Assert.assertEquals(2.352222, position.getX(), 0);
+    Assert.assertEquals(48.856614, position.getY(), 0);
+    // the last location put wins
+    Assert.assertEquals(-33.868821, store.getPosition(12).getY(), 0);
+    Assert.assertNotNull(store.getPosition(30));
+    Assert.assertNull(store.getPosition(11));
+    Assert.assertEquals(3, store.size());
+  }
+
+  @Test
+  public void testUnsorted() {
+    NodeLocationStore store = new NodeLocationStore();
+    for (int i = 1000; i > 0; i--) {
+      store.put(3 * i, i / 100.0, -i / 100.0);
+    }
+    store.put(300, 1, 1);
+    store.put(-5, -1, -1);
+    Assert.assertEquals(1001, store.size());
+    Assert.assertEquals(5.0, store.getPosition(1500).getY(), 0);
+    Assert.assertEquals(1.0, store.getPosition(300).getX(), 0);
+    Assert.assertEquals(-1.0, store.getPosition(-5).getY(), 0);
+    Assert.assertNull(store.getPosition(1501));
+  }
+
+  @Test
+  public void testDense() throws IOException {
+    File file = File.createTempFile("nodes", ".loc");
+    NodeLocationStore store = new NodeLocationStore(file);
+    store.put(7, -90, -180);
+    store.put(5000000000L, 90, 180);
+    Assert.assertEquals(-180.0, store.getPosition(7).getX(), 0);
+    Assert.assertEquals(90.0, store.getPosition(5000000000L).getY(), 0);
+    Assert.assertNull(store.getPosition(8));
+    Assert.assertNull(store.getPosition(6000000000L));
+    store.close();
+
+    // the file can be reopened
+    store = new NodeLocationStore(file);
+    Assert.assertEquals(-90.0, store.getPosition(7).getY(), 0);
+    Assert.assertEquals(180.0, store.getPosition(5000000000L).getX(), 0);
+    store.close();
+    file.delete();
+  }
+
+  @Test
+  public void testFromResources() {
+    List<OSMResource> resources = new ArrayList<OSMResource>();
+    resources.add(new OSMResource("contributor", new OSMNode(45.5, 4.25), 1,
+        1, 1, 1, null));
+    resources.add(new OSMResource("contributor",
+        new OSMWay(Arrays.asList(1L, 1L)), 2, 1, 1, 1, null));
+    NodeLocationStore store = NodeLocationStore.fromResources(resources);
+    Assert.assertEquals(1, store.size());
+    Assert.assertEquals(4.25, store.getPosition(1).getX(), 0);
+  }
+
+  @Test
+  public void testFromResourcesKeepsFirst() {
+    List<OSMResource> resources = new ArrayList<OSMResource>();
+    resources.add(new OSMResource("contributor", new OSMNode(45.5, 4.25), 9,
+        1, 1, 1, null));
+    resources.add(new OSMResource("contributor", new OSMNode(46.5, 5.25), 9,
+        1, 2, 1, null));
+    resources.add(new OSMResource("contributor", new OSMNode(1, 1), 3, 1, 1,
+        1, null));
+    resources.add(new OSMResource("contributor", new OSMNode(2, 2), 3, 1, 2,
+        1, null));
+    resources.add(new OSMResource("contributor", new OSMNode(3, 3), 3, 1, 3,
+        1, null));
+    NodeLocationStore store = NodeLocationStore.fromResources(resources);
+    Assert.assertEquals(2, store.size());
+    // the first occurrence wins, as in a scan of the collection
+    Assert.assertEquals(45.5, store.getPosition(9).getY(), 0);
+    Assert.assertEquals(1.0, store.getPosition(3).getY(), 0);
+  }
+
+}
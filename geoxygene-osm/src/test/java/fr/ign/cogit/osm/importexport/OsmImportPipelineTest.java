@@ -0,0 +1,158 @@
+package fr.ign.cogit.osm.importexport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMLoader.OsmLoadingTask;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMNode;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMResource;
+import fr.ign.cogit.geoxygene.osm.importexport.OSMWay;
+import fr.ign.cogit.geoxygene.osm.importexport.OsmImportPipeline;
+import fr.ign.cogit.geoxygene.osm.importexport.OsmResourceListener;
+import fr.ign.cogit.geoxygene.osm.schema.OsmGeometryConversion;
+
+public class OsmImportPipelineTest {
+
+  private static final String OSM = "<?xml version='1.0' encoding='UTF-8'?>\n"
+      + "<osm version='0.6'>\n"
+      + "<bounds minlat='48.84' minlon='2.33' maxlat='48.86' maxlon='2.36'/>\n"
+      + node(1, 48.850, 2.340) + node(2, 48.850, 2.350)
+      + node(3, 48.855, 2.350) + node(4, 48.855, 2.340)
+      + node(5, 48.851, 2.341) + node(6, 48.851, 2.342)
+      + node(7, 48.852, 2.342) + node(8, 48.852, 2.341)
+      + "<node id='9' version='1' changeset='1' user='u' uid='1'"
+      + " timestamp='2015-01-01T00:00:00Z' lat='48.853' lon='2.345'>"
+      + "<tag k='amenity' v='bench'/></node>\n"
+      + "<way id='10' version='1' changeset='1' user='u' uid='1'"
+      + " timestamp='2015-01-01T00:00:00Z'><nd ref='1'/><nd ref='2'/>"
+      + "<nd ref='3'/><nd ref='4'/><nd ref='1'/>"
+      + "<tag k='building' v='yes'/></way>\n"
+      + "<way id='11' version='1' changeset='1' user='u' uid='1'"
+      + " timestamp='2015-01-01T00:00:00Z'><nd ref='5'/><nd ref='6'/>"
+      + "<nd ref='7'/><nd ref='8'/><nd ref='5'/></way>\n"
+      + "<way id='12' version='1' changeset='1' user='u' uid='1'"
+      + " timestamp='2015-01-01T00:00:00Z'><nd ref='1'/><nd ref='3'/>"
+      + "<tag k='highway' v='footway'/></way>\n"
+      + "<relation id='20' version='1' changeset='1' user='u' uid='1'"
+      + " timestamp='2015-01-01T00:00:00Z'>"
+      + "<member type='way' ref='10' role='outer'/>"
+      + "<member type='way' ref='11' role='inner'/>"
+      + "<tag k='type' v='multipolygon'/></relation>\n" + "</osm>\n";
+
+  private static String node(long id, double lat, double lon) {
+    return "<node id='" + id + "' version='1' changeset='1' user='u' uid='1'"
+        + " timestamp='2015-01-01T00:00:00Z' lat='" + lat + "' lon='" + lon
+        + "'/>\n";
+  }
+
+  private static File write(String content) throws IOException {
+    File file = File.createTempFile("pipeline", ".osm");
+    file.deleteOnExit();
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+        "UTF-8");
+    writer.write(content);
+    writer.close();
+    return file;
+  }
+
+  @Test
+  public void testImport() throws Exception {
+    OsmImportPipeline pipeline = new OsmImportPipeline(
+        new OsmGeometryConversion("2154"), null);
+    final List<OsmLoadingTask> tasks = new ArrayList<OsmLoadingTask>();
+    pipeline.setProgressListener(new OsmImportPipeline.ProgressListener() {
+      @Override
+      public void progress(OsmLoadingTask task, int percent) {
+        tasks.add(task);
+      }
+    });
+    pipeline.importFile(write(OSM));
+    Assert.assertEquals(9, pipeline.getNbNodes());
+    Assert.assertEquals(3, pipeline.getNbWays());
+    Assert.assertEquals(1, pipeline.getNbRelations());
+    Assert.assertEquals(9, pipeline.getNodeFeatures().size());
+    for (IFeature feature : pipeline.getNodeFeatures()) {
+      Assert.assertTrue(feature.getGeom() instanceof IPoint);
+    }
+    Assert.assertEquals(1, pipeline.getLineFeatures().size());
+    Assert.assertTrue(pipeline.getLineFeatures().get(0)
+        .getGeom() instanceof ILineString);
+    Assert.assertEquals(2, pipeline.getLineFeatures().get(0).getGeom()
+        .coord().size());
+    Assert.assertEquals(2, pipeline.getPolygonFeatures().size());
+    for (IFeature feature : pipeline.getPolygonFeatures()) {
+      IPolygon polygon = (IPolygon) feature.getGeom();
+      Assert.assertEquals(5, polygon.getExterior().coord().size());
+      // the inner way of the multipolygon becomes a hole of the building
+      Assert.assertEquals(feature.getId() == 10 ? 1 : 0,
+          polygon.getInterior().size());
+    }
+    Assert.assertEquals(OsmLoadingTask.OBJECTS, tasks.get(tasks.size() - 1));
+  }
+
+  @Test
+  public void testTagFilter() throws Exception {
+    OsmImportPipeline pipeline = new OsmImportPipeline(
+        new OsmGeometryConversion("2154"), "amenity");
+    pipeline.importFile(write(OSM));
+    Assert.assertEquals(1, pipeline.getNodeFeatures().size());
+    Assert.assertEquals(0, pipeline.getLineFeatures().size());
+    Assert.assertEquals(0, pipeline.getPolygonFeatures().size());
+  }
+
+  @Test
+  public void testFilteredSource() throws Exception {
+    OsmImportPipeline pipeline = new OsmImportPipeline(
+        new OsmGeometryConversion("2154"), "highway");
+    pipeline.run(new OsmImportPipeline.Source() {
+      @Override
+      public void read(OsmResourceListener listener) {
+        // the untagged nodes only give their location
+        listener.nodeLocationRead(1, 48.85, 2.34);
+        listener.nodeLocationRead(2, 48.86, 2.35);
+        listener.resourceRead(new OSMResource("u", new OSMNode(48.87, 2.36),
+            3, 1, 1, 1, null));
+        OSMResource way = new OSMResource("u",
+            new OSMWay(Arrays.asList(1L, 2L, 3L)), 10, 1, 1, 1, null);
+        way.addTag("highway", "footway");
+        listener.resourceRead(way);
+      }
+
+      @Override
+      public int getProgress() {
+        return -1;
+      }
+    });
+    Assert.assertEquals(3, pipeline.getNbNodes());
+    Assert.assertEquals(0, pipeline.getNodeFeatures().size());
+    Assert.assertEquals(1, pipeline.getLineFeatures().size());
+    Assert.assertEquals(3, pipeline.getLineFeatures().get(0).getGeom()
+        .coord().size());
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    OsmImportPipeline pipeline = new OsmImportPipeline(
+        new OsmGeometryConversion("2154"), null);
+    try {
+      pipeline.importFile(write(OSM.substring(0, OSM.length() / 2)));
+      Assert.fail();
+    } catch (Exception e) {
+      // truncated file
+    }
+  }
+
+}
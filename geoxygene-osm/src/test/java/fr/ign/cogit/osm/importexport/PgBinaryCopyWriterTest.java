@@ -0,0 +1,161 @@
+package fr.ign.cogit.osm.importexport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.osm.importexport.postgis.PgBinaryCopyWriter;
+
+public class PgBinaryCopyWriterTest {
+
+  private static DataInputStream input(ByteArrayOutputStream out)
+      throws IOException {
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(out.toByteArray()));
+    byte[] signature = new byte[PgBinaryCopyWriter.SIGNATURE.length];
+    in.readFully(signature);
+    Assert.assertArrayEquals(PgBinaryCopyWriter.SIGNATURE, signature);
+    Assert.assertEquals(0, in.readInt());
+    Assert.assertEquals(0, in.readInt());
+    return in;
+  }
+
+  private static String readText(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Decodes a numeric like the numeric_recv function of PostgreSQL.
+   */
+  private static BigDecimal readNumeric(DataInputStream in)
+      throws IOException {
+    int length = in.readInt();
+    int ndigits = in.readShort();
+    int weight = in.readShort();
+    int sign = in.readShort();
+    int dscale = in.readShort();
+    Assert.assertEquals(8 + 2 * ndigits, length);
+    BigDecimal value = BigDecimal.ZERO;
+    for (int i = 0; i < ndigits; i++) {
+      int digit = in.readShort();
+      Assert.assertTrue(digit >= 0 && digit < 10000);
+      value = value.add(BigDecimal.valueOf(digit)
+          .scaleByPowerOfTen(4 * (weight - i)));
+    }
+    if (sign == 0x4000)
+      value = value.negate();
+    else
+      Assert.assertEquals(0, sign);
+    return value.setScale(dscale);
+  }
+
+  @Test
+  public void testRow() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PgBinaryCopyWriter writer = new PgBinaryCopyWriter(out);
+    Map<String, String> tags = new LinkedHashMap<String, String>();
+    tags.put("name", "Île de la Cité");
+    tags.put("note", null);
+    writer.startRow(8);
+    writer.writeLong(1234567890123L);
+    writer.writeInt(-3);
+    writer.writeText("a\0b");
+    writer.writeNull();
+    writer.writeTimestamp(new Date(946684800000L + 1500));
+    writer.writeHstore(tags);
+    writer.writeLongArray(new long[] { 7, -8, 9 }, 2);
+    writer.writePoint(2.35, 48.85, 4326);
+    writer.finish();
+    Assert.assertEquals(1, writer.getRows());
+
+    DataInputStream in = input(out);
+    Assert.assertEquals(8, in.readShort());
+    Assert.assertEquals(8, in.readInt());
+    Assert.assertEquals(1234567890123L, in.readLong());
+    Assert.assertEquals(4, in.readInt());
+    Assert.assertEquals(-3, in.readInt());
+    Assert.assertEquals("ab", readText(in));
+    Assert.assertEquals(-1, in.readInt());
+    Assert.assertEquals(8, in.readInt());
+    Assert.assertEquals(1500000L, in.readLong());
+    // hstore
+    in.readInt();
+    Assert.assertEquals(2, in.readInt());
+    Assert.assertEquals("name", readText(in));
+    Assert.assertEquals("Île de la Cité", readText(in));
+    Assert.assertEquals("note", readText(in));
+    Assert.assertEquals(-1, in.readInt());
+    // bigint[]
+    Assert.assertEquals(20 + 2 * 12, in.readInt());
+    Assert.assertEquals(1, in.readInt());
+    Assert.assertEquals(0, in.readInt());
+    Assert.assertEquals(PgBinaryCopyWriter.INT8_OID, in.readInt());
+    Assert.assertEquals(2, in.readInt());
+    Assert.assertEquals(1, in.readInt());
+    Assert.assertEquals(8, in.readInt());
+    Assert.assertEquals(7, in.readLong());
+    Assert.assertEquals(8, in.readInt());
+    Assert.assertEquals(-8, in.readLong());
+    // EWKB point
+    Assert.assertEquals(25, in.readInt());
+    Assert.assertEquals(0, in.readByte());
+    Assert.assertEquals(0x20000001, in.readInt());
+    Assert.assertEquals(4326, in.readInt());
+    Assert.assertEquals(2.35, in.readDouble(), 0);
+    Assert.assertEquals(48.85, in.readDouble(), 0);
+    // trailer
+    Assert.assertEquals(-1, in.readShort());
+    Assert.assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testNumeric() throws IOException {
+    BigDecimal[] values = { new BigDecimal("48.8566"),
+        new BigDecimal("-2.35"), new BigDecimal("0.00012"),
+        new BigDecimal("12345678.9"), new BigDecimal("0"),
+        new BigDecimal("0.0000000"), new BigDecimal("-180"),
+        new BigDecimal("1E+5") };
+    Random random = new Random(1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PgBinaryCopyWriter writer = new PgBinaryCopyWriter(out);
+    double[] coordinates = new double[1000];
+    for (BigDecimal value : values) {
+      writer.startRow(1);
+      writer.writeNumeric(value);
+    }
+    for (int i = 0; i < coordinates.length; i++) {
+      // OSM coordinates have 7 decimals
+      long fixed = (long) (random.nextDouble() * 3600000000L) - 1800000000L;
+      coordinates[i] = new BigDecimal(BigInteger.valueOf(fixed), 7)
+          .doubleValue();
+      writer.startRow(1);
+      writer.writeNumeric(coordinates[i]);
+    }
+    writer.finish();
+
+    DataInputStream in = input(out);
+    for (BigDecimal value : values) {
+      Assert.assertEquals(1, in.readShort());
+      BigDecimal read = readNumeric(in);
+      Assert.assertEquals(value.setScale(Math.max(0, value.scale())), read);
+    }
+    for (double coordinate : coordinates) {
+      Assert.assertEquals(1, in.readShort());
+      Assert.assertEquals(BigDecimal.valueOf(coordinate), readNumeric(in));
+    }
+    Assert.assertEquals(-1, in.readShort());
+  }
+
+}
@@ -2,11 +2,8 @@ package fr.ign.cogit.geoxygene.sig3d.semantic;
 
 import java.awt.Color;
 import java.awt.Component;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 
 import javax.media.j3d.Appearance;
@@ -49,6 +46,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Triangle;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
+import fr.ign.cogit.geoxygene.util.conversion.AsciiGrid;
 
 /**
  * 
@@ -82,6 +80,14 @@ public class DTM extends AbstractDTMLayer {
 
 	public static double CONSTANT_OFFSET = 0;
 
+	/**
+	 * Si vrai, les valeurs des fichiers .asc sont recopiées dans un fichier
+	 * annexe à la première lecture : les rafraichissements suivants ne relisent
+	 * plus le texte. Désactivé par défaut, le fichier annexe étant écrit à côté
+	 * du MNT.
+	 */
+	public static boolean USE_SIDECAR = false;
+
 	protected DTM() {
 		super();
 	}
@@ -181,10 +187,28 @@ public class DTM extends AbstractDTMLayer {
 	private Shape3D representationProcess(String file, String layerName, boolean fill, int exager, String imageFilePath,
 			IEnvelope imageEnvelope) {
 		try {
-			return representationProcess(new FileInputStream(file), layerName, fill, exager, imageFilePath,
-					imageEnvelope);
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
+			AsciiGrid grid = AsciiGrid.open(file, DTM.USE_SIDECAR);
+			try {
+				return this.representationProcess(grid, layerName, fill, exager, imageFilePath, imageEnvelope);
+			} finally {
+				grid.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private Shape3D representationProcess(InputStream is, String layerName, boolean fill, int exager,
+			String imageFilePath, IEnvelope imageEnvelope) {
+		try {
+			AsciiGrid grid = AsciiGrid.read(is);
+			try {
+				return this.representationProcess(grid, layerName, fill, exager, imageFilePath, imageEnvelope);
+			} finally {
+				grid.close();
+			}
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return null;
@@ -193,7 +217,7 @@ public class DTM extends AbstractDTMLayer {
 	/**
 	 * Calcul l'objet Java3D associé à un MNT avec une image plaquée
 	 * 
-	 * @param file
+	 * @param grid
 	 * @param layerName
 	 * @param fill
 	 * @param exager
@@ -201,7 +225,7 @@ public class DTM extends AbstractDTMLayer {
 	 * @param imageEnvelope
 	 * @return un objet Java3D représentant la forme du MNT
 	 */
-	private Shape3D representationProcess(InputStream is, String layerName, boolean fill, int exager,
+	private Shape3D representationProcess(AsciiGrid grid, String layerName, boolean fill, int exager,
 			String imageFilePath, IEnvelope imageEnvelope) {
 
 		this.imagePath = imageFilePath;
@@ -221,9 +245,9 @@ public class DTM extends AbstractDTMLayer {
 		int numligne = 0;
 		int numcol = 0;
 
-		// Il s'agit d'une chaine contenant les informations en train d'être lu
-		// dans le fichier
-		String ligne;
+		// Il s'agit de la ligne du MNT en train d'être lue
+		float[] ligne;
+		int numRow = 0;
 
 		double denomX = this.imageEnvelope.getUpperCorner().getX() - this.imageEnvelope.getLowerCorner().getX();
 		double denomY = this.imageEnvelope.getUpperCorner().getY() - this.imageEnvelope.getLowerCorner().getY();
@@ -233,49 +257,18 @@ public class DTM extends AbstractDTMLayer {
 			// Lecture du fichier et récupèration des différentes valeurs citées
 			// précédemment
 
-			BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-			ligne = br.readLine();
-
-			String[] result = ligne.split(" ");
-
-			int ncols = Integer.parseInt(result[result.length - 1]);
-
-			// System.out.println("ncols" + result[result.length - 1]);
-
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-
-			// System.out.println("nrows" + result[result.length - 1]);
-
-			int nrows = Integer.parseInt(result[result.length - 1]);
+			int ncols = grid.getWidth();
+			int nrows = grid.getHeight();
 
-			ligne = br.readLine();
-			result = ligne.split("\\s");
+			shiftX = grid.getEnvelope().minX();
+			shiftY = grid.getEnvelope().minY();
 
-			shiftX = Double.parseDouble(result[result.length - 1]);
+			double cellsize = grid.getCellSizeX();
 
-			// System.out.println("xllcorner" + result[result.length - 1]);
+			// Les valeurs sont lues en float32
+			this.noDataValue = (float) grid.getNoDataValue();
 
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-
-			shiftY = Double.parseDouble(result[result.length - 1]);
-
-			// System.out.println("yllcorner" + shiftY);
-
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-
-			// System.out.println("cellsize" + result[result.length - 1]);
-
-			double cellsize = Double.parseDouble(result[result.length - 1]);
-
-			ligne = br.readLine();
-
-			this.noDataValue = Double.parseDouble(result[result.length - 1]);
-
-			ligne = br.readLine();
+			ligne = DTM.readRow(grid, numRow);
 
 			double maxy = ((nrows - 1) * cellsize + shiftY);
 
@@ -314,21 +307,17 @@ public class DTM extends AbstractDTMLayer {
 			// on initialize la ligne précédente
 			double[] lignePred = new double[ncols];
 
-			result = ligne.split("\\s");
-
 			// On remplit la premiere ligne : initialisation
 			for (int i = 0; i < ncols; i++) {
 
-				lignePred[i] = Double.parseDouble(result[i * this.echantillonage]);
+				lignePred[i] = ligne[i * this.echantillonage];
 				this.zMin = Math.min(lignePred[i], this.zMin);
 				this.zMax = Math.max(lignePred[i], this.zMax);
 			}
 
 			// On passe des lignes pour sous échantillonner
-			for (int i = 0; i < this.echantillonage; i++) {
-				ligne = br.readLine();
-
-			}
+			numRow = numRow + this.echantillonage;
+			ligne = DTM.readRow(grid, numRow);
 
 			numligne = 0;
 			// On traite le fichier ligne par ligne
@@ -340,9 +329,6 @@ public class DTM extends AbstractDTMLayer {
 
 				numcol = 0;
 
-				// On charge la ligne en mémoire
-				result = ligne.split("\\s");
-
 				double qx = 0;
 				double qy = 0;
 
@@ -351,7 +337,7 @@ public class DTM extends AbstractDTMLayer {
 
 					// On récupère le Z du point que l'on traite actuellement
 					// Le Z du point en dessous
-					double nouvZ = Double.parseDouble(result[i * this.echantillonage]);
+					double nouvZ = ligne[i * this.echantillonage];
 					double oldZ = lignePred[i];
 
 					this.zMin = Math.min(nouvZ, this.zMin);
@@ -414,15 +400,11 @@ public class DTM extends AbstractDTMLayer {
 				}
 				numligne = numligne + this.echantillonage;
 				// On passe des lignes pour sous àchantillonner
-				for (int l = 0; l < this.echantillonage; l++) {
-					ligne = br.readLine();
-
-				}
+				numRow = numRow + this.echantillonage;
+				ligne = DTM.readRow(grid, numRow);
 
 			}
 
-			br.close();
-
 			this.stepX = this.echantillonage * cellsize;
 			this.stepY = this.echantillonage * cellsize;
 			this.nX = ncols;
@@ -541,9 +523,28 @@ public class DTM extends AbstractDTMLayer {
 	private Shape3D representationProcess(String file, String layerName, boolean fill, int exager,
 			Color[] colorGradation) {
 		try {
-			return this.representationProcess(new FileInputStream(file), layerName, fill, exager, colorGradation);
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
+			AsciiGrid grid = AsciiGrid.open(file, DTM.USE_SIDECAR);
+			try {
+				return this.representationProcess(grid, layerName, fill, exager, colorGradation);
+			} finally {
+				grid.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private Shape3D representationProcess(InputStream is, String layerName, boolean fill, int exager,
+			Color[] colorGradation) {
+		try {
+			AsciiGrid grid = AsciiGrid.read(is);
+			try {
+				return this.representationProcess(grid, layerName, fill, exager, colorGradation);
+			} finally {
+				grid.close();
+			}
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return null;
@@ -559,7 +560,7 @@ public class DTM extends AbstractDTMLayer {
 	 * @param colorGradation
 	 * @return un objet Java3D représentant la forme du MNT
 	 */
-	private Shape3D representationProcess(InputStream is, String layerName, boolean fill, int exager,
+	private Shape3D representationProcess(AsciiGrid grid, String layerName, boolean fill, int exager,
 			Color[] colorGradation) {
 
 		int nbElemCouleur = colorGradation.length;
@@ -584,63 +585,25 @@ public class DTM extends AbstractDTMLayer {
 		this.zMin = Double.POSITIVE_INFINITY;
 		this.zMax = Double.NEGATIVE_INFINITY;
 
-		// Il s'agit d'une chaine contenant les informations en train d'être lu
-		// dans le fichier
-		String ligne;
+		// Il s'agit de la ligne du MNT en train d'être lue
+		float[] ligne;
+		int numRow = 0;
 
 		try {
-			BufferedReader br = new BufferedReader(new InputStreamReader(is));
-			// Lecture du fichier et récupèration des différentes valeurs citées
-			// précédemment
-
-			ligne = br.readLine();
-
-			String[] result = ligne.split(" ");
-
-			int ncols = Integer.parseInt(result[result.length - 1]);
-
-			// System.out.println("ncols" + result[result.length - 1]);
-
-			ligne = br.readLine();
-			result = ligne.split("\\s");
+			// Récupèration des différentes valeurs citées précédemment
+			int ncols = grid.getWidth();
+			int nrows = grid.getHeight();
 
-			// System.out.println("nrows" + result[result.length - 1]);
+			shiftX = grid.getEnvelope().minX();
+			shiftY = grid.getEnvelope().minY();
 
-			int nrows = Integer.parseInt(result[result.length - 1]);
-
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-
-			shiftX = Double.parseDouble(result[result.length - 1]);
-
-			// System.out.println("xllcorner" + result[result.length - 1]);
-
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-
-			shiftY = Double.parseDouble(result[result.length - 1]);
-
-			// System.out.println("yllcorner" + shiftY);
-
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-
-			stepX = Double.parseDouble(result[result.length - 1]);
-
-			if (result[0].equalsIgnoreCase("CELLSIZE")) {
-				// There is not CELLSIZEX and CELLSIZEY
-				stepY = stepX;
-			} else {
-				ligne = br.readLine();
-				result = ligne.split("\\s");
-				stepY = Double.parseDouble(result[result.length - 1]);
-			}
+			stepX = grid.getCellSizeX();
+			stepY = grid.getCellSizeY();
 
-			ligne = br.readLine();
-			result = ligne.split("\\s");
-			this.noDataValue = Double.parseDouble(result[result.length - 1]);
+			// Les valeurs sont lues en float32
+			this.noDataValue = (float) grid.getNoDataValue();
 
-			ligne = br.readLine();
+			ligne = DTM.readRow(grid, numRow);
 
 			double maxy = ((nrows - 1) * stepY + shiftY);
 
@@ -677,32 +640,22 @@ public class DTM extends AbstractDTMLayer {
 			// on initialize la ligne précédente
 			double[] lignePred = new double[ncols];
 
-			result = ligne.split("\\s");
-
-			String s = result[0];
-			int shift = 0;
-			if (s.isEmpty()) {
-				shift = 1;
-			}
-
 			// On remplit la premiere ligne : initialisation
-			for (int i = 0 + shift; i < ncols + shift; i++) {
+			for (int i = 0; i < ncols; i++) {
 
-				lignePred[i - shift] = Double.parseDouble(result[i * this.echantillonage]);
+				lignePred[i] = ligne[i * this.echantillonage];
 
-				if (lignePred[i - shift] == noDataValue) {
+				if (lignePred[i] == noDataValue) {
 					continue;
 				}
 
-				this.zMin = Math.min(lignePred[i - shift], this.zMin);
-				this.zMax = Math.max(lignePred[i - shift], this.zMax);
+				this.zMin = Math.min(lignePred[i], this.zMin);
+				this.zMax = Math.max(lignePred[i], this.zMax);
 			}
 
 			// On passe des lignes pour sous échantillonner
-			for (int i = 0; i < this.echantillonage; i++) {
-				ligne = br.readLine();
-
-			}
+			numRow = numRow + this.echantillonage;
+			ligne = DTM.readRow(grid, numRow);
 
 			numligne = 0;
 			// On traite le fichier ligne par ligne
@@ -714,17 +667,14 @@ public class DTM extends AbstractDTMLayer {
 
 				numcol = 0;
 
-				// On charge la ligne en mémoire
-				result = ligne.split("\\s");
-
 				// Pour chaque colonne que l'on souhaite récupèrer
-				for (int i = 0 + shift; i < ncols + shift; i++) {
+				for (int i = 0; i < ncols; i++) {
 
 					// System.out.println("row : " + j + " col : " + i );
 					// On récupère le Z du point que l'on traite actuellement
 					// Le Z du point en dessous
-					double nouvZ = Double.parseDouble(result[i * this.echantillonage]);
-					double oldZ = lignePred[i - shift];
+					double nouvZ = ligne[i * this.echantillonage];
+					double oldZ = lignePred[i];
 
 					if (nouvZ != noDataValue) {
 						this.zMin = Math.min(nouvZ, this.zMin);
@@ -761,17 +711,15 @@ public class DTM extends AbstractDTMLayer {
 					strp.setCoordinate(nbpoints, nouvePoint);
 
 					nbpoints++;
-					lignePred[i - shift] = nouvZ;
+					lignePred[i] = nouvZ;
 
 					numcol = numcol + this.echantillonage;
 
 				}
 				numligne = numligne + this.echantillonage;
 				// On passe des lignes pour sous àchantillonner
-				for (int l = 0; l < this.echantillonage; l++) {
-					ligne = br.readLine();
-
-				}
+				numRow = numRow + this.echantillonage;
+				ligne = DTM.readRow(grid, numRow);
 
 			}
 
@@ -783,8 +731,6 @@ public class DTM extends AbstractDTMLayer {
 				strp.setColor(i, this.getColor4f(p.getZ()));
 			}
 
-			br.close();
-
 			this.stepX = this.echantillonage * stepX;
 			this.stepY = this.echantillonage * stepY;
 			this.nX = ncols;
@@ -860,6 +806,21 @@ public class DTM extends AbstractDTMLayer {
 		}
 	}
 
+	/**
+	 * Lit une ligne du MNT
+	 * 
+	 * @param grid
+	 * @param row
+	 * @return les valeurs de la ligne, null après la dernière ligne
+	 * @throws IOException
+	 */
+	private static float[] readRow(AsciiGrid grid, int row) throws IOException {
+		if (row >= grid.getHeight()) {
+			return null;
+		}
+		return grid.read(0, row, grid.getWidth(), 1);
+	}
+
 	/**
 	 * Met à jour la représentation de la carte dans la vue
 	 */
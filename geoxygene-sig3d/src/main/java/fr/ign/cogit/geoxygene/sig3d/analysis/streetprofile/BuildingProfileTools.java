@@ -17,7 +17,7 @@ import fr.ign.cogit.geoxygene.sig3d.equation.Grid3D;
 import fr.ign.cogit.geoxygene.sig3d.equation.LineEquation;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.util.attribute.AttributeManager;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * Classe d'utilitaires en lien avec le calcul de profil à partir de bâtiments
@@ -49,11 +49,11 @@ public class BuildingProfileTools {
 		IFeature featparce = null;
 
 		if (!collParcelle.hasSpatialIndex()) {
-			collParcelle.initSpatialIndex(Tiling.class, false);
+			collParcelle.initSpatialIndex(PackedRTree.class, false);
 		}
 
 		if (!toits.hasSpatialIndex()) {
-			toits.initSpatialIndex(Tiling.class, false);
+			toits.initSpatialIndex(PackedRTree.class, false);
 		}
 
 		Collection<IFeature> feats = collParcelle.select(ls);
@@ -117,7 +117,7 @@ public class BuildingProfileTools {
 			IFeatureCollection<IFeature> collBati, IDirectPosition dpActu, IFeatureCollection<IFeature> toits) {
 
 		if (!toits.hasSpatialIndex()) {
-			toits.initSpatialIndex(Tiling.class, false);
+			toits.initSpatialIndex(PackedRTree.class, false);
 		}
 
 		Collection<IFeature> feats = toits.select(ls);
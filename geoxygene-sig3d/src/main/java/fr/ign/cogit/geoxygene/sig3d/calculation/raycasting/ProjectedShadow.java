@@ -23,7 +23,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 
 /**
@@ -87,7 +87,7 @@ public class ProjectedShadow {
 
 		if (!collectionSupport.hasSpatialIndex()) {
 
-			collectionSupport.initSpatialIndex(Tiling.class, false);
+			collectionSupport.initSpatialIndex(PackedRTree.class, false);
 		}
 
 		// int count = 0;
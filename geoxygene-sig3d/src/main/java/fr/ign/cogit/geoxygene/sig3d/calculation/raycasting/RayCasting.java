@@ -32,7 +32,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Triangle;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Solid;
 import fr.ign.cogit.geoxygene.util.attribute.AttributeManager;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * This software is released under the licence CeCILL
@@ -196,9 +196,9 @@ public class RayCasting {
 
 		// L'index spatiale permettra de retrouver en coordonnées angulaires
 		// les faces concernées par l'intersection
-		featC.initSpatialIndex(Tiling.class, false);
+		featC.initSpatialIndex(PackedRTree.class, false);
 
-		Tiling<IFeature> sI = (Tiling<IFeature>) featC.getSpatialIndex();
+		SpatialIndex<IFeature> sI = featC.getSpatialIndex();
 
 		int nbPCouronnesP = nbPointsCouronnes;
 		int nbPCouronnesA = nbPointsCouronnes / 4;
@@ -421,7 +421,7 @@ public class RayCasting {
 
 		// L'index spatiale permettra de retrouver en coordonnées angulaires
 		// les faces concernées par l'intersection
-		featC.initSpatialIndex(Tiling.class, false);
+		featC.initSpatialIndex(PackedRTree.class, false);
 
 		SpatialIndex<IFeature> sI = featC.getSpatialIndex();
 		// On effectue un rayonnement angulaire
@@ -583,9 +583,9 @@ public class RayCasting {
 
 			// L'index spatiale permettra de retrouver en coordonnées angulaires
 			// les faces concernées par l'intersection
-			featC.initSpatialIndex(Tiling.class, false);
+			featC.initSpatialIndex(PackedRTree.class, false);
 
-			Tiling<IFeature> sI = (Tiling<IFeature>) featC.getSpatialIndex();
+			SpatialIndex<IFeature> sI = featC.getSpatialIndex();
 
 			int nbInter = 0;
 			int nbLancerTotaux = 0;
@@ -765,7 +765,7 @@ public class RayCasting {
 
 		// L'index spatiale permettra de retrouver en coordonnées angulaires
 		// les faces concernées par l'intersection
-		featC.initSpatialIndex(Tiling.class, false);
+		featC.initSpatialIndex(PackedRTree.class, false);
 
 		SpatialIndex<IFeature> sI = featC.getSpatialIndex();
 
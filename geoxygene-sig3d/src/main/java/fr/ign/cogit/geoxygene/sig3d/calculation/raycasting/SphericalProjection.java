@@ -32,7 +32,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * This software is released under the licence CeCILL
@@ -605,7 +605,7 @@ public class SphericalProjection {
 	public IFeatureCollection<IFeature> raffinedOrthoProjection() {
 		IFeatureCollection<IFeature> featOut = new FT_FeatureCollection<>();
 
-		this.getLFeatMapped().initSpatialIndex(Tiling.class, false);
+		this.getLFeatMapped().initSpatialIndex(PackedRTree.class, false);
 
 		for (IFeature feat : this.getLFeatMapped()) {
 
@@ -13,7 +13,7 @@ import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
 import fr.ign.cogit.geoxygene.util.conversion.ShapefileWriter;
-import fr.ign.cogit.geoxygene.util.index.Tiling;
+import fr.ign.cogit.geoxygene.util.index.PackedRTree;
 
 /**
  * 
@@ -161,7 +161,7 @@ public class SpatialFilter3D {
 		
 		
 
-    featIn.initSpatialIndex(Tiling.class, false);
+    featIn.initSpatialIndex(PackedRTree.class, false);
 
     int nbElem1 = featIn.size();
 
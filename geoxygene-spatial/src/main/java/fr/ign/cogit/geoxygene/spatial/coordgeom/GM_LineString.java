@@ -131,7 +131,7 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
   public GM_LineString(IDirectPositionList points) {
     super();
     this.segment.add(this);
-    this.controlPoint = new DirectPositionList();
+    this.controlPoint = GM_LineString.newControlPointList(points);
     this.controlPoint.addAll(points);
     // if (this.controlPoint.size() == 1) {
     // System.out.println("CREATING A LINE WITH A SINGLE POINT " + points.size()
@@ -145,7 +145,7 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
   public GM_LineString(IDirectPositionList points, boolean allowRepeated) {
     super();
     this.segment.add(this);
-    this.controlPoint = new DirectPositionList();
+    this.controlPoint = GM_LineString.newControlPointList(points);
     for (IDirectPosition p : points) {
       this.addControlPoint(p, allowRepeated);
     }
@@ -155,6 +155,21 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
     }
   }
 
+  /**
+   * Crée la liste (vide) des points de contrôle d'une nouvelle polyligne. Le
+   * stockage compact des {@link PackedDirectPositionList} est conservé.
+   * @param points points de la polyligne
+   * @return une liste vide du même type de stockage
+   */
+  private static IDirectPositionList newControlPointList(
+      IDirectPositionList points) {
+    if (points instanceof PackedDirectPositionList) {
+      return new PackedDirectPositionList(
+          ((PackedDirectPositionList) points).getDimension(), points.size());
+    }
+    return new DirectPositionList();
+  }
+
   /**
    * TODO Renvoie null. Decompose une polyligne en une sequence de segments.
    */
@@ -170,6 +185,9 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
 
   @Override
   public ILineString reverse() {
+    if (this.controlPoint instanceof PackedDirectPositionList) {
+      return new GM_LineString(this.controlPoint.reverse());
+    }
     List<IDirectPosition> points = new ArrayList<IDirectPosition>();
     int n = this.controlPoint.size();
     for (int i = 0; i < n; i++) {
@@ -202,6 +220,9 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
 
   @Override
   public GM_LineString getNegative() {
+    if (this.controlPoint instanceof PackedDirectPositionList) {
+      return new GM_LineString(this.controlPoint.reverse());
+    }
     List<IDirectPosition> list = new ArrayList<IDirectPosition>(
         this.controlPoint.getList());
     Collections.reverse(list);
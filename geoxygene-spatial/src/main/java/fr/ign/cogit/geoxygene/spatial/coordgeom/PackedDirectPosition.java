@@ -0,0 +1,280 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.spatial.coordgeom;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+/**
+ * Vue sur une position d'une {@link PackedDirectPositionList}. La vue ne
+ * stocke pas de coordonnées : elle lit et écrit directement dans le tableau de
+ * la liste, à l'indice courant. L'indice peut être déplacé (
+ * {@link #setIndex(int)}) pour parcourir la liste sans allocation.
+ * <p>
+ * Attention : {@link #getCoordinate()} renvoie une copie des coordonnées, les
+ * modifications de ce tableau ne sont donc pas répercutées sur la liste. De
+ * même, la vue désigne un indice et non un point : après une insertion ou une
+ * suppression dans la liste, elle désigne la position qui occupe désormais cet
+ * indice.
+ */
+public class PackedDirectPosition implements IDirectPosition {
+  /** Liste dans laquelle sont stockées les coordonnées. */
+  private final PackedDirectPositionList list;
+  /** Indice de la position dans la liste. */
+  private int index;
+
+  PackedDirectPosition(PackedDirectPositionList list, int index) {
+    this.list = list;
+    this.index = index;
+  }
+
+  /** @return la liste dans laquelle sont stockées les coordonnées */
+  public PackedDirectPositionList getList() {
+    return this.list;
+  }
+
+  /** @return l'indice de la position dans la liste */
+  public int getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Déplace la vue sur une autre position de la liste.
+   * @param index indice de la nouvelle position
+   */
+  public void setIndex(int index) {
+    this.index = index;
+  }
+
+  @Override
+  public int getCRS() {
+    return this.list.getCRS();
+  }
+
+  @Override
+  public void setCRS(int crs) {
+    this.list.setCRS(crs);
+  }
+
+  @Override
+  public double[] getCoordinate() {
+    return new double[] { this.getX(), this.getY(), this.getZ() };
+  }
+
+  @Override
+  public int getDimension() {
+    return 3;
+  }
+
+  @Override
+  public double getCoordinate(int i) {
+    return this.list.getCoordinate(this.index, i);
+  }
+
+  @Override
+  public double getX() {
+    return this.list.getX(this.index);
+  }
+
+  @Override
+  public double getY() {
+    return this.list.getY(this.index);
+  }
+
+  @Override
+  public double getZ() {
+    return this.list.getZ(this.index);
+  }
+
+  @Override
+  public void setCoordinate(double[] coord) {
+    this.list.setCoordinate(this.index, coord[0], coord[1],
+        (coord.length == 3) ? coord[2] : Double.NaN);
+  }
+
+  @Override
+  public void setCoordinate(IPoint thePoint) {
+    this.setCoordinate(thePoint.getPosition().getCoordinate());
+  }
+
+  @Override
+  public void setCoordinate(int i, double x) {
+    this.list.setCoordinate(this.index, i, x);
+  }
+
+  @Override
+  public void setCoordinate(double x, double y) {
+    this.list.setCoordinate(this.index, x, y, Double.NaN);
+  }
+
+  @Override
+  public void setCoordinate(double x, double y, double z) {
+    this.list.setCoordinate(this.index, x, y, z);
+  }
+
+  @Override
+  public void setX(double x) {
+    this.list.setCoordinate(this.index, 0, x);
+  }
+
+  @Override
+  public void setY(double y) {
+    this.list.setCoordinate(this.index, 1, y);
+  }
+
+  @Override
+  public void setZ(double z) {
+    this.list.setCoordinate(this.index, 2, z);
+  }
+
+  @Override
+  public void move(IDirectPosition offsetPoint) {
+    this.move(offsetPoint.getX(), offsetPoint.getY(), offsetPoint.getZ());
+  }
+
+  @Override
+  public void move(double offsetX, double offsetY) {
+    this.list.move(this.index, offsetX, offsetY, 0);
+  }
+
+  @Override
+  public void move(double offsetX, double offsetY, double offsetZ) {
+    this.list.move(this.index, offsetX, offsetY, offsetZ);
+  }
+
+  @Override
+  public double orientation(IDirectPosition dp) {
+    return Math.atan2(dp.getY() - this.getY(), dp.getX() - this.getX());
+  }
+
+  @Override
+  public double[] minus(IDirectPosition p) {
+    return this.minus(p, 1.0d);
+  }
+
+  @Override
+  public double[] minus(IDirectPosition p2, double factor) {
+    return new double[] { (this.getX() - p2.getX()) * factor,
+        (this.getY() - p2.getY()) * factor, (this.getZ() - p2.getZ()) * factor };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof IDirectPosition) {
+      return this.equals((IDirectPosition) o);
+    }
+    return false;
+  }
+
+  @Override
+  public boolean equals(IDirectPosition pt) {
+    return this.equals(pt, 0);
+  }
+
+  @Override
+  public boolean equals(IDirectPosition pt, double tolerance) {
+    if (!this.equals2D(pt, tolerance)) {
+      return false;
+    }
+    double z1 = this.getZ();
+    double z2 = pt.getZ();
+    if (!Double.isNaN(z1) && !Double.isNaN(z2)) {
+      return !((z2 > z1 + tolerance) || (z2 < z1 - tolerance));
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals2D(IDirectPosition pt, double tolerance) {
+    double x1 = this.getX(), x2 = pt.getX();
+    if ((x2 > x1 + tolerance) || (x2 < x1 - tolerance)) {
+      return false;
+    }
+    double y1 = this.getY(), y2 = pt.getY();
+    return !((y2 > y1 + tolerance) || (y2 < y1 - tolerance));
+  }
+
+  @Override
+  public boolean equals2D(IDirectPosition pt) {
+    return this.equals2D(pt, 0);
+  }
+
+  @Override
+  public int hashCode() {
+    return Double.valueOf(this.getX()).hashCode()
+        ^ Double.valueOf(this.getY()).hashCode()
+        ^ Double.valueOf(this.getZ()).hashCode();
+  }
+
+  @Override
+  public double distance(IDirectPosition d) {
+    double z = this.getZ();
+    if (!Double.isNaN(z) && !Double.isNaN(d.getZ()) && !Double.isInfinite(z)
+        && !Double.isInfinite(d.getZ())) {
+      double dx = this.getX() - d.getX();
+      double dy = this.getY() - d.getY();
+      double dz = z - d.getZ();
+      return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+    return this.distance2D(d);
+  }
+
+  @Override
+  public double distance2D(IDirectPosition d) {
+    double dx = this.getX() - d.getX();
+    double dy = this.getY() - d.getY();
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Renvoie une copie détachée de la position : un {@link DirectPosition}
+   * indépendant de la liste.
+   */
+  @Override
+  public Object clone() {
+    return new DirectPosition(this.getCoordinate());
+  }
+
+  @Override
+  public IPoint toGM_Point() {
+    return new GM_Point((IDirectPosition) this.clone());
+  }
+
+  @Override
+  public String toString() {
+    if (Double.isNaN(this.getZ())) {
+      return "DirectPosition - X : " + this.getX() + "     Y : " + this.getY(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    return "DirectPosition - X : " + this.getX() + "     Y : " + this.getY() //$NON-NLS-1$ //$NON-NLS-2$
+        + "     Z : " + this.getZ(); //$NON-NLS-1$
+  }
+}
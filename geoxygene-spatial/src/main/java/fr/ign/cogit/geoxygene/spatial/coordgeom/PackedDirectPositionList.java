@@ -0,0 +1,789 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.spatial.coordgeom;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+
+/**
+ * Liste de positions dont les coordonnées sont stockées dans un unique tableau
+ * de doubles (x,y ou x,y,z consécutifs), au lieu d'un objet
+ * {@link DirectPosition} (et de son tableau) par sommet. Pour une ligne de n
+ * sommets, on passe ainsi de 2n+2 objets à 2.
+ * <p>
+ * Les positions renvoyées par {@link #get(int)} et par l'itérateur sont des
+ * vues ({@link PackedDirectPosition}) : les modifications qui leur sont
+ * apportées sont écrites dans la liste. Une vue désigne un indice et non un
+ * sommet : après une insertion ou une suppression avant cet indice, elle
+ * désigne le sommet qui l'occupe désormais (et lève une
+ * {@link IndexOutOfBoundsException} si l'indice n'existe plus). Pour conserver
+ * un sommet au-delà d'une modification de la liste, en garder une copie (
+ * {@link PackedDirectPosition#clone()}). Inversement, les positions ajoutées à
+ * la liste sont recopiées : modifier ensuite la position d'origine ne modifie
+ * pas la liste. Pour parcourir une grande liste sans créer d'objet, utiliser
+ * les accesseurs {@link #getX(int)}, {@link #getY(int)}, {@link #getZ(int)} ou
+ * un curseur ({@link #cursor()}).
+ * <p>
+ * Toutes les écritures faites par les méthodes de la liste et de ses vues
+ * (ajout, insertion, affectation, translation) arrondissent les coordonnées à
+ * {@link DirectPosition#PRECISION} décimales. Seuls le tableau passé au
+ * constructeur {@link #PackedDirectPositionList(double[], int)} et celui
+ * renvoyé par {@link #getCoordinates()} donnent un accès brut, sans arrondi,
+ * au stockage.
+ * <p>
+ * La liste est stockée en 2D tant qu'aucune coordonnée Z n'y est écrite, et
+ * passe automatiquement en 3D sinon.
+ */
+public class PackedDirectPositionList implements IDirectPositionList {
+  /** Coordonnées des positions, rangées par sommet. */
+  private double[] coordinates;
+  /** Nombre de coordonnées par sommet (2 ou 3). */
+  private int dimension;
+  /** Nombre de positions. */
+  private int size = 0;
+  /** CRS des positions de la liste. */
+  private int crs = 0;
+
+  /** Constructeur par défaut : liste 2D vide. */
+  public PackedDirectPositionList() {
+    this(2, 10);
+  }
+
+  /**
+   * Constructeur d'une liste vide.
+   * @param dimension nombre de coordonnées par sommet (2 ou 3)
+   * @param capacity nombre de positions pouvant être ajoutées sans
+   *          réallocation
+   */
+  public PackedDirectPositionList(int dimension, int capacity) {
+    this.checkDimension(dimension);
+    this.dimension = dimension;
+    this.coordinates = new double[Math.max(capacity, 0) * dimension];
+  }
+
+  /**
+   * Constructeur à partir d'un tableau de coordonnées. Le tableau n'est pas
+   * recopié mais référencé : il sert directement de stockage à la liste. Ses
+   * coordonnées ne sont pas arrondies.
+   * @param coordinates coordonnées rangées par sommet
+   * @param dimension nombre de coordonnées par sommet (2 ou 3)
+   */
+  public PackedDirectPositionList(double[] coordinates, int dimension) {
+    this.checkDimension(dimension);
+    if (coordinates.length % dimension != 0) {
+      throw new IllegalArgumentException("coordinates.length (" //$NON-NLS-1$
+          + coordinates.length + ") is not a multiple of " + dimension); //$NON-NLS-1$
+    }
+    this.dimension = dimension;
+    this.coordinates = coordinates;
+    this.size = coordinates.length / dimension;
+  }
+
+  /**
+   * Constructeur par copie d'une liste de positions. La liste est stockée en 3D
+   * si au moins une position a une coordonnée Z.
+   * @param list liste de positions à recopier
+   */
+  public PackedDirectPositionList(Collection<? extends IDirectPosition> list) {
+    this(PackedDirectPositionList.dimensionOf(list), list.size());
+    for (IDirectPosition p : list) {
+      this.add(p);
+    }
+  }
+
+  private static int dimensionOf(Collection<? extends IDirectPosition> list) {
+    if (list instanceof PackedDirectPositionList) {
+      return ((PackedDirectPositionList) list).dimension;
+    }
+    for (IDirectPosition p : list) {
+      if (!Double.isNaN(p.getZ())) {
+        return 3;
+      }
+    }
+    return 2;
+  }
+
+  private void checkDimension(int d) {
+    if (d != 2 && d != 3) {
+      throw new IllegalArgumentException("dimension must be 2 or 3: " + d); //$NON-NLS-1$
+    }
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " //$NON-NLS-1$ //$NON-NLS-2$
+          + this.size);
+    }
+  }
+
+  private static double round(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return value;
+    }
+    double factor = Math.pow(10, DirectPosition.PRECISION);
+    return Math.round(value * factor) / factor;
+  }
+
+  private void ensureCapacity(int minSize) {
+    int needed = minSize * this.dimension;
+    if (needed > this.coordinates.length) {
+      int newLength = Math.max(needed, this.coordinates.length
+          + (this.coordinates.length >> 1) + this.dimension);
+      this.coordinates = Arrays.copyOf(this.coordinates, newLength);
+    }
+  }
+
+  /** Passe le stockage en 3D (les Z existants valent NaN). */
+  private void promoteTo3D() {
+    double[] result = new double[Math.max(this.size, 1) * 3];
+    for (int i = 0; i < this.size; i++) {
+      result[3 * i] = this.coordinates[2 * i];
+      result[3 * i + 1] = this.coordinates[2 * i + 1];
+      result[3 * i + 2] = Double.NaN;
+    }
+    this.coordinates = result;
+    this.dimension = 3;
+  }
+
+  /** Écrit les coordonnées, arrondies, de la position d'indice i. */
+  private void write(int i, double x, double y, double z) {
+    if (this.dimension == 2 && !Double.isNaN(z)) {
+      this.promoteTo3D();
+    }
+    int offset = i * this.dimension;
+    this.coordinates[offset] = PackedDirectPositionList.round(x);
+    this.coordinates[offset + 1] = PackedDirectPositionList.round(y);
+    if (this.dimension == 3) {
+      this.coordinates[offset + 2] = PackedDirectPositionList.round(z);
+    }
+  }
+
+  /** @return le nombre de coordonnées stockées par sommet (2 ou 3) */
+  public int getDimension() {
+    return this.dimension;
+  }
+
+  /** @return le CRS des positions de la liste */
+  public int getCRS() {
+    return this.crs;
+  }
+
+  /**
+   * Affecte le CRS des positions de la liste.
+   * @param crs identifiant du CRS
+   */
+  public void setCRS(int crs) {
+    this.crs = crs;
+  }
+
+  /**
+   * @param i indice d'une position
+   * @return l'abscisse de la position d'indice i
+   */
+  public double getX(int i) {
+    this.checkIndex(i);
+    return this.coordinates[i * this.dimension];
+  }
+
+  /**
+   * @param i indice d'une position
+   * @return l'ordonnée de la position d'indice i
+   */
+  public double getY(int i) {
+    this.checkIndex(i);
+    return this.coordinates[i * this.dimension + 1];
+  }
+
+  /**
+   * @param i indice d'une position
+   * @return l'altitude de la position d'indice i (NaN si la liste est 2D)
+   */
+  public double getZ(int i) {
+    this.checkIndex(i);
+    return (this.dimension == 3) ? this.coordinates[i * 3 + 2] : Double.NaN;
+  }
+
+  /**
+   * @param i indice d'une position
+   * @param axis numéro de la coordonnée (0, 1 ou 2)
+   * @return la coordonnée demandée de la position d'indice i
+   */
+  public double getCoordinate(int i, int axis) {
+    if (axis == 2) {
+      return this.getZ(i);
+    }
+    this.checkIndex(i);
+    return this.coordinates[i * this.dimension + axis];
+  }
+
+  /**
+   * Affecte une coordonnée de la position d'indice i (arrondie comme pour
+   * {@link DirectPosition}).
+   * @param i indice d'une position
+   * @param axis numéro de la coordonnée (0, 1 ou 2)
+   * @param value nouvelle valeur
+   */
+  public void setCoordinate(int i, int axis, double value) {
+    this.checkIndex(i);
+    double v = PackedDirectPositionList.round(value);
+    if (axis == 2 && this.dimension == 2) {
+      if (Double.isNaN(v)) {
+        return;
+      }
+      this.promoteTo3D();
+    }
+    this.coordinates[i * this.dimension + axis] = v;
+  }
+
+  /**
+   * Affecte les coordonnées de la position d'indice i (arrondies comme pour
+   * {@link DirectPosition}).
+   * @param i indice d'une position
+   * @param x abscisse
+   * @param y ordonnée
+   * @param z altitude, éventuellement NaN
+   */
+  public void setCoordinate(int i, double x, double y, double z) {
+    this.checkIndex(i);
+    this.write(i, x, y, z);
+  }
+
+  /**
+   * Translate la position d'indice i (coordonnées arrondies comme pour
+   * {@link DirectPosition}).
+   * @param i indice d'une position
+   * @param dx translation en x
+   * @param dy translation en y
+   * @param dz translation en z (ignorée si la liste est 2D)
+   */
+  public void move(int i, double dx, double dy, double dz) {
+    this.checkIndex(i);
+    int offset = i * this.dimension;
+    this.coordinates[offset] = PackedDirectPositionList
+        .round(this.coordinates[offset] + dx);
+    this.coordinates[offset + 1] = PackedDirectPositionList
+        .round(this.coordinates[offset + 1] + dy);
+    if (this.dimension == 3) {
+      this.coordinates[offset + 2] = PackedDirectPositionList
+          .round(this.coordinates[offset + 2] + dz);
+    }
+  }
+
+  /**
+   * Ajoute une position à la fin de la liste (coordonnées arrondies comme pour
+   * {@link DirectPosition}).
+   * @param x abscisse
+   * @param y ordonnée
+   * @param z altitude, éventuellement NaN
+   */
+  public void add(double x, double y, double z) {
+    this.ensureCapacity(this.size + 1);
+    this.size++;
+    this.write(this.size - 1, x, y, z);
+  }
+
+  /**
+   * Renvoie un curseur : une unique vue que l'on déplace sur les positions de
+   * la liste avec {@link PackedDirectPosition#setIndex(int)}.
+   * @return une vue sur la première position de la liste
+   */
+  public PackedDirectPosition cursor() {
+    return new PackedDirectPosition(this, 0);
+  }
+
+  /**
+   * Renvoie le tableau de stockage de la liste, ajusté au nombre de positions.
+   * Le tableau n'est pas recopié : le modifier modifie la liste, sans arrondi
+   * des coordonnées écrites. C'est un accès brut, réservé aux traitements en
+   * masse (par exemple un changement de système de coordonnées).
+   * @return les coordonnées rangées par sommet
+   */
+  public double[] getCoordinates() {
+    if (this.coordinates.length != this.size * this.dimension) {
+      this.coordinates = Arrays.copyOf(this.coordinates, this.size
+          * this.dimension);
+    }
+    return this.coordinates;
+  }
+
+  /**
+   * Remplace le contenu de la liste par une copie des positions données.
+   */
+  @Override
+  public void setList(List<IDirectPosition> theList) {
+    this.clear();
+    this.addAll(theList);
+  }
+
+  /**
+   * Renvoie une vue {@link List} de la liste : les modifications de la vue
+   * sont répercutées sur la liste et inversement.
+   */
+  @Override
+  public List<IDirectPosition> getList() {
+    return new ListView();
+  }
+
+  /**
+   * Renvoie une vue sur la position d'indice i. La vue suit l'indice et non le
+   * sommet : après une insertion ou une suppression dans la liste, elle
+   * désigne la position qui occupe désormais cet indice.
+   */
+  @Override
+  public IDirectPosition get(int i) {
+    this.checkIndex(i);
+    return new PackedDirectPosition(this, i);
+  }
+
+  @Override
+  public void set(int i, IDirectPosition value) {
+    this.checkIndex(i);
+    this.write(i, value.getX(), value.getY(), value.getZ());
+  }
+
+  @Override
+  public boolean add(IDirectPosition value) {
+    this.ensureCapacity(this.size + 1);
+    this.size++;
+    this.write(this.size - 1, value.getX(), value.getY(), value.getZ());
+    return true;
+  }
+
+  @Override
+  public void add(int i, IDirectPosition value) {
+    if (i < 0 || i > this.size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " //$NON-NLS-1$ //$NON-NLS-2$
+          + this.size);
+    }
+    double x = value.getX(), y = value.getY(), z = value.getZ();
+    this.ensureCapacity(this.size + 1);
+    System.arraycopy(this.coordinates, i * this.dimension, this.coordinates,
+        (i + 1) * this.dimension, (this.size - i) * this.dimension);
+    this.size++;
+    this.write(i, x, y, z);
+  }
+
+  @Override
+  public boolean addAll(IDirectPositionList theList) {
+    return this.addAll((Collection<? extends IDirectPosition>) theList);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends IDirectPosition> c) {
+    if (c instanceof PackedDirectPositionList) {
+      PackedDirectPositionList other = (PackedDirectPositionList) c;
+      int n = other.size;
+      this.ensureCapacity(this.size + n);
+      for (int i = 0; i < n; i++) {
+        this.size++;
+        this.write(this.size - 1, other.getX(i), other.getY(i), other.getZ(i));
+      }
+      return n > 0;
+    }
+    this.ensureCapacity(this.size + c.size());
+    for (IDirectPosition p : c) {
+      this.add(p);
+    }
+    return !c.isEmpty();
+  }
+
+  private int indexOf(Object o) {
+    if (!(o instanceof IDirectPosition)) {
+      return -1;
+    }
+    IDirectPosition p = (IDirectPosition) o;
+    PackedDirectPosition cursor = this.cursor();
+    for (int i = 0; i < this.size; i++) {
+      cursor.setIndex(i);
+      if (cursor.equals(p)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void remove(IDirectPosition value) {
+    this.remove((Object) value);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    int i = this.indexOf(o);
+    if (i < 0) {
+      return false;
+    }
+    this.remove(i);
+    return true;
+  }
+
+  @Override
+  public void remove(int i) {
+    this.checkIndex(i);
+    System.arraycopy(this.coordinates, (i + 1) * this.dimension,
+        this.coordinates, i * this.dimension, (this.size - i - 1)
+            * this.dimension);
+    this.size--;
+  }
+
+  @Override
+  public void removeAll(IDirectPositionList theList) {
+    this.removeAll((Collection<?>) theList);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    return this.filter(c, false);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    return this.filter(c, true);
+  }
+
+  /** Ne garde que les positions contenues (ou non) dans la collection. */
+  private boolean filter(Collection<?> c, boolean keepContained) {
+    PackedDirectPosition cursor = this.cursor();
+    int kept = 0;
+    for (int i = 0; i < this.size; i++) {
+      cursor.setIndex(i);
+      if (c.contains(cursor) == keepContained) {
+        if (kept != i) {
+          System.arraycopy(this.coordinates, i * this.dimension,
+              this.coordinates, kept * this.dimension, this.dimension);
+        }
+        kept++;
+      }
+    }
+    boolean modified = kept != this.size;
+    this.size = kept;
+    return modified;
+  }
+
+  @Override
+  public void clear() {
+    this.size = 0;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return this.indexOf(o) >= 0;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    for (Object o : c) {
+      if (!this.contains(o)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public PackedDirectPositionList clone() {
+    PackedDirectPositionList result = new PackedDirectPositionList(
+        Arrays.copyOf(this.coordinates, this.size * this.dimension),
+        this.dimension);
+    result.setCRS(this.crs);
+    return result;
+  }
+
+  /**
+   * Renvoie les coordonnées x,y des positions. Si la liste est stockée en 2D,
+   * le tableau de stockage est renvoyé sans copie (cf.
+   * {@link #getCoordinates()}).
+   */
+  @Override
+  public double[] toArray2D() {
+    if (this.dimension == 2) {
+      return this.getCoordinates();
+    }
+    double[] array = new double[this.size * 2];
+    for (int i = 0; i < this.size; i++) {
+      array[2 * i] = this.coordinates[3 * i];
+      array[2 * i + 1] = this.coordinates[3 * i + 1];
+    }
+    return array;
+  }
+
+  /**
+   * Renvoie les coordonnées x,y,z des positions. Si la liste est stockée en
+   * 3D, le tableau de stockage est renvoyé sans copie (cf.
+   * {@link #getCoordinates()}).
+   */
+  @Override
+  public double[] toArray3D() {
+    if (this.dimension == 3) {
+      return this.getCoordinates();
+    }
+    double[] array = new double[this.size * 3];
+    for (int i = 0; i < this.size; i++) {
+      array[3 * i] = this.coordinates[2 * i];
+      array[3 * i + 1] = this.coordinates[2 * i + 1];
+      array[3 * i + 2] = Double.NaN;
+    }
+    return array;
+  }
+
+  private double[] toArray(int axis) {
+    double[] array = new double[this.size];
+    if (axis >= this.dimension) {
+      Arrays.fill(array, Double.NaN);
+      return array;
+    }
+    for (int i = 0; i < this.size; i++) {
+      array[i] = this.coordinates[i * this.dimension + axis];
+    }
+    return array;
+  }
+
+  @Override
+  public double[] toArrayX() {
+    return this.toArray(0);
+  }
+
+  @Override
+  public double[] toArrayY() {
+    return this.toArray(1);
+  }
+
+  @Override
+  public double[] toArrayZ() {
+    return this.toArray(2);
+  }
+
+  @Override
+  public String toString() {
+    if (this.size == 0) {
+      return "PackedDirectPositionList : liste vide"; //$NON-NLS-1$
+    }
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < this.size; i++) {
+      if (i > 0) {
+        result.append("\n"); //$NON-NLS-1$
+      }
+      result.append(this.get(i).toString());
+    }
+    return result.toString();
+  }
+
+  @Override
+  public Iterator<IDirectPosition> iterator() {
+    return new Iterator<IDirectPosition>() {
+      private int next = 0;
+      private int last = -1;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < PackedDirectPositionList.this.size;
+      }
+
+      @Override
+      public IDirectPosition next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        this.last = this.next++;
+        return new PackedDirectPosition(PackedDirectPositionList.this,
+            this.last);
+      }
+
+      @Override
+      public void remove() {
+        if (this.last < 0) {
+          throw new IllegalStateException();
+        }
+        PackedDirectPositionList.this.remove(this.last);
+        this.next = this.last;
+        this.last = -1;
+      }
+    };
+  }
+
+  @Override
+  public ListIterator<IDirectPosition> listIterator() {
+    return this.getList().listIterator();
+  }
+
+  @Override
+  public Object[] toArray() {
+    Object[] result = new Object[this.size];
+    for (int i = 0; i < this.size; i++) {
+      result[i] = this.get(i);
+    }
+    return result;
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    return this.getList().toArray(a);
+  }
+
+  @Override
+  public void permuter(int i, int j) {
+    if (i == j) {
+      return;
+    }
+    this.checkIndex(i);
+    this.checkIndex(j);
+    for (int k = 0; k < this.dimension; k++) {
+      double tmp = this.coordinates[i * this.dimension + k];
+      this.coordinates[i * this.dimension + k] = this.coordinates[j
+          * this.dimension + k];
+      this.coordinates[j * this.dimension + k] = tmp;
+    }
+  }
+
+  @Override
+  public void inverseOrdre() {
+    for (int i = 0; i < this.size / 2; i++) {
+      this.permuter(i, this.size - 1 - i);
+    }
+  }
+
+  @Override
+  public IDirectPositionList reverse() {
+    PackedDirectPositionList list = this.clone();
+    list.inverseOrdre();
+    return list;
+  }
+
+  /**
+   * Vue {@link List} de la liste. {@link #set(int, IDirectPosition)} renvoie
+   * une copie détachée de l'ancienne position et l'itérateur de liste renvoie
+   * des copies détachées, afin que les algorithmes de
+   * {@link java.util.Collections} qui échangent des éléments (reverse, swap,
+   * sort...) fonctionnent malgré le stockage par valeur.
+   */
+  private class ListView extends AbstractList<IDirectPosition> implements
+      RandomAccess {
+    @Override
+    public IDirectPosition get(int index) {
+      return PackedDirectPositionList.this.get(index);
+    }
+
+    @Override
+    public IDirectPosition set(int index, IDirectPosition element) {
+      IDirectPosition previous = (IDirectPosition) PackedDirectPositionList.this
+          .get(index).clone();
+      PackedDirectPositionList.this.set(index, element);
+      return previous;
+    }
+
+    @Override
+    public void add(int index, IDirectPosition element) {
+      PackedDirectPositionList.this.add(index, element);
+      this.modCount++;
+    }
+
+    @Override
+    public IDirectPosition remove(int index) {
+      IDirectPosition previous = (IDirectPosition) PackedDirectPositionList.this
+          .get(index).clone();
+      PackedDirectPositionList.this.remove(index);
+      this.modCount++;
+      return previous;
+    }
+
+    @Override
+    public int size() {
+      return PackedDirectPositionList.this.size;
+    }
+
+    @Override
+    public ListIterator<IDirectPosition> listIterator(final int index) {
+      final ListIterator<IDirectPosition> it = super.listIterator(index);
+      return new ListIterator<IDirectPosition>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public IDirectPosition next() {
+          return (IDirectPosition) it.next().clone();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+          return it.hasPrevious();
+        }
+
+        @Override
+        public IDirectPosition previous() {
+          return (IDirectPosition) it.previous().clone();
+        }
+
+        @Override
+        public int nextIndex() {
+          return it.nextIndex();
+        }
+
+        @Override
+        public int previousIndex() {
+          return it.previousIndex();
+        }
+
+        @Override
+        public void remove() {
+          it.remove();
+        }
+
+        @Override
+        public void set(IDirectPosition e) {
+          it.set(e);
+        }
+
+        @Override
+        public void add(IDirectPosition e) {
+          it.add(e);
+        }
+      };
+    }
+  }
+}
@@ -28,6 +28,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomprim.IBoundary;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSolid;
@@ -41,6 +42,7 @@ import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Solid;
 import fr.ign.cogit.geoxygene.util.algo.JtsAlgorithms;
 import fr.ign.cogit.geoxygene.util.conversion.ImgUtil;
+import fr.ign.cogit.geoxygene.util.conversion.JtsPeer;
 import fr.ign.cogit.geoxygene.util.conversion.WktGeOxygene;
 
 /**
@@ -213,6 +215,23 @@ public abstract class GM_Object implements Cloneable, IGeometry {
     double xmax = Double.NEGATIVE_INFINITY;
     double ymin = Double.POSITIVE_INFINITY;
     double ymax = Double.NEGATIVE_INFINITY;
+    if (list instanceof PackedDirectPositionList) {
+      // parcours des coordonnées sans créer de vue par position
+      PackedDirectPositionList packed = (PackedDirectPositionList) list;
+      for (int i = 0; i < packed.size(); i++) {
+        double x = packed.getX(i);
+        double y = packed.getY(i);
+        if (!Double.isNaN(x)) {
+          xmin = Math.min(xmin, x);
+          xmax = Math.max(xmax, x);
+        }
+        if (!Double.isNaN(y)) {
+          ymin = Math.min(ymin, y);
+          ymax = Math.max(ymax, y);
+        }
+      }
+      return new GM_Envelope(xmin, xmax, ymin, ymax);
+    }
     for (IDirectPosition point : list) {
       if (!Double.isNaN(point.getX())) {
         xmin = Math.min(xmin, point.getX());
@@ -240,6 +259,33 @@ public abstract class GM_Object implements Cloneable, IGeometry {
     return this.envelope;
   }
 
+  /**
+   * Géométrie JTS équivalente, construite à la demande et réutilisée tant que
+   * les coordonnées de l'objet ne changent pas.
+   */
+  private transient volatile JtsPeer jtsPeer = null;
+
+  /**
+   * Renvoie le pair JTS de la géométrie, en le reconstruisant si les
+   * coordonnées ont changé depuis sa dernière construction. La géométrie JTS
+   * du pair est partagée et ne doit pas être modifiée.
+   * @return le pair JTS à jour
+   * @throws Exception si la géométrie ne peut pas être convertie
+   */
+  public JtsPeer getJtsPeer() throws Exception {
+    JtsPeer peer = JtsPeer.update(this, this.jtsPeer);
+    this.jtsPeer = peer;
+    return peer;
+  }
+
+  /**
+   * Oublie le pair JTS de la géométrie (par exemple pour libérer la mémoire
+   * après un traitement).
+   */
+  public void invalidateJtsPeer() {
+    this.jtsPeer = null;
+  }
+
   @Override
   public IPolygon mbRegion() {
     return new GM_Polygon(this.envelope());
@@ -47,6 +47,7 @@ import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.operation.buffer.BufferOp;
 import com.vividsolutions.jts.operation.buffer.BufferParameters;
 import com.vividsolutions.jts.operation.distance.DistanceOp;
@@ -90,7 +91,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public DirectPosition centroid(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       Point jtsCentroid = jtsGeom.getCentroid();
       return new DirectPosition(jtsCentroid.getX(), jtsCentroid.getY());
     } catch (Exception e) {
@@ -108,7 +109,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry convexHull(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       Geometry jtsHull = jtsGeom.convexHull();
       IGeometry result = JtsGeOxygene.makeGeOxygeneGeom(jtsHull);
       return result;
@@ -130,7 +131,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
     }
     Geometry jtsGeom = null;
     try {
-      jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       Geometry jtsBuffer = jtsGeom.buffer(distance);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsBuffer);
     } catch (Exception e) {
@@ -150,7 +151,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public IGeometry buffer(IGeometry geom, double distance, int nSegments) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       Geometry jtsBuffer = jtsGeom.buffer(distance, nSegments);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsBuffer);
     } catch (Exception e) {
@@ -172,7 +173,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   public IGeometry buffer(IGeometry geom, double distance, int nSegments,
       int cap) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       Geometry jtsBuffer = jtsGeom.buffer(distance, nSegments, cap);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsBuffer);
     } catch (Exception e) {
@@ -195,7 +196,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   public IGeometry buffer(IGeometry geom, double distance, int nSegments,
       int cap, int join) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       BufferParameters bufferParam = new BufferParameters(nSegments, cap, join,
           BufferParameters.DEFAULT_MITRE_LIMIT);
       Geometry jtsBuffer = BufferOp.bufferOp(jtsGeom, distance, bufferParam);
@@ -219,7 +220,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public IGeometry boundary(IGeometry geom) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(geom);
       Geometry jtsResult = jtsGeom1.getBoundary();
       return JtsGeOxygene.makeGeOxygeneGeom(jtsResult);
     } catch (Exception e) {
@@ -237,8 +238,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry union(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       Geometry jtsUnion = jtsGeom1.union(jtsGeom2);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsUnion);
     } catch (Exception e) {
@@ -258,8 +259,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry intersection(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       Geometry jtsInter = jtsGeom1.intersection(jtsGeom2);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsInter);
     } catch (Exception e) {
@@ -281,8 +282,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry difference(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       Geometry jtsResult = jtsGeom1.difference(jtsGeom2);
       // if (jtsResult.isEmpty()||jtsResult.getArea()==0.0) return null;
       return JtsGeOxygene.makeGeOxygeneGeom(jtsResult);
@@ -304,8 +305,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry symDifference(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       Geometry jtsSymDiff = jtsGeom1.symDifference(jtsGeom2);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsSymDiff);
     } catch (Exception e) {
@@ -326,8 +327,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public boolean equals(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.equals(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.EqualsError")); //$NON-NLS-1$
@@ -345,8 +346,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean equalsExact(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.equalsExact(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -365,8 +366,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean equalsExact(IGeometry g1, IGeometry g2, double tol) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.equalsExact(jtsGeom2, tol);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -388,8 +389,12 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public boolean contains(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      PreparedGeometry prepared = JtsGeOxygene.makePreparedJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
+      if (prepared != null) {
+        return prepared.contains(jtsGeom2);
+      }
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
       return jtsGeom1.contains(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.ContainsError")); //$NON-NLS-1$
@@ -407,8 +412,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean crosses(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.crosses(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.CrossesError")); //$NON-NLS-1$
@@ -426,8 +431,12 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean disjoint(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      PreparedGeometry prepared = JtsGeOxygene.makePreparedJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
+      if (prepared != null) {
+        return prepared.disjoint(jtsGeom2);
+      }
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
       return jtsGeom1.disjoint(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.DisjointError")); //$NON-NLS-1$
@@ -445,8 +454,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean within(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.within(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.WithinError")); //$NON-NLS-1$
@@ -464,8 +473,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isWithinDistance(IGeometry g1, IGeometry g2, double dist) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.isWithinDistance(jtsGeom2, dist);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -487,8 +496,12 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public boolean intersects(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      PreparedGeometry prepared = JtsGeOxygene.makePreparedJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
+      if (prepared != null) {
+        return prepared.intersects(jtsGeom2);
+      }
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
       return jtsGeom1.intersects(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -507,8 +520,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean overlaps(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.overlaps(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.OverlapsError")); //$NON-NLS-1$
@@ -526,8 +539,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean touches(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.touches(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.TouchesError")); //$NON-NLS-1$
@@ -545,7 +558,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isEmpty(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom.isEmpty();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.IsEmptyError")); //$NON-NLS-1$
@@ -561,7 +574,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isSimple(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom.isSimple();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.IsSimpleError")); //$NON-NLS-1$
@@ -577,7 +590,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isValid(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom.isValid();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.IsValidError")); //$NON-NLS-1$
@@ -594,8 +607,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public double distance(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.distance(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.DistanceError")); //$NON-NLS-1$
@@ -614,7 +627,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public double area(IGeometry geom) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom1.getArea();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.AreaError")); //$NON-NLS-1$
@@ -631,7 +644,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public double length(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom.getLength();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.LengthError")); //$NON-NLS-1$
@@ -647,7 +660,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public int dimension(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom.getDimension();
     } catch (Exception e) {
       JtsAlgorithms.logger
@@ -667,7 +680,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
       if (geom.isEmpty()) {
         return 0;
       }
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.makeJtsPeer(geom);
       return jtsGeom.getNumPoints();
     } catch (Exception e) {
       JtsAlgorithms.logger
@@ -708,8 +721,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public String relate(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       return jtsGeom1.relate(jtsGeom2).toString();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.RelateError")); //$NON-NLS-1$
@@ -873,8 +886,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
    */
   public static IDirectPositionList getClosestPoints(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.makeJtsPeer(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.makeJtsPeer(g2);
       Coordinate[] coord = DistanceOp.nearestPoints(jtsGeom1, jtsGeom2);
       IDirectPosition dp1 = new DirectPosition(coord[0].x, coord[0].y);
       IDirectPosition dp2 = new DirectPosition(coord[1].x, coord[1].y);
@@ -57,6 +57,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
@@ -74,10 +75,11 @@ import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
  * l'inverse. Elle est beaucoup plus efficace que la méthode de la classe
  * JtsGeOxygene puisqu'elle ne passe pas par la représentation des géométries en
  * WKT, mais transpose directement les structures de données. néanmoins, tous
- * les objets sont dupliqués (notamment les points). Une autre méthode
- * consisterait à faire de vrais adaptateurs qui ne dupliquent pas la géométrie
- * mais se font passer pour des objets d'une autre classe. Elle n'est pas
- * implémentée et il reste à voir si c'est possible.
+ * les objets sont dupliqués (notamment les points), sauf si la factory JTS
+ * utilisée est {@link JtsGeOxygene#getAdapterGeometryFactory(int)} : les
+ * séquences de coordonnées JTS sont alors de vrais adaptateurs (
+ * {@link DirectPositionListCoordinateSequence}) qui ne dupliquent pas les
+ * positions.
  * 
  * TODO : gérer toutes les géométries, notamment {@link GM_Complex},
  * {@link GM_Solid}, etc.
@@ -254,7 +256,9 @@ public class AdapterFactory {
 
   /**
    * Transforme une liste de positions GeOxygene ({@link DirectPositionList}) en
-   * coordonnées JTS ({@link CoordinateSequence}).
+   * coordonnées JTS ({@link CoordinateSequence}). Si la factory JTS utilise une
+   * {@link DirectPositionListCoordinateSequenceFactory}, la séquence renvoyée
+   * est une vue sur la liste et les positions ne sont pas recopiées.
    * @param factory factory JTS
    * @param list liste de Positions GeOxygene
    * @return séquence de coordonnées JTS équivalents
@@ -264,7 +268,20 @@ public class AdapterFactory {
     if (list == null) {
       return factory.getCoordinateSequenceFactory().create(new Coordinate[0]);
     }
+    if (factory.getCoordinateSequenceFactory() instanceof DirectPositionListCoordinateSequenceFactory) {
+      // vue sur les positions GeOxygene, sans copie
+      return ((DirectPositionListCoordinateSequenceFactory) factory
+          .getCoordinateSequenceFactory()).create(list);
+    }
     Coordinate[] coords = new Coordinate[list.size()];
+    if (list instanceof PackedDirectPositionList) {
+      PackedDirectPositionList packed = (PackedDirectPositionList) list;
+      for (int i = 0; i < coords.length; i++) {
+        coords[i] = new Coordinate(packed.getX(i), packed.getY(i),
+            packed.getZ(i));
+      }
+      return factory.getCoordinateSequenceFactory().create(coords);
+    }
     for (int i = 0; i < list.size(); i++) {
       coords[i] = AdapterFactory.toCoordinate(list.get(i));
     }
@@ -319,13 +336,15 @@ public class AdapterFactory {
     }
     if (geom instanceof LinearRing) {
       result = new GM_Ring(new GM_LineString(
-          AdapterFactory.toDirectPositionList(geom.getCoordinates())));
+          AdapterFactory.toDirectPositionList(((LinearRing) geom)
+              .getCoordinateSequence())));
       result.setCRS(geom.getSRID());
       return result;
     }
     if (geom instanceof LineString) {
-      result = new GM_LineString(AdapterFactory.toDirectPositionList(geom
-          .getCoordinates()));
+      result = new GM_LineString(
+          AdapterFactory.toDirectPositionList(((LineString) geom)
+              .getCoordinateSequence()));
       result.setCRS(geom.getSRID());
       return result;
     }
@@ -335,7 +354,7 @@ public class AdapterFactory {
       } else {
         GM_Polygon polygon = new GM_Polygon(new GM_Ring(new GM_LineString(
             AdapterFactory.toDirectPositionList(((Polygon) geom)
-                .getExteriorRing().getCoordinates()))));
+                .getExteriorRing().getCoordinateSequence()))));
         for (int index = 0; index < ((Polygon) geom).getNumInteriorRing(); index++) {
           LineString ring = ((Polygon) geom).getInteriorRingN(index);
           polygon.addInterior((GM_Ring) AdapterFactory.toGM_Object(ring));
@@ -419,6 +438,9 @@ public class AdapterFactory {
    * @return liste de positions GeOxygene équivalente
    */
   public static IDirectPositionList toDirectPositionList(Coordinate[] coords) {
+    if (AdapterFactory.packedCoordinates) {
+      return AdapterFactory.toPackedDirectPositionList(coords);
+    }
     DirectPositionList list = new DirectPositionList();
     if (coords.length == 0) {
       return list;
@@ -440,6 +462,100 @@ public class AdapterFactory {
     return list;
   }
 
+  /**
+   * Transforme une séquence de coordonnées JTS ({@link CoordinateSequence}) en
+   * liste de positions GeOxygene ({@link IDirectPositionList}). Les séquences
+   * créées par une {@link DirectPositionListCoordinateSequenceFactory} sont lues
+   * sans passer par des {@link Coordinate} et, si les listes compactes sont
+   * activées ({@link #setPackedCoordinates(boolean)}), leur tableau de
+   * coordonnées est repris sans copie.
+   * 
+   * @param sequence séquence de coordonnées JTS
+   * @return liste de positions GeOxygene équivalente
+   */
+  public static IDirectPositionList toDirectPositionList(
+      CoordinateSequence sequence) {
+    if (!(sequence instanceof DirectPositionListCoordinateSequence)) {
+      return AdapterFactory.toDirectPositionList(sequence.toCoordinateArray());
+    }
+    DirectPositionListCoordinateSequence positions = (DirectPositionListCoordinateSequence) sequence;
+    if (AdapterFactory.packedCoordinates && !positions.isView()) {
+      return positions.toDirectPositionList();
+    }
+    int size = sequence.size();
+    IDirectPositionList list = AdapterFactory.packedCoordinates ? new PackedDirectPositionList(
+        3, size) : new DirectPositionList();
+    if (size == 0) {
+      return list;
+    }
+    // comme pour toDirectPositionList(Coordinate[]), la premiere position est
+    // reprise a la fin si la sequence est fermee
+    boolean closed = (sequence.getX(0) == sequence.getX(size - 1) && sequence
+        .getY(0) == sequence.getY(size - 1));
+    for (int i = 0; i < size - 1; i++) {
+      list.add(new DirectPosition(sequence.getX(i), sequence.getY(i), sequence
+          .getOrdinate(i, CoordinateSequence.Z)));
+    }
+    if (closed && !list.isEmpty()) {
+      list.add(list.get(0));
+    } else {
+      list.add(new DirectPosition(sequence.getX(size - 1), sequence
+          .getY(size - 1), sequence.getOrdinate(size - 1, CoordinateSequence.Z)));
+    }
+    return list;
+  }
+
+  /**
+   * Transforme un tableau de coordonnées JTS ({@link Coordinate}) en liste
+   * compacte de positions GeOxygene ({@link PackedDirectPositionList}).
+   * 
+   * @param coords tableau de coordonnées JTS
+   * @return liste compacte de positions GeOxygene équivalente
+   */
+  public static PackedDirectPositionList toPackedDirectPositionList(
+      Coordinate[] coords) {
+    int dimension = 2;
+    for (Coordinate c : coords) {
+      if (!Double.isNaN(c.z)) {
+        dimension = 3;
+        break;
+      }
+    }
+    PackedDirectPositionList list = new PackedDirectPositionList(dimension,
+        coords.length);
+    if (coords.length == 0) {
+      return list;
+    }
+    // si la liste est fermee, on recopie exactement la premiere position a la
+    // fin, comme pour toDirectPositionList
+    boolean closed = (coords[0].x == coords[coords.length - 1].x && coords[0].y == coords[coords.length - 1].y);
+    for (int i = 0; i < coords.length - 1; i++) {
+      list.add(coords[i].x, coords[i].y, coords[i].z);
+    }
+    if (closed && !list.isEmpty()) {
+      list.add(list.get(0));
+    } else {
+      Coordinate last = coords[coords.length - 1];
+      list.add(last.x, last.y, last.z);
+    }
+    return list;
+  }
+
+  /**
+   * Si vrai, les géométries GeOxygene construites à partir de géométries JTS
+   * utilisent des listes compactes de positions (
+   * {@link PackedDirectPositionList}), beaucoup moins coûteuses en mémoire.
+   */
+  private static boolean packedCoordinates = false;
+
+  public static void setPackedCoordinates(boolean packed) {
+    AdapterFactory.packedCoordinates = packed;
+  }
+
+  public static boolean isPackedCoordinates() {
+    return AdapterFactory.packedCoordinates;
+  }
+
   /**
    * Transforme la dimension des coordonnées d'un tableau de coordonnées JTS (
    * {@link Coordinate}) en 2D.
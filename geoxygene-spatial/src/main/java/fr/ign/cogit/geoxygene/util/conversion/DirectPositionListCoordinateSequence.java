@@ -0,0 +1,276 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.lang.ref.SoftReference;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+
+/**
+ * Séquence de coordonnées JTS ({@link CoordinateSequence}) qui ne recopie pas
+ * les positions dans des {@link Coordinate}. Deux modes existent :
+ * <ul>
+ * <li>une vue sur une liste de positions GeOxygene (
+ * {@link #DirectPositionListCoordinateSequence(IDirectPositionList)}) : les
+ * coordonnées sont lues directement dans la liste, sans aucune copie ;
+ * <li>une séquence « propre » créée par
+ * {@link DirectPositionListCoordinateSequenceFactory} lors des calculs JTS :
+ * les coordonnées sont rangées dans un tableau de doubles (x, y, z par sommet)
+ * qui peut ensuite être adopté tel quel par une
+ * {@link PackedDirectPositionList} ({@link #toDirectPositionList()}).
+ * </ul>
+ * Comme pour la PackedCoordinateSequence de JTS, {@link #toCoordinateArray()}
+ * renvoie un tableau construit à la demande (et conservé tant que la mémoire
+ * le permet) : modifier ce tableau ne modifie pas la séquence.
+ * <p>
+ * Une vue reflète l'état de la liste GeOxygene : si celle-ci est modifiée, la
+ * géométrie JTS construite sur la vue ne doit plus être utilisée (son
+ * enveloppe, notamment, est conservée par JTS).
+ */
+public class DirectPositionListCoordinateSequence implements
+    CoordinateSequence {
+  /** Liste GeOxygene vue par la séquence, null pour une séquence propre. */
+  private final IDirectPositionList list;
+  /** Liste compacte vue par la séquence (accès direct aux coordonnées). */
+  private final PackedDirectPositionList packed;
+  /** Coordonnées (x, y, z) d'une séquence propre. */
+  private double[] coordinates;
+  /** Vrai si les coordonnées ont déjà été adoptées par une liste GeOxygene. */
+  private boolean adopted = false;
+  /** Tableau de Coordinate construit à la demande. */
+  private transient SoftReference<Coordinate[]> coordRef;
+
+  /**
+   * Vue sur une liste de positions GeOxygene. Les positions ne sont pas
+   * recopiées.
+   * @param list liste de positions GeOxygene
+   */
+  public DirectPositionListCoordinateSequence(IDirectPositionList list) {
+    this.list = list;
+    this.packed = (list instanceof PackedDirectPositionList) ? (PackedDirectPositionList) list
+        : null;
+    this.coordinates = null;
+  }
+
+  /**
+   * Séquence propre dont les coordonnées sont rangées dans le tableau donné
+   * (x, y, z par sommet). Le tableau n'est pas recopié.
+   * @param coordinates coordonnées, de longueur multiple de 3
+   */
+  DirectPositionListCoordinateSequence(double[] coordinates) {
+    this.list = null;
+    this.packed = null;
+    this.coordinates = coordinates;
+  }
+
+  /** @return vrai si la séquence est une vue sur une liste GeOxygene */
+  public boolean isView() {
+    return this.list != null;
+  }
+
+  /** @return la liste GeOxygene vue par la séquence, null sinon */
+  public IDirectPositionList getList() {
+    return this.list;
+  }
+
+  /**
+   * Renvoie les positions de la séquence sous forme de liste GeOxygene. Pour
+   * une vue, c'est la liste vue elle-même. Pour une séquence propre, le
+   * tableau de coordonnées est arrondi (comme pour {@link DirectPosition}) puis
+   * adopté sans copie par une {@link PackedDirectPositionList} : la séquence
+   * et la liste partagent alors leurs coordonnées. Le tableau n'est adopté
+   * qu'une fois : les appels suivants renvoient une copie.
+   * @return liste de positions GeOxygene
+   */
+  public IDirectPositionList toDirectPositionList() {
+    if (this.list != null) {
+      return this.list;
+    }
+    if (this.adopted) {
+      return new PackedDirectPositionList(this.coordinates.clone(), 3);
+    }
+    double factor = Math.pow(10, DirectPosition.PRECISION);
+    for (int i = 0; i < this.coordinates.length; i++) {
+      this.coordinates[i] = Math.round(this.coordinates[i] * factor) / factor;
+    }
+    this.coordRef = null;
+    this.adopted = true;
+    return new PackedDirectPositionList(this.coordinates, 3);
+  }
+
+  @Override
+  public int getDimension() {
+    return 3;
+  }
+
+  @Override
+  public Coordinate getCoordinate(int i) {
+    Coordinate[] coords = this.getCachedCoords();
+    if (coords != null) {
+      return coords[i];
+    }
+    return this.getCoordinateCopy(i);
+  }
+
+  @Override
+  public Coordinate getCoordinateCopy(int i) {
+    return new Coordinate(this.getX(i), this.getY(i), this.getOrdinate(i,
+        CoordinateSequence.Z));
+  }
+
+  @Override
+  public void getCoordinate(int index, Coordinate coord) {
+    coord.x = this.getX(index);
+    coord.y = this.getY(index);
+    coord.z = this.getOrdinate(index, CoordinateSequence.Z);
+  }
+
+  @Override
+  public double getX(int index) {
+    if (this.coordinates != null) {
+      return this.coordinates[3 * index];
+    }
+    if (this.packed != null) {
+      return this.packed.getX(index);
+    }
+    return this.list.get(index).getX();
+  }
+
+  @Override
+  public double getY(int index) {
+    if (this.coordinates != null) {
+      return this.coordinates[3 * index + 1];
+    }
+    if (this.packed != null) {
+      return this.packed.getY(index);
+    }
+    return this.list.get(index).getY();
+  }
+
+  @Override
+  public double getOrdinate(int index, int ordinateIndex) {
+    switch (ordinateIndex) {
+      case CoordinateSequence.X:
+        return this.getX(index);
+      case CoordinateSequence.Y:
+        return this.getY(index);
+      case CoordinateSequence.Z:
+        if (this.coordinates != null) {
+          return this.coordinates[3 * index + 2];
+        }
+        if (this.packed != null) {
+          return this.packed.getZ(index);
+        }
+        return this.list.get(index).getZ();
+      default:
+        return Double.NaN;
+    }
+  }
+
+  @Override
+  public int size() {
+    if (this.coordinates != null) {
+      return this.coordinates.length / 3;
+    }
+    return this.list.size();
+  }
+
+  @Override
+  public void setOrdinate(int index, int ordinateIndex, double value) {
+    if (ordinateIndex > CoordinateSequence.Z) {
+      return;
+    }
+    this.coordRef = null;
+    if (this.coordinates != null) {
+      this.coordinates[3 * index + ordinateIndex] = value;
+    } else if (this.packed != null) {
+      this.packed.setCoordinate(index, ordinateIndex, value);
+    } else {
+      IDirectPosition p = this.list.get(index);
+      p.setCoordinate(ordinateIndex, value);
+    }
+  }
+
+  private Coordinate[] getCachedCoords() {
+    SoftReference<Coordinate[]> ref = this.coordRef;
+    return (ref == null) ? null : ref.get();
+  }
+
+  @Override
+  public Coordinate[] toCoordinateArray() {
+    Coordinate[] coords = this.getCachedCoords();
+    if (coords != null) {
+      return coords;
+    }
+    coords = new Coordinate[this.size()];
+    for (int i = 0; i < coords.length; i++) {
+      coords[i] = this.getCoordinateCopy(i);
+    }
+    this.coordRef = new SoftReference<Coordinate[]>(coords);
+    return coords;
+  }
+
+  @Override
+  public Envelope expandEnvelope(Envelope env) {
+    for (int i = 0; i < this.size(); i++) {
+      env.expandToInclude(this.getX(i), this.getY(i));
+    }
+    return env;
+  }
+
+  /**
+   * Renvoie une séquence propre contenant une copie des coordonnées (y compris
+   * pour une vue : la copie ne dépend plus de la liste GeOxygene).
+   */
+  @Override
+  public Object clone() {
+    if (this.coordinates != null) {
+      return new DirectPositionListCoordinateSequence(this.coordinates.clone());
+    }
+    return DirectPositionListCoordinateSequenceFactory.instance().create(this);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("("); //$NON-NLS-1$
+    for (int i = 0; i < this.size(); i++) {
+      if (i > 0) {
+        builder.append(", "); //$NON-NLS-1$
+      }
+      builder.append(this.getX(i)).append(" ").append(this.getY(i)); //$NON-NLS-1$
+    }
+    return builder.append(")").toString(); //$NON-NLS-1$
+  }
+}
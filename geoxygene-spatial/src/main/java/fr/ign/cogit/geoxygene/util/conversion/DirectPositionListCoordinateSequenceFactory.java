@@ -0,0 +1,111 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Serializable;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+
+/**
+ * Factory JTS de séquences {@link DirectPositionListCoordinateSequence}. Les
+ * géométries JTS construites avec une GeometryFactory utilisant cette factory (
+ * {@link JtsGeOxygene#getAdapterGeometryFactory(int)}) voient directement les
+ * positions GeOxygene, et les résultats des calculs JTS sont stockés dans des
+ * tableaux de doubles qui peuvent être repris sans copie par GeOxygene.
+ * <p>
+ * Les coordonnées créées par JTS ne sont pas arrondies (elles le sont lors de
+ * leur reprise par GeOxygene) afin de ne pas perturber les calculs JTS.
+ */
+public class DirectPositionListCoordinateSequenceFactory implements
+    CoordinateSequenceFactory, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final DirectPositionListCoordinateSequenceFactory instance = new DirectPositionListCoordinateSequenceFactory();
+
+  /** @return l'instance partagée de la factory */
+  public static DirectPositionListCoordinateSequenceFactory instance() {
+    return DirectPositionListCoordinateSequenceFactory.instance;
+  }
+
+  private DirectPositionListCoordinateSequenceFactory() {
+  }
+
+  private Object readResolve() {
+    return DirectPositionListCoordinateSequenceFactory.instance;
+  }
+
+  /**
+   * Construit une vue JTS sur une liste de positions GeOxygene, sans copie.
+   * @param list liste de positions GeOxygene
+   * @return séquence JTS vue sur la liste
+   */
+  public DirectPositionListCoordinateSequence create(IDirectPositionList list) {
+    return new DirectPositionListCoordinateSequence(list);
+  }
+
+  @Override
+  public CoordinateSequence create(Coordinate[] coordinates) {
+    if (coordinates == null) {
+      return new DirectPositionListCoordinateSequence(new double[0]);
+    }
+    double[] result = new double[3 * coordinates.length];
+    for (int i = 0; i < coordinates.length; i++) {
+      result[3 * i] = coordinates[i].x;
+      result[3 * i + 1] = coordinates[i].y;
+      result[3 * i + 2] = coordinates[i].z;
+    }
+    return new DirectPositionListCoordinateSequence(result);
+  }
+
+  @Override
+  public CoordinateSequence create(CoordinateSequence coordSeq) {
+    int size = coordSeq.size();
+    double[] result = new double[3 * size];
+    boolean hasZ = coordSeq.getDimension() > 2;
+    for (int i = 0; i < size; i++) {
+      result[3 * i] = coordSeq.getX(i);
+      result[3 * i + 1] = coordSeq.getY(i);
+      result[3 * i + 2] = hasZ ? coordSeq.getOrdinate(i, CoordinateSequence.Z)
+          : Double.NaN;
+    }
+    return new DirectPositionListCoordinateSequence(result);
+  }
+
+  @Override
+  public CoordinateSequence create(int size, int dimension) {
+    double[] result = new double[3 * size];
+    for (int i = 0; i < size; i++) {
+      result[3 * i + 2] = Double.NaN;
+    }
+    return new DirectPositionListCoordinateSequence(result);
+  }
+}
@@ -27,11 +27,15 @@
 
 package fr.ign.cogit.geoxygene.util.conversion;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.io.WKTReader;
 import com.vividsolutions.jts.io.WKTWriter;
 
@@ -40,6 +44,7 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
 
 /**
  * Conversions entre les GM_Object GeOxygene et les Geometry JTS.
@@ -58,6 +63,15 @@ public class JtsGeOxygene {
   // private static int jtsSRID=0;
   private static PrecisionModel jtsPrecision = new PrecisionModel();
 
+  /** Factories JTS par SRID, les GeometryFactory étant immuables. */
+  private static ConcurrentMap<Integer, GeometryFactory> jtsGeomFactories = new ConcurrentHashMap<Integer, GeometryFactory>();
+
+  /**
+   * Factories JTS par SRID dont les séquences de coordonnées sont des vues sur
+   * les positions GeOxygene.
+   */
+  private static ConcurrentMap<Integer, GeometryFactory> jtsAdapterFactories = new ConcurrentHashMap<Integer, GeometryFactory>();
+
   // private static GeometryFactory jtsGeomFactory=new
   // GeometryFactory(JtsGeOxygene.jtsPrecision,JtsGeOxygene.jtsSRID);
   // private static WKTReader jtsWktReader=new
@@ -93,17 +107,80 @@ public class JtsGeOxygene {
   public static Geometry makeJtsGeom(IGeometry geOxyGeom, boolean adapter)
       throws Exception {
     if (adapter) {
-      return AdapterFactory.toGeometry(new GeometryFactory(
-          JtsGeOxygene.jtsPrecision, geOxyGeom.getCRS()), geOxyGeom);
+      return AdapterFactory.toGeometry(
+          JtsGeOxygene.getGeometryFactory(geOxyGeom.getCRS()), geOxyGeom);
     }
 
-    GeometryFactory jtsGeomFactory = new GeometryFactory(
-        JtsGeOxygene.jtsPrecision, geOxyGeom.getCRS());
+    GeometryFactory jtsGeomFactory = JtsGeOxygene.getGeometryFactory(geOxyGeom
+        .getCRS());
     WKTReader jtsWktReader = new WKTReader(jtsGeomFactory);
     String wktGeom = WktGeOxygene.makeWkt(geOxyGeom);
     return jtsWktReader.read(wktGeom);
   }
 
+  /**
+   * Renvoie la géométrie JTS équivalente à une géométrie GeOxygene en
+   * réutilisant, si possible, celle conservée par la géométrie (cf.
+   * {@link JtsPeer}). La géométrie renvoyée peut être partagée : elle ne doit
+   * pas être modifiée. Pour obtenir une copie modifiable, utiliser
+   * {@link #makeJtsGeom(IGeometry)}.
+   * @param geOxyGeom une géométrie GeOxygene
+   * @return une géométrie JTS équivalente, à ne pas modifier
+   * @throws Exception renvoie une exception si la géométrie en entrée n'est pas
+   *           valide
+   */
+  public static Geometry makeJtsPeer(IGeometry geOxyGeom) throws Exception {
+    if (geOxyGeom instanceof GM_Object) {
+      return ((GM_Object) geOxyGeom).getJtsPeer().getGeometry();
+    }
+    return JtsGeOxygene.makeJtsGeom(geOxyGeom);
+  }
+
+  /**
+   * Renvoie la géométrie préparée JTS d'une géométrie GeOxygene si celle-ci a
+   * déjà été suffisamment réutilisée pour que sa préparation soit rentable (cf.
+   * {@link JtsPeer#getPreparedGeometryIfReused()}).
+   * @param geOxyGeom une géométrie GeOxygene
+   * @return la géométrie préparée, ou null si elle n'est pas (encore)
+   *         disponible
+   * @throws Exception renvoie une exception si la géométrie en entrée n'est pas
+   *           valide
+   */
+  public static PreparedGeometry makePreparedJtsPeer(IGeometry geOxyGeom)
+      throws Exception {
+    if (geOxyGeom instanceof GM_Object) {
+      return ((GM_Object) geOxyGeom).getJtsPeer()
+          .getPreparedGeometryIfReused();
+    }
+    return null;
+  }
+
+  /**
+   * Renvoie la factory JTS utilisée pour les géométries d'un SRID donné.
+   * @param srid identifiant du système de coordonnées
+   * @return une factory JTS partagée
+   */
+  public static GeometryFactory getGeometryFactory(int srid) {
+    return JtsGeOxygene.jtsGeomFactories.computeIfAbsent(srid,
+        s -> new GeometryFactory(JtsGeOxygene.jtsPrecision, s.intValue()));
+  }
+
+  /**
+   * Renvoie la factory JTS dont les séquences de coordonnées sont des vues sur
+   * les positions GeOxygene (cf.
+   * {@link DirectPositionListCoordinateSequenceFactory}). Les géométries JTS
+   * construites avec cette factory ne recopient pas les coordonnées et ne
+   * doivent pas être modifiées : elles sont réservées aux calculs en lecture
+   * seule (cf. {@link JtsPeer}).
+   * @param srid identifiant du système de coordonnées
+   * @return une factory JTS partagée
+   */
+  public static GeometryFactory getAdapterGeometryFactory(int srid) {
+    return JtsGeOxygene.jtsAdapterFactories.computeIfAbsent(srid,
+        s -> new GeometryFactory(JtsGeOxygene.jtsPrecision, s.intValue(),
+            DirectPositionListCoordinateSequenceFactory.instance()));
+  }
+
   /**
    * Conversion d'une géométrie JTS {@link Geometry} en géométrie GeOxygene
    * {@link IGeometry}.
@@ -147,8 +224,7 @@ public class JtsGeOxygene {
    */
   public static IDirectPosition makeDirectPosition(CoordinateSequence jtsCoord)
       throws Exception {
-    GeometryFactory jtsGeomFactory = new GeometryFactory(
-        JtsGeOxygene.jtsPrecision, 0);
+    GeometryFactory jtsGeomFactory = JtsGeOxygene.getGeometryFactory(0);
     Geometry jtsPoint = new Point(jtsCoord, jtsGeomFactory);
     IPoint geOxyPoint = (IPoint) JtsGeOxygene.makeGeOxygeneGeom(jtsPoint);
     IDirectPosition geOxyDirectPos = geOxyPoint.getPosition();
@@ -0,0 +1,391 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
+import fr.ign.cogit.geoxygene.api.spatial.geomcomp.ICompositeCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+
+/**
+ * Géométrie JTS associée à une géométrie GeOxygene (son « pair »). Le pair est
+ * construit une seule fois puis réutilisé par les prédicats et opérations de
+ * {@link fr.ign.cogit.geoxygene.util.algo.JtsAlgorithms} tant que la géométrie
+ * GeOxygene n'est pas modifiée.
+ * <p>
+ * Les positions GeOxygene étant modifiables directement (y compris via le
+ * tableau renvoyé par {@link IDirectPosition#getCoordinate()} ou
+ * {@link PackedDirectPositionList#getCoordinates()}), aucun compteur de
+ * modifications ne peut être tenu à jour par les géométries. Le pair conserve
+ * donc une copie des coordonnées (et des tailles des listes) lues au moment de
+ * sa construction, ainsi que les listes et positions parcourues : à chaque
+ * utilisation, la géométrie est reparcourue et comparée exactement à cette
+ * copie. Le parcours suit directement les points de contrôle des polylignes,
+ * les anneaux des surfaces et les éléments des agrégats : il ne construit
+ * aucune liste, contrairement à {@link IGeometry#coord()}, qui n'est utilisée
+ * que pour les courbes qui ne sont pas des polylignes. Une modification en
+ * place des listes (par exemple un changement de système de coordonnées) est
+ * ainsi détectée sans invalidation explicite.
+ * <p>
+ * Le pair est construit avec
+ * {@link JtsGeOxygene#getAdapterGeometryFactory(int)} : ses coordonnées sont
+ * des vues sur les positions GeOxygene et ne sont pas recopiées.
+ * <p>
+ * La géométrie JTS renvoyée est partagée : elle ne doit pas être modifiée par
+ * l'appelant. Les opérations qui modifient la géométrie JTS doivent continuer
+ * à utiliser {@link JtsGeOxygene#makeJtsGeom(IGeometry)}.
+ */
+public final class JtsPeer {
+  /** Nombre de pairs réutilisés. */
+  private static final LongAdder hits = new LongAdder();
+  /** Nombre de pairs (re)construits. */
+  private static final LongAdder misses = new LongAdder();
+  /**
+   * Nombre d'utilisations d'un même pair à partir duquel on construit sa
+   * {@link PreparedGeometry}. Une valeur négative désactive les géométries
+   * préparées.
+   */
+  private static int preparedThreshold = 2;
+
+  private final Geometry geometry;
+  private final int crs;
+  private final double[] values;
+  private final Object[] references;
+  private final double spacing;
+  private volatile PreparedGeometry prepared = null;
+  private volatile int uses = 0;
+
+  private JtsPeer(Geometry geometry, int crs, Snapshot snapshot,
+      double spacing) {
+    this.geometry = geometry;
+    this.crs = crs;
+    this.values = snapshot.values();
+    this.references = snapshot.references();
+    this.spacing = spacing;
+  }
+
+  /**
+   * Renvoie le pair JTS à jour pour la géométrie donnée, en réutilisant
+   * l'ancien pair s'il est toujours valide.
+   * @param geom une géométrie GeOxygene
+   * @param peer l'ancien pair de la géométrie, éventuellement null
+   * @return un pair valide pour la géométrie (peut être <code>peer</code>)
+   * @throws Exception si la géométrie ne peut pas être convertie
+   */
+  public static JtsPeer update(IGeometry geom, JtsPeer peer) throws Exception {
+    if (peer != null && peer.crs == geom.getCRS()
+        && peer.spacing == AdapterFactory.getSpacing()) {
+      Snapshot check = new Snapshot(peer.values, peer.references);
+      JtsPeer.walk(geom, check);
+      if (check.matches()) {
+        JtsPeer.hits.increment();
+        peer.uses++;
+        return peer;
+      }
+    }
+    JtsPeer.misses.increment();
+    // la copie est faite avant la conversion : une modification concurrente
+    // fera reconstruire le pair à la prochaine utilisation
+    Snapshot snapshot = new Snapshot(null, null);
+    JtsPeer.walk(geom, snapshot);
+    return new JtsPeer(AdapterFactory.toGeometry(
+        JtsGeOxygene.getAdapterGeometryFactory(geom.getCRS()), geom),
+        geom.getCRS(), snapshot, AdapterFactory.getSpacing());
+  }
+
+  /**
+   * Copie des coordonnées d'une géométrie, ou comparaison des coordonnées
+   * d'une géométrie à une copie existante.
+   */
+  static final class Snapshot {
+    private double[] values;
+    private Object[] references;
+    private int nValues = 0;
+    private int nReferences = 0;
+    private final boolean recording;
+    private boolean same = true;
+
+    /**
+     * @param values coordonnées à comparer, null pour copier
+     * @param references listes et positions à comparer, null pour copier
+     */
+    Snapshot(double[] values, Object[] references) {
+      this.recording = (values == null);
+      this.values = this.recording ? new double[16] : values;
+      this.references = this.recording ? new Object[4] : references;
+    }
+
+    void value(double v) {
+      if (this.recording) {
+        if (this.nValues == this.values.length) {
+          this.values = Arrays.copyOf(this.values, 2 * this.nValues);
+        }
+        this.values[this.nValues++] = v;
+        return;
+      }
+      if (this.same
+          && (this.nValues >= this.values.length || Double
+              .doubleToLongBits(this.values[this.nValues]) != Double
+              .doubleToLongBits(v))) {
+        this.same = false;
+      }
+      this.nValues++;
+    }
+
+    void reference(Object o) {
+      if (this.recording) {
+        if (this.nReferences == this.references.length) {
+          this.references = Arrays.copyOf(this.references,
+              2 * this.nReferences);
+        }
+        this.references[this.nReferences++] = o;
+        return;
+      }
+      if (this.same
+          && (this.nReferences >= this.references.length || this.references[this.nReferences] != o)) {
+        this.same = false;
+      }
+      this.nReferences++;
+    }
+
+    /** @return vrai si le parcours a été interrompu par une différence */
+    boolean differs() {
+      return !this.recording && !this.same;
+    }
+
+    /** @return vrai si la géométrie parcourue est identique à la copie */
+    boolean matches() {
+      return this.same && this.nValues == this.values.length
+          && this.nReferences == this.references.length;
+    }
+
+    double[] values() {
+      return Arrays.copyOf(this.values, this.nValues);
+    }
+
+    Object[] references() {
+      return Arrays.copyOf(this.references, this.nReferences);
+    }
+  }
+
+  /**
+   * Parcourt les coordonnées d'une géométrie sans construire de liste de
+   * positions, sauf pour les courbes qui ne sont pas des polylignes.
+   * @param geom géométrie à parcourir
+   * @param snapshot copie à remplir ou à comparer
+   */
+  static void walk(IGeometry geom, Snapshot snapshot) {
+    if (snapshot.differs()) {
+      return;
+    }
+    if (geom == null) {
+      snapshot.reference(null);
+      return;
+    }
+    if (geom instanceof IPoint) {
+      IDirectPosition position = ((IPoint) geom).getPosition();
+      snapshot.reference(position);
+      if (position != null) {
+        snapshot.value(position.getX());
+        snapshot.value(position.getY());
+        snapshot.value(position.getZ());
+      }
+      return;
+    }
+    if (geom instanceof IOrientableCurve) {
+      JtsPeer.walk((IOrientableCurve) geom, snapshot);
+      return;
+    }
+    if (geom instanceof IPolygon) {
+      IPolygon polygon = (IPolygon) geom;
+      JtsPeer.walk(polygon.getExterior(), snapshot);
+      snapshot.value(polygon.getInterior().size());
+      for (IRing ring : polygon.getInterior()) {
+        JtsPeer.walk(ring, snapshot);
+      }
+      return;
+    }
+    if (geom instanceof IAggregate<?>) {
+      IAggregate<?> aggregate = (IAggregate<?>) geom;
+      snapshot.value(aggregate.size());
+      for (int i = 0; i < aggregate.size(); i++) {
+        JtsPeer.walk(aggregate.get(i), snapshot);
+      }
+      return;
+    }
+    JtsPeer.walk(geom.coord(), false, snapshot);
+  }
+
+  private static void walk(IOrientableCurve curve, Snapshot snapshot) {
+    if (curve == null) {
+      snapshot.reference(null);
+      return;
+    }
+    if (curve instanceof ILineString) {
+      JtsPeer.walk(((ILineString) curve).getControlPoint(), true, snapshot);
+      return;
+    }
+    if (curve instanceof ICompositeCurve) {
+      List<IOrientableCurve> generator = ((ICompositeCurve) curve)
+          .getGenerator();
+      snapshot.value(generator.size());
+      for (IOrientableCurve c : generator) {
+        JtsPeer.walk(c, snapshot);
+      }
+      return;
+    }
+    if (curve instanceof ICurve) {
+      JtsPeer.walk(curve.coord(), false, snapshot);
+      return;
+    }
+    snapshot.value(curve.getOrientation());
+    JtsPeer.walk(curve.getPrimitive(), snapshot);
+  }
+
+  /**
+   * @param list liste de positions
+   * @param owned vrai si la liste appartient à la géométrie (et peut donc être
+   *          vue par le pair), faux si elle a été construite pour le parcours
+   * @param snapshot copie à remplir ou à comparer
+   */
+  private static void walk(IDirectPositionList list, boolean owned,
+      Snapshot snapshot) {
+    if (owned) {
+      snapshot.reference(list);
+    }
+    if (list == null) {
+      snapshot.value(-1);
+      return;
+    }
+    snapshot.value(list.size());
+    if (list instanceof PackedDirectPositionList) {
+      PackedDirectPositionList packed = (PackedDirectPositionList) list;
+      for (int i = 0; i < packed.size() && !snapshot.differs(); i++) {
+        snapshot.value(packed.getX(i));
+        snapshot.value(packed.getY(i));
+        snapshot.value(packed.getZ(i));
+      }
+      return;
+    }
+    for (int i = 0; i < list.size() && !snapshot.differs(); i++) {
+      IDirectPosition p = list.get(i);
+      if (owned) {
+        snapshot.reference(p);
+      }
+      if (p == null) {
+        snapshot.value(Double.NaN);
+        continue;
+      }
+      snapshot.value(p.getX());
+      snapshot.value(p.getY());
+      snapshot.value(p.getZ());
+    }
+  }
+
+  /** @return la géométrie JTS (partagée, à ne pas modifier) */
+  public Geometry getGeometry() {
+    return this.geometry;
+  }
+
+  /**
+   * Renvoie la géométrie préparée associée au pair, construite à la demande.
+   * @return la géométrie préparée
+   */
+  public PreparedGeometry getPreparedGeometry() {
+    PreparedGeometry result = this.prepared;
+    if (result == null) {
+      result = PreparedGeometryFactory.prepare(this.geometry);
+      this.prepared = result;
+    }
+    return result;
+  }
+
+  /**
+   * Renvoie la géométrie préparée si le pair a déjà été suffisamment réutilisé
+   * pour que sa préparation soit rentable.
+   * @return la géométrie préparée, ou null si elle ne vaut pas encore la peine
+   *         d'être construite
+   */
+  public PreparedGeometry getPreparedGeometryIfReused() {
+    if (this.prepared != null) {
+      return this.prepared;
+    }
+    int threshold = JtsPeer.preparedThreshold;
+    if (threshold < 0 || this.uses < threshold) {
+      return null;
+    }
+    return this.getPreparedGeometry();
+  }
+
+  /** @return le nombre de fois où un pair existant a été réutilisé */
+  public static long getHits() {
+    return JtsPeer.hits.sum();
+  }
+
+  /** @return le nombre de fois où un pair a dû être (re)construit */
+  public static long getMisses() {
+    return JtsPeer.misses.sum();
+  }
+
+  /** Remet à zéro les compteurs de réutilisation. */
+  public static void resetStatistics() {
+    JtsPeer.hits.reset();
+    JtsPeer.misses.reset();
+  }
+
+  /** @return le seuil de réutilisation déclenchant la préparation */
+  public static int getPreparedThreshold() {
+    return JtsPeer.preparedThreshold;
+  }
+
+  /**
+   * Affecte le nombre de réutilisations d'un pair à partir duquel sa géométrie
+   * préparée est construite et utilisée par les prédicats.
+   * @param threshold seuil, une valeur négative désactive les géométries
+   *          préparées
+   */
+  public static void setPreparedThreshold(int threshold) {
+    JtsPeer.preparedThreshold = threshold;
+  }
+}
@@ -0,0 +1,555 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableCurve;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+/**
+ * Lecture et écriture directes des géométries GeOxygene au format WKB (Well
+ * Known Binary) et EWKB (WKB étendu de PostGIS), sans passer par JTS ni par le
+ * WKT.
+ * <p>
+ * La lecture accepte les deux ordres d'octets, les géométries 2D et 3D (drapeau
+ * Z de l'EWKB ou types ISO 1000 à 1007), le SRID de l'EWKB, qui devient le CRS
+ * de la géométrie, et ignore la mesure M. L'écriture produit de l'EWKB : la
+ * géométrie est écrite en 3D si sa première position a un Z, et le SRID est
+ * écrit si demandé et si le CRS de la géométrie est positif.
+ * <p>
+ * Les positions lues sont rangées dans des {@link PackedDirectPositionList} si
+ * {@link AdapterFactory#isPackedCoordinates()} est vrai, comme pour les
+ * géométries converties depuis JTS.
+ *
+ * @see WktGeOxygene
+ */
+public final class WkbGeOxygene {
+
+  private static final int POINT = 1;
+  private static final int LINESTRING = 2;
+  private static final int POLYGON = 3;
+  private static final int MULTIPOINT = 4;
+  private static final int MULTILINESTRING = 5;
+  private static final int MULTIPOLYGON = 6;
+  private static final int GEOMETRYCOLLECTION = 7;
+
+  private static final int EWKB_Z = 0x80000000;
+  private static final int EWKB_M = 0x40000000;
+  private static final int EWKB_SRID = 0x20000000;
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray(); //$NON-NLS-1$
+
+  private WkbGeOxygene() {
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Lecture -------------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Construit une géométrie GeOxygene à partir de son WKB ou EWKB.
+   * @param wkb géométrie encodée
+   * @return la géométrie GeOxygene
+   * @throws ParseException si le contenu n'est pas du WKB valide
+   */
+  public static IGeometry makeGeOxygene(byte[] wkb) throws ParseException {
+    return WkbGeOxygene.makeGeOxygene(ByteBuffer.wrap(wkb));
+  }
+
+  /**
+   * Lit une géométrie WKB ou EWKB à partir de la position courante d'un
+   * tampon. La position du tampon est avancée à la fin de la géométrie, et son
+   * ordre d'octets est conservé.
+   * @param buffer tampon contenant la géométrie
+   * @return la géométrie GeOxygene
+   * @throws ParseException si le contenu n'est pas du WKB valide
+   */
+  public static IGeometry makeGeOxygene(ByteBuffer buffer)
+      throws ParseException {
+    ByteOrder order = buffer.order();
+    try {
+      return WkbGeOxygene.read(buffer, true);
+    } catch (BufferUnderflowException e) {
+      throw new ParseException("truncated WKB"); //$NON-NLS-1$
+    } finally {
+      buffer.order(order);
+    }
+  }
+
+  /**
+   * Construit une géométrie GeOxygene à partir de son WKB ou EWKB en
+   * hexadécimal, forme sous laquelle PostGIS renvoie les géométries.
+   * @param hex géométrie encodée en hexadécimal
+   * @return la géométrie GeOxygene
+   * @throws ParseException si le contenu n'est pas du WKB valide
+   */
+  public static IGeometry makeGeOxygeneFromHex(String hex)
+      throws ParseException {
+    if (hex.length() % 2 != 0) {
+      throw new ParseException("odd number of hexadecimal digits"); //$NON-NLS-1$
+    }
+    byte[] wkb = new byte[hex.length() / 2];
+    for (int i = 0; i < wkb.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new ParseException("invalid hexadecimal digit at " + 2 * i); //$NON-NLS-1$
+      }
+      wkb[i] = (byte) ((high << 4) | low);
+    }
+    return WkbGeOxygene.makeGeOxygene(wkb);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static IGeometry read(ByteBuffer buffer, boolean root)
+      throws ParseException {
+    byte endianness = buffer.get();
+    if (endianness == 0) {
+      buffer.order(ByteOrder.BIG_ENDIAN);
+    } else if (endianness == 1) {
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    } else {
+      throw new ParseException("invalid byte order " + endianness); //$NON-NLS-1$
+    }
+    int typeWord = buffer.getInt();
+    boolean z = (typeWord & WkbGeOxygene.EWKB_Z) != 0;
+    boolean m = (typeWord & WkbGeOxygene.EWKB_M) != 0;
+    int srid = ((typeWord & WkbGeOxygene.EWKB_SRID) != 0) ? buffer.getInt()
+        : -1;
+    int type = typeWord & 0x1FFFFFFF;
+    // types ISO : 1000 pour Z, 2000 pour M, 3000 pour ZM
+    switch (type / 1000) {
+      case 0:
+        break;
+      case 1:
+        z = true;
+        break;
+      case 2:
+        m = true;
+        break;
+      case 3:
+        z = true;
+        m = true;
+        break;
+      default:
+        throw new ParseException("unknown WKB type " + type); //$NON-NLS-1$
+    }
+    type = type % 1000;
+    int stride = 2 + (z ? 1 : 0) + (m ? 1 : 0);
+    IGeometry result;
+    switch (type) {
+      case POINT: {
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        double zValue = z ? buffer.getDouble() : Double.NaN;
+        if (m) {
+          buffer.getDouble();
+        }
+        if (Double.isNaN(x) && Double.isNaN(y)) {
+          // point vide : new GM_Point() arrondirait NaN à 0
+          GM_Point point = new GM_Point();
+          point.setPosition(new DirectPosition());
+          result = point;
+        } else {
+          result = new GM_Point(z ? new DirectPosition(x, y, zValue)
+              : new DirectPosition(x, y));
+        }
+        break;
+      }
+      case LINESTRING:
+        result = new GM_LineString(WkbGeOxygene.readPositions(buffer, z,
+            stride));
+        break;
+      case POLYGON: {
+        int nbRings = buffer.getInt();
+        if (nbRings == 0) {
+          result = new GM_Polygon();
+          break;
+        }
+        GM_Polygon polygon = new GM_Polygon(new GM_Ring(new GM_LineString(
+            WkbGeOxygene.readPositions(buffer, z, stride))));
+        for (int i = 1; i < nbRings; i++) {
+          polygon.addInterior(new GM_Ring(new GM_LineString(WkbGeOxygene
+              .readPositions(buffer, z, stride))));
+        }
+        result = polygon;
+        break;
+      }
+      case MULTIPOINT: {
+        int n = buffer.getInt();
+        GM_MultiPoint multiPoint = new GM_MultiPoint();
+        for (int i = 0; i < n; i++) {
+          multiPoint.add((GM_Point) WkbGeOxygene.readElement(buffer,
+              GM_Point.class));
+        }
+        result = multiPoint;
+        break;
+      }
+      case MULTILINESTRING: {
+        int n = buffer.getInt();
+        GM_MultiCurve<GM_OrientableCurve> multiCurve = new GM_MultiCurve<GM_OrientableCurve>();
+        for (int i = 0; i < n; i++) {
+          multiCurve.add((GM_LineString) WkbGeOxygene.readElement(buffer,
+              GM_LineString.class));
+        }
+        result = multiCurve;
+        break;
+      }
+      case MULTIPOLYGON: {
+        int n = buffer.getInt();
+        GM_MultiSurface<GM_OrientableSurface> multiSurface = new GM_MultiSurface<GM_OrientableSurface>();
+        for (int i = 0; i < n; i++) {
+          multiSurface.add((GM_Polygon) WkbGeOxygene.readElement(buffer,
+              GM_Polygon.class));
+        }
+        result = multiSurface;
+        break;
+      }
+      case GEOMETRYCOLLECTION: {
+        int n = buffer.getInt();
+        GM_Aggregate<IGeometry> aggregate = new GM_Aggregate<IGeometry>();
+        for (int i = 0; i < n; i++) {
+          aggregate.add(WkbGeOxygene.read(buffer, false));
+        }
+        result = aggregate;
+        break;
+      }
+      default:
+        throw new ParseException("unknown WKB type " + type); //$NON-NLS-1$
+    }
+    if (root || srid != -1) {
+      result.setCRS(srid);
+    }
+    return result;
+  }
+
+  /** Lit un élément d'une géométrie multiple et vérifie son type. */
+  private static IGeometry readElement(ByteBuffer buffer,
+      Class<? extends IGeometry> expected) throws ParseException {
+    IGeometry element = WkbGeOxygene.read(buffer, false);
+    if (!expected.isInstance(element)) {
+      throw new ParseException("unexpected " //$NON-NLS-1$
+          + element.getClass().getSimpleName() + " in a multi geometry"); //$NON-NLS-1$
+    }
+    return element;
+  }
+
+  /**
+   * Lit une liste de positions précédée de sa taille. Comme dans
+   * {@link AdapterFactory#toDirectPositionList(com.vividsolutions.jts.geom.Coordinate[])}
+   * , la dernière position d'une liste fermée est la première.
+   */
+  private static IDirectPositionList readPositions(ByteBuffer buffer,
+      boolean z, int stride) throws ParseException {
+    int n = buffer.getInt();
+    if (n < 0 || (long) n * stride * 8 > buffer.remaining()) {
+      throw new ParseException("invalid number of points " + n); //$NON-NLS-1$
+    }
+    int dimension = z ? 3 : 2;
+    if (AdapterFactory.isPackedCoordinates()) {
+      double[] coordinates = new double[n * dimension];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < dimension; j++) {
+          coordinates[i * dimension + j] = buffer.getDouble();
+        }
+        for (int j = dimension; j < stride; j++) {
+          buffer.getDouble();
+        }
+      }
+      return new PackedDirectPositionList(coordinates, dimension);
+    }
+    DirectPositionList list = new DirectPositionList();
+    for (int i = 0; i < n; i++) {
+      double x = buffer.getDouble();
+      double y = buffer.getDouble();
+      IDirectPosition position = z ? new DirectPosition(x, y,
+          buffer.getDouble()) : new DirectPosition(x, y);
+      for (int j = dimension; j < stride; j++) {
+        buffer.getDouble();
+      }
+      if (i == n - 1 && n > 1 && x == list.get(0).getX()
+          && y == list.get(0).getY()) {
+        list.add(list.get(0));
+      } else {
+        list.add(position);
+      }
+    }
+    return list;
+  }
+
+  /*------------------------------------------------------------*/
+  /*-- Écriture ------------------------------------------------*/
+  /*------------------------------------------------------------*/
+
+  /**
+   * Encode une géométrie en EWKB petit-boutiste, avec son SRID si son CRS est
+   * positif.
+   * @param geom géométrie à encoder
+   * @return l'EWKB de la géométrie
+   */
+  public static byte[] makeWkb(IGeometry geom) {
+    return WkbGeOxygene.makeWkb(geom, true);
+  }
+
+  /**
+   * Encode une géométrie en EWKB petit-boutiste.
+   * @param geom géométrie à encoder
+   * @param srid si vrai, le CRS de la géométrie est écrit s'il est positif
+   * @return l'EWKB de la géométrie
+   */
+  public static byte[] makeWkb(IGeometry geom, boolean srid) {
+    byte[] wkb = new byte[WkbGeOxygene.wkbSize(geom, srid)];
+    WkbGeOxygene.writeWkb(geom, srid,
+        ByteBuffer.wrap(wkb).order(ByteOrder.LITTLE_ENDIAN));
+    return wkb;
+  }
+
+  /**
+   * Encode une géométrie en EWKB hexadécimal, forme acceptée par PostGIS.
+   * @param geom géométrie à encoder
+   * @return l'EWKB de la géométrie en hexadécimal
+   */
+  public static String makeHexWkb(IGeometry geom) {
+    byte[] wkb = WkbGeOxygene.makeWkb(geom, true);
+    char[] hex = new char[2 * wkb.length];
+    for (int i = 0; i < wkb.length; i++) {
+      hex[2 * i] = WkbGeOxygene.HEX[(wkb[i] >> 4) & 0xF];
+      hex[2 * i + 1] = WkbGeOxygene.HEX[wkb[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Renvoie la taille de l'EWKB d'une géométrie, pour préparer un tampon.
+   * @param geom géométrie à encoder
+   * @param srid si vrai, le CRS de la géométrie est écrit s'il est positif
+   * @return le nombre d'octets écrits par
+   *         {@link #writeWkb(IGeometry, boolean, ByteBuffer)}
+   */
+  public static int wkbSize(IGeometry geom, boolean srid) {
+    int header = 5 + ((srid && geom.getCRS() > 0) ? 4 : 0);
+    return header
+        + WkbGeOxygene.bodySize(geom, WkbGeOxygene.hasZ(geom) ? 3 : 2);
+  }
+
+  /**
+   * Écrit l'EWKB d'une géométrie à la position courante d'un tampon, dans
+   * l'ordre d'octets du tampon.
+   * @param geom géométrie à encoder
+   * @param srid si vrai, le CRS de la géométrie est écrit s'il est positif
+   * @param buffer tampon de destination
+   */
+  public static void writeWkb(IGeometry geom, boolean srid, ByteBuffer buffer) {
+    WkbGeOxygene.write(geom, (srid && geom.getCRS() > 0) ? geom.getCRS() : -1,
+        WkbGeOxygene.hasZ(geom) ? 3 : 2, buffer);
+  }
+
+  /** Vrai si la première position de la géométrie a un Z. */
+  @SuppressWarnings("unchecked")
+  private static boolean hasZ(IGeometry geom) {
+    if (geom instanceof IPoint) {
+      IDirectPosition position = ((IPoint) geom).getPosition();
+      return position != null && !Double.isNaN(position.getZ());
+    }
+    if (geom instanceof IPolygon) {
+      IRing exterior = ((IPolygon) geom).getExterior();
+      return exterior != null && WkbGeOxygene.hasZ(exterior);
+    }
+    if (geom instanceof IAggregate) {
+      IAggregate<IGeometry> aggregate = (IAggregate<IGeometry>) geom;
+      return !aggregate.isEmpty() && WkbGeOxygene.hasZ(aggregate.get(0));
+    }
+    IDirectPositionList positions = WkbGeOxygene.positions(geom);
+    return !positions.isEmpty() && !Double.isNaN(positions.get(0).getZ());
+  }
+
+  /** Positions d'une courbe. */
+  private static IDirectPositionList positions(IGeometry geom) {
+    if (geom instanceof ILineString) {
+      return ((ILineString) geom).getControlPoint();
+    }
+    if (geom instanceof ICurve || geom instanceof IRing) {
+      return geom.coord();
+    }
+    throw new IllegalArgumentException("geometry type " //$NON-NLS-1$
+        + geom.getClass().getSimpleName() + " cannot be written as WKB"); //$NON-NLS-1$
+  }
+
+  /** Taille de l'EWKB d'une géométrie sans son en-tête. */
+  @SuppressWarnings("unchecked")
+  private static int bodySize(IGeometry geom, int dimension) {
+    if (geom instanceof IPoint) {
+      return 8 * dimension;
+    }
+    if (geom instanceof IPolygon) {
+      IPolygon polygon = (IPolygon) geom;
+      if (polygon.getExterior() == null) {
+        return 4;
+      }
+      int size = 4 + 4 + 8 * dimension * polygon.getExterior().coord().size();
+      for (int i = 0; i < polygon.sizeInterior(); i++) {
+        size += 4 + 8 * dimension * polygon.getInterior(i).coord().size();
+      }
+      return size;
+    }
+    if (geom instanceof IAggregate) {
+      int size = 4;
+      for (IGeometry element : (IAggregate<IGeometry>) geom) {
+        size += 5 + WkbGeOxygene.bodySize(element, dimension);
+      }
+      return size;
+    }
+    return 4 + 8 * dimension * WkbGeOxygene.positions(geom).size();
+  }
+
+  /** Code de type WKB d'une géométrie GeOxygene. */
+  private static int wkbType(IGeometry geom) {
+    if (geom instanceof IPoint) {
+      return WkbGeOxygene.POINT;
+    }
+    if (geom instanceof IPolygon) {
+      return WkbGeOxygene.POLYGON;
+    }
+    if (geom instanceof IMultiPoint) {
+      return WkbGeOxygene.MULTIPOINT;
+    }
+    if (geom instanceof IMultiCurve) {
+      return WkbGeOxygene.MULTILINESTRING;
+    }
+    if (geom instanceof IMultiSurface) {
+      return WkbGeOxygene.MULTIPOLYGON;
+    }
+    if (geom instanceof IAggregate) {
+      return WkbGeOxygene.GEOMETRYCOLLECTION;
+    }
+    WkbGeOxygene.positions(geom); // vérifie que c'est une courbe
+    return WkbGeOxygene.LINESTRING;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void write(IGeometry geom, int srid, int dimension,
+      ByteBuffer buffer) {
+    buffer.put((byte) (buffer.order() == ByteOrder.LITTLE_ENDIAN ? 1 : 0));
+    int typeWord = WkbGeOxygene.wkbType(geom);
+    if (dimension == 3) {
+      typeWord |= WkbGeOxygene.EWKB_Z;
+    }
+    if (srid != -1) {
+      typeWord |= WkbGeOxygene.EWKB_SRID;
+    }
+    buffer.putInt(typeWord);
+    if (srid != -1) {
+      buffer.putInt(srid);
+    }
+    if (geom instanceof IPoint) {
+      IDirectPosition position = ((IPoint) geom).getPosition();
+      if (position == null) {
+        // point vide : NaN, NaN comme PostGIS
+        position = new DirectPosition();
+      }
+      buffer.putDouble(position.getX());
+      buffer.putDouble(position.getY());
+      if (dimension == 3) {
+        buffer.putDouble(position.getZ());
+      }
+    } else if (geom instanceof IPolygon) {
+      IPolygon polygon = (IPolygon) geom;
+      if (polygon.getExterior() == null) {
+        buffer.putInt(0);
+        return;
+      }
+      buffer.putInt(1 + polygon.sizeInterior());
+      WkbGeOxygene.writePositions(polygon.getExterior().coord(), dimension,
+          buffer);
+      for (int i = 0; i < polygon.sizeInterior(); i++) {
+        WkbGeOxygene.writePositions(polygon.getInterior(i).coord(), dimension,
+            buffer);
+      }
+    } else if (geom instanceof IAggregate) {
+      IAggregate<IGeometry> aggregate = (IAggregate<IGeometry>) geom;
+      buffer.putInt(aggregate.size());
+      for (IGeometry element : aggregate) {
+        WkbGeOxygene.write(element, -1, dimension, buffer);
+      }
+    } else {
+      WkbGeOxygene.writePositions(WkbGeOxygene.positions(geom), dimension,
+          buffer);
+    }
+  }
+
+  private static void writePositions(IDirectPositionList positions,
+      int dimension, ByteBuffer buffer) {
+    int n = positions.size();
+    buffer.putInt(n);
+    if (positions instanceof PackedDirectPositionList) {
+      PackedDirectPositionList packed = (PackedDirectPositionList) positions;
+      for (int i = 0; i < n; i++) {
+        buffer.putDouble(packed.getX(i));
+        buffer.putDouble(packed.getY(i));
+        if (dimension == 3) {
+          buffer.putDouble(packed.getZ(i));
+        }
+      }
+      return;
+    }
+    for (int i = 0; i < n; i++) {
+      IDirectPosition position = positions.get(i);
+      buffer.putDouble(position.getX());
+      buffer.putDouble(position.getY());
+      if (dimension == 3) {
+        buffer.putDouble(position.getZ());
+      }
+    }
+  }
+}
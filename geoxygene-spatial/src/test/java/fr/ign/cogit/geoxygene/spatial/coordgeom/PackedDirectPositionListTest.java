@@ -0,0 +1,116 @@
+package fr.ign.cogit.geoxygene.spatial.coordgeom;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+public class PackedDirectPositionListTest {
+  PackedDirectPositionList list;
+
+  @Before
+  public void setUp() throws Exception {
+    this.list = new PackedDirectPositionList(new double[] { 0, 0, 1, 0, 1, 1,
+        0, 1, 0, 0 }, 2);
+  }
+
+  @Test
+  public void testViews() {
+    Assert.assertEquals(5, this.list.size());
+    IDirectPosition p = this.list.get(2);
+    Assert.assertEquals(1, p.getX(), 0);
+    Assert.assertTrue(Double.isNaN(p.getZ()));
+    p.setX(2);
+    Assert.assertEquals(2, this.list.getX(2), 0);
+    Assert.assertEquals(new DirectPosition(2, 1), p);
+    Assert.assertTrue(this.list.contains(new DirectPosition(2, 1)));
+  }
+
+  @Test
+  public void testPromoteTo3D() {
+    double[] array2D = this.list.toArray2D();
+    Assert.assertSame(array2D, this.list.toArray2D());
+    this.list.add(new DirectPosition(3, 3, 7));
+    Assert.assertEquals(3, this.list.getDimension());
+    Assert.assertEquals(7, this.list.getZ(5), 0);
+    Assert.assertTrue(Double.isNaN(this.list.getZ(0)));
+    Assert.assertEquals(18, this.list.toArray3D().length);
+  }
+
+  @Test
+  public void testInsertRemove() {
+    this.list.add(1, new DirectPosition(0.5, 0));
+    Assert.assertEquals(6, this.list.size());
+    Assert.assertEquals(0.5, this.list.getX(1), 0);
+    Assert.assertEquals(1, this.list.getX(2), 0);
+    this.list.remove(1);
+    Assert.assertEquals(1, this.list.getX(1), 0);
+    this.list.remove(new DirectPosition(0, 0));
+    Assert.assertEquals(4, this.list.size());
+    Assert.assertEquals(1, this.list.getX(0), 0);
+  }
+
+  @Test
+  public void testReverse() {
+    PackedDirectPositionList big = new PackedDirectPositionList();
+    for (int i = 0; i < 30; i++) {
+      big.add(i, -i, Double.NaN);
+    }
+    Collections.reverse(big.getList());
+    for (int i = 0; i < 30; i++) {
+      Assert.assertEquals(29 - i, big.getX(i), 0);
+    }
+    Assert.assertEquals(5, this.list.reverse().size());
+  }
+
+  @Test
+  public void testGeometries() {
+    GM_LineString line = new GM_LineString(this.list);
+    Assert.assertTrue(line.getControlPoint() instanceof PackedDirectPositionList);
+    Assert.assertEquals(4, line.length(), 1e-10);
+    ILineString reverse = line.reverse();
+    Assert.assertEquals(new DirectPosition(0, 1), reverse.getControlPoint(1));
+    GM_Polygon polygon = new GM_Polygon(new GM_Ring(line));
+    Assert.assertEquals(1, polygon.area(), 1e-10);
+    Assert.assertEquals(1, polygon.envelope().maxX(), 0);
+  }
+
+  @Test
+  public void testRounding() {
+    double v = 0.1234567891;
+    double rounded = new DirectPosition(v, v).getX();
+    // DirectPosition.move n'arrondit pas
+    DirectPosition unrounded = new DirectPosition(0, 0);
+    unrounded.move(v, v);
+    this.list.add(unrounded);
+    Assert.assertEquals(rounded, this.list.getX(5), 0);
+    this.list.set(0, unrounded);
+    Assert.assertEquals(rounded, this.list.getX(0), 0);
+    this.list.add(1, unrounded);
+    Assert.assertEquals(rounded, this.list.getY(1), 0);
+    this.list.move(2, v, v, 0);
+    Assert.assertEquals(rounded, this.list.getY(2), 0);
+    this.list.add(v, v, Double.NaN);
+    Assert.assertEquals(2, this.list.getDimension());
+  }
+
+  @Test
+  public void testViewsFollowIndex() {
+    IDirectPosition p = this.list.get(1);
+    IDirectPosition copy = (IDirectPosition) p.clone();
+    this.list.remove(0);
+    Assert.assertEquals(new DirectPosition(1, 1), p);
+    Assert.assertEquals(new DirectPosition(1, 0), copy);
+  }
+
+  @Test
+  public void testToString() {
+    Assert.assertEquals("PackedDirectPositionList : liste vide", //$NON-NLS-1$
+        new PackedDirectPositionList().toString());
+  }
+}
@@ -0,0 +1,80 @@
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+/**
+ * Les allers-retours GeOxygene / JTS (conversion seule, buffer, union,
+ * intersection) donnent les mêmes géométries avec la conversion par copie (
+ * {@link JtsGeOxygene#getGeometryFactory(int)}) et avec les séquences
+ * adaptateurs ({@link JtsGeOxygene#getAdapterGeometryFactory(int)} et listes
+ * compactes).
+ */
+public class AdapterFactoryRoundTripTest {
+
+  private static GM_Polygon circle(int n, double cx, double cy) {
+    DirectPositionList list = new DirectPositionList();
+    for (int i = 0; i < n; i++) {
+      double angle = 2 * Math.PI * i / n;
+      double r = 100;
+      list.add(new DirectPosition(cx + r * Math.cos(angle), cy + r
+          * Math.sin(angle)));
+    }
+    list.add(list.get(0));
+    return new GM_Polygon(new GM_Ring(new GM_LineString(list)));
+  }
+
+  /**
+   * Résultats des allers-retours : géométrie convertie, puis buffer, union et
+   * intersection, reconvertis en GeOxygene puis recopiés en JTS pour être
+   * comparés.
+   */
+  private static Geometry[] run(GeometryFactory factory, boolean packed,
+      IGeometry g1, IGeometry g2) throws Exception {
+    AdapterFactory.setPackedCoordinates(packed);
+    Geometry j1 = AdapterFactory.toGeometry(factory, g1);
+    Geometry j2 = AdapterFactory.toGeometry(factory, g2);
+    IGeometry[] results = new IGeometry[] { AdapterFactory.toGM_Object(j1),
+        AdapterFactory.toGM_Object(j1.buffer(5)),
+        AdapterFactory.toGM_Object(j1.union(j2)),
+        AdapterFactory.toGM_Object(j1.intersection(j2)) };
+    AdapterFactory.setPackedCoordinates(false);
+    GeometryFactory copy = JtsGeOxygene.getGeometryFactory(0);
+    Geometry[] geometries = new Geometry[results.length];
+    for (int i = 0; i < results.length; i++) {
+      geometries[i] = AdapterFactory.toGeometry(copy, results[i]);
+    }
+    return geometries;
+  }
+
+  @After
+  public void tearDown() {
+    AdapterFactory.setPackedCoordinates(false);
+  }
+
+  @Test
+  public void testCopyAndAdapterAgree() throws Exception {
+    IGeometry g1 = AdapterFactoryRoundTripTest.circle(1000, 0, 0);
+    IGeometry g2 = AdapterFactoryRoundTripTest.circle(1000, 50, 0);
+    Geometry[] copy = AdapterFactoryRoundTripTest.run(
+        JtsGeOxygene.getGeometryFactory(0), false, g1, g2);
+    Geometry[] adapter = AdapterFactoryRoundTripTest.run(
+        JtsGeOxygene.getAdapterGeometryFactory(0), true, g1, g2);
+    Assert.assertEquals(1001, copy[0].getNumPoints());
+    for (int i = 0; i < copy.length; i++) {
+      Assert.assertFalse(copy[i].isEmpty());
+      Assert.assertTrue("result " + i, copy[i].equalsExact(adapter[i])); //$NON-NLS-1$
+    }
+  }
+}
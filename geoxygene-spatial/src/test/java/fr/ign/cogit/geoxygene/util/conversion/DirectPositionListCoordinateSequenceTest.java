@@ -0,0 +1,101 @@
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+
+public class DirectPositionListCoordinateSequenceTest {
+  GM_LineString line;
+  GM_Polygon polygon;
+
+  @Before
+  public void setUp() throws Exception {
+    this.line = new GM_LineString(new DirectPosition(0, 0), new DirectPosition(
+        10, 0), new DirectPosition(10, 10, 5));
+    this.polygon = new GM_Polygon(new GM_Envelope(2, 4, -1, 1));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    AdapterFactory.setPackedCoordinates(false);
+  }
+
+  @Test
+  public void testView() throws Exception {
+    Geometry jtsLine = AdapterFactory.toGeometry(
+        JtsGeOxygene.getAdapterGeometryFactory(0), this.line);
+    CoordinateSequence sequence = ((LineString) jtsLine)
+        .getCoordinateSequence();
+    Assert.assertTrue(sequence instanceof DirectPositionListCoordinateSequence);
+    Assert.assertSame(this.line.getControlPoint(),
+        ((DirectPositionListCoordinateSequence) sequence).getList());
+    Assert.assertEquals(3, sequence.size());
+    Assert.assertEquals(10, sequence.getX(2), 0);
+    Assert.assertEquals(5, sequence.getOrdinate(2, CoordinateSequence.Z), 0);
+    Assert.assertTrue(Double.isNaN(sequence.getOrdinate(0,
+        CoordinateSequence.Z)));
+    Assert.assertEquals(20, jtsLine.getLength(), 0);
+    // une copie ne depend plus de la liste GeOxygene
+    CoordinateSequence copy = (CoordinateSequence) sequence.clone();
+    this.line.getControlPoint(0).setX(-5);
+    Assert.assertEquals(-5, sequence.getX(0), 0);
+    Assert.assertEquals(0, copy.getX(0), 0);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    IGeometry buffer = this.line.buffer(1);
+    Assert.assertTrue(buffer instanceof GM_Polygon);
+    Assert.assertTrue(this.exterior(buffer) instanceof DirectPositionList);
+    AdapterFactory.setPackedCoordinates(true);
+    IGeometry packedBuffer = this.line.buffer(1);
+    Assert
+        .assertTrue(this.exterior(packedBuffer) instanceof PackedDirectPositionList);
+    Assert.assertEquals(buffer.area(), packedBuffer.area(), 1e-6);
+    Assert.assertTrue(buffer.coord().get(0)
+        .equals(packedBuffer.coord().get(0)));
+    IGeometry intersection = this.line.intersection(this.polygon);
+    Assert.assertEquals(2, intersection.length(), 0);
+    IGeometry union = this.polygon.union(new GM_Polygon(new GM_Envelope(3, 5,
+        -1, 1)));
+    Assert.assertEquals(6, union.area(), 0);
+  }
+
+  private IDirectPositionList exterior(IGeometry polygon) {
+    return ((GM_LineString) ((GM_Polygon) polygon).getExterior()
+        .getGenerator(0)).getControlPoint();
+  }
+
+  @Test
+  public void testAdoption() throws Exception {
+    Polygon jtsPolygon = (Polygon) AdapterFactory.toGeometry(
+        JtsGeOxygene.getAdapterGeometryFactory(0), this.polygon).buffer(1);
+    CoordinateSequence sequence = jtsPolygon.getExteriorRing()
+        .getCoordinateSequence();
+    Assert.assertFalse(((DirectPositionListCoordinateSequence) sequence)
+        .isView());
+    AdapterFactory.setPackedCoordinates(true);
+    IDirectPositionList first = AdapterFactory.toDirectPositionList(sequence);
+    IDirectPositionList second = AdapterFactory.toDirectPositionList(sequence);
+    Assert.assertEquals(sequence.size(), first.size());
+    Assert.assertEquals(first.size(), second.size());
+    // le tableau n'est repris qu'une fois, la seconde liste est une copie
+    first.get(0).setX(1000);
+    Assert.assertFalse(second.get(0).getX() == 1000);
+  }
+}
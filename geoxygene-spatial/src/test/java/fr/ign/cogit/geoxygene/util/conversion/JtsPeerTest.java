@@ -0,0 +1,108 @@
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.geomcomp.ICompositeCurve;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+
+public class JtsPeerTest {
+  GM_LineString line;
+  GM_Polygon polygon;
+
+  @Before
+  public void setUp() throws Exception {
+    this.line = new GM_LineString(new DirectPosition(0, 0), new DirectPosition(
+        10, 0));
+    this.polygon = new GM_Polygon(new GM_Envelope(2, 4, -1, 1));
+    JtsPeer.resetStatistics();
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    Assert.assertSame(this.line.getJtsPeer(), this.line.getJtsPeer());
+    Assert.assertEquals(1, JtsPeer.getMisses());
+    Assert.assertEquals(1, JtsPeer.getHits());
+  }
+
+  @Test
+  public void testInvalidateOnMutation() throws Exception {
+    JtsPeer peer = this.line.getJtsPeer();
+    this.line.getControlPoint(1).setX(20);
+    JtsPeer newPeer = this.line.getJtsPeer();
+    Assert.assertNotSame(peer, newPeer);
+    Assert.assertEquals(20, newPeer.getGeometry().getLength(), 0);
+    this.line.getControlPoint().add(new DirectPosition(20, 5));
+    Assert.assertEquals(25, this.line.getJtsPeer().getGeometry().getLength(),
+        0);
+    Assert.assertEquals(3, JtsPeer.getMisses());
+  }
+
+  @Test
+  public void testPredicates() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      Assert.assertTrue(this.polygon.intersects(this.line));
+      Assert.assertFalse(this.polygon.disjoint(this.line));
+      Assert.assertFalse(this.polygon.contains(this.line));
+      Assert.assertEquals(0, this.line.distance(this.polygon), 0);
+    }
+    Assert.assertNotNull(this.polygon.getJtsPeer()
+        .getPreparedGeometryIfReused());
+  }
+
+  @Test
+  public void testPolygonRingChange() throws Exception {
+    Assert.assertEquals(4, this.polygon.area(), 0);
+    ILineString exterior = (ILineString) ((ICompositeCurve) this.polygon
+        .getExterior()).getGenerator(0);
+    IDirectPositionList points = exterior.getControlPoint();
+    for (int i = 0; i < points.size(); i++) {
+      IDirectPosition p = points.get(i);
+      points.set(i, new DirectPosition(2 * p.getX(), p.getY()));
+    }
+    Assert.assertEquals(8, this.polygon.area(), 0);
+    Assert.assertEquals(2, JtsPeer.getMisses());
+  }
+
+  @Test
+  public void testPackedCoordinatesChange() throws Exception {
+    GM_LineString packedLine = new GM_LineString(new PackedDirectPositionList(
+        new double[] { 0, 0, 10, 0 }, 2));
+    Assert.assertEquals(10, packedLine.length(), 0);
+    ((PackedDirectPositionList) packedLine.getControlPoint())
+        .getCoordinates()[0] = -10;
+    Assert.assertEquals(20, packedLine.length(), 0);
+  }
+
+  @Test
+  public void testReplacedPosition() throws Exception {
+    JtsPeer peer = this.line.getJtsPeer();
+    IDirectPosition old = this.line.getControlPoint(1);
+    this.line.getControlPoint().set(1, new DirectPosition(10, 0));
+    // mêmes valeurs, mais le pair ne doit plus voir l'ancienne position
+    Assert.assertNotSame(peer, this.line.getJtsPeer());
+    old.setX(100);
+    Assert.assertEquals(10, this.line.length(), 0);
+  }
+
+  @Test
+  public void testAggregateChange() throws Exception {
+    GM_MultiCurve<GM_LineString> multi = new GM_MultiCurve<GM_LineString>();
+    multi.add(this.line);
+    Assert.assertEquals(10, multi.length(), 0);
+    multi.add(new GM_LineString(new DirectPosition(0, 1), new DirectPosition(
+        0, 6)));
+    Assert.assertEquals(15, multi.length(), 0);
+    this.line.getControlPoint(1).setX(20);
+    Assert.assertEquals(25, multi.length(), 0);
+  }
+}
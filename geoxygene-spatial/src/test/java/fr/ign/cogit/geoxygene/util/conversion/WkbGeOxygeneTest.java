@@ -0,0 +1,115 @@
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+public class WkbGeOxygeneTest {
+
+  private static final String[] WKT = {
+      "POINT (1.5 2.5)", //$NON-NLS-1$
+      "POINT (1.5 2.5 3.5)", //$NON-NLS-1$
+      "LINESTRING (0.0 0.0, 10.0 0.0, 10.0 5.0)", //$NON-NLS-1$
+      "LINESTRING (0.0 0.0 1.0, 10.0 0.0 2.0)", //$NON-NLS-1$
+      "POLYGON ((0.0 0.0, 10.0 0.0, 10.0 10.0, 0.0 10.0, 0.0 0.0), (2.0 2.0, 2.0 4.0, 4.0 4.0, 4.0 2.0, 2.0 2.0))", //$NON-NLS-1$
+      "MULTIPOINT (0.0 0.0, 1.0 1.0)", //$NON-NLS-1$
+      "MULTILINESTRING ((0.0 0.0, 1.0 1.0), (2.0 2.0, 3.0 3.0))", //$NON-NLS-1$
+      "MULTIPOLYGON (((0.0 0.0, 1.0 0.0, 1.0 1.0, 0.0 0.0)), ((5.0 5.0, 6.0 5.0, 6.0 6.0, 5.0 5.0)))", //$NON-NLS-1$
+      "GEOMETRYCOLLECTION (POINT (0.0 0.0), LINESTRING (0.0 0.0, 1.0 1.0))" }; //$NON-NLS-1$
+
+  @After
+  public void tearDown() {
+    AdapterFactory.setPackedCoordinates(false);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    for (String wkt : WkbGeOxygeneTest.WKT) {
+      IGeometry geom = WktGeOxygene.makeGeOxygene(wkt);
+      IGeometry copy = WkbGeOxygene.makeGeOxygene(WkbGeOxygene.makeWkb(geom));
+      Assert.assertEquals(wkt, geom.toString(), copy.toString());
+    }
+  }
+
+  @Test
+  public void testPackedCoordinates() throws Exception {
+    AdapterFactory.setPackedCoordinates(true);
+    IGeometry geom = WktGeOxygene.makeGeOxygene(WkbGeOxygeneTest.WKT[3]);
+    IGeometry copy = WkbGeOxygene.makeGeOxygene(WkbGeOxygene.makeWkb(geom));
+    Assert.assertTrue(((GM_LineString) copy).getControlPoint()
+        instanceof PackedDirectPositionList);
+    Assert.assertEquals(geom.toString(), copy.toString());
+  }
+
+  @Test
+  public void testSrid() throws Exception {
+    IGeometry geom = WktGeOxygene.makeGeOxygene(WkbGeOxygeneTest.WKT[2]);
+    geom.setCRS(2154);
+    String hex = WkbGeOxygene.makeHexWkb(geom);
+    // EWKB petit-boutiste : LINESTRING avec le drapeau SRID
+    Assert.assertTrue(hex.startsWith("0102000020" + "6A080000")); //$NON-NLS-1$ //$NON-NLS-2$
+    IGeometry copy = WkbGeOxygene.makeGeOxygeneFromHex(hex);
+    Assert.assertEquals(2154, copy.getCRS());
+    Assert.assertEquals(geom.toString(), copy.toString());
+    Assert.assertEquals(-1,
+        WkbGeOxygene.makeGeOxygene(WkbGeOxygene.makeWkb(geom, false)).getCRS());
+  }
+
+  @Test
+  public void testBigEndianAndIsoZ() throws Exception {
+    // POINT Z ISO (1001) en gros-boutiste
+    ByteBuffer buffer = ByteBuffer.allocate(29).order(ByteOrder.BIG_ENDIAN);
+    buffer.put((byte) 0).putInt(1001).putDouble(1).putDouble(2).putDouble(3);
+    buffer.flip();
+    IGeometry point = WkbGeOxygene.makeGeOxygene(buffer);
+    Assert.assertEquals("POINT (1.0 2.0 3.0)", point.toString()); //$NON-NLS-1$
+    Assert.assertEquals(0, buffer.remaining());
+    Assert.assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+  }
+
+  @Test
+  public void testWriteInBuffer() throws Exception {
+    IGeometry first = WktGeOxygene.makeGeOxygene(WkbGeOxygeneTest.WKT[4]);
+    IGeometry second = WktGeOxygene.makeGeOxygene(WkbGeOxygeneTest.WKT[1]);
+    ByteBuffer buffer = ByteBuffer.allocate(WkbGeOxygene.wkbSize(first, false)
+        + WkbGeOxygene.wkbSize(second, false));
+    WkbGeOxygene.writeWkb(first, false, buffer);
+    WkbGeOxygene.writeWkb(second, false, buffer);
+    Assert.assertEquals(0, buffer.remaining());
+    buffer.flip();
+    Assert.assertEquals(first.toString(), WkbGeOxygene.makeGeOxygene(buffer)
+        .toString());
+    Assert.assertEquals(second.toString(), WkbGeOxygene.makeGeOxygene(buffer)
+        .toString());
+  }
+
+  @Test
+  public void testEmptyPoint() throws Exception {
+    GM_Point point = new GM_Point();
+    point.setPosition(null);
+    String hex = WkbGeOxygene.makeHexWkb(point);
+    // POINT petit-boutiste 2D, X et Y à NaN
+    Assert.assertEquals("0101000000" + "000000000000F87F" //$NON-NLS-1$ //$NON-NLS-2$
+        + "000000000000F87F", hex.toUpperCase()); //$NON-NLS-1$
+    IGeometry copy = WkbGeOxygene.makeGeOxygeneFromHex(hex);
+    Assert.assertTrue(copy instanceof GM_Point);
+    Assert.assertTrue(Double.isNaN(((GM_Point) copy).getPosition().getX()));
+    Assert.assertTrue(Double.isNaN(((GM_Point) copy).getPosition().getY()));
+    Assert.assertEquals(hex, WkbGeOxygene.makeHexWkb(copy));
+  }
+
+  @Test(expected = ParseException.class)
+  public void testTruncated() throws Exception {
+    byte[] wkb = WkbGeOxygene.makeWkb(WktGeOxygene
+        .makeGeOxygene(WkbGeOxygeneTest.WKT[2]));
+    WkbGeOxygene.makeGeOxygene(ByteBuffer.wrap(wkb, 0, wkb.length - 4));
+  }
+}